@@ -21,18 +21,22 @@
 package com.reshiftsecurity.education;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 import java.io.*;
 import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
 public class EducationService {
 
-    private static final String reshiftEduBaseUrl = "https://d20h2meksv6k0s.cloudfront.net";
+    private static final String reshiftEduBaseUrl = System.getProperty("reshift.education.url", "https://d20h2meksv6k0s.cloudfront.net");
+    private static final int TIMEOUT_MS = 10000;
     private static final Type devContentType = new TypeToken<List<DevContent>>() {}.getType();
 
     public static VulnerabilityDetails getVulnerabilityDetails(String vulnerabilityType) {
@@ -56,6 +60,54 @@ public class EducationService {
         return details;
     }
 
+    /**
+     * Fetches the raw dev content JSON of a vulnerability type.
+     *
+     * @param etag the entity tag of the content known so far, to revalidate it
+     * @return the response, {@link DevContentResponse#isNotModified()} if the known content is still current
+     * @throws IOException if the content could not be fetched
+     */
+    public static DevContentResponse fetchDevContent(String vulnerabilityType, String etag) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(getDevContentURL(vulnerabilityType)).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        if (etag != null) {
+            connection.setRequestProperty("If-None-Match", etag);
+        }
+        try {
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return new DevContentResponse(null, etag);
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException(String.format("Unexpected response %s for %s", status, vulnerabilityType));
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream input = connection.getInputStream()) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    body.write(buffer, 0, read);
+                }
+            }
+            return new DevContentResponse(new String(body.toByteArray(), StandardCharsets.UTF_8), connection.getHeaderField("ETag"));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * @throws IOException if the JSON is malformed
+     */
+    public static List<DevContent> parseDevContent(String json) throws IOException {
+        try {
+            List<DevContent> devContent = new Gson().fromJson(json, devContentType);
+            return devContent == null ? new ArrayList<>() : devContent;
+        } catch (JsonParseException e) {
+            throw new IOException(e);
+        }
+    }
+
     private static String getDevContentURL(String vulnerabilityType) {
         try {
             URI eduBaseUri = new URI(reshiftEduBaseUrl);
@@ -65,4 +117,26 @@ public class EducationService {
         }
         return "";
     }
+
+    public static final class DevContentResponse {
+        private final String body;
+        private final String etag;
+
+        DevContentResponse(String body, String etag) {
+            this.body = body;
+            this.etag = etag;
+        }
+
+        public boolean isNotModified() {
+            return body == null;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
 }
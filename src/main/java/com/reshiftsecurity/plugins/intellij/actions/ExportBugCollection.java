@@ -27,16 +27,16 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.reshiftsecurity.plugins.intellij.common.util.ErrorUtil;
 import com.reshiftsecurity.plugins.intellij.common.util.FileUtilFb;
 import com.reshiftsecurity.plugins.intellij.common.util.IoUtil;
+import com.reshiftsecurity.plugins.intellij.common.util.SaxXMLOutput;
 import com.reshiftsecurity.plugins.intellij.core.FindBugsProject;
 import com.reshiftsecurity.plugins.intellij.core.FindBugsResult;
 import com.reshiftsecurity.plugins.intellij.core.FindBugsState;
 import com.reshiftsecurity.plugins.intellij.core.WorkspaceSettings;
 import edu.umd.cs.findbugs.*;
-import org.dom4j.Document;
-import org.dom4j.io.DocumentSource;
 import org.jetbrains.annotations.NotNull;
 import com.reshiftsecurity.plugins.intellij.common.EventDispatchThreadHelper;
 import com.reshiftsecurity.plugins.intellij.gui.export.ExportBugCollectionDialog;
@@ -44,18 +44,29 @@ import com.reshiftsecurity.plugins.intellij.gui.toolwindow.view.ToolWindowPanel;
 import com.reshiftsecurity.plugins.intellij.resources.ResourcesLoader;
 
 import javax.xml.transform.*;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.*;
 import java.io.*;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public final class ExportBugCollection extends AbstractAction {
 
 	private static final Logger LOGGER = Logger.getInstance(ExportBugCollection.class);
 	private static final String FINDBUGS_PLAIN_XSL = "plain.xsl";
 
+	/**
+	 * The compiled plain stylesheet, see {@link #getPlainTemplates()}; {@link Templates} are thread safe.
+	 */
+	private static Templates _plainTemplates;
+	private static SAXTransformerFactory _transformerFactory;
+
 	@Override
 	void updateImpl(
 			@NotNull final AnActionEvent e,
@@ -101,6 +112,7 @@ public final class ExportBugCollection extends AbstractAction {
 		final String exportDir = workspaceSettings.exportBugCollectionDirectory;
 		final boolean exportXml = workspaceSettings.exportBugCollectionAsXml;
 		final boolean exportHtml = workspaceSettings.exportBugCollectionAsHtml;
+		final boolean exportSarif = workspaceSettings.exportBugCollectionAsSarif;
 		final boolean createSubDir = workspaceSettings.exportBugCollectionCreateSubDirectory;
 		final boolean openInBrowser = workspaceSettings.openExportedHtmlBugCollectionInBrowser;
 
@@ -132,6 +144,10 @@ public final class ExportBugCollection extends AbstractAction {
 					}
 					final boolean multiModule = result.getResults().size() > 1;
 
+					// modules are exported in parallel, each one streamed from its bug collection
+					final ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor(
+							"Export Bug Collection", Runtime.getRuntime().availableProcessors());
+					final List<Future<?>> futures = new ArrayList<>();
 					for (final Map.Entry<edu.umd.cs.findbugs.Project, SortedBugCollection> entry : result.getResults().entrySet()) {
 						final String fileName;
 						if (createSubDir) {
@@ -143,14 +159,34 @@ public final class ExportBugCollection extends AbstractAction {
 						} else {
 							fileName = "findbugs-result-" + entry.getKey().getProjectName() + "_" + currentTime;
 						}
-						exportImpl(
-								entry.getValue(),
-								finalExportDir,
-								fileName,
-								exportXml,
-								exportHtml,
-								openInBrowser
-						);
+						final File moduleExportDir = finalExportDir;
+						futures.add(executor.submit(() -> {
+							exportImpl(
+									entry.getValue(),
+									moduleExportDir,
+									fileName,
+									exportXml,
+									exportHtml,
+									openInBrowser
+							);
+							return null;
+						}));
+					}
+					if (exportSarif) {
+						// one SARIF run covers all modules
+						final String fileName = createSubDir ? "result" : "findbugs-result-" + project.getName() + "_" + currentTime;
+						final File sarif = new File(finalExportDir, fileName + ".sarif");
+						futures.add(executor.submit(() -> {
+							exportSarif(result, sarif);
+							return null;
+						}));
+					}
+					for (final Future<?> future : futures) {
+						try {
+							future.get();
+						} catch (final ExecutionException e) {
+							throw ErrorUtil.toUnchecked(e.getCause());
+						}
 					}
 				} catch (final Exception e) {
 					throw ErrorUtil.toUnchecked(e);
@@ -192,31 +228,50 @@ public final class ExportBugCollection extends AbstractAction {
 		bugCollection.writeXML(fileName);
 	}
 
-	private void exportHtml(@NotNull final BugCollection bugCollection, @NotNull final File file) throws IOException, TransformerException {
-		final Document document = bugCollection.toDocument();
-		final InputStream stylesheet = getStylesheetStream(FINDBUGS_PLAIN_XSL);
+	private void exportSarif(@NotNull final FindBugsResult result, @NotNull final File file) throws IOException {
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
 		try {
-			final Source xsl = new StreamSource(stylesheet);
-			xsl.setSystemId(FINDBUGS_PLAIN_XSL);
+			new SarifExporter(result.getResults()).write(writer);
+		} finally {
+			IoUtil.safeClose(writer);
+		}
+	}
 
-			// Create a transformer using the stylesheet
-			final Transformer transformer = TransformerFactory.newInstance().newTransformer(xsl);
+	private void exportHtml(@NotNull final BugCollection bugCollection, @NotNull final File file) throws IOException, TransformerException {
+		final TransformerHandler handler = getTransformerFactory().newTransformerHandler(getPlainTemplates());
 
-			// Source document is the XML generated from the BugCollection
-			final Source source = new DocumentSource(document);
+		// Write result to output stream
+		final OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+		try {
+			handler.setResult(new StreamResult(writer));
+			// The XML generated from the BugCollection is transformed while it is written, no document is built
+			bugCollection.writeXML(new SaxXMLOutput(handler));
+		} finally {
+			IoUtil.safeClose(writer);
+		}
+	}
 
-			// Write result to output stream
-			final OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+	@NotNull
+	private static synchronized SAXTransformerFactory getTransformerFactory() {
+		if (_transformerFactory == null) {
+			_transformerFactory = (SAXTransformerFactory) TransformerFactory.newInstance();
+		}
+		return _transformerFactory;
+	}
+
+	@NotNull
+	private static synchronized Templates getPlainTemplates() throws IOException, TransformerConfigurationException {
+		if (_plainTemplates == null) {
+			final InputStream stylesheet = getStylesheetStream(FINDBUGS_PLAIN_XSL);
 			try {
-				final Result result = new StreamResult(writer);
-				// Do the transformation
-				transformer.transform(source, result);
+				final Source xsl = new StreamSource(stylesheet);
+				xsl.setSystemId(FINDBUGS_PLAIN_XSL);
+				_plainTemplates = getTransformerFactory().newTemplates(xsl);
 			} finally {
-				IoUtil.safeClose(writer);
+				IoUtil.safeClose(stylesheet);
 			}
-		} finally {
-			IoUtil.safeClose(stylesheet);
 		}
+		return _plainTemplates;
 	}
 
 	private static void openInBrowser(@NotNull final File file) {
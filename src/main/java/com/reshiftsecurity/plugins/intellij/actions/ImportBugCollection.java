@@ -21,19 +21,20 @@ package com.reshiftsecurity.plugins.intellij.actions;
 
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.DialogBuilder;
 import com.intellij.openapi.ui.DialogWrapper;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.util.Condition;
+import com.intellij.openapi.util.io.FileUtilRt;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.wm.ToolWindow;
 import com.intellij.util.Processor;
 import com.intellij.util.containers.TransferToEDTQueue;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.Plugin;
-import edu.umd.cs.findbugs.ProjectStats;
 import edu.umd.cs.findbugs.SortedBugCollection;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.dom4j.DocumentException;
@@ -51,16 +52,30 @@ import com.reshiftsecurity.plugins.intellij.gui.common.BalloonTipFactory;
 import com.reshiftsecurity.plugins.intellij.gui.common.ImportFileDialog;
 import com.reshiftsecurity.plugins.intellij.gui.toolwindow.view.ToolWindowPanel;
 import com.reshiftsecurity.plugins.intellij.messages.MessageBusManager;
+import com.reshiftsecurity.plugins.intellij.messages.NewBugsListener;
 import com.reshiftsecurity.plugins.intellij.tasks.BackgroundableTask;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
 
 public final class ImportBugCollection extends AbstractAction {
 
 	private static final Logger LOGGER = Logger.getInstance(ImportBugCollection.class);
+	private static final String GZ_EXTENSION = "gz";
+
+	/**
+	 * Imported bugs are published to the tool window in batches of this size, like the bugs of a running analysis.
+	 */
+	private static final int NEW_BUGS_BATCH_SIZE = 200;
 
 	@Override
 	void updateImpl(
@@ -137,7 +152,6 @@ public final class ImportBugCollection extends AbstractAction {
 			private ProgressIndicator _indicator;
 
 
-			@SuppressWarnings({"IOResourceOpenedButNotSafelyClosed"})
 			@Override
 			public void run(@NotNull final ProgressIndicator indicator) {
 
@@ -146,48 +160,50 @@ public final class ImportBugCollection extends AbstractAction {
 				indicator.setFraction(0.0);
 				indicator.setIndeterminate(false);
 				indicator.setText(fileToImport);
-				SortedBugCollection importBugCollection = null;
-				edu.umd.cs.findbugs.Project importProject = null;
-				boolean success = false;
-				try {
-					final SortedBugCollection bugCollection = new SortedBugCollection();
-					importBugCollection = bugCollection.createEmptyCollectionWithMetadata();
-					importProject = importBugCollection.getProject();
-					for (final Plugin plugin : Plugin.getAllPlugins()) {
-						importProject.setPluginStatusTrinary(plugin.getPluginId(), plugin.isCorePlugin() || enabledPluginIds.contains(plugin.getPluginId()));
-					}
-					importBugCollection.readXML(fileToImport);
-
-					final ProjectStats projectStats = importBugCollection.getProjectStats();
-					int bugCount = 0;
-					for (final BugInstance bugInstance : importBugCollection) {
-						if (indicator.isCanceled()) {
-							taskCanceled.set(true);
-							MessageBusManager.publishAnalysisAbortedToEDT(project);
-							Thread.currentThread().interrupt();
-							return;
-						}
-						final int bugCounter = bugCount++;
-						final double fraction = (double) bugCounter / projectStats.getTotalBugs();
-						indicator.setFraction(fraction);
-						indicator.setText2("Importing bug '" + bugCount + "' of '" + projectStats.getTotalBugs() + "' - " + bugInstance.getMessageWithoutPrefix());
+				final File file = new File(fileToImport);
+				final long fileLength = file.length();
+				final StreamingBugCollection importBugCollection = new StreamingBugCollection() {
+					/**
+					 * Invoked by the parser thread for every {@link #NEW_BUGS_BATCH_SIZE} parsed bugs.
+					 */
+					@Override
+					void publish(@NotNull final List<BugInstance> batch) {
+						indicator.checkCanceled();
+						indicator.setText2("Imported " + getBugCount() + " bugs");
 						/*
 						 * Guarantee thread visibility *one* time.
 						 */
-						final AtomicReference<BugInstance> bugInstanceRef = New.atomicRef(bugInstance);
-						final AtomicReference<SortedBugCollection> importBugCollectionRef = New.atomicRef(importBugCollection);
-						final int analyzedClassCount = projectStats.getNumClasses();
+						final AtomicReference<List<BugInstance>> batchRef = New.atomicRef(batch);
+						final AtomicReference<SortedBugCollection> importBugCollectionRef = New.atomicRef(this);
 						transferToEDTQueue.offer(new Runnable() {
 							/**
 							 * Invoked by EDT.
 							 */
 							@Override
 							public void run() {
-								final Bug bug = new Bug(null, importBugCollectionRef.get(), bugInstanceRef.get());
-								MessageBusManager.publishNewBug(project, bug, analyzedClassCount);
+								final List<Bug> bugs = new ArrayList<Bug>(batchRef.get().size());
+								for (final BugInstance bugInstance : batchRef.get()) {
+									bugs.add(new Bug(null, importBugCollectionRef.get(), bugInstance));
+								}
+								// the class count is read from the summary at the end of the file
+								MessageBusManager.publishNewBugs(project, bugs, NewBugsListener.UNKNOWN_CLASS_COUNT);
 							}
 						});
 					}
+				};
+				final edu.umd.cs.findbugs.Project importProject = importBugCollection.getProject();
+				for (final Plugin plugin : Plugin.getAllPlugins()) {
+					importProject.setPluginStatusTrinary(plugin.getPluginId(), plugin.isCorePlugin() || enabledPluginIds.contains(plugin.getPluginId()));
+				}
+				boolean success = false;
+				boolean canceled = false;
+				try {
+					try (final InputStream fileIn = new ProgressInputStream(new FileInputStream(file), fileLength, indicator);
+						 final InputStream in = GZ_EXTENSION.equalsIgnoreCase(FileUtilRt.getExtension(fileToImport)) ? new GZIPInputStream(fileIn) : fileIn) {
+						// the bugs are published in batches while they are parsed
+						importBugCollection.readXML(in);
+					}
+					importBugCollection.flush();
 
 					EventDispatchThreadHelper.invokeLater(() -> {
 						transferToEDTQueue.drain();
@@ -196,10 +212,18 @@ public final class ImportBugCollection extends AbstractAction {
 
 					importBugCollection.setTimestamp(System.currentTimeMillis());
 					success = true;
+				} catch (final ProcessCanceledException ignore) {
+					canceled = true;
+					taskCanceled.set(true);
 				} catch (final IOException | DocumentException e1) {
-					final String message = "Import failed";
-					showToolWindowErrorNotifier(project, message);
-					LOGGER.error(message, e1);
+					if (indicator.isCanceled()) {
+						canceled = true;
+						taskCanceled.set(true);
+					} else {
+						final String message = "Import failed";
+						showToolWindowErrorNotifier(project, message);
+						LOGGER.error(message, e1);
+					}
 
 				} finally {
 					if (success) {
@@ -209,6 +233,9 @@ public final class ImportBugCollection extends AbstractAction {
 						Thread.currentThread().interrupt();
 					} else {
 						MessageBusManager.publishAnalysisAbortedToEDT(project);
+						if (canceled) {
+							Thread.currentThread().interrupt();
+						}
 					}
 				}
 			}
@@ -231,6 +258,85 @@ public final class ImportBugCollection extends AbstractAction {
 		task.queue();
 	}
 
+	/**
+	 * Collects the bugs added by the XML parser and hands them over in batches of {@link #NEW_BUGS_BATCH_SIZE}.
+	 */
+	private abstract static class StreamingBugCollection extends SortedBugCollection {
+
+		private final List<BugInstance> _pendingBugs = New.arrayList();
+		private int _bugCount;
+
+		@Override
+		public boolean add(@NotNull final BugInstance bugInstance, final boolean updateActiveTime) {
+			final boolean added = super.add(bugInstance, updateActiveTime);
+			if (added) {
+				_bugCount++;
+				_pendingBugs.add(bugInstance);
+				if (_pendingBugs.size() >= NEW_BUGS_BATCH_SIZE) {
+					flush();
+				}
+			}
+			return added;
+		}
+
+		final void flush() {
+			if (!_pendingBugs.isEmpty()) {
+				final List<BugInstance> batch = new ArrayList<BugInstance>(_pendingBugs);
+				_pendingBugs.clear();
+				publish(batch);
+			}
+		}
+
+		final int getBugCount() {
+			return _bugCount;
+		}
+
+		abstract void publish(@NotNull List<BugInstance> batch);
+	}
+
+	/**
+	 * Reports the fraction of the (compressed) file read so far and stops the import when canceled.
+	 */
+	private static final class ProgressInputStream extends FilterInputStream {
+
+		private final long _length;
+		@NotNull
+		private final ProgressIndicator _indicator;
+		private long _read;
+
+		private ProgressInputStream(@NotNull final InputStream in, final long length, @NotNull final ProgressIndicator indicator) {
+			super(in);
+			_length = length;
+			_indicator = indicator;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = super.read();
+			if (b != -1) {
+				progress(1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(@NotNull final byte[] b, final int off, final int len) throws IOException {
+			final int count = super.read(b, off, len);
+			if (count > 0) {
+				progress(count);
+			}
+			return count;
+		}
+
+		private void progress(final int count) {
+			_indicator.checkCanceled();
+			_read += count;
+			if (_length > 0) {
+				_indicator.setFraction(Math.min(1.0, (double) _read / _length));
+			}
+		}
+	}
+
 	private static void showToolWindowErrorNotifier(@NotNull final Project project, final String message) {
 		EventDispatchThreadHelper.invokeLater(new Runnable() {
 			public void run() {
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reshiftsecurity.plugins.intellij.actions;
+
+import com.google.gson.stream.JsonWriter;
+import com.reshiftsecurity.plugins.intellij.common.VersionManager;
+import com.reshiftsecurity.plugins.intellij.common.util.HashUtil;
+import com.reshiftsecurity.plugins.intellij.common.util.New;
+import com.reshiftsecurity.plugins.intellij.core.FindBugsProject;
+import com.reshiftsecurity.results.FindBugsRankRenamer;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugPattern;
+import edu.umd.cs.findbugs.MethodAnnotation;
+import edu.umd.cs.findbugs.Project;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import edu.umd.cs.findbugs.SourceLineAnnotation;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes bug collections as a single SARIF 2.1.0 run.
+ * Results are streamed one by one, only the rule table (one entry per bug pattern) is kept in memory.
+ */
+final class SarifExporter {
+
+	private static final String SCHEMA = "https://json.schemastore.org/sarif-2.1.0.json";
+	private static final String VERSION = "2.1.0";
+	private static final String FINGERPRINT_KEY = "reshiftIssueHash/v1";
+	/**
+	 * Base of the artifact URIs, which are relative to the source roots of the modules.
+	 */
+	static final String SOURCE_ROOT_BASE_ID = "SRCROOT";
+
+	@NotNull
+	private final Map<Project, SortedBugCollection> _results;
+
+	SarifExporter(@NotNull final Map<Project, SortedBugCollection> results) {
+		_results = results;
+	}
+
+	void write(@NotNull final Writer out) throws IOException {
+		// the rules have to precede the results, so the patterns are collected in a first pass
+		final Map<String, BugInstance> rules = new TreeMap<>();
+		for (final SortedBugCollection bugCollection : _results.values()) {
+			for (final BugInstance bug : bugCollection.getCollection()) {
+				rules.putIfAbsent(bug.getType(), bug);
+			}
+		}
+		final Map<String, Integer> ruleIndex = New.map();
+
+		final JsonWriter json = new JsonWriter(out);
+		json.beginObject();
+		json.name("$schema").value(SCHEMA);
+		json.name("version").value(VERSION);
+		json.name("runs").beginArray();
+		json.beginObject();
+
+		json.name("tool").beginObject();
+		json.name("driver").beginObject();
+		json.name("name").value(VersionManager.getName());
+		json.name("version").value(VersionManager.getVersion());
+		json.name("informationUri").value(VersionManager.getWebsite());
+		json.name("rules").beginArray();
+		for (final BugInstance bug : rules.values()) {
+			ruleIndex.put(bug.getType(), ruleIndex.size());
+			// the CWE id of the instance falls back to the bug code when the pattern has none
+			writeRule(json, bug.getBugPattern(), bug.getCWEid());
+		}
+		json.endArray();
+		json.endObject();
+		json.endObject();
+
+		json.name("originalUriBaseIds").beginObject();
+		json.name(SOURCE_ROOT_BASE_ID).beginObject();
+		json.name("description").beginObject();
+		json.name("text").value("Source root of the module the result belongs to");
+		json.endObject();
+		json.endObject();
+		json.endObject();
+
+		json.name("results").beginArray();
+		for (final Map.Entry<Project, SortedBugCollection> entry : _results.entrySet()) {
+			final String moduleName = getModuleName(entry.getKey());
+			for (final BugInstance bug : entry.getValue().getCollection()) {
+				writeResult(json, bug, ruleIndex.get(bug.getType()), moduleName);
+			}
+		}
+		json.endArray();
+
+		json.endObject();
+		json.endArray();
+		json.endObject();
+		json.flush();
+	}
+
+	private static void writeRule(@NotNull final JsonWriter json, @NotNull final BugPattern pattern, final int cweId) throws IOException {
+		json.beginObject();
+		json.name("id").value(pattern.getType());
+		json.name("shortDescription").beginObject();
+		json.name("text").value(pattern.getShortDescription());
+		json.endObject();
+		json.name("properties").beginObject();
+		json.name("category").value(pattern.getCategory());
+		json.name("tags").beginArray();
+		json.value("security");
+		if (cweId > 0) {
+			json.value("external/cwe/cwe-" + cweId);
+		}
+		json.endArray();
+		json.endObject();
+		json.endObject();
+	}
+
+	private static void writeResult(
+			@NotNull final JsonWriter json,
+			@NotNull final BugInstance bug,
+			final int ruleIndex,
+			@Nullable final String moduleName
+	) throws IOException {
+
+		final int cweId = bug.getCWEid();
+		json.beginObject();
+		json.name("ruleId").value(bug.getType());
+		json.name("ruleIndex").value(ruleIndex);
+		json.name("level").value(getLevel(bug.getPriority()));
+		json.name("message").beginObject();
+		json.name("text").value(bug.getMessageWithoutPrefix());
+		json.endObject();
+
+		final SourceLineAnnotation sourceLine = bug.getPrimarySourceLineAnnotation();
+		json.name("locations").beginArray();
+		json.beginObject();
+		json.name("physicalLocation").beginObject();
+		json.name("artifactLocation").beginObject();
+		json.name("uri").value(sourceLine.getSourcePath());
+		json.name("uriBaseId").value(SOURCE_ROOT_BASE_ID);
+		json.endObject();
+		if (sourceLine.getStartLine() > 0) {
+			json.name("region").beginObject();
+			json.name("startLine").value(sourceLine.getStartLine());
+			if (sourceLine.getEndLine() >= sourceLine.getStartLine()) {
+				json.name("endLine").value(sourceLine.getEndLine());
+			}
+			json.endObject();
+		}
+		json.endObject();
+		json.name("logicalLocations").beginArray();
+		json.beginObject();
+		final MethodAnnotation method = bug.getPrimaryMethod();
+		if (method != null) {
+			json.name("fullyQualifiedName").value(method.getFullMethod(bug.getPrimaryClass()));
+			json.name("kind").value("function");
+		} else {
+			json.name("fullyQualifiedName").value(sourceLine.getClassName());
+			json.name("kind").value("type");
+		}
+		json.endObject();
+		json.endArray();
+		json.endObject();
+		json.endArray();
+
+		// same hash as SecurityReportService uses to track issues across scans
+		json.name("partialFingerprints").beginObject();
+		json.name(FINGERPRINT_KEY).value(HashUtil.hashThis(String.format("%s|%s", cweId, bug.getInstanceKey())));
+		json.endObject();
+
+		json.name("properties").beginObject();
+		json.name("severity").value(FindBugsRankRenamer.getRankNameByPriorityValue(bug.getPriority()));
+		if (cweId > 0) {
+			json.name("cwe").value("CWE-" + cweId);
+		}
+		if (moduleName != null) {
+			json.name("module").value(moduleName);
+		}
+		json.endObject();
+		json.endObject();
+	}
+
+	/**
+	 * The priorities are already remapped to the plugin severities (critical = 1 .. low = 4) when reported.
+	 */
+	@NotNull
+	private static String getLevel(final int priority) {
+		switch (priority) {
+			case 1:
+			case 2:
+				return "error";
+			case 3:
+				return "warning";
+			default:
+				return "note";
+		}
+	}
+
+	@Nullable
+	private static String getModuleName(@NotNull final Project project) {
+		if (project instanceof FindBugsProject) {
+			return ((FindBugsProject) project).getModule().getName();
+		}
+		return project.getProjectName();
+	}
+}
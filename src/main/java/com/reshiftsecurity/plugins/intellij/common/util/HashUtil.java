@@ -47,6 +47,17 @@ public class HashUtil {
         return null;
     }
 
+    public static String hashThis(String prefix, byte[] value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(prefix.getBytes(StandardCharsets.UTF_8));
+            return bytesToHex(digest.digest(value));
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
     public static String urlEncode(String data) {
         try {
             return URLEncoder.encode(data, "UTF-8");
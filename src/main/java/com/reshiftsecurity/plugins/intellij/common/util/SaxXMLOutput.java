@@ -0,0 +1,210 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reshiftsecurity.plugins.intellij.common.util;
+
+import edu.umd.cs.findbugs.xml.XMLAttributeList;
+import edu.umd.cs.findbugs.xml.XMLOutput;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Forwards the XML written by FindBugs (f. e. {@link edu.umd.cs.findbugs.SortedBugCollection#writeXML(XMLOutput)})
+ * as SAX events, so it can be transformed without building a document first.
+ * The events describe the same tree as {@link edu.umd.cs.findbugs.xml.Dom4JXMLOutput} builds:
+ * no whitespace between elements, attributes without value are omitted.
+ */
+public final class SaxXMLOutput implements XMLOutput {
+
+	private static final char[] NO_CHARS = new char[0];
+
+	@NotNull
+	private final ContentHandler _handler;
+	@Nullable
+	private final LexicalHandler _lexicalHandler;
+	private final Deque<String> _openTags;
+	/**
+	 * Name and attributes of a tag started with {@link #startTag(String)} until {@link #stopTag(boolean)}.
+	 */
+	@Nullable
+	private String _startedTag;
+	private final AttributesImpl _startedAttributes;
+
+
+	/**
+	 * @param handler receives the events; CDATA sections are reported as such if it is a {@link LexicalHandler} too
+	 */
+	public SaxXMLOutput(@NotNull final ContentHandler handler) {
+		_handler = handler;
+		_lexicalHandler = handler instanceof LexicalHandler ? (LexicalHandler) handler : null;
+		_openTags = new ArrayDeque<String>();
+		_startedAttributes = new AttributesImpl();
+	}
+
+
+	@Override
+	public void beginDocument() throws IOException {
+		try {
+			_handler.startDocument();
+		} catch (final SAXException e) {
+			throw new IOException(e);
+		}
+	}
+
+
+	@Override
+	public void openTag(final String tagName) throws IOException {
+		startElement(tagName, new AttributesImpl());
+	}
+
+
+	@Override
+	public void openTag(final String tagName, final XMLAttributeList attributeList) throws IOException {
+		final AttributesImpl attributes = new AttributesImpl();
+		final Iterator<XMLAttributeList.NameValuePair> it = attributeList.iterator();
+		while (it.hasNext()) {
+			final XMLAttributeList.NameValuePair pair = it.next();
+			addAttribute(attributes, pair.getName(), pair.getValue());
+		}
+		startElement(tagName, attributes);
+	}
+
+
+	@Override
+	public void startTag(final String tagName) {
+		_startedTag = tagName;
+		_startedAttributes.clear();
+	}
+
+
+	@Override
+	public void addAttribute(final String name, final String value) {
+		addAttribute(_startedAttributes, name, value);
+	}
+
+
+	@Override
+	public void stopTag(final boolean close) throws IOException {
+		final String tagName = _startedTag;
+		//noinspection AssignmentToNull
+		_startedTag = null;
+		startElement(tagName, new AttributesImpl(_startedAttributes));
+		if (close) {
+			closeTag(tagName);
+		}
+	}
+
+
+	@Override
+	public void openCloseTag(final String tagName) throws IOException {
+		openTag(tagName);
+		closeTag(tagName);
+	}
+
+
+	@Override
+	public void openCloseTag(final String tagName, final XMLAttributeList attributeList) throws IOException {
+		openTag(tagName, attributeList);
+		closeTag(tagName);
+	}
+
+
+	@Override
+	public void closeTag(final String tagName) throws IOException {
+		final String openTag = _openTags.removeLast();
+		try {
+			_handler.endElement("", openTag, openTag);
+		} catch (final SAXException e) {
+			throw new IOException(e);
+		}
+	}
+
+
+	@Override
+	public void writeText(final String text) throws IOException {
+		if (text != null) {
+			characters(text);
+		}
+	}
+
+
+	@Override
+	public void writeCDATA(final String cdata) throws IOException {
+		if (cdata == null) {
+			return;
+		}
+		try {
+			if (_lexicalHandler != null) {
+				_lexicalHandler.startCDATA();
+			}
+			characters(cdata);
+			if (_lexicalHandler != null) {
+				_lexicalHandler.endCDATA();
+			}
+		} catch (final SAXException e) {
+			throw new IOException(e);
+		}
+	}
+
+
+	@Override
+	public void finish() throws IOException {
+		try {
+			_handler.endDocument();
+		} catch (final SAXException e) {
+			throw new IOException(e);
+		}
+	}
+
+
+	private void startElement(final String tagName, final AttributesImpl attributes) throws IOException {
+		_openTags.addLast(tagName);
+		try {
+			_handler.startElement("", tagName, tagName, attributes);
+		} catch (final SAXException e) {
+			throw new IOException(e);
+		}
+	}
+
+
+	private void characters(@NotNull final String text) throws IOException {
+		final char[] chars = text.isEmpty() ? NO_CHARS : text.toCharArray();
+		try {
+			_handler.characters(chars, 0, chars.length);
+		} catch (final SAXException e) {
+			throw new IOException(e);
+		}
+	}
+
+
+	private static void addAttribute(@NotNull final AttributesImpl attributes, final String name, @Nullable final String value) {
+		if (value != null) {
+			attributes.addAttribute("", name, name, "CDATA", value);
+		}
+	}
+}
@@ -61,6 +61,10 @@ public class SourceCodeUtil {
         return StringUtils.deleteWhitespace(getLine(sourcePathFiles, lineAnnotation));
     }
 
+    public static String getTrimmedSourceLine(SourceLineCache sourceLines, SourceLineAnnotation lineAnnotation) {
+        return StringUtils.deleteWhitespace(sourceLines.getLine(lineAnnotation));
+    }
+
     public static boolean sourceFileExists(String filePath) {
         return sourceFileExists(Path.of(filePath));
     }
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.reshiftsecurity.plugins.intellij.common.util;
+
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import edu.umd.cs.findbugs.SourceLineAnnotation;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Serves source lines for the findings of one scan.
+ * Each source file is resolved against the source roots once and indexed by the start offsets of its lines,
+ * so any number of lookups in the same file cost one read of that file.
+ * The content comes from the already loaded {@link Document} if there is one without unsaved changes,
+ * from the memory mapped file otherwise.
+ * Lines are split like {@link java.nio.file.Files#lines(Path)} does, which {@link SourceCodeUtil#getLine(Path, int)} uses.
+ * <p>
+ * Instances are not thread safe and should be dropped at the end of the scan.
+ */
+public final class SourceLineCache {
+    private static final int MAX_FILES = 64;
+
+    private final VirtualFile[] sourcePathFiles;
+
+    /**
+     * Relative source path to the absolute path of the file, or to null if it exists in none of the source roots.
+     */
+    private final Map<String, Path> resolvedPaths = new HashMap<>();
+
+    private final Map<Path, SourceLines> files = new LinkedHashMap<Path, SourceLines>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Path, SourceLines> eldest) {
+            return size() > MAX_FILES;
+        }
+    };
+
+    public SourceLineCache(@NotNull VirtualFile[] sourcePathFiles) {
+        this.sourcePathFiles = sourcePathFiles.clone();
+    }
+
+    @NotNull
+    public String getLine(@NotNull SourceLineAnnotation lineAnnotation) {
+        return getLine(SourceCodeUtil.getPathFromSourceLineAnnotation(lineAnnotation).toString(), lineAnnotation.getStartLine());
+    }
+
+    @NotNull
+    public String getLine(@NotNull String filePath, int line) {
+        if (line <= 0) {
+            return "";
+        }
+        Path fileAbsolutePath = resolve(filePath);
+        return fileAbsolutePath == null ? "" : getLine(fileAbsolutePath, line);
+    }
+
+    @NotNull
+    public String getLine(@NotNull Path fileAbsolutePath, int line) {
+        if (line <= 0) {
+            return "";
+        }
+        SourceLines lines = files.get(fileAbsolutePath);
+        if (lines == null) {
+            lines = load(fileAbsolutePath);
+            files.put(fileAbsolutePath, lines);
+        }
+        return lines.getLine(line);
+    }
+
+    @Nullable
+    private Path resolve(@NotNull String filePath) {
+        if (resolvedPaths.containsKey(filePath)) {
+            return resolvedPaths.get(filePath);
+        }
+        Path resolved = null;
+        for (VirtualFile file : sourcePathFiles) {
+            Path fileAbsolutePath = Paths.get(file.getPath(), filePath);
+            if (SourceCodeUtil.sourceFileExists(fileAbsolutePath)) {
+                resolved = fileAbsolutePath;
+                break;
+            }
+        }
+        resolvedPaths.put(filePath, resolved);
+        return resolved;
+    }
+
+    @NotNull
+    private static SourceLines load(@NotNull Path fileAbsolutePath) {
+        CharSequence text = getDocumentText(fileAbsolutePath);
+        if (text != null) {
+            return new DocumentLines(text);
+        }
+        try (FileChannel channel = FileChannel.open(fileAbsolutePath, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return new MappedLines(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (Exception e) {
+            return SourceLines.EMPTY;
+        }
+    }
+
+    @Nullable
+    private static CharSequence getDocumentText(@NotNull Path fileAbsolutePath) {
+        return ReadAction.compute(() -> {
+            VirtualFile file = LocalFileSystem.getInstance().findFileByPath(FileUtil.toSystemIndependentName(fileAbsolutePath.toString()));
+            if (file == null) {
+                return null;
+            }
+            FileDocumentManager documentManager = FileDocumentManager.getInstance();
+            Document document = documentManager.getCachedDocument(file);
+            if (document == null || documentManager.isDocumentUnsaved(document)) {
+                return null;
+            }
+            return document.getImmutableCharSequence();
+        });
+    }
+
+    private abstract static class SourceLines {
+        static final SourceLines EMPTY = new SourceLines() {
+            @Override
+            int length() {
+                return 0;
+            }
+
+            @Override
+            char charAt(int index) {
+                throw new IndexOutOfBoundsException();
+            }
+
+            @NotNull
+            @Override
+            String substring(int start, int end) {
+                return "";
+            }
+        };
+
+        private int[] lineStarts;
+        private int lineCount = -1;
+
+        abstract int length();
+
+        /**
+         * Only called for line terminators, for which a byte and a char are the same.
+         */
+        abstract char charAt(int index);
+
+        @NotNull
+        abstract String substring(int start, int end);
+
+        @NotNull
+        final String getLine(int line) {
+            if (lineCount < 0) {
+                indexLines();
+            }
+            if (line > lineCount) {
+                return "";
+            }
+            int start = lineStarts[line - 1];
+            int end = line < lineCount ? lineStarts[line] : length();
+            if (end > start && charAt(end - 1) == '\n') {
+                end--;
+            }
+            if (end > start && charAt(end - 1) == '\r') {
+                end--;
+            }
+            return substring(start, end);
+        }
+
+        private void indexLines() {
+            int length = length();
+            int[] starts = new int[64];
+            int count = 0;
+            if (length > 0) {
+                starts[count++] = 0;
+            }
+            for (int i = 0; i < length; i++) {
+                char c = charAt(i);
+                if (c == '\n' || (c == '\r' && (i + 1 == length || charAt(i + 1) != '\n'))) {
+                    if (i + 1 < length) {
+                        if (count == starts.length) {
+                            starts = Arrays.copyOf(starts, count * 2);
+                        }
+                        starts[count++] = i + 1;
+                    }
+                }
+            }
+            lineStarts = Arrays.copyOf(starts, count);
+            lineCount = count;
+        }
+    }
+
+    private static final class DocumentLines extends SourceLines {
+        private final CharSequence text;
+
+        DocumentLines(@NotNull CharSequence text) {
+            this.text = text;
+        }
+
+        @Override
+        int length() {
+            return text.length();
+        }
+
+        @Override
+        char charAt(int index) {
+            return text.charAt(index);
+        }
+
+        @NotNull
+        @Override
+        String substring(int start, int end) {
+            return text.subSequence(start, end).toString();
+        }
+    }
+
+    private static final class MappedLines extends SourceLines {
+        private final ByteBuffer bytes;
+
+        MappedLines(@NotNull ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        int length() {
+            return bytes.limit();
+        }
+
+        @Override
+        char charAt(int index) {
+            return (char) bytes.get(index);
+        }
+
+        @NotNull
+        @Override
+        String substring(int start, int end) {
+            ByteBuffer slice = bytes.duplicate();
+            slice.position(start);
+            slice.limit(end);
+            try {
+                CharBuffer chars = StandardCharsets.UTF_8.newDecoder().decode(slice);
+                return chars.toString();
+            } catch (CharacterCodingException e) {
+                // Files.lines fails on malformed input as well
+                return "";
+            }
+        }
+    }
+}
@@ -36,6 +36,11 @@ public final class Bug {
 	@NotNull
 	private final BugInstance instance;
 
+	/**
+	 * True if the source file changed since the bug was reported, see {@link LastResultService}.
+	 */
+	private volatile boolean stale;
+
 	public Bug(
 			@Nullable final Module module,
 			@NotNull final SortedBugCollection bugCollection,
@@ -61,6 +66,14 @@ public final class Bug {
 		return instance;
 	}
 
+	public boolean isStale() {
+		return stale;
+	}
+
+	void markStale() {
+		stale = true;
+	}
+
 	@SuppressWarnings("SimplifiableIfStatement")
 	@Override
 	public boolean equals(Object o) {
@@ -42,6 +42,7 @@ import com.reshiftsecurity.plugins.intellij.resources.ResourcesLoader;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -63,21 +64,22 @@ public final class FindBugsProjects {
 	}
 
 	public boolean addFiles(@NotNull final Iterable<VirtualFile> files, final boolean checkCompiled, final boolean includeTests) {
-		for (final VirtualFile file : files) {
-			if (!addFile(file, checkCompiled, includeTests) && checkCompiled) {
-				return false;
+		final ScanMetrics.Timer timer = ScanMetrics.get(project).timer(ScanMetrics.COLLECT_FILES);
+		final long start = timer.start();
+		try {
+			for (final VirtualFile file : files) {
+				if (!addFile(file, checkCompiled, includeTests) && checkCompiled) {
+					return false;
+				}
 			}
+			return true;
+		} finally {
+			timer.stop(start);
 		}
-		return true;
 	}
 
 	public boolean addFiles(@NotNull final VirtualFile[] files, final boolean checkCompiled, final boolean includeTests) {
-		for (final VirtualFile file : files) {
-			if (!addFile(file, checkCompiled, includeTests) && checkCompiled) {
-				return false;
-			}
-		}
-		return true;
+		return addFiles(Arrays.asList(files), checkCompiled, includeTests);
 	}
 
 	public boolean addFile(@NotNull final VirtualFile file, final boolean checkCompiled, final boolean includeTests) {
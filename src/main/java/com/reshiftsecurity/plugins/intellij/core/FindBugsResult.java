@@ -33,6 +33,9 @@ public final class FindBugsResult {
 	@NotNull
 	private final Map<Project, SortedBugCollection> results;
 
+	@Nullable
+	private ScanMetrics metrics;
+
 	public FindBugsResult() {
 		this.results = New.map();
 	}
@@ -87,4 +90,16 @@ public final class FindBugsResult {
 	public Map<Project, SortedBugCollection> getResults() {
 		return results;
 	}
+
+	void setMetrics(@Nullable final ScanMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return the metrics of the scan which created this result, null for imported or restored results
+	 */
+	@Nullable
+	public ScanMetrics getMetrics() {
+		return metrics;
+	}
 }
@@ -22,6 +22,7 @@ package com.reshiftsecurity.plugins.intellij.core;
 import com.intellij.execution.*;
 import com.intellij.execution.configurations.RunConfiguration;
 import com.intellij.facet.FacetManager;
+import com.intellij.ide.util.DelegatingProgressIndicator;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.compiler.*;
 import com.intellij.openapi.diagnostic.Logger;
@@ -48,6 +49,7 @@ import org.dom4j.DocumentException;
 import org.jetbrains.annotations.*;
 import com.reshiftsecurity.plugins.intellij.common.EventDispatchThreadHelper;
 import com.reshiftsecurity.plugins.intellij.common.util.New;
+import com.reshiftsecurity.plugins.intellij.common.util.WithPluginClassloader;
 import com.reshiftsecurity.plugins.intellij.gui.common.BalloonTipFactory;
 import com.reshiftsecurity.plugins.intellij.gui.toolwindow.view.ToolWindowPanel;
 import com.reshiftsecurity.plugins.intellij.plugins.PluginLoader;
@@ -55,12 +57,25 @@ import com.reshiftsecurity.plugins.intellij.resources.ResourcesLoader;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class FindBugsStarter implements AnalysisAbortingListener {
 
 	private static final Logger LOGGER = Logger.getInstance(FindBugsStarter.class);
 
+	private static final long PARALLEL_POLL_INTERVAL_MS = 200;
+
+	private static final long PARALLEL_SHUTDOWN_TIMEOUT_SECONDS = 30;
+
 	@NotNull
 	private final Project project;
 
@@ -79,6 +94,8 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 
 	private final AtomicBoolean _cancellingByUser;
 
+	private ScanMetrics metrics;
+
 
 	public FindBugsStarter(
 			@NotNull final Project project,
@@ -201,29 +218,30 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 
 	private void asyncStartImpl(@NotNull final ProgressIndicator indicator, final boolean justCompiled) {
 
+		metrics = ScanMetrics.start(project);
+		final long scanStart = metrics.timer(ScanMetrics.SCAN).start();
 		final FindBugsProjects projects = new FindBugsProjects(project);
 
+		final long configureStart = metrics.timer(ScanMetrics.CONFIGURE).start();
 		boolean canceled = !ApplicationManager.getApplication().runReadAction(
 				(Computable<Boolean>) () -> configure(indicator, projects, justCompiled));
+		metrics.timer(ScanMetrics.CONFIGURE).stop(configureStart);
 
 		final FindBugsResult result = new FindBugsResult();
+		result.setMetrics(metrics);
+		final SecurityReportService.ScanTransaction scan = SecurityReportService.getInstance(project).beginScan();
 		Throwable error = null;
 
 		if (!canceled) {
+			AnalyticsService.getInstance().recordAction(AnalyticsAction.START_SCAN);
 			try {
-				int numClassesOffset = 0;
-				for (final Map.Entry<Module, FindBugsProject> entry : projects.getProjects().entrySet()) {
-					final FindBugsProject findBugsProject = entry.getValue();
-					final Module module = entry.getKey();
-					indicator.setText("Start security analysis of " + findBugsProject.getProjectName());
-					final Pair<SortedBugCollection, Reporter> data = executeImpl(indicator, module, findBugsProject, numClassesOffset);
-					final int numClasses = data.getSecond().getProjectStats().getNumClasses();
-					numClassesOffset += numClasses;
-					result.put(findBugsProject, data.getFirst());
-					if (data.getSecond().isCanceled()) {
-						canceled = true;
-						break;
-					}
+				if (isParallelAnalysis(projects)) {
+					canceled = executeParallel(indicator, projects, result, scan);
+				} else {
+					canceled = executeSequential(indicator, projects, result, scan);
+				}
+				if (!canceled) {
+					scan.commit();
 				}
 			} catch (final InterruptedException e) {
 				Thread.currentThread().interrupt();
@@ -231,6 +249,7 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 				error = e;
 			}
 		}
+		metrics.timer(ScanMetrics.SCAN).stop(scanStart);
 
 		if (canceled) {
 			MessageBusManager.publishAnalysisAbortedToEDT(project);
@@ -239,14 +258,170 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 		}
 	}
 
-	private Pair<SortedBugCollection, Reporter> executeImpl(
+	/**
+	 * @return true if the analysis was canceled
+	 */
+	private boolean executeSequential(
 			@NotNull final ProgressIndicator indicator,
-			@NotNull final Module module,
-			@NotNull final FindBugsProject findBugsProject,
-			final int analyzedClassCountOffset
+			@NotNull final FindBugsProjects projects,
+			@NotNull final FindBugsResult result,
+			@NotNull final SecurityReportService.ScanTransaction scan
+	) throws IOException, InterruptedException {
+
+		final AtomicInteger numClassesOffset = new AtomicInteger();
+		for (final Map.Entry<Module, FindBugsProject> entry : projects.getProjects().entrySet()) {
+			final FindBugsProject findBugsProject = entry.getValue();
+			final Module module = entry.getKey();
+			indicator.setText("Start security analysis of " + findBugsProject.getProjectName());
+			final AnalysisConfiguration configuration = createAnalysisConfiguration(module);
+			final Pair<SortedBugCollection, Reporter> data = executeImpl(indicator, module, findBugsProject, configuration, numClassesOffset);
+			addResult(result, scan, findBugsProject, data, numClassesOffset);
+			if (data.getSecond().isCanceled()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Runs one engine per module on a bounded worker pool. Engines and results are created by the worker
+	 * threads, but the results are merged on the calling thread only (in order of completion),
+	 * so {@link FindBugsResult} and {@link SecurityReportService} are never accessed concurrently.
+	 *
+	 * @return true if the analysis was canceled
+	 */
+	private boolean executeParallel(
+			@NotNull final ProgressIndicator indicator,
+			@NotNull final FindBugsProjects projects,
+			@NotNull final FindBugsResult result,
+			@NotNull final SecurityReportService.ScanTransaction scan
 	) throws IOException, InterruptedException {
 
-		AnalyticsService.getInstance().recordAction(AnalyticsAction.START_SCAN);
+		final Map<Module, FindBugsProject> modules = projects.getProjects();
+		// all modules use the project settings (see isParallelAnalysis), so configure and load plugins only once
+		final AnalysisConfiguration configuration = createAnalysisConfiguration(modules.keySet().iterator().next());
+		final AtomicInteger numClassesOffset = new AtomicInteger();
+		final int threadCount = getAnalysisThreadCount(modules.size());
+		final ExecutorService executor = Executors.newFixedThreadPool(threadCount, new AnalysisThreadFactory());
+		try {
+			final CompletionService<Pair<FindBugsProject, Pair<SortedBugCollection, Reporter>>> completionService = new ExecutorCompletionService<>(executor);
+			for (final Map.Entry<Module, FindBugsProject> entry : modules.entrySet()) {
+				final FindBugsProject findBugsProject = entry.getValue();
+				final Module module = entry.getKey();
+				final ProgressIndicator workerIndicator = new WorkerProgressIndicator(indicator, findBugsProject.getProjectName());
+				completionService.submit(() -> Pair.create(
+						findBugsProject,
+						executeImpl(workerIndicator, module, findBugsProject, configuration, numClassesOffset)
+				));
+			}
+
+			int pending = modules.size();
+			setParallelProgressText(indicator, modules.size(), pending, threadCount);
+			while (pending > 0) {
+				if (indicator.isCanceled() || _cancellingByUser.get()) {
+					return true;
+				}
+				final Future<Pair<FindBugsProject, Pair<SortedBugCollection, Reporter>>> future = completionService.poll(PARALLEL_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+				if (future == null) {
+					continue;
+				}
+				pending--;
+				setParallelProgressText(indicator, modules.size(), pending, threadCount);
+				final Pair<FindBugsProject, Pair<SortedBugCollection, Reporter>> data;
+				try {
+					data = future.get();
+				} catch (final ExecutionException e) {
+					throw rethrow(e.getCause() != null ? e.getCause() : e);
+				}
+				addResult(result, scan, data.getFirst(), data.getSecond(), numClassesOffset);
+				if (data.getSecond().getSecond().isCanceled()) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			executor.shutdownNow(); // interrupt causes break in FindBugs main loop of still running engines
+			awaitTermination(executor);
+		}
+	}
+
+	/**
+	 * Waits for canceled or failed engines, so none of them still uses the global plugin state
+	 * or the indicator once the analysis is published as finished or aborted.
+	 */
+	private static void awaitTermination(@NotNull final ExecutorService executor) {
+		try {
+			if (!executor.awaitTermination(PARALLEL_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				LOGGER.warn("Analysis threads did not terminate within " + PARALLEL_SHUTDOWN_TIMEOUT_SECONDS + " seconds");
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@NotNull
+	private static RuntimeException rethrow(@NotNull final Throwable e) throws IOException, InterruptedException {
+		if (e instanceof IOException) {
+			throw (IOException) e;
+		}
+		if (e instanceof InterruptedException) {
+			throw (InterruptedException) e;
+		}
+		if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		}
+		if (e instanceof Error) {
+			throw (Error) e;
+		}
+		throw new IllegalStateException(e);
+	}
+
+	private boolean isParallelAnalysis(@NotNull final FindBugsProjects projects) {
+		if (!workspaceSettings.analyzeModulesInParallel || projects.getProjects().size() < 2) {
+			return false;
+		}
+		/*
+		 * Plugins are loaded into the global DetectorFactoryCollection.
+		 * Different plugin settings per module would require to reload them while other engines are running.
+		 */
+		for (final Module module : projects.getProjects().keySet()) {
+			if (ModuleSettings.getInstance(module).overrideProjectSettings) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void setParallelProgressText(@NotNull final ProgressIndicator indicator, final int moduleCount, final int pending, final int threadCount) {
+		indicator.setText("Security analysis of " + moduleCount + " modules (" + (moduleCount - pending) + " finished, " + threadCount + " in parallel)");
+	}
+
+	private int getAnalysisThreadCount(final int moduleCount) {
+		int ret = workspaceSettings.analysisThreadCount;
+		if (ret <= 0) {
+			ret = Runtime.getRuntime().availableProcessors();
+		}
+		return Math.max(1, Math.min(ret, moduleCount));
+	}
+
+	private void addResult(
+			@NotNull final FindBugsResult result,
+			@NotNull final SecurityReportService.ScanTransaction scan,
+			@NotNull final FindBugsProject findBugsProject,
+			@NotNull final Pair<SortedBugCollection, Reporter> data,
+			@NotNull final AtomicInteger numClassesOffset
+	) {
+		final SortedBugCollection bugCollection = data.getFirst();
+		numClassesOffset.addAndGet(data.getSecond().getProjectStats().getNumClasses());
+		result.put(findBugsProject, bugCollection);
+
+		AnalyticsService.getInstance().recordMetric(AnalyticsAction.SCAN_RESULTS_METRIC, bugCollection.getCollection().size());
+
+		scan.add(bugCollection, data.getSecond().getAnalyzedClasses());
+	}
+
+	@NotNull
+	private AnalysisConfiguration createAnalysisConfiguration(@NotNull final Module module) {
 
 		final ModuleSettings moduleSettings = ModuleSettings.getInstance(module);
 		AbstractSettings settings = new ProjectSettings();
@@ -273,7 +448,10 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 			}
 		}
 
-		if (!PluginLoader.load(project, moduleSettings.overrideProjectSettings ? module : null, settings, true)) {
+		final long pluginLoadStart = metrics.timer(ScanMetrics.PLUGIN_LOAD).start();
+		final boolean pluginsLoaded = PluginLoader.load(project, moduleSettings.overrideProjectSettings ? module : null, settings, true);
+		metrics.timer(ScanMetrics.PLUGIN_LOAD).stop(pluginLoadStart);
+		if (!pluginsLoaded) {
 			throw new ProcessCanceledException();
 		}
 
@@ -303,8 +481,43 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 			for (final PluginSettings pluginSettings : settings.plugins) {
 				configureDetectors(pluginSettings.detectors, detectorFactoryCollection, userPrefs);
 			}
+			if (workspaceSettings.disableNonSecurityDetectors) {
+				disableNonSecurityDetectors(detectorFactoryCollection, userPrefs);
+			}
 		}
 
+		return new AnalysisConfiguration(detectorFactoryCollection, userPrefs, projectFilterSettings);
+	}
+
+	/**
+	 * Analyzes one module and records its wall time, CPU time and allocated bytes
+	 * (measured on the current thread, which runs the whole engine).
+	 */
+	private Pair<SortedBugCollection, Reporter> executeImpl(
+			@NotNull final ProgressIndicator indicator,
+			@NotNull final Module module,
+			@NotNull final FindBugsProject findBugsProject,
+			@NotNull final AnalysisConfiguration configuration,
+			@NotNull final AtomicInteger analyzedClassCountOffset
+	) throws IOException, InterruptedException {
+
+		final ScanMetrics.ThreadUsage usage = ScanMetrics.ThreadUsage.now();
+		final Pair<SortedBugCollection, Reporter> ret = analyzeModule(indicator, module, findBugsProject, configuration, analyzedClassCountOffset);
+		metrics.addModuleRun(usage.toModuleRun(module.getName(), ret.getSecond().getCheckedClassCount()));
+		return ret;
+	}
+
+	private Pair<SortedBugCollection, Reporter> analyzeModule(
+			@NotNull final ProgressIndicator indicator,
+			@NotNull final Module module,
+			@NotNull final FindBugsProject findBugsProject,
+			@NotNull final AnalysisConfiguration configuration,
+			@NotNull final AtomicInteger analyzedClassCountOffset
+	) throws IOException, InterruptedException {
+
+		final UserPreferences userPrefs = configuration.userPrefs;
+		final ProjectFilterSettings projectFilterSettings = configuration.projectFilterSettings;
+
 		final SortedBugCollection bugCollection = new SortedBugCollection(findBugsProject);
 
 		final Reporter reporter = new Reporter(
@@ -320,6 +533,30 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 		reporter.setPriorityThreshold(userPrefs.getUserDetectorThreshold());
 		reporter.setRankThreshold(projectFilterSettings.getMinRank());
 
+		ResultCacheService resultCache = null;
+		ResultCacheService.Lookup cacheLookup = null;
+		if (workspaceSettings.reuseResultsOfUnchangedClasses) {
+			resultCache = ResultCacheService.getInstance(project);
+			final String fingerprint = ResultCacheService.createFingerprint(configuration.detectorFactoryCollection, userPrefs, projectFilterSettings, findBugsProject);
+			cacheLookup = resultCache.lookup(fingerprint, findBugsProject.getFileList());
+			final Set<String> unchanged = cacheLookup.getHits();
+			for (int i = findBugsProject.getFileCount() - 1; i >= 0; i--) {
+				final String file = findBugsProject.getFile(i);
+				if (unchanged.contains(file)) {
+					findBugsProject.removeFile(i);
+					// still resolved (f. e. by taint analysis of the changed classes), but not analyzed and reported
+					findBugsProject.addAuxClasspathEntry(file);
+				}
+			}
+			reporter.reportCachedBugs(cacheLookup.getBugs());
+			if (findBugsProject.getFileCount() == 0) {
+				indicator.setText("All classes of " + findBugsProject.getProjectName() + " are unchanged");
+				reporter.finish();
+				bugCollection.setTimestamp(System.currentTimeMillis());
+				return Pair.create(bugCollection, reporter);
+			}
+		}
+
 		final FindBugs2 engine = new FindBugs2();
 		{
 			engine.setNoClassOk(true);
@@ -328,7 +565,7 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 			engine.setProject(findBugsProject);
 			engine.setProgressCallback(reporter);
 			configureFilter(engine, userPrefs);
-			engine.setDetectorFactoryCollection(detectorFactoryCollection);
+			engine.setDetectorFactoryCollection(configuration.detectorFactoryCollection);
 			engine.setUserPreferences(userPrefs);
 		}
 
@@ -340,9 +577,9 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 
 		bugCollection.setTimestamp(System.currentTimeMillis());
 
-		AnalyticsService.getInstance().recordMetric(AnalyticsAction.SCAN_RESULTS_METRIC, bugCollection.getCollection().size());
-
-		SecurityReportService.getInstance(project).addBugCollection(bugCollection);
+		if (resultCache != null && !reporter.isCanceled()) {
+			resultCache.store(cacheLookup, bugCollection.getCollection());
+		}
 
 		return Pair.create(bugCollection, reporter);
 	}
@@ -431,6 +668,39 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 		}
 	}
 
+	/**
+	 * Disables all enabled detectors whose reported bug patterns are all dropped by {@link Reporter}.
+	 * Detectors which do not report anything (f. e. first pass detectors which are only
+	 * prerequisites of other detectors) and detectors without declared patterns are left untouched.
+	 */
+	private static void disableNonSecurityDetectors(
+			@NotNull final DetectorFactoryCollection detectorFactoryCollection,
+			@NotNull final UserPreferences userPreferences
+	) {
+		int disabled = 0;
+		for (final DetectorFactory detectorFactory : detectorFactoryCollection.getFactories()) {
+			if (!userPreferences.isDetectorEnabled(detectorFactory) || !detectorFactory.isReportingDetector()) {
+				continue;
+			}
+			final Set<BugPattern> reportedBugPatterns = detectorFactory.getReportedBugPatterns();
+			if (reportedBugPatterns.isEmpty()) {
+				continue;
+			}
+			boolean accepted = false;
+			for (final BugPattern bugPattern : reportedBugPatterns) {
+				if (Reporter.isAccepted(bugPattern)) {
+					accepted = true;
+					break;
+				}
+			}
+			if (!accepted) {
+				userPreferences.enableDetector(detectorFactory, false);
+				disabled++;
+			}
+		}
+		LOGGER.debug("Disabled " + disabled + " detectors which can not report security issues");
+	}
+
 	private static void configureFilter(
 			@NotNull final FindBugs2 engine,
 			@NotNull final UserPreferences userPrefs
@@ -495,4 +765,66 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 		}
 		return false;
 	}
+
+	/**
+	 * Effective engine configuration of a module, see {@link #createAnalysisConfiguration(Module)}.
+	 */
+	private static final class AnalysisConfiguration {
+		@NotNull
+		private final DetectorFactoryCollection detectorFactoryCollection;
+
+		@NotNull
+		private final UserPreferences userPrefs;
+
+		@NotNull
+		private final ProjectFilterSettings projectFilterSettings;
+
+		AnalysisConfiguration(
+				@NotNull final DetectorFactoryCollection detectorFactoryCollection,
+				@NotNull final UserPreferences userPrefs,
+				@NotNull final ProjectFilterSettings projectFilterSettings
+		) {
+			this.detectorFactoryCollection = detectorFactoryCollection;
+			this.userPrefs = userPrefs;
+			this.projectFilterSettings = projectFilterSettings;
+		}
+	}
+
+	/**
+	 * The main text of the shared indicator shows the progress of all modules (see {@link #setParallelProgressText}),
+	 * so the text of a worker is shown as detail. Stage details of the workers would alternate, so they are dropped.
+	 */
+	private static final class WorkerProgressIndicator extends DelegatingProgressIndicator {
+		@NotNull
+		private final ProgressIndicator _indicator;
+		@NotNull
+		private final String _moduleName;
+
+		WorkerProgressIndicator(@NotNull final ProgressIndicator indicator, @NotNull final String moduleName) {
+			super(indicator);
+			_indicator = indicator;
+			_moduleName = moduleName;
+		}
+
+		@Override
+		public void setText(final String text) {
+			_indicator.setText2(_moduleName + ": " + text);
+		}
+
+		@Override
+		public void setText2(final String text) {
+		}
+	}
+
+	private static final class AnalysisThreadFactory implements ThreadFactory {
+		private final AtomicInteger threadNumber = new AtomicInteger();
+
+		@Override
+		public Thread newThread(@NotNull final Runnable r) {
+			final Thread ret = new Thread(r, "Reshift Module Analysis " + threadNumber.incrementAndGet());
+			ret.setDaemon(true);
+			ret.setContextClassLoader(WithPluginClassloader.PLUGIN_CLASS_LOADER);
+			return ret;
+		}
+	}
 }
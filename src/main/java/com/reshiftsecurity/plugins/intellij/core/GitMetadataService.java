@@ -0,0 +1,241 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reshiftsecurity.plugins.intellij.core;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vcs.AbstractVcs;
+import com.intellij.openapi.vcs.ProjectLevelVcsManager;
+import com.intellij.openapi.vcs.VcsRoot;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.util.messages.MessageBusConnection;
+import com.reshiftsecurity.plugins.intellij.common.util.New;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Resolves the Git repositories of a project once and caches them.
+ * <p>
+ * The repository containing the project base path, if any, comes first, followed by the roots of the Git VCS
+ * mappings of the project, so repositories which are not at the project base path and projects with several
+ * repositories are supported. The cache is invalidated when {@code HEAD} or {@code config} of a known
+ * repository changes (VFS events) or when the VCS mappings change.
+ */
+public final class GitMetadataService implements Disposable {
+
+	private static final Logger LOGGER = Logger.getInstance(GitMetadataService.class);
+
+	private static final String GIT_VCS_NAME = "Git";
+	private static final String DEFAULT_REMOTE = "origin";
+
+	@NotNull
+	private final Project project;
+
+	/**
+	 * Null if not resolved yet or invalidated.
+	 */
+	@Nullable
+	private volatile List<GitRepositoryInfo> repositories;
+
+	/**
+	 * Incremented by {@link #invalidate()}, so a resolve which overlaps an invalidation does not publish a stale result.
+	 * Guarded by this.
+	 */
+	private int generation;
+
+	public GitMetadataService(@NotNull final Project project) {
+		this.project = project;
+		final MessageBusConnection connection = project.getMessageBus().connect(this);
+		connection.subscribe(ProjectLevelVcsManager.VCS_CONFIGURATION_CHANGED, this::invalidate);
+		connection.subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+			@Override
+			public void after(@NotNull final List<? extends VFileEvent> events) {
+				final List<GitRepositoryInfo> current = repositories;
+				if (current == null) {
+					return;
+				}
+				for (final VFileEvent event : events) {
+					for (final GitRepositoryInfo repository : current) {
+						if (repository.isMetadataFile(event.getPath())) {
+							invalidate();
+							return;
+						}
+					}
+				}
+			}
+		});
+	}
+
+	@NotNull
+	public static GitMetadataService getInstance(@NotNull final Project project) {
+		return project.getService(GitMetadataService.class);
+	}
+
+	/**
+	 * @return the Git repositories of the project; the repository of the project base path first, if any
+	 */
+	@NotNull
+	public List<GitRepositoryInfo> getRepositories() {
+		List<GitRepositoryInfo> ret = repositories;
+		if (ret == null) {
+			final int resolveGeneration;
+			synchronized (this) {
+				resolveGeneration = generation;
+			}
+			ret = resolve();
+			synchronized (this) {
+				if (generation == resolveGeneration) {
+					repositories = ret;
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the repository of the project base path, or the first repository of the project
+	 */
+	@Nullable
+	public GitRepositoryInfo getPrimaryRepository() {
+		final List<GitRepositoryInfo> ret = getRepositories();
+		return ret.isEmpty() ? null : ret.get(0);
+	}
+
+	private synchronized void invalidate() {
+		generation++;
+		repositories = null;
+	}
+
+	@NotNull
+	private List<GitRepositoryInfo> resolve() {
+		final Set<File> gitDirs = new LinkedHashSet<>(); // base path first
+		final String basePath = project.getBasePath();
+		if (basePath != null) {
+			final File gitDir = new FileRepositoryBuilder().findGitDir(new File(basePath)).getGitDir();
+			if (gitDir != null) {
+				gitDirs.add(gitDir);
+			}
+		}
+		if (!project.isDisposed()) {
+			for (final VcsRoot root : ProjectLevelVcsManager.getInstance(project).getAllVcsRoots()) {
+				final AbstractVcs vcs = root.getVcs();
+				if (vcs != null && GIT_VCS_NAME.equals(vcs.getName())) {
+					final File gitDir = new FileRepositoryBuilder().findGitDir(new File(root.getPath().getPath())).getGitDir();
+					if (gitDir != null) {
+						gitDirs.add(gitDir);
+					}
+				}
+			}
+		}
+
+		final List<GitRepositoryInfo> ret = New.arrayList();
+		for (final File gitDir : gitDirs) {
+			final GitRepositoryInfo repository = read(gitDir);
+			if (repository != null) {
+				ret.add(repository);
+			}
+		}
+		return Collections.unmodifiableList(ret);
+	}
+
+	@Nullable
+	private static GitRepositoryInfo read(@NotNull final File gitDir) {
+		try (final Repository repository = new FileRepositoryBuilder().setGitDir(gitDir).setMustExist(true).build()) {
+			final Set<String> remoteNames = repository.getRemoteNames();
+			final String remoteName = remoteNames.isEmpty() || remoteNames.contains(DEFAULT_REMOTE) ? DEFAULT_REMOTE : remoteNames.iterator().next();
+			final String remoteUrl = repository.getConfig().getString(ConfigConstants.CONFIG_KEY_REMOTE, remoteName, ConfigConstants.CONFIG_KEY_URL);
+			final GitRepositoryInfo ret = new GitRepositoryInfo(gitDir, remoteUrl, repository.getBranch());
+			// make sure VFS knows the files, otherwise there are no events when they change
+			for (final String fileName : new String[]{Constants.HEAD, Constants.CONFIG}) {
+				final VirtualFile file = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(new File(gitDir, fileName));
+				if (file == null) {
+					LOGGER.debug("Git metadata file not found: " + new File(gitDir, fileName));
+				}
+			}
+			return ret;
+		} catch (final IOException e) {
+			LOGGER.debug("No Git repository: " + gitDir, e);
+			return null;
+		}
+	}
+
+	@Override
+	public void dispose() {
+		invalidate();
+	}
+
+	public static final class GitRepositoryInfo {
+		@NotNull
+		private final File gitDir;
+
+		@Nullable
+		private final String remoteUrl;
+
+		@Nullable
+		private final String branch;
+
+		private GitRepositoryInfo(@NotNull final File gitDir, @Nullable final String remoteUrl, @Nullable final String branch) {
+			this.gitDir = gitDir;
+			this.remoteUrl = remoteUrl;
+			this.branch = branch;
+		}
+
+		@NotNull
+		public File getGitDir() {
+			return gitDir;
+		}
+
+		@Nullable
+		public String getRemoteUrl() {
+			return remoteUrl;
+		}
+
+		/**
+		 * @return the current branch, or the commit id if {@code HEAD} is detached
+		 */
+		@Nullable
+		public String getBranch() {
+			return branch;
+		}
+
+		private boolean isMetadataFile(@NotNull final String path) {
+			final File file = new File(path);
+			return FileUtil.filesEqual(file.getParentFile(), gitDir)
+					&& (Constants.HEAD.equals(file.getName()) || Constants.CONFIG.equals(file.getName()));
+		}
+	}
+}
@@ -0,0 +1,537 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reshiftsecurity.plugins.intellij.core;
+
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.FileEditorManagerListener;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.reshiftsecurity.plugins.intellij.common.EventDispatchThreadHelper;
+import com.reshiftsecurity.plugins.intellij.common.ExtendedProblemDescriptor;
+import com.reshiftsecurity.plugins.intellij.common.util.New;
+import com.reshiftsecurity.plugins.intellij.gui.toolwindow.view.ToolWindowPanel;
+import com.reshiftsecurity.plugins.intellij.messages.AnalysisStateListener;
+import com.reshiftsecurity.plugins.intellij.messages.ClearListener;
+import com.reshiftsecurity.plugins.intellij.messages.MessageBusManager;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Persists the last finished analysis as {@link ResultSnapshot} and restores it when the project is opened.
+ * <p>
+ * Next to the snapshot an index maps the {@link VirtualFile#getUrl() url} of each source file to its module,
+ * source path and time stamp. On restore the problems of a file are decoded and added to the
+ * {@link ProblemCacheService} when the file is opened, without waiting for the index.
+ * Bugs of files which changed since the snapshot are marked {@link Bug#isStale() stale}.
+ * The tool window is filled with the same bugs in the background.
+ */
+public final class LastResultService implements AnalysisStateListener, Disposable {
+
+	private static final Logger LOGGER = Logger.getInstance(LastResultService.class);
+
+	private static final int FILES_FORMAT_VERSION = 1;
+	private static final String SNAPSHOT_FILE_NAME = "result.snapshot";
+	private static final String FILES_FILE_NAME = "files";
+	private static final String TMP_SUFFIX = ".tmp";
+	/**
+	 * Time stamp of files changed after the analysis started ; never matches, so their bugs are restored as stale.
+	 */
+	private static final long CHANGED_TIME_STAMP = -1;
+
+	@NotNull
+	private final Project project;
+
+	@NotNull
+	private final File dir;
+
+	/**
+	 * Saves run one after another, so they never write the same temporary files concurrently.
+	 */
+	@NotNull
+	private final ExecutorService saveExecutor;
+
+	/**
+	 * Incremented per save request and on clear, so that a save which is outdated before it runs is dropped.
+	 */
+	private int saveGeneration; // @GuardedBy this
+
+	/**
+	 * {@link System#currentTimeMillis()} when the current analysis started, 0 if unknown.
+	 */
+	private volatile long analysisStartTime;
+
+	/**
+	 * Incremented whenever the restored result becomes outdated (new analysis or clear),
+	 * so that restore steps still running in the background are dropped.
+	 */
+	private int generation; // @GuardedBy this
+
+	@Nullable
+	private ResultSnapshot snapshot; // @GuardedBy this
+
+	/**
+	 * Key = file url.
+	 */
+	@NotNull
+	private final Map<String, FileEntry> filesByUrl; // @GuardedBy this
+
+	/**
+	 * Key = module name ; collection the restored bugs of the module are added to.
+	 */
+	@NotNull
+	private final Map<String, RestoredModule> modules; // @GuardedBy this
+
+	/**
+	 * Key = module name and source path ; decoded bugs are shared by editor and tool window.
+	 */
+	@NotNull
+	private final Map<String, List<Bug>> bugsByFile; // @GuardedBy this
+
+	/**
+	 * Complete restored result, until it is handed over to the tool window.
+	 */
+	@Nullable
+	private FindBugsResult restoredResult; // @GuardedBy this
+
+	@Nullable
+	private List<Bug> restoredBugs; // @GuardedBy this
+
+	public LastResultService(@NotNull final Project project) {
+		this.project = project;
+		dir = new File(PathManager.getSystemPath(), "reshiftsecurity" + File.separator + "last-result" + File.separator + project.getLocationHash());
+		filesByUrl = New.map();
+		modules = New.map();
+		bugsByFile = New.map();
+		saveExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Reshift Last Result", 1);
+	}
+
+	@NotNull
+	public static LastResultService getInstance(@NotNull final Project project) {
+		return project.getService(LastResultService.class);
+	}
+
+	/**
+	 * Opens the snapshot of the last analysis, if any, and restores it in the background.
+	 */
+	public void restore() {
+		EventDispatchThreadHelper.invokeLater(() -> {
+			if (project.isDisposed()) {
+				return;
+			}
+			MessageBusManager.subscribeAnalysisState(project, this, this);
+			MessageBusManager.subscribe(project, this, ClearListener.TOPIC, () -> {
+				discard();
+				final int clearGeneration;
+				synchronized (this) {
+					clearGeneration = ++saveGeneration;
+				}
+				saveExecutor.execute(() -> {
+					if (isCurrentSave(clearGeneration)) {
+						deleteFiles();
+					}
+				});
+			});
+			project.getMessageBus().connect(this).subscribe(FileEditorManagerListener.FILE_EDITOR_MANAGER, new FileEditorManagerListener() {
+				@Override
+				public void fileOpened(@NotNull final FileEditorManager source, @NotNull final VirtualFile file) {
+					restoreFileAsync(file);
+				}
+			});
+		});
+		AppExecutorUtil.getAppExecutorService().execute(this::open);
+	}
+
+	private void open() {
+		final int openGeneration;
+		synchronized (this) {
+			openGeneration = generation;
+		}
+		final File snapshotFile = new File(dir, SNAPSHOT_FILE_NAME);
+		final File filesFile = new File(dir, FILES_FILE_NAME);
+		if (!snapshotFile.isFile() || !filesFile.isFile()) {
+			return;
+		}
+		final ResultSnapshot openedSnapshot;
+		final Map<String, FileEntry> files;
+		try {
+			openedSnapshot = ResultSnapshot.open(snapshotFile);
+			files = readFiles(filesFile);
+		} catch (final IOException e) {
+			LOGGER.warn("Could not read last result, it is deleted", e);
+			deleteFiles();
+			return;
+		}
+		synchronized (this) {
+			if (openGeneration != generation) {
+				return;
+			}
+			snapshot = openedSnapshot;
+			filesByUrl.putAll(files);
+		}
+		EventDispatchThreadHelper.invokeLater(() -> {
+			if (!project.isDisposed()) {
+				for (final VirtualFile file : FileEditorManager.getInstance(project).getOpenFiles()) {
+					restoreFileAsync(file);
+				}
+			}
+		});
+		restoreResult(openGeneration);
+	}
+
+	/**
+	 * Decodes all bugs and hands them over to the tool window.
+	 */
+	private void restoreResult(final int restoreGeneration) {
+		final List<Bug> bugs = New.arrayList();
+		final FindBugsResult result = new FindBugsResult();
+		final ResultSnapshot restoreSnapshot;
+		synchronized (this) {
+			restoreSnapshot = snapshot;
+		}
+		if (restoreSnapshot == null) {
+			return;
+		}
+		for (final String moduleName : restoreSnapshot.getModuleNames()) {
+			for (final String sourcePath : restoreSnapshot.getSourcePaths(moduleName)) {
+				// lock per file so that files opened in the editor meanwhile are not delayed
+				synchronized (this) {
+					if (restoreGeneration != generation) {
+						return;
+					}
+					bugs.addAll(getBugs(moduleName, sourcePath));
+				}
+			}
+			synchronized (this) {
+				if (restoreGeneration != generation) {
+					return;
+				}
+				final RestoredModule module = getModule(moduleName);
+				result.put(module.project, module.bugCollection);
+			}
+		}
+		synchronized (this) {
+			if (restoreGeneration != generation) {
+				return;
+			}
+			restoredResult = result;
+			restoredBugs = bugs;
+		}
+		EventDispatchThreadHelper.invokeLater(() -> {
+			if (!project.isDisposed()) {
+				final ToolWindowPanel panel = ToolWindowPanel.getInstance(project);
+				if (panel != null) {
+					restoreInto(panel);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Shows the restored result in the given tool window, if the restore is complete and no other result is shown.
+	 * Invoked when the tool window is created or the restore is complete, whatever comes last.
+	 */
+	public void restoreInto(@NotNull final ToolWindowPanel panel) {
+		EventDispatchThreadHelper.checkEDT();
+		final FindBugsResult result;
+		final List<Bug> bugs;
+		synchronized (this) {
+			result = restoredResult;
+			bugs = restoredBugs;
+			restoredResult = null;
+			restoredBugs = null;
+		}
+		if (result != null && bugs != null && panel.getResult() == null && FindBugsState.get(project).isIdle()) {
+			panel.restoreResult(result, bugs);
+		}
+	}
+
+	private void restoreFileAsync(@NotNull final VirtualFile file) {
+		final int restoreGeneration;
+		synchronized (this) {
+			if (snapshot == null || !filesByUrl.containsKey(file.getUrl())) {
+				return;
+			}
+			restoreGeneration = generation;
+		}
+		AppExecutorUtil.getAppExecutorService().execute(() -> restoreFile(file, restoreGeneration));
+	}
+
+	private void restoreFile(@NotNull final VirtualFile file, final int restoreGeneration) {
+		final List<Bug> bugs;
+		synchronized (this) {
+			final FileEntry entry = filesByUrl.get(file.getUrl());
+			if (restoreGeneration != generation || entry == null) {
+				return;
+			}
+			bugs = getBugs(entry.moduleName, entry.sourcePath);
+			if (file.getTimeStamp() != entry.timeStamp) {
+				for (final Bug bug : bugs) {
+					bug.markStale();
+				}
+			}
+		}
+		final PsiFile psiFile = ReadAction.compute(() -> file.isValid() && !project.isDisposed() ? PsiManager.getInstance(project).findFile(file) : null);
+		if (psiFile == null || bugs.isEmpty()) {
+			return;
+		}
+		final List<ExtendedProblemDescriptor> descriptors = new ArrayList<>(bugs.size());
+		for (final Bug bug : bugs) {
+			descriptors.add(new ExtendedProblemDescriptor(psiFile, bug));
+		}
+		EventDispatchThreadHelper.invokeLater(() -> {
+			synchronized (this) {
+				if (restoreGeneration != generation) {
+					return;
+				}
+			}
+			if (!project.isDisposed() && FindBugsState.get(project).isIdle()) {
+				project.getService(ProblemCacheService.class).addProblems(psiFile, descriptors);
+				DaemonCodeAnalyzer.getInstance(project).restart(psiFile);
+			}
+		});
+	}
+
+	@NotNull
+	private List<Bug> getBugs(@NotNull final String moduleName, @NotNull final String sourcePath) {
+		final String key = moduleName + '\n' + sourcePath;
+		List<Bug> ret = bugsByFile.get(key);
+		if (ret == null) {
+			final RestoredModule module = getModule(moduleName);
+			ret = New.arrayList();
+			//noinspection ConstantConditions
+			for (final BugInstance bugInstance : snapshot.readFile(moduleName, sourcePath)) {
+				module.bugCollection.add(bugInstance, false);
+				ret.add(new Bug(module.module, module.bugCollection, bugInstance));
+			}
+			ret = Collections.unmodifiableList(ret);
+			bugsByFile.put(key, ret);
+		}
+		return ret;
+	}
+
+	@NotNull
+	private RestoredModule getModule(@NotNull final String moduleName) {
+		RestoredModule ret = modules.get(moduleName);
+		if (ret == null) {
+			//noinspection ConstantConditions
+			final edu.umd.cs.findbugs.Project findBugsProject = snapshot.createProject(project, moduleName);
+			final SortedBugCollection bugCollection = new SortedBugCollection(findBugsProject);
+			bugCollection.getProjectStats().setTotalClasses(snapshot.getClassCount(moduleName));
+			final Module module = findBugsProject instanceof FindBugsProject ? ((FindBugsProject) findBugsProject).getModule() : null;
+			ret = new RestoredModule(findBugsProject, module, bugCollection);
+			modules.put(moduleName, ret);
+		}
+		return ret;
+	}
+
+	private synchronized void discard() {
+		generation++;
+		snapshot = null;
+		filesByUrl.clear();
+		modules.clear();
+		bugsByFile.clear();
+		restoredResult = null;
+		restoredBugs = null;
+	}
+
+	@Override
+	public void analysisStarted() {
+		analysisStartTime = System.currentTimeMillis();
+		discard();
+	}
+
+	@Override
+	public void analysisAborting() {
+	}
+
+	@Override
+	public void analysisAborted() {
+	}
+
+	@Override
+	public void analysisFinished(@NotNull final FindBugsResult result, @Nullable final Throwable error) {
+		if (error != null) {
+			return; // maybe incomplete, keep the last complete result
+		}
+		final long startTime = analysisStartTime;
+		final int resultGeneration;
+		synchronized (this) {
+			resultGeneration = ++saveGeneration;
+		}
+		saveExecutor.execute(() -> {
+			if (isCurrentSave(resultGeneration)) {
+				save(result, startTime, resultGeneration);
+			}
+		});
+	}
+
+	private synchronized boolean isCurrentSave(final int requestGeneration) {
+		return requestGeneration == saveGeneration;
+	}
+
+	/**
+	 * Writes the snapshot and the file index to temporary files first, so an interrupted save keeps the previous result.
+	 * Files modified after the analysis started get {@link #CHANGED_TIME_STAMP}, so their bugs are restored as stale.
+	 */
+	private void save(@NotNull final FindBugsResult result, final long startTime, final int resultGeneration) {
+		final Map<String, FileEntry> files = New.map();
+		final PsiFileCacheService psiFiles = PsiFileCacheService.getInstance(project);
+		for (final Map.Entry<edu.umd.cs.findbugs.Project, SortedBugCollection> entry : result.getResults().entrySet()) {
+			final Module module = entry.getKey() instanceof FindBugsProject ? ((FindBugsProject) entry.getKey()).getModule() : null;
+			final String moduleName = module != null ? module.getName() : entry.getKey().getProjectName();
+			final Map<String, BugInstance> bugBySourcePath = New.map();
+			for (final BugInstance bugInstance : entry.getValue().getCollection()) {
+				bugBySourcePath.putIfAbsent(bugInstance.getPrimarySourceLineAnnotation().getSourcePath(), bugInstance);
+			}
+			for (final Map.Entry<String, BugInstance> sourcePathBug : bugBySourcePath.entrySet()) {
+				if (project.isDisposed() || !isCurrentSave(resultGeneration)) {
+					return;
+				}
+				final Bug bug = new Bug(module, entry.getValue(), sourcePathBug.getValue());
+				// one short read action per file, the class search needs the index
+				final VirtualFile file = DumbService.getInstance(project).runReadActionInSmartMode(() -> {
+					final PsiFile psiFile = project.isDisposed() ? null : psiFiles.resolve(bug);
+					return psiFile != null ? psiFile.getVirtualFile() : null;
+				});
+				if (file != null) {
+					final long timeStamp = file.getTimeStamp();
+					final boolean changed = (startTime > 0 && timeStamp >= startTime) || FileDocumentManager.getInstance().isFileModified(file);
+					files.put(file.getUrl(), new FileEntry(moduleName, sourcePathBug.getKey(), changed ? CHANGED_TIME_STAMP : timeStamp));
+				}
+			}
+		}
+
+		if (!isCurrentSave(resultGeneration)) {
+			return;
+		}
+		try {
+			FileUtil.createDirectory(dir);
+			final File snapshotTmp = new File(dir, SNAPSHOT_FILE_NAME + TMP_SUFFIX);
+			final File filesTmp = new File(dir, FILES_FILE_NAME + TMP_SUFFIX);
+			ResultSnapshot.write(result, snapshotTmp);
+			writeFiles(files, filesTmp);
+			Files.move(snapshotTmp.toPath(), new File(dir, SNAPSHOT_FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.move(filesTmp.toPath(), new File(dir, FILES_FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (final IOException e) {
+			LOGGER.warn("Could not save last result", e);
+		}
+	}
+
+	private void deleteFiles() {
+		FileUtil.delete(dir);
+	}
+
+	@NotNull
+	private static Map<String, FileEntry> readFiles(@NotNull final File file) throws IOException {
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != FILES_FORMAT_VERSION) {
+				throw new IOException("Unsupported file index version");
+			}
+			final int count = in.readInt();
+			final Map<String, FileEntry> ret = New.map();
+			for (int i = 0; i < count; i++) {
+				ret.put(in.readUTF(), new FileEntry(in.readUTF(), in.readUTF(), in.readLong()));
+			}
+			return ret;
+		}
+	}
+
+	private static void writeFiles(@NotNull final Map<String, FileEntry> files, @NotNull final File file) throws IOException {
+		try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(FILES_FORMAT_VERSION);
+			out.writeInt(files.size());
+			for (final Map.Entry<String, FileEntry> entry : files.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeUTF(entry.getValue().moduleName);
+				out.writeUTF(entry.getValue().sourcePath);
+				out.writeLong(entry.getValue().timeStamp);
+			}
+		}
+	}
+
+	@Override
+	public void dispose() {
+		discard();
+	}
+
+	private static final class FileEntry {
+		@NotNull
+		private final String moduleName;
+
+		@NotNull
+		private final String sourcePath;
+
+		private final long timeStamp;
+
+		FileEntry(@NotNull final String moduleName, @NotNull final String sourcePath, final long timeStamp) {
+			this.moduleName = moduleName;
+			this.sourcePath = sourcePath;
+			this.timeStamp = timeStamp;
+		}
+	}
+
+	private static final class RestoredModule {
+		@NotNull
+		private final edu.umd.cs.findbugs.Project project;
+
+		@Nullable
+		private final Module module;
+
+		@NotNull
+		private final SortedBugCollection bugCollection;
+
+		RestoredModule(@NotNull final edu.umd.cs.findbugs.Project project, @Nullable final Module module, @NotNull final SortedBugCollection bugCollection) {
+			this.project = project;
+			this.module = module;
+			this.bugCollection = bugCollection;
+		}
+	}
+}
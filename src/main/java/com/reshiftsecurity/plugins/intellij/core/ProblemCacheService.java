@@ -19,24 +19,142 @@
  */
 package com.reshiftsecurity.plugins.intellij.core;
 
+import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import com.reshiftsecurity.plugins.intellij.common.ExtendedProblemDescriptor;
 import com.reshiftsecurity.plugins.intellij.common.util.New;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Holds the problems of the current results per file.
+ * The problems of a file are kept as an immutable {@link FileProblems} snapshot which is replaced atomically
+ * on every change, so readers like the editor annotators never have to copy or lock.
+ */
 public class ProblemCacheService {
 
-    private final ConcurrentMap<PsiFile, List<ExtendedProblemDescriptor>> problems;
+    private final ConcurrentMap<PsiFile, FileProblems> problems;
 
     public ProblemCacheService() {
         problems = New.concurrentMap();
     }
 
     @NotNull
-    public Map<PsiFile, List<ExtendedProblemDescriptor>> getProblems() {
-        return problems;
+    public FileProblems getProblems(@Nullable final PsiFile psiFile) {
+        if (psiFile == null) {
+            return FileProblems.EMPTY;
+        }
+        final FileProblems fileProblems = problems.get(psiFile);
+        return fileProblems == null ? FileProblems.EMPTY : fileProblems;
+    }
+
+    public void addProblems(@NotNull final PsiFile psiFile, @NotNull final Collection<ExtendedProblemDescriptor> descriptors) {
+        if (descriptors.isEmpty()) {
+            return;
+        }
+        problems.compute(psiFile, (file, current) -> (current == null ? FileProblems.EMPTY : current).with(descriptors));
+    }
+
+    public void removeProblem(@NotNull final PsiFile psiFile, @NotNull final ExtendedProblemDescriptor descriptor) {
+        problems.computeIfPresent(psiFile, (file, current) -> {
+            final FileProblems fileProblems = current.without(descriptor);
+            return fileProblems.isEmpty() ? null : fileProblems;
+        });
+    }
+
+    public void clear() {
+        problems.clear();
+    }
+
+    /**
+     * Immutable problems of one file, indexed by the PSI element each problem is anchored to.
+     * Problems are anchored to the first element of their line (or to their anonymous class),
+     * so a lookup by element is a lookup by line which also tells elements on the same line apart.
+     */
+    public static final class FileProblems {
+        static final FileProblems EMPTY = new FileProblems(Collections.emptyList());
+
+        @NotNull
+        private final List<ExtendedProblemDescriptor> descriptors;
+
+        /**
+         * Built on first lookup because resolving the anchors needs a read action.
+         */
+        @Nullable
+        private volatile Map<PsiElement, List<ExtendedProblemDescriptor>> byElement;
+
+        private FileProblems(@NotNull final List<ExtendedProblemDescriptor> descriptors) {
+            this.descriptors = descriptors;
+        }
+
+        @NotNull
+        public List<ExtendedProblemDescriptor> getDescriptors() {
+            return descriptors;
+        }
+
+        public boolean isEmpty() {
+            return descriptors.isEmpty();
+        }
+
+        /**
+         * Must be called in a read action.
+         *
+         * @return the problems anchored to exactly the given element, in the order they were added
+         */
+        @NotNull
+        public List<ExtendedProblemDescriptor> getProblems(@Nullable final PsiElement psiElement) {
+            if (psiElement == null || descriptors.isEmpty()) {
+                return Collections.emptyList();
+            }
+            Map<PsiElement, List<ExtendedProblemDescriptor>> index = byElement;
+            if (index == null) {
+                index = createIndex(descriptors);
+                byElement = index;
+            }
+            final List<ExtendedProblemDescriptor> result = index.get(psiElement);
+            return result == null ? Collections.emptyList() : result;
+        }
+
+        /**
+         * Problems of bugs which are already present are skipped; the bugs restored by {@link LastResultService}
+         * are added again when the tool window shows them.
+         */
+        @NotNull
+        private FileProblems with(@NotNull final Collection<ExtendedProblemDescriptor> added) {
+            final Set<Bug> bugs = new HashSet<>();
+            for (final ExtendedProblemDescriptor descriptor : descriptors) {
+                bugs.add(descriptor.getBug());
+            }
+            final List<ExtendedProblemDescriptor> list = new ArrayList<>(descriptors.size() + added.size());
+            list.addAll(descriptors);
+            for (final ExtendedProblemDescriptor descriptor : added) {
+                if (bugs.add(descriptor.getBug())) {
+                    list.add(descriptor);
+                }
+            }
+            return list.size() == descriptors.size() ? this : new FileProblems(Collections.unmodifiableList(list));
+        }
+
+        @NotNull
+        private FileProblems without(@NotNull final ExtendedProblemDescriptor removed) {
+            final List<ExtendedProblemDescriptor> list = new ArrayList<>(descriptors);
+            list.remove(removed);
+            return new FileProblems(Collections.unmodifiableList(list));
+        }
+
+        @NotNull
+        private static Map<PsiElement, List<ExtendedProblemDescriptor>> createIndex(@NotNull final List<ExtendedProblemDescriptor> descriptors) {
+            final Map<PsiElement, List<ExtendedProblemDescriptor>> index = new HashMap<>();
+            for (final ExtendedProblemDescriptor descriptor : descriptors) {
+                final PsiElement psiElement = descriptor.getPsiElement();
+                if (psiElement != null) {
+                    index.computeIfAbsent(psiElement, e -> new ArrayList<>(1)).add(descriptor);
+                }
+            }
+            return index;
+        }
     }
 }
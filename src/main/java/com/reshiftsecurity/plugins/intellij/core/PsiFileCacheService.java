@@ -0,0 +1,188 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reshiftsecurity.plugins.intellij.core;
+
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import com.reshiftsecurity.plugins.intellij.common.EventDispatchThreadHelper;
+import com.reshiftsecurity.plugins.intellij.common.util.IdeaUtilImpl;
+import com.reshiftsecurity.plugins.intellij.common.util.New;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves the source file of the primary class of bugs.
+ * <p>
+ * Many bugs share a class, so each distinct class (per module) is searched only once per scan.
+ * {@link #resolveAsync(Collection, Runnable)} searches all classes of a batch of bugs in one
+ * non-blocking background read action, so the EDT never waits for the index.
+ */
+public final class PsiFileCacheService {
+
+	@NotNull
+	private final Project project;
+
+	@NotNull
+	private final ConcurrentMap<ClassKey, Resolution> resolutions;
+
+	public PsiFileCacheService(@NotNull final Project project) {
+		this.project = project;
+		resolutions = New.concurrentMap();
+	}
+
+	@NotNull
+	public static PsiFileCacheService getInstance(@NotNull final Project project) {
+		return project.getService(PsiFileCacheService.class);
+	}
+
+	/**
+	 * @return true if the class of the bug was already searched (the file may still be unknown)
+	 */
+	public boolean isResolved(@NotNull final Bug bug) {
+		return getResolution(new ClassKey(bug)) != null;
+	}
+
+	/**
+	 * @return the file of the bug if it was already resolved
+	 */
+	@Nullable
+	public PsiFile getCachedPsiFile(@NotNull final Bug bug) {
+		final Resolution resolution = getResolution(new ClassKey(bug));
+		return resolution != null ? resolution.psiFile : null;
+	}
+
+	/**
+	 * Resolves synchronously if necessary; the caller must be allowed to read the PSI.
+	 */
+	@Nullable
+	public PsiFile resolve(@NotNull final Bug bug) {
+		final ClassKey key = new ClassKey(bug);
+		Resolution resolution = getResolution(key);
+		if (resolution == null) {
+			resolution = new Resolution(find(key));
+			resolutions.put(key, resolution);
+		}
+		return resolution.psiFile;
+	}
+
+	/**
+	 * Resolves the classes of all given bugs in a background read action (in smart mode).
+	 *
+	 * @param onResolved invoked by EDT once all files are resolved; never invoked if the project is disposed before
+	 */
+	public void resolveAsync(@NotNull final Collection<Bug> bugs, @NotNull final Runnable onResolved) {
+		EventDispatchThreadHelper.checkEDT();
+		final Set<ClassKey> keys = New.set();
+		for (final Bug bug : bugs) {
+			final ClassKey key = new ClassKey(bug);
+			if (getResolution(key) == null) {
+				keys.add(key);
+			}
+		}
+		if (keys.isEmpty()) {
+			onResolved.run();
+			return;
+		}
+		ReadAction.nonBlocking(() -> {
+			final Map<ClassKey, Resolution> result = New.map();
+			for (final ClassKey key : keys) {
+				ProgressManager.checkCanceled();
+				result.put(key, new Resolution(find(key)));
+			}
+			return result;
+		})
+				.inSmartMode(project)
+				.expireWith(project)
+				.finishOnUiThread(ModalityState.defaultModalityState(), result -> {
+					resolutions.putAll(result);
+					onResolved.run();
+				})
+				.submit(AppExecutorUtil.getAppExecutorService());
+	}
+
+	public void clear() {
+		resolutions.clear();
+	}
+
+	@Nullable
+	private Resolution getResolution(@NotNull final ClassKey key) {
+		final Resolution resolution = resolutions.get(key);
+		if (resolution != null && resolution.psiFile != null && !resolution.psiFile.isValid()) {
+			resolutions.remove(key, resolution);
+			return null;
+		}
+		return resolution;
+	}
+
+	@Nullable
+	private PsiFile find(@NotNull final ClassKey key) {
+		final PsiClass psiClass = IdeaUtilImpl.findJavaPsiClass(project, key.module, key.sourcePath);
+		return psiClass != null ? psiClass.getContainingFile() : null;
+	}
+
+	private static final class Resolution {
+		@Nullable
+		private final PsiFile psiFile;
+
+		private Resolution(@Nullable final PsiFile psiFile) {
+			this.psiFile = psiFile;
+		}
+	}
+
+	private static final class ClassKey {
+		@Nullable
+		private final Module module;
+
+		@NotNull
+		private final String sourcePath;
+
+		private ClassKey(@NotNull final Bug bug) {
+			module = bug.getModule();
+			sourcePath = bug.getInstance().getPrimaryClass().getSourceLines().getSourcePath();
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			final ClassKey other = (ClassKey) o;
+			if (module != null ? !module.equals(other.module) : other.module != null) return false;
+			return sourcePath.equals(other.sourcePath);
+		}
+
+		@Override
+		public int hashCode() {
+			int result = module != null ? module.hashCode() : 0;
+			result = 31 * result + sourcePath.hashCode();
+			return result;
+		}
+	}
+}
@@ -37,6 +37,7 @@ import com.reshiftsecurity.plugins.intellij.messages.MessageBusManager;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 final class Reporter extends AbstractBugReporter implements FindBugsProgress {
@@ -44,6 +45,13 @@ final class Reporter extends AbstractBugReporter implements FindBugsProgress {
 	private static final Logger LOGGER = Logger.getInstance(Reporter.class.getName());
 	private static final String ANALYZING_CLASSES_i18N = "Analyzing classes: ";
 
+	/**
+	 * New bugs are published to the tool window in batches; a batch is flushed when it reaches this size
+	 * or when {@link #NEW_BUGS_BATCH_INTERVAL_MS} elapsed since the last flush.
+	 */
+	private static final int NEW_BUGS_BATCH_SIZE = 200;
+	private static final long NEW_BUGS_BATCH_INTERVAL_MS = 250;
+
 	@NotNull
 	private final Project _project;
 
@@ -59,15 +67,39 @@ final class Reporter extends AbstractBugReporter implements FindBugsProgress {
 	private final ProgressIndicator _indicator;
 	private final AtomicBoolean _cancellingByUser;
 	private final TransferToEDTQueue<Runnable> _transferToEDTQueue;
+	private final List<BugInstance> _pendingBugs;
+	/**
+	 * Dotted names of the classes checked by a reporting pass (or restored from cache with findings),
+	 * see {@link SecurityReportService.ScanTransaction}.
+	 */
+	private final Set<String> analyzedClasses;
+	/**
+	 * Number of classes checked by the first reporting pass, without classes restored from cache.
+	 */
+	private int checkedClassCount;
+	private long _lastFlushTimestamp;
+	@NotNull
+	private final ScanMetrics metrics;
 
 	private int pass = -1;
+	/**
+	 * With more than one pass, the first pass only collects facts about the referenced classes
+	 * (including libraries and JDK) and reports nothing, see {@link #predictPassCount(int[])}.
+	 */
+	private int firstReportingPass = 1;
+	private boolean passRunning;
+	private long passStartNanos;
 	private int bugCount;
 	private int stepCount;
 	private int goal;
 	@NonNls
 	private String _currentStageName;
 	private boolean _canceled;
-	private int analyzedClassCountOffset;
+	/**
+	 * Number of classes analyzed by the already finished modules of the current scan.
+	 */
+	@NotNull
+	private final AtomicInteger analyzedClassCountOffset;
 
 	final static ArrayList<String> acceptedList = new ArrayList<>(
 			Arrays.asList(
@@ -243,7 +275,7 @@ final class Reporter extends AbstractBugReporter implements FindBugsProgress {
 			@NotNull final ProjectFilterSettings projectFilterSettings,
 			@NotNull final ProgressIndicator indicator,
 			@NotNull final AtomicBoolean cancellingByUser,
-			final int analyzedClassCountOffset
+			@NotNull final AtomicInteger analyzedClassCountOffset
 	) {
 		_project = project;
 		this.module = module;
@@ -252,6 +284,10 @@ final class Reporter extends AbstractBugReporter implements FindBugsProgress {
 		_indicator = indicator;
 		_cancellingByUser = cancellingByUser;
 		this.analyzedClassCountOffset = analyzedClassCountOffset;
+		_pendingBugs = New.arrayList();
+		analyzedClasses = New.set();
+		metrics = ScanMetrics.get(project);
+		_lastFlushTimestamp = System.currentTimeMillis();
 		_transferToEDTQueue = new TransferToEDTQueue<Runnable>("Add New Bug Instance", new RunnableProcessor(), new Condition<Object>() {
 			@Override
 			public boolean value(final Object o) {
@@ -283,33 +319,92 @@ final class Reporter extends AbstractBugReporter implements FindBugsProgress {
 		if (!projectFilterSettings.displayWarning(bug)) {
 			return;
 		}
-		BugPattern bugPattern = bug.getBugPattern();
+		if (isAccepted(bug.getBugPattern())) {
+			addBug(severityRemap(bug));
+		}
+	}
+
+
+	/**
+	 * @return true if findings of the given pattern are reported to the user
+	 */
+	static boolean isAccepted(@NotNull final BugPattern bugPattern) {
 		String category = bugPattern.getCategory().toLowerCase();
 		String pattern = bugPattern.getType();
+		return category.startsWith("security") && acceptedList.contains(pattern);
+	}
 
-		if( category.startsWith("security") && (acceptedList.contains(pattern)) ) {
-			_bugCollection.add(severityRemap(bug));
-			bugCount++;
-			observeClass(bug.getPrimaryClass().getClassDescriptor());
-
-			// Guarantee thread visibility *one* time.
-			final AtomicReference<SortedBugCollection> bugCollectionRef = New.atomicRef(_bugCollection);
-			final AtomicReference<BugInstance> bugRef = New.atomicRef(bug);
-			final int analyzedClassCount = analyzedClassCountOffset + getProjectStats().getNumClasses();
-			_transferToEDTQueue.offer(new Runnable() {
-				/**
-				 * Invoked by EDT.
-				 */
-				@Override
-				public void run() {
-					final Bug bug = new Bug(module, bugCollectionRef.get(), bugRef.get());
-					MessageBusManager.publishNewBug(_project, bug, analyzedClassCount);
-				}
-			});
+
+	/**
+	 * Adds findings restored from {@link ResultCacheService}.
+	 * They were already filtered and remapped when they were reported the first time.
+	 */
+	void reportCachedBugs(@NotNull final Collection<BugInstance> bugs) {
+		for (final BugInstance bug : bugs) {
+			if (checkCancel()) {
+				return;
+			}
+			addBug(bug);
 		}
 	}
 
 
+	private void addBug(@NotNull final BugInstance bug) {
+		_bugCollection.add(bug);
+		bugCount++;
+		metrics.counter(ScanMetrics.BUGS_REPORTED).increment();
+		analyzedClasses.add(bug.getPrimaryClass().getClassName());
+
+		_pendingBugs.add(bug);
+		if (_pendingBugs.size() >= NEW_BUGS_BATCH_SIZE) {
+			flushPendingBugs();
+		} else {
+			flushPendingBugsIfDue();
+		}
+	}
+
+
+	private void flushPendingBugsIfDue() {
+		if (!_pendingBugs.isEmpty() && System.currentTimeMillis() - _lastFlushTimestamp >= NEW_BUGS_BATCH_INTERVAL_MS) {
+			flushPendingBugs();
+		}
+	}
+
+
+	/**
+	 * Hands the pending bugs over to the EDT as one batch.
+	 */
+	private void flushPendingBugs() {
+		_lastFlushTimestamp = System.currentTimeMillis();
+		if (_pendingBugs.isEmpty()) {
+			return;
+		}
+
+		// Guarantee thread visibility *one* time.
+		final AtomicReference<SortedBugCollection> bugCollectionRef = New.atomicRef(_bugCollection);
+		final AtomicReference<List<BugInstance>> batchRef = New.atomicRef(new ArrayList<BugInstance>(_pendingBugs));
+		_pendingBugs.clear();
+		final int analyzedClassCount = analyzedClassCountOffset.get() + getProjectStats().getNumClasses();
+		metrics.histogram(ScanMetrics.EDT_DELIVERY_BATCH_SIZE).record(batchRef.get().size());
+		final long offeredNanos = System.nanoTime();
+		_transferToEDTQueue.offer(new Runnable() {
+			/**
+			 * Invoked by EDT.
+			 */
+			@Override
+			public void run() {
+				metrics.timer(ScanMetrics.EDT_DELIVERY_LATENCY).stop(offeredNanos);
+				final List<BugInstance> batch = batchRef.get();
+				final List<Bug> bugs = new ArrayList<Bug>(batch.size());
+				for (final BugInstance bugInstance : batch) {
+					bugs.add(new Bug(module, bugCollectionRef.get(), bugInstance));
+				}
+				MessageBusManager.publishNewBugs(_project, bugs, analyzedClassCount);
+			}
+		});
+	}
+
+
 	public BugInstance severityRemap(BugInstance bug){
 		BugPattern bugPattern = bug.getBugPattern();
 		String pattern = bugPattern.getType();
@@ -372,6 +467,7 @@ final class Reporter extends AbstractBugReporter implements FindBugsProgress {
 
 	@Override
 	public void finish() {
+		flushPendingBugs();
 		EventDispatchThreadHelper.invokeAndWait(new EventDispatchThreadHelper.OperationAdapter() {
 			@Override
 			public void run() {
@@ -394,6 +490,17 @@ final class Reporter extends AbstractBugReporter implements FindBugsProgress {
 	}
 
 
+	@NotNull
+	Set<String> getAnalyzedClasses() {
+		return analyzedClasses;
+	}
+
+
+	int getCheckedClassCount() {
+		return checkedClassCount;
+	}
+
+
 	@Override
 	public void observeClass(@NotNull final ClassDescriptor classDescriptor) {
 		if (checkCancel()) {
@@ -401,6 +508,10 @@ final class Reporter extends AbstractBugReporter implements FindBugsProgress {
 		}
 
 		final String className = classDescriptor.getDottedClassName();
+		if (pass == firstReportingPass) { // each class is observed once per pass
+			analyzedClasses.add(className);
+			checkedClassCount++;
+		}
 		_indicator.setText("Observing class: " + className);
 		if (pass <= 0) {
 			_indicator.setText("Prescanning... (found " + bugCount + ", checking " + className + ')');
@@ -440,6 +551,7 @@ final class Reporter extends AbstractBugReporter implements FindBugsProgress {
 
 	@Override
 	public void finishPerClassAnalysis() {
+		finishPass();
 		_indicator.setText("Finishing analysis...");
 	}
 
@@ -453,13 +565,25 @@ final class Reporter extends AbstractBugReporter implements FindBugsProgress {
 
 	@Override
 	public void startAnalysis(final int numClasses) {
+		finishPass();
 		pass++;
+		passRunning = true;
+		passStartNanos = System.nanoTime();
 		beginStage(ANALYZING_CLASSES_i18N, numClasses);
 	}
 
 
+	private void finishPass() {
+		if (passRunning) {
+			metrics.timer(ScanMetrics.FINDBUGS_PASS + pass).stop(passStartNanos);
+			passRunning = false;
+		}
+	}
+
+
 	@Override
 	public void predictPassCount(final int[] classesPerPass) {
+		firstReportingPass = classesPerPass.length > 1 ? 1 : 0;
 		int expectedWork = 0;
 		for (final int count : classesPerPass) {
 			expectedWork += 2 * count;
@@ -481,6 +605,7 @@ final class Reporter extends AbstractBugReporter implements FindBugsProgress {
 		stepCount++;
 		final int work = pass == 0 ? 1 : 2;
 		_indicator.setText2(_currentStageName + ' ' + stepCount + '/' + goal + (ANALYZING_CLASSES_i18N.equals(_currentStageName) ? " (pass #" + work + "/2)" : ""));
+		flushPendingBugsIfDue();
 	}
 
 
@@ -0,0 +1,437 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reshiftsecurity.plugins.intellij.core;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.reshiftsecurity.plugins.intellij.common.VersionManager;
+import com.reshiftsecurity.plugins.intellij.common.util.HashUtil;
+import com.reshiftsecurity.plugins.intellij.common.util.New;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.DetectorFactory;
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.Plugin;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import edu.umd.cs.findbugs.config.ProjectFilterSettings;
+import edu.umd.cs.findbugs.config.UserPreferences;
+import org.dom4j.DocumentException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Persistent cache of analysis results per class file.
+ * <p>
+ * An entry is keyed by the hash of the configuration fingerprint (see {@link #createFingerprint})
+ * together with the bytes of the class file, so unchanged classes analyzed with an unchanged
+ * configuration can reuse their findings instead of being analyzed again. Findings of an entry are
+ * stored as SpotBugs XML next to the index; classes without findings only have an index entry.
+ * <p>
+ * Note that findings can depend on other classes (f. e. taint analysis across method calls),
+ * so this is only used when {@link WorkspaceSettings#reuseResultsOfUnchangedClasses} is enabled.
+ */
+public final class ResultCacheService {
+
+	private static final Logger LOGGER = Logger.getInstance(ResultCacheService.class);
+
+	private static final int INDEX_FORMAT_VERSION = 1;
+	private static final String INDEX_FILE_NAME = "index";
+	private static final String BUGS_FILE_SUFFIX = ".xml";
+	private static final int DEFAULT_MAX_ENTRIES = 50000;
+	private static final int MAX_ENTRIES = StringUtil.parseInt(System.getProperty("reshift.resultcache.maxentries", String.valueOf(DEFAULT_MAX_ENTRIES)), DEFAULT_MAX_ENTRIES);
+
+	@NotNull
+	private final File cacheDir;
+
+	private final int maxEntries;
+
+	/**
+	 * Key = entry key ; iteration order is least recently used first.
+	 */
+	@NotNull
+	private final LinkedHashMap<String, Entry> entries; // @GuardedBy this
+
+	/**
+	 * Key = class file path ; value = entry key.
+	 */
+	@NotNull
+	private final Map<String, String> keyByClassFile; // @GuardedBy this
+
+	private boolean loaded; // @GuardedBy this
+
+	public ResultCacheService(@NotNull final Project project) {
+		this(new File(PathManager.getSystemPath(), "reshiftsecurity" + File.separator + "result-cache" + File.separator + project.getLocationHash()), MAX_ENTRIES);
+	}
+
+	ResultCacheService(@NotNull final File cacheDir, final int maxEntries) {
+		this.cacheDir = cacheDir;
+		this.maxEntries = maxEntries;
+		entries = new LinkedHashMap<>(16, 0.75f, true);
+		keyByClassFile = New.map();
+	}
+
+	@NotNull
+	public static ResultCacheService getInstance(@NotNull final Project project) {
+		return project.getService(ResultCacheService.class);
+	}
+
+	/**
+	 * Looks up the given class files. The cached findings of all hits are read and returned,
+	 * the keys of all misses are remembered so that {@link #store(Lookup, Collection)} can add them later.
+	 * Class files and findings are read without holding the lock, so modules analyzed in parallel
+	 * only wait for each other while the index is accessed.
+	 */
+	@NotNull
+	public Lookup lookup(@NotNull final String fingerprint, @NotNull final Collection<String> classFiles) {
+		final Map<String, String> keys = New.map(); // Key = class file ; value = entry key
+		for (final String classFile : classFiles) {
+			final byte[] bytes;
+			try {
+				bytes = Files.readAllBytes(new File(classFile).toPath());
+			} catch (final IOException e) {
+				LOGGER.debug("Could not read class file " + classFile, e);
+				continue;
+			}
+			final String key = HashUtil.hashThis(fingerprint, bytes);
+			if (key != null) {
+				keys.put(classFile, key);
+			}
+		}
+
+		final Map<String, Entry> cached = getEntries(keys);
+		final Lookup ret = new Lookup();
+		for (final Map.Entry<String, String> classFileKey : keys.entrySet()) {
+			final String classFile = classFileKey.getKey();
+			final Entry entry = cached.get(classFile);
+			if (entry != null) {
+				final List<BugInstance> bugs = readBugs(entry);
+				if (bugs != null) {
+					ret.hits.add(classFile);
+					ret.bugs.addAll(bugs);
+					continue;
+				}
+				removeStaleEntry(entry);
+			}
+			ret.missKeyByClassFile.put(classFile, classFileKey.getValue());
+		}
+		return ret;
+	}
+
+	/**
+	 * @param keys key = class file ; value = entry key
+	 * @return key = class file ; the entries found are marked as recently used
+	 */
+	@NotNull
+	private synchronized Map<String, Entry> getEntries(@NotNull final Map<String, String> keys) {
+		ensureLoaded();
+		final Map<String, Entry> ret = New.map();
+		for (final Map.Entry<String, String> classFileKey : keys.entrySet()) {
+			final Entry entry = entries.get(classFileKey.getValue());
+			if (entry != null && entry.classFile.equals(classFileKey.getKey())) {
+				ret.put(classFileKey.getKey(), entry);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Removes an entry whose findings could not be read, unless it was replaced meanwhile.
+	 */
+	private synchronized void removeStaleEntry(@NotNull final Entry entry) {
+		if (entries.get(entry.key) == entry) {
+			removeEntry(entry.key);
+		}
+	}
+
+	/**
+	 * Adds an entry for all misses of the given lookup. Each finding is assigned to the class file
+	 * of its primary class; findings of other class files (f. e. the hits) are ignored.
+	 */
+	public synchronized void store(@NotNull final Lookup lookup, @NotNull final Collection<BugInstance> bugs) {
+		if (lookup.missKeyByClassFile.isEmpty()) {
+			return;
+		}
+		ensureLoaded();
+
+		// Key = class file name (like Foo$1.class) ; used to match primary class of a finding against class file paths
+		final Map<String, List<String>> classFilesByName = New.map();
+		final Map<String, List<BugInstance>> bugsByClassFile = New.map();
+		for (final String classFile : lookup.missKeyByClassFile.keySet()) {
+			final String normalized = normalize(classFile);
+			classFilesByName.computeIfAbsent(normalized.substring(normalized.lastIndexOf('/') + 1), k -> New.arrayList()).add(classFile);
+			bugsByClassFile.put(classFile, New.arrayList());
+		}
+		for (final BugInstance bug : bugs) {
+			final String relativePath = '/' + bug.getPrimaryClass().getSlashedClassName() + ".class";
+			final List<String> candidates = classFilesByName.get(relativePath.substring(relativePath.lastIndexOf('/') + 1));
+			if (candidates != null) {
+				for (final String candidate : candidates) {
+					if (normalize(candidate).endsWith(relativePath)) {
+						bugsByClassFile.get(candidate).add(bug);
+						break;
+					}
+				}
+			}
+		}
+
+		for (final Map.Entry<String, List<BugInstance>> classFileBugs : bugsByClassFile.entrySet()) {
+			final String classFile = classFileBugs.getKey();
+			final String key = lookup.missKeyByClassFile.get(classFile);
+			final String previousKey = keyByClassFile.get(classFile);
+			if (previousKey != null) {
+				removeEntry(previousKey); // class file or configuration changed
+			}
+			final Entry entry = new Entry(key, classFile, classFileBugs.getValue().size());
+			if (writeBugs(entry, classFileBugs.getValue())) {
+				entries.put(key, entry);
+				keyByClassFile.put(classFile, key);
+			}
+		}
+		evict();
+		saveIndex();
+	}
+
+	/**
+	 * Removes all entries, f. e. when plugins or settings changed in a way the fingerprint does not cover.
+	 */
+	public synchronized void invalidate() {
+		entries.clear();
+		keyByClassFile.clear();
+		loaded = true;
+		FileUtil.delete(cacheDir);
+	}
+
+	@NotNull
+	static String createFingerprint(
+			@NotNull final DetectorFactoryCollection detectorFactoryCollection,
+			@NotNull final UserPreferences userPrefs,
+			@NotNull final ProjectFilterSettings projectFilterSettings,
+			@NotNull final FindBugsProject findBugsProject
+	) {
+		final StringBuilder ret = new StringBuilder();
+		ret.append(VersionManager.getVersion()).append('|');
+		ret.append(userPrefs.getEffort()).append('|');
+		ret.append(userPrefs.getUserDetectorThreshold()).append('|');
+		ret.append(projectFilterSettings.toEncodedString()).append('|');
+		ret.append(projectFilterSettings.getMinRank()).append('|');
+
+		final Set<String> plugins = new TreeSet<>();
+		for (final Plugin plugin : Plugin.getAllPlugins()) {
+			plugins.add(plugin.getPluginId() + ':' + plugin.getVersion() + ':' + findBugsProject.getPluginStatus(plugin));
+		}
+		ret.append(plugins).append('|');
+
+		final Set<String> detectors = new TreeSet<>();
+		for (final DetectorFactory factory : detectorFactoryCollection.getFactories()) {
+			if (userPrefs.isDetectorEnabled(factory)) {
+				detectors.add(factory.getFullName());
+			}
+		}
+		ret.append(detectors).append('|');
+
+		appendFilterFiles(ret, userPrefs.getIncludeFilterFiles());
+		appendFilterFiles(ret, userPrefs.getExcludeFilterFiles());
+		appendFilterFiles(ret, userPrefs.getExcludeBugsFiles());
+		return HashUtil.hashThis(ret.toString());
+	}
+
+	private static void appendFilterFiles(@NotNull final StringBuilder fingerprint, @NotNull final Map<String, Boolean> filterFiles) {
+		final Set<String> enabled = new TreeSet<>();
+		for (final Map.Entry<String, Boolean> filterFile : filterFiles.entrySet()) {
+			if (filterFile.getValue()) {
+				final File file = new File(filterFile.getKey());
+				enabled.add(filterFile.getKey() + ':' + file.lastModified() + ':' + file.length());
+			}
+		}
+		fingerprint.append(enabled).append('|');
+	}
+
+	@NotNull
+	private static String normalize(@NotNull final String classFile) {
+		return classFile.replace('\\', '/');
+	}
+
+	@Nullable
+	private List<BugInstance> readBugs(@NotNull final Entry entry) {
+		if (entry.bugCount == 0) {
+			return new ArrayList<>(0);
+		}
+		final SortedBugCollection bugCollection = new SortedBugCollection();
+		try {
+			bugCollection.readXML(getBugsFile(entry.key));
+		} catch (final IOException | DocumentException e) {
+			LOGGER.debug("Could not read cached findings of " + entry.classFile, e);
+			return null;
+		}
+		return new ArrayList<>(bugCollection.getCollection());
+	}
+
+	private boolean writeBugs(@NotNull final Entry entry, @NotNull final List<BugInstance> bugs) {
+		if (bugs.isEmpty()) {
+			return true;
+		}
+		final SortedBugCollection bugCollection = new SortedBugCollection();
+		for (final BugInstance bug : bugs) {
+			bugCollection.add(bug, false);
+		}
+		try {
+			FileUtil.createDirectory(cacheDir);
+			bugCollection.writeXML(getBugsFile(entry.key));
+			return true;
+		} catch (final IOException e) {
+			LOGGER.warn("Could not write cached findings of " + entry.classFile, e);
+			return false;
+		}
+	}
+
+	private void removeEntry(@NotNull final String key) {
+		final Entry entry = entries.remove(key);
+		if (entry != null) {
+			keyByClassFile.remove(entry.classFile, key);
+			if (entry.bugCount > 0) {
+				FileUtil.delete(getBugsFile(key));
+			}
+		}
+	}
+
+	private void evict() {
+		final Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (entries.size() > maxEntries && it.hasNext()) {
+			final Entry entry = it.next().getValue();
+			it.remove();
+			keyByClassFile.remove(entry.classFile, entry.key);
+			if (entry.bugCount > 0) {
+				FileUtil.delete(getBugsFile(entry.key));
+			}
+		}
+	}
+
+	@NotNull
+	private File getBugsFile(@NotNull final String key) {
+		return new File(cacheDir, key + BUGS_FILE_SUFFIX);
+	}
+
+	private void ensureLoaded() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		final File indexFile = new File(cacheDir, INDEX_FILE_NAME);
+		if (!indexFile.isFile()) {
+			return;
+		}
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			if (in.readInt() != INDEX_FORMAT_VERSION || !VersionManager.getVersion().equals(in.readUTF())) {
+				in.close();
+				invalidate(); // plugin update ; acceptedList or severity mapping could have changed
+				return;
+			}
+			final int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				final Entry entry = new Entry(in.readUTF(), in.readUTF(), in.readInt());
+				entries.put(entry.key, entry);
+				keyByClassFile.put(entry.classFile, entry.key);
+			}
+		} catch (final IOException e) {
+			LOGGER.warn("Could not read result cache index, cache is cleared", e);
+			invalidate();
+		}
+	}
+
+	private void saveIndex() {
+		final File indexFile = new File(cacheDir, INDEX_FILE_NAME);
+		FileUtil.createDirectory(cacheDir);
+		try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+			out.writeInt(INDEX_FORMAT_VERSION);
+			out.writeUTF(VersionManager.getVersion());
+			out.writeInt(entries.size());
+			for (final Entry entry : entries.values()) { // LRU order is restored on load
+				out.writeUTF(entry.key);
+				out.writeUTF(entry.classFile);
+				out.writeInt(entry.bugCount);
+			}
+		} catch (final IOException e) {
+			LOGGER.warn("Could not write result cache index", e);
+		}
+	}
+
+	private static final class Entry {
+		@NotNull
+		private final String key;
+
+		@NotNull
+		private final String classFile;
+
+		private final int bugCount;
+
+		Entry(@NotNull final String key, @NotNull final String classFile, final int bugCount) {
+			this.key = key;
+			this.classFile = classFile;
+			this.bugCount = bugCount;
+		}
+	}
+
+	public static final class Lookup {
+		@NotNull
+		private final Set<String> hits = New.set();
+
+		@NotNull
+		private final List<BugInstance> bugs = New.arrayList();
+
+		@NotNull
+		private final Map<String, String> missKeyByClassFile = New.map();
+
+		/**
+		 * @return class files which do not need to be analyzed again
+		 */
+		@NotNull
+		public Set<String> getHits() {
+			return hits;
+		}
+
+		/**
+		 * @return cached findings of all hits
+		 */
+		@NotNull
+		public List<BugInstance> getBugs() {
+			return bugs;
+		}
+	}
+}
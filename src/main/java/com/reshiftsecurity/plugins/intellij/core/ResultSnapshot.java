@@ -0,0 +1,710 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reshiftsecurity.plugins.intellij.core;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.project.Project;
+import com.reshiftsecurity.plugins.intellij.common.util.New;
+import edu.umd.cs.findbugs.BugAnnotation;
+import edu.umd.cs.findbugs.BugAnnotationWithSourceLines;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugProperty;
+import edu.umd.cs.findbugs.ClassAnnotation;
+import edu.umd.cs.findbugs.FieldAnnotation;
+import edu.umd.cs.findbugs.IntAnnotation;
+import edu.umd.cs.findbugs.LocalVariableAnnotation;
+import edu.umd.cs.findbugs.MethodAnnotation;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import edu.umd.cs.findbugs.SourceLineAnnotation;
+import edu.umd.cs.findbugs.StringAnnotation;
+import edu.umd.cs.findbugs.TypeAnnotation;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary snapshot of a {@link FindBugsResult}, an alternative to SpotBugs XML for saving and restoring results.
+ * <p>
+ * Layout (big endian):
+ * <pre>
+ * header        magic, format version, module count, string count, string table offset
+ * module index  per module: module name, project name, section offset, section length, bug count, class count
+ * sections      per module: file index, one column per bug type, priority, rank, start line and end line,
+ *               annotation offsets, annotations
+ * string table  offsets of all strings followed by their UTF-8 bytes
+ * </pre>
+ * Class, method, pattern and file names are stored once in the string table and referenced by index.
+ * The bugs of a section are sorted by source file, so the file index maps a file to a range of rows.
+ * <p>
+ * A snapshot is read through a memory mapped buffer. Strings and bugs are only decoded when a module
+ * or a file is requested, so the bugs of one file can be loaded without decoding the rest.
+ */
+public final class ResultSnapshot {
+
+	private static final int MAGIC = 0x52534253; // "RSBS"
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 4;
+	private static final int MODULE_ENTRY_SIZE = 4 + 4 + 4 + 4 + 4 + 4;
+	private static final int FILE_ENTRY_SIZE = 4 + 4 + 4;
+
+	private static final byte CLASS_ANNOTATION = 1;
+	private static final byte METHOD_ANNOTATION = 2;
+	private static final byte FIELD_ANNOTATION = 3;
+	private static final byte SOURCE_LINE_ANNOTATION = 4;
+	private static final byte INT_ANNOTATION = 5;
+	private static final byte STRING_ANNOTATION = 6;
+	private static final byte LOCAL_VARIABLE_ANNOTATION = 7;
+	private static final byte TYPE_ANNOTATION = 8;
+
+	@NotNull
+	private final ByteBuffer buffer;
+
+	private final int stringTableOffset;
+
+	/**
+	 * Decoded strings by index ; filled on demand.
+	 */
+	@NotNull
+	private final String[] strings;
+
+	@NotNull
+	private final List<ModuleEntry> modules;
+
+	private ResultSnapshot(@NotNull final ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a result snapshot");
+		}
+		final int version = buffer.getInt(4);
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Unsupported result snapshot version " + version);
+		}
+		final int moduleCount = buffer.getInt(8);
+		strings = new String[buffer.getInt(12)];
+		stringTableOffset = buffer.getInt(16);
+		modules = new ArrayList<>(moduleCount);
+		for (int i = 0; i < moduleCount; i++) {
+			final int offset = HEADER_SIZE + i * MODULE_ENTRY_SIZE;
+			modules.add(new ModuleEntry(
+					getString(buffer.getInt(offset)),
+					getString(buffer.getInt(offset + 4)),
+					buffer.getInt(offset + 8),
+					buffer.getInt(offset + 12),
+					buffer.getInt(offset + 16),
+					buffer.getInt(offset + 20)
+			));
+		}
+	}
+
+	@NotNull
+	public static ResultSnapshot open(@NotNull final File file) throws IOException {
+		try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Result snapshot too large: " + file);
+			}
+			return new ResultSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	public static void write(@NotNull final FindBugsResult result, @NotNull final File file) throws IOException {
+		final StringTable strings = new StringTable();
+		final List<ModuleEntry> modules = New.arrayList();
+		final List<byte[]> sections = New.arrayList();
+		int offset = HEADER_SIZE + result.getResults().size() * MODULE_ENTRY_SIZE;
+		for (final Map.Entry<edu.umd.cs.findbugs.Project, SortedBugCollection> entry : result.getResults().entrySet()) {
+			final SortedBugCollection bugCollection = entry.getValue();
+			final byte[] section = writeSection(bugCollection, strings);
+			final edu.umd.cs.findbugs.Project project = entry.getKey();
+			final String moduleName = project instanceof FindBugsProject ? ((FindBugsProject) project).getModule().getName() : null;
+			modules.add(new ModuleEntry(
+					moduleName,
+					project.getProjectName(),
+					offset,
+					section.length,
+					bugCollection.getCollection().size(),
+					bugCollection.getProjectStats().getNumClasses()
+			));
+			sections.add(section);
+			offset += section.length;
+		}
+		for (final ModuleEntry module : modules) {
+			strings.add(module.moduleName);
+			strings.add(module.projectName);
+		}
+
+		try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(modules.size());
+			out.writeInt(strings.size());
+			out.writeInt(offset);
+			for (final ModuleEntry module : modules) {
+				out.writeInt(strings.add(module.moduleName));
+				out.writeInt(strings.add(module.projectName));
+				out.writeInt(module.offset);
+				out.writeInt(module.length);
+				out.writeInt(module.bugCount);
+				out.writeInt(module.classCount);
+			}
+			for (final byte[] section : sections) {
+				out.write(section);
+			}
+			strings.write(out);
+		}
+	}
+
+	/**
+	 * @return the module names (or project names for results without module) in snapshot order
+	 */
+	@NotNull
+	public List<String> getModuleNames() {
+		final List<String> ret = new ArrayList<>(modules.size());
+		for (final ModuleEntry module : modules) {
+			ret.add(module.getName());
+		}
+		return ret;
+	}
+
+	/**
+	 * Restores all modules. Modules which no longer exist in the given project are restored
+	 * as plain SpotBugs projects.
+	 */
+	@NotNull
+	public FindBugsResult toResult(@NotNull final Project project) {
+		final FindBugsResult ret = new FindBugsResult();
+		for (final ModuleEntry entry : modules) {
+			ret.put(createProject(project, entry), readSection(entry));
+		}
+		return ret;
+	}
+
+	/**
+	 * @return the SpotBugs project for the given module, see {@link #toResult(Project)}
+	 */
+	@NotNull
+	public edu.umd.cs.findbugs.Project createProject(@NotNull final Project project, @NotNull final String name) {
+		final ModuleEntry entry = findModule(name);
+		if (entry == null) {
+			throw new IllegalArgumentException("Unknown module " + name);
+		}
+		return createProject(project, entry);
+	}
+
+	@NotNull
+	private static edu.umd.cs.findbugs.Project createProject(@NotNull final Project project, @NotNull final ModuleEntry entry) {
+		final Module module = entry.moduleName != null ? ModuleManager.getInstance(project).findModuleByName(entry.moduleName) : null;
+		if (module != null) {
+			return FindBugsProject.create(project, module, entry.projectName);
+		}
+		final edu.umd.cs.findbugs.Project ret = new edu.umd.cs.findbugs.Project();
+		ret.setProjectName(entry.projectName);
+		return ret;
+	}
+
+	/**
+	 * @return the number of analyzed classes of the given module
+	 */
+	public int getClassCount(@NotNull final String name) {
+		final ModuleEntry entry = findModule(name);
+		return entry != null ? entry.classCount : 0;
+	}
+
+	/**
+	 * @return the source paths of all files with bugs of the given module, see {@link #readFile(String, String)}
+	 */
+	@NotNull
+	public List<String> getSourcePaths(@NotNull final String name) {
+		final ModuleEntry entry = findModule(name);
+		if (entry == null) {
+			return Collections.emptyList();
+		}
+		final int fileCount = buffer.getInt(entry.offset);
+		final List<String> ret = new ArrayList<>(fileCount);
+		for (int i = 0; i < fileCount; i++) {
+			ret.add(getString(buffer.getInt(entry.offset + 4 + i * FILE_ENTRY_SIZE)));
+		}
+		return ret;
+	}
+
+	@Nullable
+	public SortedBugCollection readModule(@NotNull final String name) {
+		final ModuleEntry entry = findModule(name);
+		return entry != null ? readSection(entry) : null;
+	}
+
+	/**
+	 * @param sourcePath source path as returned by {@link SourceLineAnnotation#getSourcePath()}
+	 * @return the bugs whose primary source line is located in the given file
+	 */
+	@NotNull
+	public List<BugInstance> readFile(@NotNull final String name, @NotNull final String sourcePath) {
+		final ModuleEntry entry = findModule(name);
+		if (entry == null) {
+			return Collections.emptyList();
+		}
+		final int fileCount = buffer.getInt(entry.offset);
+		int low = 0;
+		int high = fileCount - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final int fileOffset = entry.offset + 4 + mid * FILE_ENTRY_SIZE;
+			final int cmp = getString(buffer.getInt(fileOffset)).compareTo(sourcePath);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				final int firstRow = buffer.getInt(fileOffset + 4);
+				final int rowCount = buffer.getInt(fileOffset + 8);
+				final Section section = new Section(entry);
+				final List<BugInstance> ret = new ArrayList<>(rowCount);
+				for (int row = firstRow; row < firstRow + rowCount; row++) {
+					ret.add(section.readBug(row));
+				}
+				return ret;
+			}
+		}
+		return Collections.emptyList();
+	}
+
+	@Nullable
+	private ModuleEntry findModule(@NotNull final String name) {
+		for (final ModuleEntry module : modules) {
+			if (name.equals(module.getName())) {
+				return module;
+			}
+		}
+		return null;
+	}
+
+	@NotNull
+	private SortedBugCollection readSection(@NotNull final ModuleEntry entry) {
+		final SortedBugCollection ret = new SortedBugCollection();
+		ret.getProjectStats().setTotalClasses(entry.classCount);
+		final Section section = new Section(entry);
+		for (int row = 0; row < entry.bugCount; row++) {
+			ret.add(section.readBug(row), false);
+		}
+		return ret;
+	}
+
+	@Nullable
+	private String getString(final int index) {
+		if (index < 0) {
+			return null;
+		}
+		String ret = strings[index];
+		if (ret == null) {
+			final int start = buffer.getInt(stringTableOffset + index * 4);
+			final int end = buffer.getInt(stringTableOffset + index * 4 + 4);
+			final byte[] bytes = new byte[end - start];
+			final ByteBuffer data = buffer.duplicate();
+			data.position(stringTableOffset + (strings.length + 1) * 4 + start);
+			data.get(bytes);
+			ret = new String(bytes, StandardCharsets.UTF_8);
+			strings[index] = ret; // benign race, strings are immutable
+		}
+		return ret;
+	}
+
+	@NotNull
+	private static byte[] writeSection(@NotNull final SortedBugCollection bugCollection, @NotNull final StringTable strings) throws IOException {
+		final List<BugInstance> bugs = new ArrayList<>(bugCollection.getCollection());
+		// stable, so the collection order is kept within a file
+		bugs.sort(Comparator.comparing(bug -> bug.getPrimarySourceLineAnnotation().getSourcePath()));
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+
+		final List<String> files = New.arrayList();
+		final List<Integer> firstRows = New.arrayList();
+		for (int row = 0; row < bugs.size(); row++) {
+			final String path = bugs.get(row).getPrimarySourceLineAnnotation().getSourcePath();
+			if (files.isEmpty() || !files.get(files.size() - 1).equals(path)) {
+				files.add(path);
+				firstRows.add(row);
+			}
+		}
+		out.writeInt(files.size());
+		for (int i = 0; i < files.size(); i++) {
+			final int nextRow = i + 1 < files.size() ? firstRows.get(i + 1) : bugs.size();
+			out.writeInt(strings.add(files.get(i)));
+			out.writeInt(firstRows.get(i));
+			out.writeInt(nextRow - firstRows.get(i));
+		}
+
+		for (final BugInstance bug : bugs) {
+			out.writeInt(strings.add(bug.getType()));
+		}
+		for (final BugInstance bug : bugs) {
+			out.writeByte(bug.getPriority());
+		}
+		for (final BugInstance bug : bugs) {
+			out.writeByte(bug.getBugRank());
+		}
+		for (final BugInstance bug : bugs) {
+			out.writeInt(bug.getPrimarySourceLineAnnotation().getStartLine());
+		}
+		for (final BugInstance bug : bugs) {
+			out.writeInt(bug.getPrimarySourceLineAnnotation().getEndLine());
+		}
+
+		final ByteArrayOutputStream annotationBytes = new ByteArrayOutputStream();
+		final AnnotationWriter annotations = new AnnotationWriter(annotationBytes, strings);
+		for (final BugInstance bug : bugs) {
+			out.writeInt(annotationBytes.size());
+			annotations.writeBug(bug);
+		}
+		out.writeInt(annotationBytes.size());
+		annotationBytes.writeTo(out);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static final class ModuleEntry {
+		@Nullable
+		private final String moduleName;
+
+		@Nullable
+		private final String projectName;
+
+		private final int offset;
+		private final int length;
+		private final int bugCount;
+		private final int classCount;
+
+		ModuleEntry(
+				@Nullable final String moduleName,
+				@Nullable final String projectName,
+				final int offset,
+				final int length,
+				final int bugCount,
+				final int classCount
+		) {
+			this.moduleName = moduleName;
+			this.projectName = projectName;
+			this.offset = offset;
+			this.length = length;
+			this.bugCount = bugCount;
+			this.classCount = classCount;
+		}
+
+		@Nullable
+		String getName() {
+			return moduleName != null ? moduleName : projectName;
+		}
+	}
+
+	/**
+	 * Column offsets of one module section.
+	 */
+	private final class Section {
+		private final int typeColumn;
+		private final int priorityColumn;
+		private final int annotationOffsetColumn;
+		private final int annotationsStart;
+
+		Section(@NotNull final ModuleEntry entry) {
+			final int bugCount = entry.bugCount;
+			typeColumn = entry.offset + 4 + buffer.getInt(entry.offset) * FILE_ENTRY_SIZE;
+			priorityColumn = typeColumn + bugCount * 4;
+			final int rankColumn = priorityColumn + bugCount;
+			final int startLineColumn = rankColumn + bugCount;
+			final int endLineColumn = startLineColumn + bugCount * 4;
+			annotationOffsetColumn = endLineColumn + bugCount * 4;
+			annotationsStart = annotationOffsetColumn + (bugCount + 1) * 4;
+		}
+
+		@NotNull
+		BugInstance readBug(final int row) {
+			final int priority = buffer.get(priorityColumn + row);
+			final BugInstance ret = new BugInstance(getString(buffer.getInt(typeColumn + row * 4)), priority);
+			ret.setPriority(priority);
+			final AnnotationReader in = new AnnotationReader(annotationsStart + buffer.getInt(annotationOffsetColumn + row * 4));
+			final int annotationCount = in.readInt();
+			for (int i = 0; i < annotationCount; i++) {
+				ret.add(in.readAnnotation());
+			}
+			final int propertyCount = in.readInt();
+			for (int i = 0; i < propertyCount; i++) {
+				ret.setProperty(in.readString(), in.readString());
+			}
+			return ret;
+		}
+	}
+
+	/**
+	 * Variable length encoding of the annotations and properties of one bug ;
+	 * strings are written as index into the string table, shifted by one so that 0 is {@code null}.
+	 */
+	private static final class AnnotationWriter {
+		@NotNull
+		private final ByteArrayOutputStream out;
+
+		@NotNull
+		private final StringTable strings;
+
+		AnnotationWriter(@NotNull final ByteArrayOutputStream out, @NotNull final StringTable strings) {
+			this.out = out;
+			this.strings = strings;
+		}
+
+		void writeBug(@NotNull final BugInstance bug) {
+			final List<? extends BugAnnotation> annotations = bug.getAnnotations();
+			writeInt(annotations.size());
+			for (final BugAnnotation annotation : annotations) {
+				writeAnnotation(annotation);
+			}
+			final List<BugProperty> properties = New.arrayList();
+			for (final Iterator<BugProperty> it = bug.propertyIterator(); it.hasNext(); ) {
+				properties.add(it.next());
+			}
+			writeInt(properties.size());
+			for (final BugProperty property : properties) {
+				writeString(property.getName());
+				writeString(property.getValue());
+			}
+		}
+
+		private void writeAnnotation(@NotNull final BugAnnotation annotation) {
+			if (annotation instanceof ClassAnnotation) {
+				final ClassAnnotation classAnnotation = (ClassAnnotation) annotation;
+				out.write(CLASS_ANNOTATION);
+				writeString(classAnnotation.getClassName());
+				writeString(classAnnotation.getSourceFileName());
+			} else if (annotation instanceof MethodAnnotation) {
+				final MethodAnnotation method = (MethodAnnotation) annotation;
+				out.write(METHOD_ANNOTATION);
+				writeString(method.getClassName());
+				writeString(method.getMethodName());
+				writeString(method.getMethodSignature());
+				out.write(method.isStatic() ? 1 : 0);
+			} else if (annotation instanceof FieldAnnotation) {
+				final FieldAnnotation field = (FieldAnnotation) annotation;
+				out.write(FIELD_ANNOTATION);
+				writeString(field.getClassName());
+				writeString(field.getFieldName());
+				writeString(field.getFieldSignature());
+				out.write(field.isStatic() ? 1 : 0);
+			} else if (annotation instanceof SourceLineAnnotation) {
+				out.write(SOURCE_LINE_ANNOTATION);
+				writeSourceLine((SourceLineAnnotation) annotation);
+			} else if (annotation instanceof IntAnnotation) {
+				out.write(INT_ANNOTATION);
+				writeInt(((IntAnnotation) annotation).getValue());
+			} else if (annotation instanceof LocalVariableAnnotation) {
+				final LocalVariableAnnotation variable = (LocalVariableAnnotation) annotation;
+				out.write(LOCAL_VARIABLE_ANNOTATION);
+				writeString(variable.getName());
+				writeInt(variable.getRegister());
+				writeInt(variable.getPC());
+			} else if (annotation instanceof TypeAnnotation) {
+				final TypeAnnotation type = (TypeAnnotation) annotation;
+				out.write(TYPE_ANNOTATION);
+				writeString(type.getTypeDescriptor());
+				writeString(type.getTypeParameters());
+			} else {
+				// StringAnnotation ; unknown annotations keep their position for the message format as string
+				out.write(STRING_ANNOTATION);
+				writeString(annotation instanceof StringAnnotation ? ((StringAnnotation) annotation).getValue() : annotation.toString());
+			}
+			if (annotation instanceof BugAnnotationWithSourceLines && !(annotation instanceof ClassAnnotation)) {
+				// the source lines of a class annotation are derived from its source file name
+				final SourceLineAnnotation sourceLines = ((BugAnnotationWithSourceLines) annotation).getSourceLines();
+				out.write(sourceLines != null ? 1 : 0);
+				if (sourceLines != null) {
+					writeSourceLine(sourceLines);
+				}
+			}
+			writeString(annotation.getDescription());
+		}
+
+		private void writeSourceLine(@NotNull final SourceLineAnnotation sourceLine) {
+			writeString(sourceLine.getClassName());
+			writeString(sourceLine.getSourceFile());
+			writeInt(sourceLine.getStartLine());
+			writeInt(sourceLine.getEndLine());
+			writeInt(sourceLine.getStartBytecode());
+			writeInt(sourceLine.getEndBytecode());
+			out.write(sourceLine.isSynthetic() ? 1 : 0);
+			writeString(sourceLine.getDescription());
+		}
+
+		private void writeString(@Nullable final String value) {
+			writeInt(value != null ? strings.add(value) + 1 : 0);
+		}
+
+		/**
+		 * Zig-zag encoded, so small negative values (f. e. unknown lines) stay short.
+		 */
+		private void writeInt(final int value) {
+			int v = (value << 1) ^ (value >> 31);
+			while ((v & ~0x7F) != 0) {
+				out.write((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			out.write(v);
+		}
+	}
+
+	private final class AnnotationReader {
+		private int position;
+
+		AnnotationReader(final int position) {
+			this.position = position;
+		}
+
+		@NotNull
+		BugAnnotation readAnnotation() {
+			final byte kind = buffer.get(position++);
+			final BugAnnotation ret;
+			switch (kind) {
+				case CLASS_ANNOTATION:
+					ret = new ClassAnnotation(readString(), readString());
+					break;
+				case METHOD_ANNOTATION:
+					ret = new MethodAnnotation(readString(), readString(), readString(), readBoolean());
+					break;
+				case FIELD_ANNOTATION:
+					ret = new FieldAnnotation(readString(), readString(), readString(), readBoolean());
+					break;
+				case SOURCE_LINE_ANNOTATION:
+					ret = readSourceLine();
+					break;
+				case INT_ANNOTATION:
+					ret = new IntAnnotation(readInt());
+					break;
+				case STRING_ANNOTATION:
+					ret = new StringAnnotation(readString());
+					break;
+				case LOCAL_VARIABLE_ANNOTATION:
+					ret = new LocalVariableAnnotation(readString(), readInt(), readInt());
+					break;
+				case TYPE_ANNOTATION:
+					final TypeAnnotation type = new TypeAnnotation(readString());
+					type.setTypeParameters(readString());
+					ret = type;
+					break;
+				default:
+					throw new IllegalStateException("Unknown annotation kind " + kind);
+			}
+			if (ret instanceof BugAnnotationWithSourceLines && !(ret instanceof ClassAnnotation) && readBoolean()) {
+				((BugAnnotationWithSourceLines) ret).setSourceLines(readSourceLine());
+			}
+			final String description = readString();
+			if (description != null) {
+				ret.setDescription(description);
+			}
+			return ret;
+		}
+
+		@NotNull
+		private SourceLineAnnotation readSourceLine() {
+			final SourceLineAnnotation ret = new SourceLineAnnotation(readString(), readString(), readInt(), readInt(), readInt(), readInt());
+			ret.setSynthetic(readBoolean());
+			final String description = readString();
+			if (description != null) {
+				ret.setDescription(description);
+			}
+			return ret;
+		}
+
+		private boolean readBoolean() {
+			return buffer.get(position++) != 0;
+		}
+
+		@Nullable
+		String readString() {
+			return getString(readInt() - 1);
+		}
+
+		int readInt() {
+			int v = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer.get(position++);
+				v |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return (v >>> 1) ^ -(v & 1);
+		}
+	}
+
+	private static final class StringTable {
+		@NotNull
+		private final Map<String, Integer> indexes = New.map();
+
+		@NotNull
+		private final List<String> values = New.arrayList();
+
+		/**
+		 * @return index of the given string, {@code -1} for {@code null}
+		 */
+		int add(@Nullable final String value) {
+			if (value == null) {
+				return -1;
+			}
+			Integer ret = indexes.get(value);
+			if (ret == null) {
+				ret = values.size();
+				indexes.put(value, ret);
+				values.add(value);
+			}
+			return ret;
+		}
+
+		int size() {
+			return values.size();
+		}
+
+		void write(@NotNull final DataOutputStream out) throws IOException {
+			final List<byte[]> encoded = new ArrayList<>(values.size());
+			int offset = 0;
+			out.writeInt(offset);
+			for (final String value : values) {
+				final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+				encoded.add(bytes);
+				offset += bytes.length;
+				out.writeInt(offset);
+			}
+			for (final byte[] bytes : encoded) {
+				out.write(bytes);
+			}
+		}
+	}
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reshiftsecurity.plugins.intellij.core;
+
+import com.google.gson.stream.JsonWriter;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.UserDataHolderEx;
+import com.reshiftsecurity.plugins.intellij.common.util.New;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters, timers and histograms of one scan, recorded on the hot paths of the analysis
+ * (from analysis threads and EDT concurrently, all accumulators are lock-free).
+ * <p>
+ * {@link FindBugsStarter} starts a new registry per scan, {@link #get(Project)} returns it until the next scan starts,
+ * so work done after the analysis (EDT delivery, annotation refresh) is still recorded.
+ * The registry is kept with the {@link FindBugsResult} and shown by the analysis run details.
+ */
+public final class ScanMetrics {
+
+	private static final Key<ScanMetrics> KEY = Key.create("ReshiftSecurity.ScanMetrics");
+
+	public static final String SCAN = "scan";
+	public static final String COLLECT_FILES = "collect.files";
+	public static final String CONFIGURE = "configure";
+	public static final String PLUGIN_LOAD = "plugin.load";
+	public static final String FINDBUGS_PASS = "findbugs.pass.";
+	public static final String BUGS_REPORTED = "bugs.reported";
+	public static final String EDT_DELIVERY_LATENCY = "edt.delivery.latency";
+	public static final String EDT_DELIVERY_BATCH_SIZE = "edt.delivery.batchSize";
+	public static final String TREE_ADD_NODES = "tree.addNodes";
+	public static final String ANNOTATION_REFRESH = "annotation.refresh";
+	public static final String REPORT_MERGE = "report.merge";
+
+	private final long startTime = System.currentTimeMillis();
+	private final ConcurrentMap<String, Counter> counters = New.concurrentMap();
+	private final ConcurrentMap<String, Timer> timers = New.concurrentMap();
+	private final ConcurrentMap<String, Histogram> histograms = New.concurrentMap();
+	private final Queue<ModuleRun> moduleRuns = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Replaces the registry of the project by a new one.
+	 */
+	@NotNull
+	static ScanMetrics start(@NotNull final Project project) {
+		final ScanMetrics ret = new ScanMetrics();
+		project.putUserData(KEY, ret);
+		return ret;
+	}
+
+	/**
+	 * @return the registry of the current (or last) scan of the project
+	 */
+	@NotNull
+	public static ScanMetrics get(@NotNull final Project project) {
+		final ScanMetrics ret = project.getUserData(KEY);
+		if (ret != null) {
+			return ret;
+		}
+		if (project instanceof UserDataHolderEx) {
+			return ((UserDataHolderEx) project).putUserDataIfAbsent(KEY, new ScanMetrics());
+		}
+		return start(project);
+	}
+
+	@NotNull
+	public Counter counter(@NotNull final String name) {
+		return counters.computeIfAbsent(name, k -> new Counter());
+	}
+
+	@NotNull
+	public Timer timer(@NotNull final String name) {
+		return timers.computeIfAbsent(name, k -> new Timer());
+	}
+
+	@NotNull
+	public Histogram histogram(@NotNull final String name) {
+		return histograms.computeIfAbsent(name, k -> new Histogram());
+	}
+
+	void addModuleRun(@NotNull final ModuleRun moduleRun) {
+		moduleRuns.add(moduleRun);
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * @return the finished module analyses in order of completion
+	 */
+	@NotNull
+	public List<ModuleRun> getModuleRuns() {
+		return Collections.unmodifiableList(new ArrayList<>(moduleRuns));
+	}
+
+	@NotNull
+	public Map<String, Counter> getCounters() {
+		return Collections.unmodifiableMap(new TreeMap<>(counters));
+	}
+
+	@NotNull
+	public Map<String, Timer> getTimers() {
+		return Collections.unmodifiableMap(new TreeMap<>(timers));
+	}
+
+	@NotNull
+	public Map<String, Histogram> getHistograms() {
+		return Collections.unmodifiableMap(new TreeMap<>(histograms));
+	}
+
+	/**
+	 * @return analyzed classes per second of analysis wall time (0 if unknown)
+	 */
+	public double getClassesPerSecond() {
+		long classes = 0;
+		for (final ModuleRun run : moduleRuns) {
+			classes += run.classCount;
+		}
+		final long nanos = timer(SCAN).getTotalNanos();
+		return nanos > 0 ? classes * (double) TimeUnit.SECONDS.toNanos(1) / nanos : 0;
+	}
+
+	public void writeJson(@NotNull final Writer writer) throws IOException {
+		final JsonWriter json = new JsonWriter(writer);
+		json.setIndent("  ");
+		json.beginObject();
+		json.name("startTime").value(startTime);
+		json.name("classesPerSecond").value(getClassesPerSecond());
+		json.name("modules").beginArray();
+		for (final ModuleRun run : getModuleRuns()) {
+			json.beginObject();
+			json.name("name").value(run.name);
+			json.name("classes").value(run.classCount);
+			json.name("wallNanos").value(run.wallNanos);
+			json.name("cpuNanos").value(run.cpuNanos);
+			json.name("allocatedBytes").value(run.allocatedBytes);
+			json.endObject();
+		}
+		json.endArray();
+		json.name("counters").beginObject();
+		for (final Map.Entry<String, Counter> entry : getCounters().entrySet()) {
+			json.name(entry.getKey()).value(entry.getValue().get());
+		}
+		json.endObject();
+		json.name("timers").beginObject();
+		for (final Map.Entry<String, Timer> entry : getTimers().entrySet()) {
+			final Timer timer = entry.getValue();
+			json.name(entry.getKey()).beginObject();
+			json.name("count").value(timer.getCount());
+			json.name("totalNanos").value(timer.getTotalNanos());
+			json.name("maxNanos").value(timer.getMaxNanos());
+			json.endObject();
+		}
+		json.endObject();
+		json.name("histograms").beginObject();
+		for (final Map.Entry<String, Histogram> entry : getHistograms().entrySet()) {
+			final Histogram histogram = entry.getValue();
+			json.name(entry.getKey()).beginObject();
+			json.name("count").value(histogram.getCount());
+			json.name("sum").value(histogram.getSum());
+			json.name("max").value(histogram.getMax());
+			json.name("p50").value(histogram.getPercentile(0.5));
+			json.name("p95").value(histogram.getPercentile(0.95));
+			json.endObject();
+		}
+		json.endObject();
+		json.endObject();
+		json.flush();
+	}
+
+	public static final class Counter {
+		private final LongAdder value = new LongAdder();
+
+		public void add(final long delta) {
+			value.add(delta);
+		}
+
+		public void increment() {
+			value.increment();
+		}
+
+		public long get() {
+			return value.sum();
+		}
+	}
+
+	public static final class Timer {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+		/**
+		 * @return the value of {@link System#nanoTime()} to pass to {@link #stop(long)}
+		 */
+		public long start() {
+			return System.nanoTime();
+		}
+
+		public void stop(final long startNanos) {
+			record(System.nanoTime() - startNanos);
+		}
+
+		public void record(final long nanos) {
+			count.increment();
+			totalNanos.add(nanos);
+			maxNanos.accumulate(nanos);
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getTotalNanos() {
+			return totalNanos.sum();
+		}
+
+		public long getMaxNanos() {
+			return maxNanos.get();
+		}
+	}
+
+	/**
+	 * Histogram of non-negative values with one bucket per power of two,
+	 * so percentiles are upper bounds within a factor of two.
+	 */
+	public static final class Histogram {
+		private final LongAdder[] buckets = new LongAdder[Long.SIZE + 1];
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sum = new LongAdder();
+		private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+		Histogram() {
+			for (int i = 0; i < buckets.length; i++) {
+				buckets[i] = new LongAdder();
+			}
+		}
+
+		public void record(final long value) {
+			final long v = Math.max(0, value);
+			buckets[Long.SIZE - Long.numberOfLeadingZeros(v)].increment();
+			count.increment();
+			sum.add(v);
+			max.accumulate(v);
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getSum() {
+			return sum.sum();
+		}
+
+		public long getMax() {
+			return max.get();
+		}
+
+		/**
+		 * @param fraction 0..1, e.g. 0.95
+		 * @return the upper bound of the bucket holding the percentile, at most {@link #getMax()}
+		 */
+		public long getPercentile(final double fraction) {
+			final long total = getCount();
+			if (total == 0) {
+				return 0;
+			}
+			final long rank = (long) Math.ceil(fraction * total);
+			long seen = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				seen += buckets[i].sum();
+				if (seen >= rank) {
+					final long upperBound = i == 0 ? 0 : i >= Long.SIZE ? Long.MAX_VALUE : (1L << i) - 1;
+					return Math.min(upperBound, getMax());
+				}
+			}
+			return getMax();
+		}
+	}
+
+	/**
+	 * Resources used by the analysis of one module; CPU time and allocated bytes are -1 if the JVM does not measure them.
+	 */
+	public static final class ModuleRun {
+		@NotNull
+		private final String name;
+		private final int classCount;
+		private final long wallNanos;
+		private final long cpuNanos;
+		private final long allocatedBytes;
+
+		ModuleRun(@NotNull final String name, final int classCount, final long wallNanos, final long cpuNanos, final long allocatedBytes) {
+			this.name = name;
+			this.classCount = classCount;
+			this.wallNanos = wallNanos;
+			this.cpuNanos = cpuNanos;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		@NotNull
+		public String getName() {
+			return name;
+		}
+
+		public int getClassCount() {
+			return classCount;
+		}
+
+		public long getWallNanos() {
+			return wallNanos;
+		}
+
+		public long getCpuNanos() {
+			return cpuNanos;
+		}
+
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+	}
+
+	/**
+	 * Measures wall time, CPU time and allocated bytes of the current thread.
+	 */
+	static final class ThreadUsage {
+		private final long wallNanos;
+		private final long cpuNanos;
+		private final long allocatedBytes;
+
+		private ThreadUsage(final long wallNanos, final long cpuNanos, final long allocatedBytes) {
+			this.wallNanos = wallNanos;
+			this.cpuNanos = cpuNanos;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		@NotNull
+		static ThreadUsage now() {
+			final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			final long cpu = bean.isCurrentThreadCpuTimeSupported() && bean.isThreadCpuTimeEnabled() ? bean.getCurrentThreadCpuTime() : -1;
+			long allocated = -1;
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+				if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+					allocated = sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+				}
+			}
+			return new ThreadUsage(System.nanoTime(), cpu, allocated);
+		}
+
+		@NotNull
+		ModuleRun toModuleRun(@NotNull final String name, final int classCount) {
+			final ThreadUsage end = now();
+			return new ModuleRun(
+					name,
+					classCount,
+					end.wallNanos - wallNanos,
+					delta(cpuNanos, end.cpuNanos),
+					delta(allocatedBytes, end.allocatedBytes)
+			);
+		}
+
+		private static long delta(final long start, final long end) {
+			return start < 0 || end < 0 ? -1 : end - start;
+		}
+	}
+}
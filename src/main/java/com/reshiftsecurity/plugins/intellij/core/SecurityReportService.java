@@ -20,28 +20,33 @@
 
 package com.reshiftsecurity.plugins.intellij.core;
 
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.components.PersistentStateComponent;
 import com.intellij.openapi.components.State;
 import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.xmlb.Constants;
 import com.intellij.util.xmlb.XmlSerializerUtil;
 import com.intellij.util.xmlb.annotations.Tag;
+import com.intellij.util.xmlb.annotations.Transient;
 import com.intellij.util.xmlb.annotations.XCollection;
 import com.reshiftsecurity.analytics.AnalyticsAction;
 import com.reshiftsecurity.plugins.intellij.common.util.HashUtil;
 import com.reshiftsecurity.plugins.intellij.common.util.SourceCodeUtil;
+import com.reshiftsecurity.plugins.intellij.common.util.SourceLineCache;
 import com.reshiftsecurity.plugins.intellij.service.AnalyticsService;
+import com.reshiftsecurity.results.ScanHistoryStore;
 import com.reshiftsecurity.results.SecurityIssue;
+import com.reshiftsecurity.results.SecurityIssueIndex;
+import com.reshiftsecurity.results.SecurityReportStore;
 import edu.umd.cs.findbugs.BugCollection;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.SourceLineAnnotation;
-import org.apache.commons.collections.CollectionUtils;
-import org.eclipse.jgit.lib.ConfigConstants;
-import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -49,6 +54,14 @@ import java.io.File;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 @State(
@@ -59,7 +72,11 @@ import java.util.Set;
 )
 public class SecurityReportService implements PersistentStateComponent<SecurityReportService> {
 
-    private VirtualFile[] projectSourceFiles;
+    private static final Logger LOGGER = Logger.getInstance(SecurityReportService.class);
+
+    private static final String STORE_FILE_NAME = "reshiftsecurity-intellij-report.log";
+
+    private static final String HISTORY_FILE_NAME = "reshiftsecurity-intellij-history.log";
 
     private Project currentProject;
 
@@ -87,9 +104,16 @@ public class SecurityReportService implements PersistentStateComponent<SecurityR
     @Tag
     public int newFixCount = 0;
 
+    /**
+     * Issues saved in the XML state by earlier versions; moved to the {@link SecurityReportStore} on first use.
+     */
     @Tag(value = "securityIssues")
     @XCollection(elementName = Constants.LIST)
-    public ArrayList<SecurityIssue> securityIssues;
+    private ArrayList<SecurityIssue> securityIssues;
+
+    private SecurityReportStore store;
+
+    private ScanHistoryStore scanHistory;
 
     @Nullable
     @Override
@@ -100,89 +124,288 @@ public class SecurityReportService implements PersistentStateComponent<SecurityR
     @Override
     public void loadState(final SecurityReportService state) { XmlSerializerUtil.copyBean(state, this); }
 
+    /**
+     * Git metadata is cached by {@link GitMetadataService}, so this is cheap.
+     */
     @NotNull
     public static SecurityReportService getInstance(@NotNull final Project project) {
         SecurityReportService service = project.getService(SecurityReportService.class);
         service.projectName = project.getName();
         service.currentProject = project;
-        service.projectSourceFiles = ProjectRootManager.getInstance(project).getContentSourceRoots();
-        try {
-            Repository existingRepo = new FileRepositoryBuilder()
-                    .setGitDir(new File(String.format("%s/.git", project.getBasePath())))
-                    .build();
-            service.isGitProject = true;
-            Set<String> remoteNames = existingRepo.getRemoteNames();
-            service.gitRepo = existingRepo.getConfig().getString(
-                    ConfigConstants.CONFIG_KEY_REMOTE,
-                    CollectionUtils.isEmpty(remoteNames) ? "origin" : remoteNames.stream().findFirst().get(),
-                    ConfigConstants.CONFIG_KEY_URL);
-            service.gitBranch = existingRepo.getBranch();
-        } catch (IOException e) {
-            // might not be a git repo, fail silently as this is not a core function of the plugin
-            e.printStackTrace();
-        }
+        GitMetadataService.GitRepositoryInfo repository = GitMetadataService.getInstance(project).getPrimaryRepository();
+        service.isGitProject = repository != null;
+        service.gitRepo = repository != null ? StringUtil.notNullize(repository.getRemoteUrl()) : "";
+        service.gitBranch = repository != null ? StringUtil.notNullize(repository.getBranch()) : "";
         return service;
     }
 
-    private boolean issueExistsInSet(SecurityIssue issue, ArrayList<SecurityIssue> issueSet) {
-        if (issueSet == null)
-            return false;
+    /**
+     * @return copies of all issues of the report, including the issues fixed by the last scan
+     */
+    @NotNull
+    @Transient
+    public List<SecurityIssue> getSecurityIssues() {
+        return getStore().getIssues();
+    }
 
-        for (SecurityIssue i : issueSet) {
-            if (i.isSameAs(issue)) {
-                return true;
+    /**
+     * @return the history of completed scans, e.g. to compare two scans or for the issue count over time
+     */
+    @NotNull
+    @Transient
+    public synchronized ScanHistoryStore getScanHistory() {
+        if (scanHistory == null) {
+            scanHistory = new ScanHistoryStore(new File(getStoreDir(), HISTORY_FILE_NAME));
+            try {
+                scanHistory.load();
+            } catch (IOException e) {
+                LOGGER.warn("Could not read scan history, starting with an empty history", e);
             }
         }
-        return false;
+        return scanHistory;
     }
 
-    private boolean issueExists(SecurityIssue issue) {
-        return issueExistsInSet(issue, securityIssues);
+    @NotNull
+    private synchronized SecurityReportStore getStore() {
+        if (store == null) {
+            store = new SecurityReportStore(new File(getStoreDir(), STORE_FILE_NAME));
+            try {
+                store.load();
+            } catch (IOException e) {
+                LOGGER.warn("Could not read security report, starting with an empty report", e);
+            }
+            if (securityIssues != null) {
+                boolean migrated = store.size() > 0;
+                if (!migrated) {
+                    SecurityReportStore.Changes changes = new SecurityReportStore.Changes();
+                    changes.addAll(securityIssues);
+                    migrated = applyChanges(changes);
+                }
+                if (migrated) { // otherwise the legacy report is kept in the XML state until it is written
+                    securityIssues = null;
+                }
+            }
+        }
+        return store;
     }
 
-    public void addBugCollection(BugCollection bugCollection) {
-        ArrayList<SecurityIssue> latestIssues = new ArrayList<>();
-        ArrayList<SecurityIssue> fixedItems = new ArrayList<>();
-        ArrayList<SecurityIssue> newItems = new ArrayList<>();
-
-        for (BugInstance bug: bugCollection.getCollection()) {
-            SourceLineAnnotation mainSourceLineAnnotation = bug.getPrimarySourceLineAnnotation();
-            SecurityIssue issue = new SecurityIssue();
-            issue.categoryName = bug.getType();
-            issue.classFQN = mainSourceLineAnnotation.getClassName();
-            issue.lineNumber = mainSourceLineAnnotation.getStartLine();
-            issue.methodFullSignature = (bug.getPrimaryMethod() != null ? bug.getPrimaryMethod().getFullMethod(null) : "");
-            issue.code = SourceCodeUtil.getTrimmedSourceLine(projectSourceFiles, mainSourceLineAnnotation);
-            issue.cweId = bug.getCWEid();
-            issue.issueHash = HashUtil.hashThis(String.format("%s|%s", issue.cweId, bug.getInstanceKey()));
-            issue.isNew = !issueExists(issue);
-            if (issue.isNew) {
-                newItems.add(issue);
-                issue.detectionDatetime = LocalDateTime.now().toString();
+    /**
+     * @return the directory of the XML state ({@code $PROJECT_CONFIG_DIR$}), or the system directory for the default project
+     */
+    @NotNull
+    private File getStoreDir() {
+        String projectFilePath = currentProject.getProjectFilePath();
+        if (projectFilePath != null) {
+            File dir = new File(projectFilePath).getParentFile();
+            if (dir != null) {
+                return dir;
             }
-            latestIssues.add(issue);
         }
+        return new File(PathManager.getSystemPath(), "reshiftsecurity" + File.separator + currentProject.getLocationHash());
+    }
+
+    /**
+     * @return false if the changes could not be written; they are applied in memory anyway
+     */
+    private boolean applyChanges(@NotNull SecurityReportStore.Changes changes) {
+        try {
+            store.apply(changes);
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Could not save security report", e);
+            return false;
+        }
+    }
+
+    /**
+     * Starts collecting the results of one scan; the report is only changed by {@link ScanTransaction#commit()}.
+     */
+    @NotNull
+    public ScanTransaction beginScan() {
+        return new ScanTransaction();
+    }
+
+    /**
+     * Issues found again keep their id in the store, so only changed issues are written.
+     * The merge works on copies of the stored issues, the store is only changed by applying the changes.
+     */
+    private void merge(@NotNull List<BugCollection> bugCollections, @NotNull Set<String> analyzedClasses) {
+        SecurityReportStore reportStore = getStore();
+        Map<Integer, SecurityIssue> previousIssues = reportStore.getIssuesById();
+        Map<SecurityIssue, Integer> previousIds = new IdentityHashMap<>();
+        for (Map.Entry<Integer, SecurityIssue> entry : previousIssues.entrySet()) {
+            previousIds.put(entry.getValue(), entry.getKey());
+        }
+        SecurityReportStore.Changes changes = new SecurityReportStore.Changes();
+        Set<SecurityIssue> redetectedIssues = Collections.newSetFromMap(new IdentityHashMap<>());
+        int fixedCount = 0;
+        int newCount = 0;
+        SecurityIssueIndex previousIssueIndex = new SecurityIssueIndex(previousIssues.values());
+        SecurityIssueIndex latestIssueIndex = new SecurityIssueIndex();
+        VirtualFile[] projectSourceFiles = ReadAction.compute(() -> ProjectRootManager.getInstance(currentProject).getContentSourceRoots());
+        SourceLineCache sourceLines = new SourceLineCache(projectSourceFiles);
 
-        if (securityIssues != null) {
-            // in this case there might be existing issues in the last report (securityIssues)
-            // that has been fixed. loop through and mark those as fixed in the new report
-            for (SecurityIssue existingIssue: securityIssues) {
-                if (!existingIssue.isFixed) { // only process issues that have not been fixed before
-                    existingIssue.isFixed = !issueExistsInSet(existingIssue, latestIssues);
-                    if (existingIssue.isFixed) {
-                        fixedItems.add(existingIssue);
-                        existingIssue.fixDatetime = LocalDateTime.now().toString();
-                        latestIssues.add(existingIssue);
+        for (BugCollection bugCollection : bugCollections) {
+            for (BugInstance bug : bugCollection.getCollection()) {
+                SourceLineAnnotation mainSourceLineAnnotation = bug.getPrimarySourceLineAnnotation();
+                SecurityIssue issue = new SecurityIssue();
+                issue.categoryName = bug.getType();
+                issue.classFQN = mainSourceLineAnnotation.getClassName();
+                issue.lineNumber = mainSourceLineAnnotation.getStartLine();
+                issue.methodFullSignature = (bug.getPrimaryMethod() != null ? bug.getPrimaryMethod().getFullMethod(null) : "");
+                issue.code = SourceCodeUtil.getTrimmedSourceLine(sourceLines, mainSourceLineAnnotation);
+                issue.cweId = bug.getCWEid();
+                issue.issueHash = HashUtil.hashThis(String.format("%s|%s", issue.cweId, bug.getInstanceKey()));
+                SecurityIssue previousIssue = previousIssueIndex.find(issue);
+                issue.isNew = previousIssue == null;
+                if (issue.isNew) {
+                    newCount++;
+                    issue.detectionDatetime = LocalDateTime.now().toString();
+                    changes.add(issue);
+                } else if (redetectedIssues.add(previousIssue)) {
+                    if (updateRedetected(previousIssue, issue)) {
+                        changes.update(previousIds.get(previousIssue), previousIssue);
                     }
+                    issue = previousIssue;
+                } else {
+                    changes.add(issue); // several findings match the same issue of the last report
                 }
+                latestIssueIndex.add(issue);
+            }
+        }
+
+        // there might be existing issues in the last report that has been fixed. loop through and mark those
+        // as fixed, but only in the classes analyzed by this scan, issues of other classes are kept as they are
+        for (Map.Entry<Integer, SecurityIssue> entry : previousIssues.entrySet()) {
+            int id = entry.getKey();
+            SecurityIssue existingIssue = entry.getValue();
+            if (redetectedIssues.contains(existingIssue)) {
+                continue;
+            }
+            boolean analyzed = existingIssue.classFQN != null && analyzedClasses.contains(existingIssue.classFQN);
+            if (latestIssueIndex.contains(existingIssue)) {
+                changes.remove(id); // superseded by an issue of this scan
+            } else if (!analyzed) {
+                latestIssueIndex.add(existingIssue);
+            } else if (!existingIssue.isFixed) { // only process issues that have not been fixed before
+                existingIssue.isFixed = true;
+                existingIssue.fixDatetime = LocalDateTime.now().toString();
+                changes.update(id, existingIssue);
+                latestIssueIndex.add(existingIssue);
+                fixedCount++;
+            } else {
+                changes.remove(id); // fixed in an earlier scan
             }
         }
-        securityIssues = latestIssues;
-        newFixCount = fixedItems.size();
-        newVulnerabilityCount = newItems.size();
+        applyChanges(changes);
+        recordScan(reportStore, changes);
+        newFixCount = fixedCount;
+        newVulnerabilityCount = newCount;
         totalFixCount += newFixCount;
-        totalVulnerabilityCount = securityIssues.size();
+        totalVulnerabilityCount = reportStore.size();
 
         AnalyticsService.getInstance().recordMetric(AnalyticsAction.FIXES_METRIC, newFixCount);
     }
+
+    private void recordScan(@NotNull SecurityReportStore reportStore, @NotNull SecurityReportStore.Changes changes) {
+        ScanHistoryStore history = getScanHistory();
+        Map<Integer, SecurityIssue> changed;
+        if (history.isEmpty()) {
+            changed = reportStore.getIssuesById(); // the first scan is recorded with all issues
+        } else {
+            changed = new LinkedHashMap<>();
+            List<SecurityIssue> added = changes.getAdded();
+            List<Integer> addedIds = changes.getAddedIds();
+            for (int i = 0; i < addedIds.size(); i++) {
+                changed.put(addedIds.get(i), added.get(i));
+            }
+            changed.putAll(changes.getUpdated());
+        }
+        try {
+            history.record(System.currentTimeMillis(), changed, changes.getRemoved());
+        } catch (IOException e) {
+            LOGGER.warn("Could not save scan history", e);
+            return;
+        }
+        try {
+            history.dropOldScans();
+        } catch (IOException e) {
+            LOGGER.warn("Could not drop old scans of the scan history, the scan is saved", e);
+        }
+    }
+
+    /**
+     * Moves the issue of the last report to the location found by this scan.
+     *
+     * @return true if the issue changed
+     */
+    private static boolean updateRedetected(@NotNull SecurityIssue previousIssue, @NotNull SecurityIssue issue) {
+        boolean changed = !Objects.equals(previousIssue.categoryName, issue.categoryName)
+                || !Objects.equals(previousIssue.classFQN, issue.classFQN)
+                || previousIssue.lineNumber != issue.lineNumber
+                || !Objects.equals(previousIssue.methodFullSignature, issue.methodFullSignature)
+                || !Objects.equals(previousIssue.code, issue.code)
+                || previousIssue.cweId != issue.cweId
+                || !Objects.equals(previousIssue.issueHash, issue.issueHash)
+                || !Boolean.FALSE.equals(previousIssue.isFixed)
+                || !Boolean.FALSE.equals(previousIssue.isNew)
+                || previousIssue.fixDatetime != null;
+        previousIssue.categoryName = issue.categoryName;
+        previousIssue.classFQN = issue.classFQN;
+        previousIssue.lineNumber = issue.lineNumber;
+        previousIssue.methodFullSignature = issue.methodFullSignature;
+        previousIssue.code = issue.code;
+        previousIssue.cweId = issue.cweId;
+        previousIssue.issueHash = issue.issueHash;
+        previousIssue.isFixed = false;
+        previousIssue.isNew = false;
+        previousIssue.fixDatetime = null;
+        return changed;
+    }
+
+    /**
+     * Collects the bug collections of all modules of one scan, so the report is diffed once per scan
+     * instead of once per module. Not thread safe, the modules are added by the thread running the scan.
+     */
+    public final class ScanTransaction {
+        private final List<BugCollection> bugCollections = new ArrayList<>();
+        private final Set<String> analyzedClasses = new HashSet<>();
+        private boolean committed;
+
+        private ScanTransaction() {
+        }
+
+        /**
+         * @param analyzedClasses dotted names of the classes the module analysis covered;
+         *                        issues of other classes are neither fixed nor removed by the commit
+         */
+        public void add(@NotNull BugCollection bugCollection, @NotNull Collection<String> analyzedClasses) {
+            if (committed) {
+                throw new IllegalStateException("Scan already committed");
+            }
+            bugCollections.add(bugCollection);
+            this.analyzedClasses.addAll(analyzedClasses);
+            for (BugInstance bug : bugCollection.getCollection()) {
+                this.analyzedClasses.add(bug.getPrimarySourceLineAnnotation().getClassName());
+            }
+        }
+
+        /**
+         * Merges all added modules into the report. A scan which is canceled or fails is not committed,
+         * so the report keeps the result of the last complete scan.
+         */
+        public void commit() {
+            if (committed) {
+                throw new IllegalStateException("Scan already committed");
+            }
+            committed = true;
+            ScanMetrics.Timer timer = ScanMetrics.get(currentProject).timer(ScanMetrics.REPORT_MERGE);
+            long start = timer.start();
+            try {
+                merge(bugCollections, analyzedClasses);
+            } finally {
+                timer.stop(start);
+            }
+        }
+    }
 }
@@ -53,6 +53,33 @@ public final class WorkspaceSettings implements PersistentStateComponent<Workspa
 	@Tag
 	public boolean runInBackground = true;
 
+	/**
+	 * Analyze the modules of a multi-module scan concurrently.
+	 * Only used when no module overrides the project settings.
+	 */
+	@Tag
+	public boolean analyzeModulesInParallel = false;
+
+	/**
+	 * Maximum number of modules analyzed at the same time, {@code 0} means number of available processors.
+	 */
+	@Tag
+	public int analysisThreadCount = 0;
+
+	/**
+	 * Reuse the findings of class files which did not change since the last analysis.
+	 *
+	 * @see ResultCacheService
+	 */
+	@Tag
+	public boolean reuseResultsOfUnchangedClasses = false;
+
+	/**
+	 * Disable detectors which can not report any finding accepted by {@link Reporter}.
+	 */
+	@Tag
+	public boolean disableNonSecurityDetectors = true;
+
 	/**
 	 * Last used export directory for "Export Bug Collection".
 	 */
@@ -71,6 +98,12 @@ public final class WorkspaceSettings implements PersistentStateComponent<Workspa
 	@Tag
 	public boolean exportBugCollectionAsHtml = true;
 
+	/**
+	 * Last used setting for "Export Bug Collection".
+	 */
+	@Tag
+	public boolean exportBugCollectionAsSarif = false;
+
 	/**
 	 * Last used setting for "Export Bug Collection".
 	 */
@@ -19,8 +19,14 @@
  */
 package com.reshiftsecurity.plugins.intellij.gui.common;
 
+import com.intellij.ide.actions.RevealFileAction;
+import com.intellij.openapi.fileChooser.FileChooserFactory;
+import com.intellij.openapi.fileChooser.FileSaverDescriptor;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.DialogBuilder;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileWrapper;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.ui.JBUI;
 import com.reshiftsecurity.analytics.AnalyticsAction;
@@ -28,9 +34,12 @@ import com.reshiftsecurity.plugins.intellij.common.VersionManager;
 import com.reshiftsecurity.plugins.intellij.common.util.New;
 import com.reshiftsecurity.plugins.intellij.core.FindBugsProject;
 import com.reshiftsecurity.plugins.intellij.core.FindBugsResult;
+import com.reshiftsecurity.plugins.intellij.core.ScanMetrics;
 import com.reshiftsecurity.plugins.intellij.resources.GuiResources;
 import com.reshiftsecurity.plugins.intellij.service.AnalyticsService;
+import org.jetbrains.annotations.NotNull;
 
+import javax.swing.AbstractAction;
 import javax.swing.JComponent;
 import javax.swing.JEditorPane;
 import javax.swing.JPanel;
@@ -43,7 +52,16 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @SuppressWarnings({"HardcodedFileSeparator"})
 public class AnalysisRunDetailsDialog {
@@ -63,6 +81,11 @@ public class AnalysisRunDetailsDialog {
 		html.append("<p><h2>").append(VersionManager.getName()).append(": <b>found ").append(bugCount).append(" Security Bugs in ").append(numClasses).append(numClasses > 1 ? " classes" : " class").append("</b>").append("</h2></p>");
 		html.append("<p>").append("<font size='10px'>using ").append(VersionManager.getFullVersion()).append("</font>").append("</p>");
 
+		final ScanMetrics metrics = result.getMetrics();
+		if (metrics != null) {
+			appendMetrics(html, metrics);
+		}
+
 		for (final edu.umd.cs.findbugs.Project bugsProject : result.getProjects()) {
 
 			html.append("<p><h2>").append(bugsProject.getProjectName()).append("</h3></p>");
@@ -129,6 +152,9 @@ public class AnalysisRunDetailsDialog {
 
 
 		final DialogBuilder dialogBuilder = new DialogBuilder(project);
+		if (metrics != null) {
+			dialogBuilder.addAction(new ExportMetricsAction(project, metrics));
+		}
 		dialogBuilder.addCloseButton();
 		dialogBuilder.setTitle(StringUtil.capitalizeWords("Reshift analysis details", true));
 		final JComponent panel = new JPanel(new BorderLayout());
@@ -167,4 +193,88 @@ public class AnalysisRunDetailsDialog {
 
 		return dialogBuilder;
 	}
+
+	private static void appendMetrics(@NotNull final StringBuilder html, @NotNull final ScanMetrics metrics) {
+		html.append("<p><h2>Scan Statistics</h2></p>");
+		html.append("<p>").append(formatDecimal(metrics.getClassesPerSecond())).append(" classes/sec, ")
+				.append(formatMillis(metrics.timer(ScanMetrics.SCAN).getTotalNanos())).append(" ms total</p>");
+
+		final List<ScanMetrics.ModuleRun> moduleRuns = metrics.getModuleRuns();
+		if (!moduleRuns.isEmpty()) {
+			html.append("<p><h3>Modules").append(" <font size='9px' color='gray'>(").append(moduleRuns.size()).append(")</h3></p>");
+			html.append("<table><tr><th align='left'>Module</th><th>Classes</th><th>Wall ms</th><th>CPU ms</th><th>Allocated MB</th></tr>");
+			for (final ScanMetrics.ModuleRun run : moduleRuns) {
+				html.append("<tr><td>").append(StringUtil.escapeXmlEntities(run.getName())).append("</td>");
+				html.append("<td align='right'>").append(run.getClassCount()).append("</td>");
+				html.append("<td align='right'>").append(formatMillis(run.getWallNanos())).append("</td>");
+				html.append("<td align='right'>").append(run.getCpuNanos() < 0 ? "n/a" : formatMillis(run.getCpuNanos())).append("</td>");
+				html.append("<td align='right'>").append(run.getAllocatedBytes() < 0 ? "n/a" : formatDecimal(run.getAllocatedBytes() / (1024.0 * 1024.0))).append("</td></tr>");
+			}
+			html.append("</table>");
+		}
+
+		html.append("<p><h3>Timers</h3></p>");
+		html.append("<table><tr><th align='left'>Name</th><th>Count</th><th>Total ms</th><th>Max ms</th></tr>");
+		for (final Map.Entry<String, ScanMetrics.Timer> entry : metrics.getTimers().entrySet()) {
+			final ScanMetrics.Timer timer = entry.getValue();
+			html.append("<tr><td>").append(entry.getKey()).append("</td>");
+			html.append("<td align='right'>").append(timer.getCount()).append("</td>");
+			html.append("<td align='right'>").append(formatMillis(timer.getTotalNanos())).append("</td>");
+			html.append("<td align='right'>").append(formatMillis(timer.getMaxNanos())).append("</td></tr>");
+		}
+		html.append("</table>");
+
+		html.append("<ul>");
+		for (final Map.Entry<String, ScanMetrics.Counter> entry : metrics.getCounters().entrySet()) {
+			html.append("<li>").append(entry.getKey()).append(": ").append(entry.getValue().get()).append("</li>");
+		}
+		for (final Map.Entry<String, ScanMetrics.Histogram> entry : metrics.getHistograms().entrySet()) {
+			final ScanMetrics.Histogram histogram = entry.getValue();
+			html.append("<li>").append(entry.getKey()).append(": ").append(histogram.getCount()).append(" samples, p50 ")
+					.append(histogram.getPercentile(0.5)).append(", p95 ").append(histogram.getPercentile(0.95))
+					.append(", max ").append(histogram.getMax()).append("</li>");
+		}
+		html.append("</ul>");
+	}
+
+	@NotNull
+	private static String formatMillis(final long nanos) {
+		return String.valueOf(TimeUnit.NANOSECONDS.toMillis(nanos));
+	}
+
+	@NotNull
+	private static String formatDecimal(final double value) {
+		return String.format(Locale.ENGLISH, "%.1f", value);
+	}
+
+	private static final class ExportMetricsAction extends AbstractAction {
+		private final Project project;
+		private final ScanMetrics metrics;
+
+		ExportMetricsAction(@NotNull final Project project, @NotNull final ScanMetrics metrics) {
+			super("Export Statistics...");
+			this.project = project;
+			this.metrics = metrics;
+		}
+
+		@Override
+		public void actionPerformed(final ActionEvent e) {
+			final VirtualFile placeholder = null; // save is ambiguous with null
+			final VirtualFileWrapper wrapper = FileChooserFactory.getInstance().createSaveFileDialog(
+					new FileSaverDescriptor("Export Scan Statistics", "Save the scan statistics as JSON", "json"),
+					project
+			).save(placeholder, "reshift-scan-statistics");
+			if (wrapper == null) {
+				return;
+			}
+			final File file = wrapper.getFile();
+			try (final Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+				metrics.writeJson(writer);
+			} catch (final IOException ex) {
+				Messages.showErrorDialog(project, ex.getMessage(), "Export Scan Statistics");
+				return;
+			}
+			RevealFileAction.showDialog(project, "Scan statistics exported to " + file.getName(), "Export Scan Statistics", file, null);
+		}
+	}
 }
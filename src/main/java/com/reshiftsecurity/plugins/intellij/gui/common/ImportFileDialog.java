@@ -129,12 +129,24 @@ public class ImportFileDialog extends JPanel {
 	}
 
 
+	/**
+	 * @return true for bug collection xml files, plain or gzip compressed
+	 */
+	public static boolean isImportFile(final File file) {
+		final String path = file.getAbsolutePath();
+		if ("gz".equalsIgnoreCase(FileUtilRt.getExtension(path))) {
+			return "xml".equalsIgnoreCase(FileUtilRt.getExtension(FileUtilRt.getNameWithoutExtension(path)));
+		}
+		return "xml".equalsIgnoreCase(FileUtilRt.getExtension(path));
+	}
+
+
 	private boolean validateFile(final Document doc) {
 		try {
 			return _selectedFile != null &&
 					_selectedFile.isFile() &&
 					_selectedFile.canRead() &&
-					"xml".equalsIgnoreCase(FileUtilRt.getExtension(_selectedFile.getAbsolutePath())) &&
+					isImportFile(_selectedFile) &&
 					!doc.getText(0, doc.getLength()).trim().isEmpty();
 		} catch (final BadLocationException ignore) {
 			return false;
@@ -161,12 +173,12 @@ public class ImportFileDialog extends JPanel {
           new FileFilter() {
             @Override
             public boolean accept(final File f) {
-              return f.isDirectory() || "xml".equalsIgnoreCase(FileUtilRt.getExtension(f.getAbsolutePath()));
+              return f.isDirectory() || isImportFile(f);
             }
 
             @Override
             public String getDescription() {
-              return "*.xml";
+              return "*.xml, *.xml.gz";
             }
           });
 
@@ -29,7 +29,6 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiAnonymousClass;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.PsiFile;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.ui.JBColor;
 import com.reshiftsecurity.plugins.intellij.common.util.StringUtilFb;
@@ -42,11 +41,11 @@ import com.reshiftsecurity.plugins.intellij.core.FindBugsState;
 import com.reshiftsecurity.plugins.intellij.core.ProblemCacheService;
 import com.reshiftsecurity.plugins.intellij.core.WorkspaceSettings;
 import com.reshiftsecurity.plugins.intellij.intentions.ClearBugIntentionAction;
+import com.reshiftsecurity.plugins.intellij.resources.ResourcesLoader;
 
 import java.awt.Font;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 public final class BugAnnotator implements Annotator {
 
@@ -67,24 +66,21 @@ public final class BugAnnotator implements Annotator {
 		if (cacheService == null) {
 			return;
 		}
-		final Map<PsiFile, List<ExtendedProblemDescriptor>> problems = cacheService.getProblems();
-
-		final PsiFile psiFile = psiElement.getContainingFile();
-		if (problems.containsKey(psiFile)) {
-			addAnnotation(psiElement, new ArrayList<>(problems.get(psiFile)), annotationHolder);
+		final ProblemCacheService.FileProblems problems = cacheService.getProblems(psiElement.getContainingFile());
+		if (!problems.isEmpty()) {
+			addAnnotation(psiElement, problems, annotationHolder);
 		}
 	}
 
-	private static void addAnnotation(@NotNull final PsiElement psiElement, final Iterable<ExtendedProblemDescriptor> problemDescriptors, @NotNull final AnnotationHolder annotationHolder) {
+	private static void addAnnotation(@NotNull final PsiElement psiElement, @NotNull final ProblemCacheService.FileProblems problems, @NotNull final AnnotationHolder annotationHolder) {
 		final List<ExtendedProblemDescriptor> matchingDescriptors = new ArrayList<ExtendedProblemDescriptor>();
-		for (final ExtendedProblemDescriptor descriptor : problemDescriptors) {
-			final PsiElement problemPsiElement = descriptor.getPsiElement();
-
-			final PsiAnonymousClass psiAnonymousClass = PsiTreeUtil.getParentOfType(psiElement, PsiAnonymousClass.class);
-			if (psiElement.equals(problemPsiElement)) {
-				matchingDescriptors.add(descriptor);
-				addAnnotation(descriptor, matchingDescriptors, psiElement, annotationHolder);
-			} else if (psiAnonymousClass != null && psiAnonymousClass.equals(problemPsiElement)) {
+		for (final ExtendedProblemDescriptor descriptor : problems.getProblems(psiElement)) {
+			matchingDescriptors.add(descriptor);
+			addAnnotation(descriptor, matchingDescriptors, psiElement, annotationHolder);
+		}
+		final PsiAnonymousClass psiAnonymousClass = PsiTreeUtil.getParentOfType(psiElement, PsiAnonymousClass.class);
+		if (psiAnonymousClass != null) {
+			for (final ExtendedProblemDescriptor descriptor : problems.getProblems(psiAnonymousClass)) {
 				matchingDescriptors.add(descriptor);
 				addAnnotation(descriptor, matchingDescriptors, psiAnonymousClass, annotationHolder);
 			}
@@ -185,7 +181,8 @@ public final class BugAnnotator implements Annotator {
 
 	private static String getAnnotationText(final ExtendedProblemDescriptor problemDescriptor) {
 		EducationCachingService _eduCacheService = ServiceManager.getService(EducationCachingService.class);
-		return _eduCacheService.getBriefOverview(problemDescriptor, true);
+		final String text = _eduCacheService.getBriefOverview(problemDescriptor, true);
+		return problemDescriptor.getBug().isStale() ? ResourcesLoader.getString("annotation.stale") + " " + text : text;
 	}
 
 	/*private static class AnonymousInnerClassMayBeStaticVisitor extends BaseInspectionVisitor {
@@ -46,13 +46,13 @@ import com.reshiftsecurity.plugins.intellij.gui.intentions.GroupBugIntentionList
 import com.reshiftsecurity.plugins.intellij.gui.intentions.RootGroupBugIntentionListPopupStep;
 import com.reshiftsecurity.plugins.intellij.gui.toolwindow.view.ToolWindowPanel;
 import com.reshiftsecurity.plugins.intellij.intentions.ClearBugIntentionAction;
+import com.reshiftsecurity.plugins.intellij.resources.ResourcesLoader;
 import com.reshiftsecurity.plugins.intellij.intentions.SuppressReportBugIntentionAction;
 
 import javax.swing.*;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.regex.Pattern;
 
 public final class BugsLineMarkerProvider implements LineMarkerProvider {
@@ -79,32 +79,11 @@ public final class BugsLineMarkerProvider implements LineMarkerProvider {
 			return null;
 		}
 		final PsiFile psiFile = IdeaUtilImpl.getPsiFile(psiElement);
-		final Map<PsiFile, List<ExtendedProblemDescriptor>> problemCache = cacheService.getProblems();
-
-		if (problemCache.containsKey(psiFile)) {
-			final List<ExtendedProblemDescriptor> matchingDescriptors = new ArrayList<ExtendedProblemDescriptor>();
-			final List<ExtendedProblemDescriptor> problemDescriptors = problemCache.get(psiFile);
-			if (problemDescriptors == null) {
-				return null;
-			}
-
-			final Iterable<ExtendedProblemDescriptor> descriptors = new ArrayList<ExtendedProblemDescriptor>(problemDescriptors);
-			for (final ExtendedProblemDescriptor problemDescriptor : descriptors) {
-
-				final PsiElement problemPsiElement = problemDescriptor.getPsiElement();
-				if (psiElement.equals(problemPsiElement)) {
-					matchingDescriptors.add(problemDescriptor);
-					//if(psiElement instanceof PsiAnonymousClass) {
-					//	final Editor[] editors = com.intellij.openapi.editor.EditorFactory.getInstance().getEditors(IdeaUtilImpl.getDocument(psiFile.getProject(), problemDescriptor));
-					//	editors[0].getMarkupModel().addRangeHighlighter()
-					//}
-				}
-			}
-			if (!matchingDescriptors.isEmpty()) {
-				final GutterIconNavigationHandler<PsiElement> navHandler = new BugGutterIconNavigationHandler(psiElement, matchingDescriptors);
-				Icon icon = GuiUtil.getTinyIcon(matchingDescriptors.get(0));
-				return new LineMarkerInfo<PsiElement>(psiElement, psiElement.getTextRange(), icon, 4, new TooltipProvider(matchingDescriptors), navHandler, GutterIconRenderer.Alignment.LEFT);
-			}
+		final List<ExtendedProblemDescriptor> matchingDescriptors = cacheService.getProblems(psiFile).getProblems(psiElement);
+		if (!matchingDescriptors.isEmpty()) {
+			final GutterIconNavigationHandler<PsiElement> navHandler = new BugGutterIconNavigationHandler(psiElement, matchingDescriptors);
+			Icon icon = GuiUtil.getTinyIcon(matchingDescriptors.get(0));
+			return new LineMarkerInfo<PsiElement>(psiElement, psiElement.getTextRange(), icon, 4, new TooltipProvider(matchingDescriptors), navHandler, GutterIconRenderer.Alignment.LEFT);
 		}
 
 		return null;
@@ -195,6 +174,9 @@ public final class BugsLineMarkerProvider implements LineMarkerProvider {
 			EducationCachingService _eduCacheService = ServiceManager.getService(EducationCachingService.class);
 			buffer.append("<!DOCTYPE HTML PUBLIC \"-//W3C//DTD HTML 4.01 Transitional//EN\">");
 			for (ExtendedProblemDescriptor problemDescriptor : problemDescriptors) {
+				if (problemDescriptor.getBug().isStale()) {
+					buffer.append(ResourcesLoader.getString("annotation.stale")).append(" ");
+				}
 				buffer.append(_eduCacheService.getBriefOverview(problemDescriptor, false));
 				buffer.append("<br/>");
 				buffer.append("<br/>");
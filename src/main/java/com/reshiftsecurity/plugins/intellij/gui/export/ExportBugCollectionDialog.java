@@ -54,6 +54,7 @@ public final class ExportBugCollectionDialog extends DialogWrapper {
 	private TextFieldWithBrowseButton targetDirectoryField;
 	private JBCheckBox htmlCheckbox;
 	private JBCheckBox xmlCheckbox;
+	private JBCheckBox sarifCheckbox;
 	private JBCheckBox createSubDirectoryCheckbox;
 	private JBCheckBox openInBrowserCheckbox;
 
@@ -96,6 +97,9 @@ public final class ExportBugCollectionDialog extends DialogWrapper {
 		xmlCheckbox = new JBCheckBox(ResourcesLoader.getString("export.options.xml"));
 		xmlCheckbox.addActionListener(updateControlsAction);
 
+		sarifCheckbox = new JBCheckBox(ResourcesLoader.getString("export.options.sarif"));
+		sarifCheckbox.addActionListener(updateControlsAction);
+
 		createSubDirectoryCheckbox = new JBCheckBox(ResourcesLoader.getString("export.options.createSubDir"));
 		createSubDirectoryCheckbox.addActionListener(updateControlsAction);
 
@@ -105,6 +109,7 @@ public final class ExportBugCollectionDialog extends DialogWrapper {
 		final OptionGroup optionGroup = new OptionGroup(ResourcesLoader.getString("export.options.title"));
 		optionGroup.add(htmlCheckbox);
 		optionGroup.add(xmlCheckbox);
+		optionGroup.add(sarifCheckbox);
 		optionGroup.add(createSubDirectoryCheckbox);
 		optionGroup.add(openInBrowserCheckbox);
 
@@ -126,6 +131,7 @@ public final class ExportBugCollectionDialog extends DialogWrapper {
 
 		htmlCheckbox.setSelected(workspaceSettings.exportBugCollectionAsHtml);
 		xmlCheckbox.setSelected(workspaceSettings.exportBugCollectionAsXml);
+		sarifCheckbox.setSelected(workspaceSettings.exportBugCollectionAsSarif);
 		createSubDirectoryCheckbox.setSelected(workspaceSettings.exportBugCollectionCreateSubDirectory);
 		openInBrowserCheckbox.setSelected(workspaceSettings.openExportedHtmlBugCollectionInBrowser);
 		updateControls();
@@ -137,12 +143,13 @@ public final class ExportBugCollectionDialog extends DialogWrapper {
 		workspaceSettings.exportBugCollectionDirectory = targetDirectoryField.getText();
 		workspaceSettings.exportBugCollectionAsHtml = htmlCheckbox.isSelected();
 		workspaceSettings.exportBugCollectionAsXml = xmlCheckbox.isSelected();
+		workspaceSettings.exportBugCollectionAsSarif = sarifCheckbox.isSelected();
 		workspaceSettings.exportBugCollectionCreateSubDirectory = createSubDirectoryCheckbox.isSelected();
 		workspaceSettings.openExportedHtmlBugCollectionInBrowser = openInBrowserCheckbox.isSelected();
 	}
 
 	private void updateControls() {
-		setOKActionEnabled(htmlCheckbox.isSelected() || xmlCheckbox.isSelected());
+		setOKActionEnabled(htmlCheckbox.isSelected() || xmlCheckbox.isSelected() || sarifCheckbox.isSelected());
 		openInBrowserCheckbox.setEnabled(htmlCheckbox.isSelected());
 	}
 }
@@ -20,7 +20,9 @@
 package com.reshiftsecurity.plugins.intellij.gui.settings;
 
 import com.intellij.openapi.options.ConfigurationException;
+import com.intellij.ui.JBIntSpinner;
 import com.intellij.ui.components.JBCheckBox;
+import com.intellij.util.ui.JBUI;
 import com.intellij.util.ui.UIUtil;
 import com.reshiftsecurity.plugins.intellij.service.AnalyticsServiceSettings;
 import org.jetbrains.annotations.NotNull;
@@ -32,14 +34,23 @@ import com.reshiftsecurity.plugins.intellij.gui.common.VerticalFlowLayout;
 import com.reshiftsecurity.plugins.intellij.plugins.Plugins;
 import com.reshiftsecurity.plugins.intellij.resources.ResourcesLoader;
 
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import java.awt.BorderLayout;
+import java.awt.FlowLayout;
 
 final class GeneralTab extends JPanel {
+	private static final int MAX_ANALYSIS_THREAD_COUNT = 64;
+
 	private JBCheckBox compileBeforeAnalyze;
 	private JBCheckBox analyzeAfterCompile;
 	private JBCheckBox analyzeAfterAutoMake;
 	private JBCheckBox runInBackground;
+	private JBCheckBox analyzeModulesInParallel;
+	private JLabel analysisThreadCountLabel;
+	private JBIntSpinner analysisThreadCount;
+	private JBCheckBox reuseResultsOfUnchangedClasses;
+	private JBCheckBox disableNonSecurityDetectors;
 	private JBCheckBox toolWindowToFront;
 	private JBCheckBox analyticsSend;
 	private PluginTablePane plugin;
@@ -50,6 +61,14 @@ final class GeneralTab extends JPanel {
 		analyzeAfterCompile = new JBCheckBox(ResourcesLoader.getString("general.analyzeAfterCompile.title"));
 		analyzeAfterAutoMake = new JBCheckBox(ResourcesLoader.getString("general.analyzeAfterAutoMake.title"));
 		runInBackground = new JBCheckBox(ResourcesLoader.getString("general.runInBackground.title"));
+		analyzeModulesInParallel = new JBCheckBox(ResourcesLoader.getString("general.analyzeModulesInParallel.title"));
+		analyzeModulesInParallel.addItemListener(e -> updateAnalysisThreadCountEnabled());
+		analysisThreadCountLabel = new JLabel(ResourcesLoader.getString("general.analysisThreadCount.title"));
+		analysisThreadCountLabel.setToolTipText(ResourcesLoader.getString("general.analysisThreadCount.description"));
+		analysisThreadCount = new JBIntSpinner(0, 0, MAX_ANALYSIS_THREAD_COUNT);
+		analysisThreadCount.setToolTipText(ResourcesLoader.getString("general.analysisThreadCount.description"));
+		reuseResultsOfUnchangedClasses = new JBCheckBox(ResourcesLoader.getString("general.reuseResultsOfUnchangedClasses.title"));
+		disableNonSecurityDetectors = new JBCheckBox(ResourcesLoader.getString("general.disableNonSecurityDetectors.title"));
 		toolWindowToFront = new JBCheckBox(ResourcesLoader.getString("general.toolWindowToFront.title"));
 		analyticsSend = new JBCheckBox(ResourcesLoader.getString("general.analyticsSend.title"));
 		plugin = new PluginTablePane();
@@ -59,6 +78,14 @@ final class GeneralTab extends JPanel {
 		topPane.add(analyzeAfterCompile);
 		topPane.add(analyzeAfterAutoMake);
 		topPane.add(runInBackground);
+		topPane.add(analyzeModulesInParallel);
+		final JPanel analysisThreadCountPane = new JPanel(new FlowLayout(FlowLayout.LEFT, UIUtil.DEFAULT_HGAP, 0));
+		analysisThreadCountPane.setBorder(JBUI.Borders.emptyLeft(UIUtil.getCheckBoxTextHorizontalOffset(analyzeModulesInParallel) - UIUtil.DEFAULT_HGAP));
+		analysisThreadCountPane.add(analysisThreadCountLabel);
+		analysisThreadCountPane.add(analysisThreadCount);
+		topPane.add(analysisThreadCountPane);
+		topPane.add(reuseResultsOfUnchangedClasses);
+		topPane.add(disableNonSecurityDetectors);
 		topPane.add(toolWindowToFront);
 		topPane.add(analyticsSend);
 
@@ -67,6 +94,11 @@ final class GeneralTab extends JPanel {
 		// add(plugin);
 	}
 
+	private void updateAnalysisThreadCountEnabled() {
+		analysisThreadCountLabel.setEnabled(analyzeModulesInParallel.isSelected());
+		analysisThreadCount.setEnabled(analyzeModulesInParallel.isSelected());
+	}
+
 	void setProjectSettingsEnabled(final boolean enabled) {
 		plugin.setEnabled(enabled);
 	}
@@ -80,6 +112,10 @@ final class GeneralTab extends JPanel {
 				analyzeAfterCompile.isSelected() != settings.analyzeAfterCompile ||
 				analyzeAfterAutoMake.isSelected() != settings.analyzeAfterAutoMake ||
 				runInBackground.isSelected() != settings.runInBackground ||
+				analyzeModulesInParallel.isSelected() != settings.analyzeModulesInParallel ||
+				analysisThreadCount.getNumber() != settings.analysisThreadCount ||
+				reuseResultsOfUnchangedClasses.isSelected() != settings.reuseResultsOfUnchangedClasses ||
+				disableNonSecurityDetectors.isSelected() != settings.disableNonSecurityDetectors ||
 				toolWindowToFront.isSelected() != settings.toolWindowToFront ||
 				analyticsSend.isSelected() != AnalyticsServiceSettings.getInstance().sendAnonymousUsage();
 	}
@@ -93,6 +129,10 @@ final class GeneralTab extends JPanel {
 		settings.analyzeAfterCompile = analyzeAfterCompile.isSelected();
 		settings.analyzeAfterAutoMake = analyzeAfterAutoMake.isSelected();
 		settings.runInBackground = runInBackground.isSelected();
+		settings.analyzeModulesInParallel = analyzeModulesInParallel.isSelected();
+		settings.analysisThreadCount = analysisThreadCount.getNumber();
+		settings.reuseResultsOfUnchangedClasses = reuseResultsOfUnchangedClasses.isSelected();
+		settings.disableNonSecurityDetectors = disableNonSecurityDetectors.isSelected();
 		settings.toolWindowToFront = toolWindowToFront.isSelected();
 		AnalyticsServiceSettings.getInstance().recordConsent(analyticsSend.isSelected());
 	}
@@ -106,6 +146,11 @@ final class GeneralTab extends JPanel {
 		analyzeAfterCompile.setSelected(settings.analyzeAfterCompile);
 		analyzeAfterAutoMake.setSelected(settings.analyzeAfterAutoMake);
 		runInBackground.setSelected(settings.runInBackground);
+		analyzeModulesInParallel.setSelected(settings.analyzeModulesInParallel);
+		analysisThreadCount.setNumber(Math.max(0, Math.min(settings.analysisThreadCount, MAX_ANALYSIS_THREAD_COUNT)));
+		updateAnalysisThreadCountEnabled();
+		reuseResultsOfUnchangedClasses.setSelected(settings.reuseResultsOfUnchangedClasses);
+		disableNonSecurityDetectors.setSelected(settings.disableNonSecurityDetectors);
 		toolWindowToFront.setSelected(settings.toolWindowToFront);
 		analyticsSend.setSelected(AnalyticsServiceSettings.getInstance().sendAnonymousUsage());
 	}
@@ -127,6 +172,10 @@ final class GeneralTab extends JPanel {
 				"general.analyzeAfterCompile.title",
 				"general.analyzeAfterAutoMake.title",
 				"general.runInBackground.title",
+				"general.analyzeModulesInParallel.title",
+				"general.analysisThreadCount.title",
+				"general.reuseResultsOfUnchangedClasses.title",
+				"general.disableNonSecurityDetectors.title",
 				"general.toolWindowToFront.title",
 				"general.analyticsSend.title",
 				// PluginTablePane
@@ -34,6 +34,7 @@ import com.intellij.openapi.editor.markup.HighlighterTargetArea;
 import com.intellij.openapi.editor.markup.RangeHighlighter;
 import com.intellij.openapi.editor.markup.TextAttributes;
 import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiElement;
@@ -48,9 +49,9 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import com.reshiftsecurity.plugins.intellij.common.EventDispatchThreadHelper;
-import com.reshiftsecurity.plugins.intellij.common.ExtendedProblemDescriptor;
 import com.reshiftsecurity.plugins.intellij.common.util.BugInstanceUtil;
 import com.reshiftsecurity.plugins.intellij.common.util.IdeaUtilImpl;
+import com.reshiftsecurity.plugins.intellij.common.util.New;
 import com.reshiftsecurity.plugins.intellij.core.Bug;
 import com.reshiftsecurity.plugins.intellij.core.FindBugsProject;
 import com.reshiftsecurity.plugins.intellij.core.FindBugsResult;
@@ -59,7 +60,9 @@ import com.reshiftsecurity.plugins.intellij.gui.tree.GroupBy;
 import com.reshiftsecurity.plugins.intellij.gui.tree.model.BugInstanceNode;
 import com.reshiftsecurity.plugins.intellij.gui.tree.model.GroupTreeModel;
 import com.reshiftsecurity.plugins.intellij.gui.tree.model.RootNode;
+import com.reshiftsecurity.plugins.intellij.gui.tree.model.TreeGrouping;
 import com.reshiftsecurity.plugins.intellij.gui.tree.view.BugTree;
+import com.reshiftsecurity.plugins.intellij.tasks.BackgroundableTask;
 
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
@@ -68,6 +71,7 @@ import javax.swing.tree.TreePath;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
@@ -93,6 +97,20 @@ public class BugTreePanel extends JPanel {
 	private double _splitPaneVerticalWeight = 1.0;
 	private final double _splitPaneHorizontalWeight = 0.4;
 	private boolean _bugPreviewEnabled;
+	/**
+	 * The running background regrouping, see {@link #regroupTree()}.
+	 */
+	@Nullable
+	private RegroupTask _regroupTask;
+	/**
+	 * Bugs reported while {@link #_regroupTask} runs, added once the new grouping is applied.
+	 */
+	private final List<Bug> _regroupPendingBugs = New.arrayList();
+
+	/**
+	 * Results with fewer bugs are regrouped on the EDT directly.
+	 */
+	private static final int BACKGROUND_REGROUP_THRESHOLD = 1000;
 
 	BugTreePanel(@NotNull final ToolWindowPanel parent, @NotNull final Project project) {
 		setLayout(new BorderLayout());
@@ -112,16 +130,16 @@ public class BugTreePanel extends JPanel {
 		add(treeScrollPane, BorderLayout.CENTER);
 	}
 
-	void addNode(@NotNull final Bug bug) {
-		/*if(isHiddenBugGroup(bugInstance)) {
+	void addNodes(@NotNull final List<Bug> bugs) {
+		if (_regroupTask != null) {
+			_regroupPendingBugs.addAll(bugs);
 			return;
-		}*/
-
-		if (_treeModel.getGroupBy() != _groupBy) {
+		}
+		if (!Arrays.equals(_treeModel.getGroupBy(), _groupBy)) {
 			_treeModel.setGroupBy(_groupBy);
 		}
 
-		_treeModel.addNode(bug);
+		_treeModel.addNodes(bugs);
 	}
 
 	void updateRootNode(@Nullable final Integer classCount) {
@@ -136,6 +154,7 @@ public class BugTreePanel extends JPanel {
 
 	void clear() {
 		result = null;
+		cancelRegroup();
 		_treeModel.clear();
 	}
 
@@ -301,10 +320,6 @@ public class BugTreePanel extends JPanel {
 		return result;
 	}
 
-	public Map<PsiFile, List<ExtendedProblemDescriptor>> getProblems() {
-		return getTreeModel().getProblems();
-	}
-
 	public void setGroupBy(final GroupBy[] groupBy) {
 		EventDispatchThreadHelper.checkEDT();
 		if (!Arrays.equals(getGroupBy(), groupBy)) {
@@ -317,24 +332,24 @@ public class BugTreePanel extends JPanel {
 		return _groupBy.clone();
 	}
 
+	/**
+	 * Builds the nodes of the new grouping in the background (small results on the EDT directly) and swaps
+	 * them in with one structure event. A running regrouping is canceled first.
+	 */
 	private void regroupTree() {
 		EventDispatchThreadHelper.checkEDT();
+		final List<Bug> bugs = New.arrayList();
 		if (result != null) {
-			boolean cleared = false;
 			for (final Map.Entry<edu.umd.cs.findbugs.Project, SortedBugCollection> entry : result.getResults().entrySet()) {
 				Module module = null;
 				if (entry.getKey() instanceof FindBugsProject) {
 					module = ((FindBugsProject) entry.getKey()).getModule();
 				}
 				final Collection<BugInstance> instanceCollection = entry.getValue().getCollection();
-				if (instanceCollection != null && !instanceCollection.isEmpty()) {
-					if (!cleared) {
-						cleared = true;
-						_treeModel.clear();
-					}
+				if (instanceCollection != null) {
 					for (final BugInstance bugInstance : instanceCollection) {
 						if (bugInstance != null) {
-							addNode(new Bug(
+							bugs.add(new Bug(
 									module,
 									entry.getValue(),
 									bugInstance
@@ -345,12 +360,124 @@ public class BugTreePanel extends JPanel {
 			}
 		} else {
 			// may be a analysis is running, we need to regroup existing nodes
-			final Collection<Bug> existing = _treeModel.getBugs();
-			_treeModel.clear();
-			for (final Bug bug : existing) {
-				addNode(bug);
+			bugs.addAll(_treeModel.getBugs());
+			bugs.addAll(_regroupPendingBugs);
+		}
+		cancelRegroup();
+
+		final GroupBy[] groupBy = _groupBy.clone();
+		final BugInstanceNode selected = _bugTree.getTreeHelper().getSelectedBugInstanceNode();
+		final Bug selectedBug = selected != null ? selected.getBug() : null;
+		final List<TreePath> expandedPaths = _bugTree.getTreeHelper().getExpandedPaths();
+		if (bugs.size() < BACKGROUND_REGROUP_THRESHOLD) {
+			applyGrouping(_treeModel.group(bugs, groupBy, null), selectedBug, expandedPaths);
+		} else {
+			_regroupTask = new RegroupTask(bugs, groupBy, selectedBug, expandedPaths);
+			_regroupTask.queue();
+		}
+	}
+
+	private void cancelRegroup() {
+		if (_regroupTask != null) {
+			_regroupTask.cancel();
+			_regroupTask = null;
+		}
+		_regroupPendingBugs.clear();
+	}
+
+	private void applyGrouping(@NotNull final TreeGrouping grouping, @Nullable final Bug selectedBug, @NotNull final List<TreePath> expandedPaths) {
+		_treeModel.setGrouping(grouping);
+		if (!_regroupPendingBugs.isEmpty()) {
+			_treeModel.addNodes(new ArrayList<Bug>(_regroupPendingBugs));
+			_regroupPendingBugs.clear();
+		}
+		_bugTree.getTreeHelper().expandGroups(expandedPaths);
+		if (selectedBug != null) {
+			_bugTree.getTreeHelper().gotoNode(selectedBug);
+		}
+	}
+
+	private final class RegroupTask extends BackgroundableTask {
+
+		@NotNull
+		private final List<Bug> _bugs;
+		@NotNull
+		private final GroupBy[] _taskGroupBy;
+		@Nullable
+		private final Bug _selectedBug;
+		@NotNull
+		private final List<TreePath> _expandedPaths;
+		private volatile boolean _canceled;
+		private volatile ProgressIndicator _indicator;
+		private TreeGrouping _grouping;
+
+		RegroupTask(@NotNull final List<Bug> bugs, @NotNull final GroupBy[] groupBy, @Nullable final Bug selectedBug, @NotNull final List<TreePath> expandedPaths) {
+			super(_project, "Grouping Security Issues", true);
+			_bugs = bugs;
+			_taskGroupBy = groupBy;
+			_selectedBug = selectedBug;
+			_expandedPaths = expandedPaths;
+			setCancelText("Cancel");
+		}
+
+		@Override
+		public boolean shouldStartInBackground() {
+			return true;
+		}
+
+		@Override
+		public void run(@NotNull final ProgressIndicator indicator) {
+			setProgressIndicator(indicator);
+			if (_canceled) {
+				indicator.cancel();
+			}
+			indicator.setIndeterminate(false);
+			_grouping = _treeModel.group(_bugs, _taskGroupBy, indicator);
+		}
+
+		/**
+		 * Invoked by EDT.
+		 */
+		@Override
+		public void onSuccess() {
+			if (_regroupTask == this) {
+				_regroupTask = null;
+				applyGrouping(_grouping, _selectedBug, _expandedPaths);
 			}
 		}
+
+		/**
+		 * Invoked by EDT when canceled from the progress UI; the tree keeps its previous grouping then.
+		 */
+		@Override
+		public void onCancel() {
+			if (_regroupTask == this) {
+				_regroupTask = null;
+				_groupBy = _treeModel.getGroupBy();
+				if (!_regroupPendingBugs.isEmpty()) {
+					_treeModel.addNodes(new ArrayList<Bug>(_regroupPendingBugs));
+					_regroupPendingBugs.clear();
+				}
+			}
+		}
+
+		void cancel() {
+			_canceled = true;
+			final ProgressIndicator indicator = _indicator;
+			if (indicator != null) {
+				indicator.cancel();
+			}
+		}
+
+		@Override
+		public void setProgressIndicator(@NotNull final ProgressIndicator indicator) {
+			_indicator = indicator;
+		}
+
+		@Override
+		public ProgressIndicator getProgressIndicator() {
+			return _indicator;
+		}
 	}
 
 	void adaptSize(final int width, final int height) {
@@ -40,12 +40,19 @@ import com.reshiftsecurity.plugins.intellij.common.*;
 import com.reshiftsecurity.plugins.intellij.messages.AnalysisStateListener;
 import com.reshiftsecurity.plugins.intellij.messages.ClearListener;
 import com.reshiftsecurity.plugins.intellij.messages.MessageBusManager;
-import com.reshiftsecurity.plugins.intellij.messages.NewBugListener;
+import com.reshiftsecurity.plugins.intellij.messages.NewBugsListener;
 import com.reshiftsecurity.plugins.intellij.service.AnalyticsService;
+import com.reshiftsecurity.plugins.intellij.service.EducationCachingService;
 import com.reshiftsecurity.plugins.intellij.service.ReshiftUserService;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.SortedBugCollection;
 import org.jetbrains.annotations.*;
 import com.reshiftsecurity.plugins.intellij.common.util.FindBugsUtil;
+import com.reshiftsecurity.plugins.intellij.core.Bug;
 import com.reshiftsecurity.plugins.intellij.core.FindBugsResult;
+import com.reshiftsecurity.plugins.intellij.core.FindBugsState;
+import com.reshiftsecurity.plugins.intellij.core.LastResultService;
+import com.reshiftsecurity.plugins.intellij.core.PsiFileCacheService;
 import com.reshiftsecurity.plugins.intellij.gui.common.*;
 
 import javax.swing.*;
@@ -55,7 +62,6 @@ import java.awt.event.*;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.List;
 import java.util.*;
 
 @SuppressWarnings({"HardCodedStringLiteral", "AnonymousInnerClass", "AnonymousInnerClassMayBeStatic"})
@@ -100,10 +106,13 @@ public final class ToolWindowPanel extends JPanel implements AnalysisStateListen
 			ToolWindowPanel.this.clear();
 			DaemonCodeAnalyzer.getInstance(_project).restart();
 		});
-		MessageBusManager.subscribe(project, this, NewBugListener.TOPIC, (bug, analyzedClassCount) -> {
-			_bugTreePanel.addNode(bug);
-			_bugTreePanel.updateRootNode(analyzedClassCount);
+		MessageBusManager.subscribe(project, this, NewBugsListener.TOPIC, (bugs, analyzedClassCount) -> {
+			_bugTreePanel.addNodes(bugs);
+			if (analyzedClassCount != NewBugsListener.UNKNOWN_CLASS_COUNT) {
+				_bugTreePanel.updateRootNode(analyzedClassCount);
+			}
 		});
+		LastResultService.getInstance(project).restoreInto(this);
 	}
 
 	private void initGui() {
@@ -221,10 +230,6 @@ public final class ToolWindowPanel extends JPanel implements AnalysisStateListen
 		return result;
 	}
 
-	public Map<PsiFile, List<ExtendedProblemDescriptor>> getProblems() {
-		return _bugTreePanel.getProblems();
-	}
-
 	private void installListeners() {
 		if (_componentListener == null) {
 			_componentListener = createComponentListener();
@@ -250,6 +255,22 @@ public final class ToolWindowPanel extends JPanel implements AnalysisStateListen
 		_bugTreePanel.setResult(null);
 	}
 
+	/**
+	 * Shows the result of the last analysis restored on project open, see {@link LastResultService}.
+	 * Unlike {@link #analysisFinished(FindBugsResult, Throwable)} no notification is shown.
+	 */
+	public void restoreResult(@NotNull final FindBugsResult result, @NotNull final List<Bug> bugs) {
+		EventDispatchThreadHelper.checkEDT();
+		if (this.result != null || !FindBugsState.get(_project).isIdle()) {
+			return;
+		}
+		_bugTreePanel.addNodes(bugs);
+		_bugTreePanel.setResult(result);
+		_bugTreePanel.updateRootNode(result.getAnalyzedClassCount());
+		_bugTreePanel.getBugTree().validate();
+		this.result = result;
+	}
+
 	@Override
 	public void analysisFinished(@NotNull final FindBugsResult result, @Nullable final Throwable error) {
 		_bugTreePanel.setResult(result);
@@ -266,6 +287,7 @@ public final class ToolWindowPanel extends JPanel implements AnalysisStateListen
 				.append(numAnalysedClasses > 1 ? " classes" : " class");
 
 		this.result = result;
+		prefetchEducationContent(result);
 
 		final NotificationType notificationType;
 		if (numAnalysedClasses == 0) {
@@ -317,6 +339,16 @@ public final class ToolWindowPanel extends JPanel implements AnalysisStateListen
 		ReshiftUserService.getInstance().postScanProcess(_project);
 	}
 
+	private static void prefetchEducationContent(@NotNull final FindBugsResult result) {
+		final Set<String> bugTypes = new HashSet<>();
+		for (final SortedBugCollection bugCollection : result.getResults().values()) {
+			for (final BugInstance bugInstance : bugCollection.getCollection()) {
+				bugTypes.add(bugInstance.getType());
+			}
+		}
+		EducationCachingService.getInstance().prefetch(bugTypes);
+	}
+
 	private ComponentListener createComponentListener() {
 		return new ToolWindowComponentAdapter(this);
 	}
@@ -352,6 +384,7 @@ public final class ToolWindowPanel extends JPanel implements AnalysisStateListen
 
 	private void clear() {
 		result = null;
+		PsiFileCacheService.getInstance(_project).clear();
 		_bugTreePanel.clear();
 		_bugTreePanel.updateRootNode(null);
 	}
@@ -35,6 +35,7 @@ import javax.swing.tree.TreeNode;
 import javax.swing.tree.TreePath;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.List;
 
 public final class BugTreeHelper {
@@ -144,7 +145,7 @@ public final class BugTreeHelper {
 		}
 
 		@SuppressWarnings("unchecked")
-		final List<VisitableTreeNode> childList = (List<VisitableTreeNode>) node.getParent().getChildsList();
+		final List<VisitableTreeNode> childList = new ArrayList<VisitableTreeNode>((List<VisitableTreeNode>) node.getParent().getChildsList());
 		Collections.reverse(childList);
 		for (final VisitableTreeNode childNode : childList) {
 			//noinspection ObjectEquality
@@ -205,6 +206,30 @@ public final class BugTreeHelper {
 		}
 	}
 
+	/**
+	 * @return the paths of all expanded nodes below the root
+	 */
+	@NotNull
+	public List<TreePath> getExpandedPaths() {
+		final Enumeration<TreePath> expanded = tree.getExpandedDescendants(new TreePath(tree.getModel().getRoot()));
+		return expanded != null ? Collections.list(expanded) : Collections.emptyList();
+	}
+
+	/**
+	 * Expands the groups at the same places as the group nodes of the given paths, as far as the model still has them.
+	 *
+	 * @param paths paths of a previous grouping, see {@link #getExpandedPaths()}
+	 */
+	public void expandGroups(@NotNull final List<TreePath> paths) {
+		final GroupTreeModel model = (GroupTreeModel) tree.getModel();
+		for (final TreePath path : paths) {
+			final BugInstanceGroupNode group = model.findGroupNode(path);
+			if (group != null) {
+				tree.expandPath(getPath(group));
+			}
+		}
+	}
+
 	@NotNull
 	public static TreePath getPath(@NotNull TreeNode node) {
 		final List<TreeNode> list = new ArrayList<>();
@@ -56,7 +56,7 @@ public abstract class AbstractNodeDescriptor<E> {
 	}
 
 
-	public final String getSimpleName() {
+	public String getSimpleName() {
 		return _simpleName;
 	}
 
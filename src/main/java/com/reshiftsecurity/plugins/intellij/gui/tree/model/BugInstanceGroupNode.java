@@ -43,10 +43,25 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 public final class BugInstanceGroupNode extends AbstractTreeNode<VisitableTreeNode> implements VisitableTreeNode {
 
+	/**
+	 * Masked group icons shared by all group nodes; key = the plain icon.
+	 */
+	private static final Map<Icon, Icon> MASKED_ICONS = New.concurrentMap();
+
+	/**
+	 * Either the sub groups of this group or, once {@link #getChildsList()} was called, the leafs for {@link #_bugs}.
+	 */
 	private final List<VisitableTreeNode> _childs;
+	/**
+	 * The bugs of the leafs of this group, sorted like the leafs. The leaf nodes are only created when
+	 * the children are accessed, f. e. when the group is expanded, and dropped by {@link #releaseLeafs()}.
+	 */
+	private final List<Bug> _bugs;
+	private boolean _leafsCreated;
 	private final Bug bug;
 	private final RecurseNodeVisitor<BugInstanceGroupNode> _recurseNodeVisitor = new RecurseNodeVisitor<BugInstanceGroupNode>(this);
 	private final Project _project;
@@ -67,6 +82,7 @@ public final class BugInstanceGroupNode extends AbstractTreeNode<VisitableTreeNo
 		_project = project;
 		this.bug = bug;
 		_childs = new ArrayList<VisitableTreeNode>();
+		_bugs = new ArrayList<Bug>();
 		_groupBy = groupBy;
 		_groupName = groupName;
 		_simpleName = groupName;
@@ -74,26 +90,83 @@ public final class BugInstanceGroupNode extends AbstractTreeNode<VisitableTreeNo
 		_depthFromRoot = depth;
 
 		setTooltip(_groupName);
-		setCollapsedIcon(new MaskIcon(getGroupByCollapsedIcon(groupBy), JBColor.BLACK));
-		setExpandedIcon(new MaskIcon(getGroupByExpandedIcon(groupBy), JBColor.BLACK));
+		setCollapsedIcon(getMaskedIcon(getGroupByCollapsedIcon(groupBy)));
+		setExpandedIcon(getMaskedIcon(getGroupByExpandedIcon(groupBy)));
 	}
 
 	Project getProject() {
 		return _project;
 	}
 
-	@Override
-	public void addChild(final VisitableTreeNode node) {
-		_childs.add(node);
-		if (node instanceof BugInstanceNode && node.isLeaf()) {
+	/**
+	 * Adds a leaf for the given bug at its sorted position.
+	 */
+	void addBug(@NotNull final Bug bug) {
+		addBugUnsorted(bug);
+		sortChilds();
+	}
+
+	/**
+	 * Like {@link #addBug(Bug)} but leaves the order of the leafs to a later {@link #sortChilds()}.
+	 */
+	void addBugUnsorted(@NotNull final Bug bug) {
+		_bugs.add(bug);
+		if (_leafsCreated) {
+			_childs.add(new BugInstanceNode(bug, this, _project));
+		}
+		incrementMemberCount();
+		TreeNode treeNode = getParent();
+		while (treeNode instanceof BugInstanceGroupNode) {
+			((BugInstanceGroupNode) treeNode).incrementMemberCount();
+			treeNode = treeNode.getParent();
+		}
+	}
+
+	/**
+	 * Sorts the leafs by class; the sort is stable so equal leafs keep their insertion order.
+	 */
+	void sortChilds() {
+		_bugs.sort(BugInstanceComparator.getBugInstanceClassComparator());
+		if (_leafsCreated) {
 			_childs.sort(new ChildComparator());
-			incrementMemberCount();
-			TreeNode treeNode = getParent();
-			while (treeNode instanceof BugInstanceGroupNode) {
-				((BugInstanceGroupNode) treeNode).incrementMemberCount();
-				treeNode = treeNode.getParent();
+		}
+	}
+
+	/**
+	 * Drops the leaf nodes of this group and its sub groups; they are created again when the children are accessed.
+	 */
+	public void releaseLeafs() {
+		if (_leafsCreated) {
+			_childs.clear();
+			_leafsCreated = false;
+		} else {
+			for (final VisitableTreeNode child : _childs) {
+				if (child instanceof BugInstanceGroupNode) {
+					((BugInstanceGroupNode) child).releaseLeafs();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the bugs of the leafs of this group in display order, empty for groups of groups
+	 */
+	@NotNull
+	public List<Bug> getBugs() {
+		return Collections.unmodifiableList(_bugs);
+	}
+
+	@Nullable
+	BugInstanceNode findLeaf(@NotNull final Bug bug) {
+		if (!_bugs.contains(bug)) {
+			return null;
+		}
+		for (final VisitableTreeNode node : getChildsList()) {
+			if (node instanceof BugInstanceNode && ((BugInstanceNode) node).getBug().equals(bug)) {
+				return (BugInstanceNode) node;
 			}
 		}
+		return null;
 	}
 
 	@Nullable
@@ -113,6 +186,7 @@ public final class BugInstanceGroupNode extends AbstractTreeNode<VisitableTreeNo
 	@NotNull
 	List<Bug> getAllChildBugs() {
 		final List<Bug> ret = New.arrayList();
+		ret.addAll(_bugs);
 		for (final TreeNode child : _childs) {
 			if (child instanceof BugInstanceGroupNode) {
 				final BugInstanceGroupNode node = (BugInstanceGroupNode) child;
@@ -163,9 +237,20 @@ public final class BugInstanceGroupNode extends AbstractTreeNode<VisitableTreeNo
 
 	@Override
 	public List<VisitableTreeNode> getChildsList() {
+		if (!_leafsCreated && !_bugs.isEmpty()) {
+			_leafsCreated = true;
+			for (final Bug child : _bugs) {
+				_childs.add(new BugInstanceNode(child, this, _project));
+			}
+		}
 		return _childs;
 	}
 
+	@Override
+	public int getChildCount() {
+		return _bugs.isEmpty() ? _childs.size() : _bugs.size();
+	}
+
 	@Override
 	public BugInstanceGroupNode getTreeNode() {
 		return this;
@@ -178,7 +263,7 @@ public final class BugInstanceGroupNode extends AbstractTreeNode<VisitableTreeNo
 
 	@Override
 	public boolean isLeaf() {
-		return _childs.isEmpty();
+		return _childs.isEmpty() && _bugs.isEmpty();
 	}
 
 	private void incrementMemberCount() {
@@ -189,6 +274,11 @@ public final class BugInstanceGroupNode extends AbstractTreeNode<VisitableTreeNo
 		return bug;
 	}
 
+	@NotNull
+	private static Icon getMaskedIcon(@NotNull final Icon icon) {
+		return MASKED_ICONS.computeIfAbsent(icon, key -> new MaskIcon(key, JBColor.BLACK));
+	}
+
 	private Icon getGroupByCollapsedIcon(final GroupBy groupBy) {
 		switch (groupBy) {
 			case BugCategory:
@@ -22,7 +22,6 @@ package com.reshiftsecurity.plugins.intellij.gui.tree.model;
 import com.intellij.codeInspection.ProblemDescriptor;
 import com.intellij.icons.AllIcons;
 import com.intellij.openapi.project.Project;
-import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiFile;
 import com.intellij.ui.JBColor;
 import edu.umd.cs.findbugs.BugInstance;
@@ -30,8 +29,8 @@ import edu.umd.cs.findbugs.SourceLineAnnotation;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import com.reshiftsecurity.plugins.intellij.common.util.IdeaUtilImpl;
 import com.reshiftsecurity.plugins.intellij.core.Bug;
+import com.reshiftsecurity.plugins.intellij.core.PsiFileCacheService;
 import com.reshiftsecurity.plugins.intellij.gui.tree.NodeVisitor;
 import com.reshiftsecurity.plugins.intellij.gui.tree.view.MaskIcon;
 
@@ -66,16 +65,32 @@ public class BugInstanceNode extends AbstractTreeNode<VisitableTreeNode> impleme
 		_project = project;
 		//_parent = parent;
 		setParent(parent);
-		_childs = new ArrayList<VisitableTreeNode>();
+		_childs = Collections.emptyList();
 		_bugInstance = bug.getInstance();
-		_simpleName = _bugInstance.getMessageWithoutPrefix();
 
-		setTooltip(_simpleName);
 		setCollapsedIcon(_collapsedIcon);
 		setExpandedIcon(_expandedIcon);
 	}
 
 
+	/**
+	 * The message is formatted on first use, leafs are created for many bugs that are never displayed.
+	 */
+	@Override
+	public String getSimpleName() {
+		if (_simpleName == null) {
+			_simpleName = _bugInstance.getMessageWithoutPrefix();
+		}
+		return _simpleName;
+	}
+
+
+	@Override
+	public String getTooltip() {
+		return getSimpleName();
+	}
+
+
 	public ProblemDescriptor getProblem() {
 		return _problem;
 	}
@@ -89,10 +104,7 @@ public class BugInstanceNode extends AbstractTreeNode<VisitableTreeNode> impleme
 	@Nullable
 	public PsiFile getPsiFile() {
 		if (_file == null) {
-			final PsiClass psiClass = IdeaUtilImpl.findJavaPsiClass(_project, getBug().getModule(), getSourcePath());
-			if (psiClass != null) {
-				_file = psiClass.getContainingFile();
-			}
+			_file = PsiFileCacheService.getInstance(_project).resolve(getBug());
 		}
 		return _file;
 	}
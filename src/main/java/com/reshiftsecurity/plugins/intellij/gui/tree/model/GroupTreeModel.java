@@ -19,39 +19,58 @@
  */
 package com.reshiftsecurity.plugins.intellij.gui.tree.model;
 
-import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.PsiFile;
-import com.reshiftsecurity.plugins.intellij.gui.tree.SeverityGroupComparator;
 import org.jetbrains.annotations.NotNull;
 import com.reshiftsecurity.plugins.intellij.common.EventDispatchThreadHelper;
 import com.reshiftsecurity.plugins.intellij.common.ExtendedProblemDescriptor;
-import com.reshiftsecurity.plugins.intellij.common.util.BugInstanceUtil;
-import com.reshiftsecurity.plugins.intellij.common.util.New;
 import com.reshiftsecurity.plugins.intellij.core.Bug;
+import com.reshiftsecurity.plugins.intellij.core.FindBugsState;
 import com.reshiftsecurity.plugins.intellij.core.ProblemCacheService;
-import com.reshiftsecurity.plugins.intellij.gui.tree.BugInstanceComparator;
+import com.reshiftsecurity.plugins.intellij.core.PsiFileCacheService;
+import com.reshiftsecurity.plugins.intellij.core.ScanMetrics;
 import com.reshiftsecurity.plugins.intellij.gui.tree.GroupBy;
 
 import javax.annotation.Nullable;
+import javax.swing.tree.TreePath;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
-public class GroupTreeModel extends AbstractTreeModel<VisitableTreeNode, RootNode> implements Grouper.GrouperCallback<Bug> {
+public class GroupTreeModel extends AbstractTreeModel<VisitableTreeNode, RootNode> {
 
-	private static final Logger LOGGER = Logger.getInstance(GroupTreeModel.class.getName());
-
-	private GroupBy[] _groupBy;
-	private final transient Map<String, Map<Integer, List<BugInstanceGroupNode>>> _groups;
-	private transient Grouper<Bug> _grouper;
-	private int _bugCount;
-	private final transient Map<PsiFile, List<ExtendedProblemDescriptor>> _problems;
+	private transient TreeGrouping _grouping;
+	/**
+	 * True while {@link #addNodes(Collection)} is running; per node structure events are suppressed then.
+	 */
+	private boolean _bulkInsert;
+	/**
+	 * True while {@link #releaseLeafs(BugInstanceGroupNode)} publishes its structure event.
+	 */
+	private boolean _releasingLeafs;
+	private final transient ProblemCacheService _problems;
+	/**
+	 * Problems collected by {@link #addNodes(Collection)}, published per file once the batch is grouped.
+	 */
+	private final transient Map<PsiFile, List<ExtendedProblemDescriptor>> _pendingProblems;
+	private final transient PsiFileCacheService _psiFiles;
+	/**
+	 * Bugs whose file is not resolved yet, see {@link #resolveUnresolvedBugs()}.
+	 */
+	private final transient List<Bug> _unresolvedBugs;
+	/**
+	 * Incremented by {@link #clear()} so that files resolved for cleared leafs are dropped.
+	 */
+	private int _generation;
 
 	@NotNull
 	private final transient Project _project;
@@ -60,234 +79,252 @@ public class GroupTreeModel extends AbstractTreeModel<VisitableTreeNode, RootNod
 	public GroupTreeModel(@NotNull final RootNode root, final GroupBy[] groupBy, @NotNull final Project project) {
 		_root = root;
 		_project = project;
-		_groupBy = groupBy.clone();
-		_groups = new HashMap<String, Map<Integer, List<BugInstanceGroupNode>>>();
-		_problems = project.getService(ProblemCacheService.class).getProblems();
+		_grouping = new TreeGrouping(groupBy, root, root.getChildsList(), project);
+		_problems = project.getService(ProblemCacheService.class);
+		_pendingProblems = new HashMap<PsiFile, List<ExtendedProblemDescriptor>>();
+		_psiFiles = PsiFileCacheService.getInstance(project);
+		_unresolvedBugs = new ArrayList<Bug>();
 	}
 
 	Project getProject() {
 		return _project;
 	}
 
-	private void addGroupIfAbsent(final String groupNameKey, final int depth, final BugInstanceGroupNode groupNode) {
-		if (!_groups.containsKey(groupNameKey)) {
-			final Map<Integer, List<BugInstanceGroupNode>> map = new HashMap<Integer, List<BugInstanceGroupNode>>();
-			_groups.put(groupNameKey, map);
-			final List<BugInstanceGroupNode> groupNodes = addGroupIfAbsentImpl(groupNameKey, depth, groupNode);
-			map.put(depth, groupNodes);
+	@SuppressWarnings({"MethodMayBeStatic", "AnonymousInnerClass"})
+	private void addProblem(final Bug bug) {
+		if (_psiFiles.isResolved(bug)) {
+			_addProblem(_psiFiles.getCachedPsiFile(bug), bug);
 		} else {
-			addGroupIfAbsentImpl(groupNameKey, depth, groupNode);
+			_unresolvedBugs.add(bug);
 		}
 	}
 
-	@NotNull
-	private List<BugInstanceGroupNode> addGroupIfAbsentImpl(final String groupNameKey, final int depth, final BugInstanceGroupNode groupNode) {
-		final Map<Integer, List<BugInstanceGroupNode>> map = _groups.get(groupNameKey);
-
-		if (map.containsKey(depth)) {
-			final List<BugInstanceGroupNode> list = map.get(depth);
-			list.add(groupNode);
-
-			return list;
-		} else {
-			final List<BugInstanceGroupNode> list = new ArrayList<BugInstanceGroupNode>();
-			list.add(groupNode);
-			map.put(depth, list);
-
-			return list;
+	private void _addProblem(@Nullable final PsiFile value, final Bug bug) {
+		if (value != null) {
+			if (_bulkInsert) {
+				collectProblem(_pendingProblems, value, bug);
+			} else {
+				_problems.addProblems(value, Collections.singletonList(new ExtendedProblemDescriptor(value, bug)));
+			}
 		}
 	}
 
-	@SuppressWarnings({"ReturnOfCollectionOrArrayField"})
-	public Map<PsiFile, List<ExtendedProblemDescriptor>> getProblems() {
-		return _problems;
-	}
-
-	@SuppressWarnings({"MethodMayBeStatic", "AnonymousInnerClass"})
-	private void addProblem(final BugInstanceNode leaf) {
-		final PsiFile psiFile = leaf.getPsiFile();
-		_addProblem(psiFile, leaf);
+	private static void collectProblem(@NotNull final Map<PsiFile, List<ExtendedProblemDescriptor>> problems, @NotNull final PsiFile psiFile, @NotNull final Bug bug) {
+		List<ExtendedProblemDescriptor> list = problems.get(psiFile);
+		if (list == null) {
+			list = new ArrayList<ExtendedProblemDescriptor>();
+			problems.put(psiFile, list);
+		}
+		list.add(new ExtendedProblemDescriptor(psiFile, bug));
 	}
 
-	private void _addProblem(@Nullable final PsiFile value, final BugInstanceNode leaf) {
-		if (value != null) {
-			final ExtendedProblemDescriptor element = new ExtendedProblemDescriptor(value, leaf.getBug());
-			if (_problems.containsKey(value)) {
-				_problems.get(value).add(element);
-			} else {
-				final List<ExtendedProblemDescriptor> list = new ArrayList<ExtendedProblemDescriptor>();
-				list.add(element);
-				_problems.put(value, list);
-			}
+	/**
+	 * Resolves the files of all bugs added since the last call in one background read action
+	 * and adds their problems once the files are known.
+	 */
+	private void resolveUnresolvedBugs() {
+		if (_unresolvedBugs.isEmpty()) {
+			return;
 		}
+		final List<Bug> bugs = new ArrayList<Bug>(_unresolvedBugs);
+		_unresolvedBugs.clear();
+		final int generation = _generation;
+		_psiFiles.resolveAsync(bugs, () -> {
+			if (generation != _generation) {
+				return;
+			}
+			final ScanMetrics.Timer timer = ScanMetrics.get(_project).timer(ScanMetrics.ANNOTATION_REFRESH);
+			final long start = timer.start();
+			final Map<PsiFile, List<ExtendedProblemDescriptor>> problems = new HashMap<PsiFile, List<ExtendedProblemDescriptor>>();
+			for (final Bug bug : bugs) {
+				final PsiFile psiFile = _psiFiles.getCachedPsiFile(bug);
+				if (psiFile != null) {
+					collectProblem(problems, psiFile, bug);
+				}
+			}
+			for (final Entry<PsiFile, List<ExtendedProblemDescriptor>> entry : problems.entrySet()) {
+				_problems.addProblems(entry.getKey(), entry.getValue());
+			}
+			if (!problems.isEmpty() && FindBugsState.get(_project).isIdle()) {
+				DaemonCodeAnalyzer.getInstance(_project).restart();
+			}
+			timer.stop(start);
+		});
 	}
 
 	public int getBugCount() {
 		EventDispatchThreadHelper.checkEDT();
-		return _bugCount;
+		return _grouping.getBugCount();
 	}
 
-	@SuppressWarnings({"LockAcquiredButNotSafelyReleased"})
 	public void addNode(@NotNull final Bug bug) {
-		/*if(isHiddenBugGroup(bugInstance)) {
-			return;
-		}*/
-		_bugCount++;
-		group(bug);
-	}
-
-	private void group(@NotNull final Bug bug) {
-		if (_grouper == null) {
-			_grouper = new Grouper<Bug>(this);
+		EventDispatchThreadHelper.checkEDT();
+		final BugInstanceGroupNode group = _grouping.insert(bug, null);
+		addProblem(bug);
+		if (!_bulkInsert) {
+			resolveUnresolvedBugs();
+			nodeStructureChanged(getTopmostChangedNode(group));
 		}
-		final List<Comparator<Bug>> groupComparators = BugInstanceComparator.getGroupComparators(_groupBy);
-		_grouper.group(bug, groupComparators);
 	}
 
-	@Override
-	public void startGroup(final Bug member, final int depth) {
-		EventDispatchThreadHelper.assertInEDTorADT();
-
-		final GroupBy groupBy = _groupBy[depth];
-		final String groupName = GroupBy.getGroupName(groupBy, member);
-		final BugInstanceGroupNode groupNode = new BugInstanceGroupNode(groupBy, groupName, _root, member, depth, _project);
-
-		addGroupIfAbsent(Arrays.toString(BugInstanceUtil.getGroupPath(member, depth, _groupBy)), depth, groupNode);
-
-		_root.addChild(groupNode);
-		nodeStructureChanged(_root);
-
-		_root.getChildsList().sort(new SeverityGroupComparator());
-
-		startSubGroup(depth + 1, member, member);
+	/**
+	 * Groups created for a new leaf contain only that leaf, so the first group with more members (or the root)
+	 * is the topmost node whose children changed.
+	 */
+	@NotNull
+	private static VisitableTreeNode getTopmostChangedNode(@NotNull final BugInstanceGroupNode group) {
+		VisitableTreeNode node = group;
+		while (node instanceof BugInstanceGroupNode && ((BugInstanceGroupNode) node).getMemberCount() == 1) {
+			node = ((BugInstanceGroupNode) node).getParent();
+		}
+		return node;
 	}
 
-	@Override
-	public void startSubGroup(final int depth, final Bug member, final Bug parent) {
-		EventDispatchThreadHelper.assertInEDTorADT();
-
-		String groupName = GroupBy.getGroupName(_groupBy[depth - 1], member);
-		final BugInstanceGroupNode parentGroup = _root.findChildNode(parent, depth - 1, groupName);
-
-		//final BugInstanceGroupNode parentGroup = ((RootNode) _root).getChildByBugInstance(parent, depth - 1);
-		//final BugInstanceGroupNode parentGroup = ((RootNode) _root).getChildByGroupName(GroupBy.getGroupName(_groupBy[depth - 1], parent), depth - 1);
-		//final BugInstanceGroupNode parentGroup = _groups.get(depth-1 + Arrays.toString(getGroupPath(member)));
-
-		if (parentGroup != null) {
-			final GroupBy groupBy = _groupBy[depth];
-			groupName = GroupBy.getGroupName(groupBy, member);
-			final BugInstanceGroupNode childGroup = new BugInstanceGroupNode(groupBy, groupName, parentGroup, member, depth, _project);
-
-			addGroupIfAbsent(Arrays.toString(BugInstanceUtil.getGroupPath(parent, depth, _groupBy)), depth, childGroup);
-			//addGroupIfAbsent(GroupBy.getGroupName(_groupBy[0], parent), depth, childGroup);
-
-			parentGroup.addChild(childGroup);
-			nodeStructureChanged(parentGroup);
-
-			if (depth < _groupBy.length - 1) {
-				startSubGroup(depth + 1, member, member);
-			} else {
-				addToGroup(depth, member, member);
+	/**
+	 * Adds all given bugs and notifies the listeners with one structure event
+	 * instead of one event per inserted node. The children of each touched group are sorted once
+	 * after all bugs are inserted instead of once per insert.
+	 */
+	public void addNodes(@NotNull final Collection<Bug> bugs) {
+		EventDispatchThreadHelper.checkEDT();
+		if (bugs.isEmpty()) {
+			return;
+		}
+		final ScanMetrics.Timer timer = ScanMetrics.get(_project).timer(ScanMetrics.TREE_ADD_NODES);
+		final long start = timer.start();
+		final Set<BugInstanceGroupNode> unsortedGroups = Collections.newSetFromMap(new IdentityHashMap<BugInstanceGroupNode, Boolean>());
+		_bulkInsert = true;
+		try {
+			for (final Bug bug : bugs) {
+				_grouping.insert(bug, unsortedGroups);
+				addProblem(bug);
 			}
-		} else {
-			String message =
-					"parentGroup can not be null: groupName = " + groupName + "; depth = " + depth + "; parent = " + parent;
-			LOGGER.error(new NullPointerException(message));
+			_grouping.sort(unsortedGroups);
+		} finally {
+			_bulkInsert = false;
+			flushPendingProblems();
 		}
-
-
+		resolveUnresolvedBugs();
+		nodeStructureChanged(_root);
+		timer.stop(start);
 	}
 
-	@Override
-	public void addToGroup(final int depth, final Bug member, final Bug parent) {
-		EventDispatchThreadHelper.checkEDT();
-
-		final String groupName = GroupBy.getGroupName(_groupBy[depth], member);
-		final BugInstanceGroupNode parentGroup = _root.findChildNode(parent, depth, groupName);
-
-		if (parentGroup != null) {
-			final BugInstanceNode childNode = new BugInstanceNode(member, parentGroup, _project);
-			parentGroup.addChild(childNode);
-			addProblem(childNode);
-			nodeStructureChanged(parentGroup);
-		} else {
-			//noinspection ThrowableInstanceNeverThrown
-			LOGGER.error("parentSubGroup can not be null. ", new NullPointerException());
+	private void flushPendingProblems() {
+		for (final Entry<PsiFile, List<ExtendedProblemDescriptor>> entry : _pendingProblems.entrySet()) {
+			_problems.addProblems(entry.getKey(), entry.getValue());
 		}
+		_pendingProblems.clear();
 	}
 
-	@Override
-	public Comparator<Bug> currentGroupComparatorChain(final int depth) {
-		return BugInstanceComparator.getComparatorChain(depth, getGroupBy());
+	/**
+	 * Groups the given bugs into new nodes without changing this model, so it may be called from any thread.
+	 * The result is applied with {@link #setGrouping(TreeGrouping)}.
+	 *
+	 * @param indicator if not null, used to report the progress and checked for cancellation
+	 */
+	@NotNull
+	public TreeGrouping group(@NotNull final Collection<Bug> bugs, @NotNull final GroupBy[] groupBy, @Nullable final ProgressIndicator indicator) {
+		return TreeGrouping.build(bugs, groupBy, _root, _project, indicator);
 	}
 
-	@Override
-	public List<Bug> availableGroups(final int depth, @NotNull final Bug bug) {
-		final List<Bug> result = New.arrayList();
-
-		//final GroupBy groupBy = _groupBy[0];
-		//final String groupName = GroupBy.getGroupName(groupBy, bug);
-		final String groupName = Arrays.toString(BugInstanceUtil.getGroupPath(bug, depth, _groupBy));
-
-		if (_groups.containsKey(groupName)) {
-			final Map<Integer, List<BugInstanceGroupNode>> map = _groups.get(groupName);
-
-			if (map.containsKey(depth)) {
-				final List<BugInstanceGroupNode> groupNodes = map.get(depth);
-
-				for (final BugInstanceGroupNode node : groupNodes) {
-					result.add(node.getBug());
-				}
+	/**
+	 * Replaces all nodes of this model with the given grouping and notifies the listeners with one structure event.
+	 */
+	public void setGrouping(@NotNull final TreeGrouping grouping) {
+		EventDispatchThreadHelper.checkEDT();
+		_problems.clear();
+		_unresolvedBugs.clear();
+		_generation++;
+		_root.removeAllChilds();
+		_root.getChildsList().addAll(grouping.getRootChilds());
+		grouping.attach(_root.getChildsList());
+		_grouping = grouping;
+		_bulkInsert = true;
+		try {
+			for (final Bug bug : grouping.getBugs()) {
+				addProblem(bug);
 			}
+		} finally {
+			_bulkInsert = false;
+			flushPendingProblems();
 		}
-
-		return result;
+		resolveUnresolvedBugs();
+		nodeStructureChanged(_root);
 	}
 
+	/**
+	 * Existing nodes are regrouped synchronously, see {@link #group(Collection, GroupBy[], ProgressIndicator)}
+	 * to regroup in the background.
+	 */
 	public void setGroupBy(final GroupBy[] groupBy) {
-		_groupBy = groupBy.clone();
+		if (Arrays.equals(_grouping.getGroupBy(), groupBy)) {
+			return;
+		}
+		if (_grouping.getBugCount() == 0) {
+			_grouping = new TreeGrouping(groupBy, _root, _root.getChildsList(), _project);
+		} else {
+			setGrouping(group(getBugs(), groupBy, null));
+		}
 	}
 
 	public GroupBy[] getGroupBy() {
-		return _groupBy.clone();
+		return _grouping.getGroupBy();
 	}
 
 	public void clear() {
 		EventDispatchThreadHelper.checkEDT();
 
 		//_sortedCollection.clear();
-		_bugCount = 0;
-		_groups.clear();
+		_grouping.clear();
 		_problems.clear();
+		_unresolvedBugs.clear();
+		_generation++;
 		_root.removeAllChilds();
 		nodeStructureChanged(_root);
 		reload();
 
 	}
 
+	/**
+	 * Drops the leaf nodes of a collapsed group, see {@link BugInstanceGroupNode#releaseLeafs()}.
+	 * The bugs of the group do not change, so listeners which work on the bugs can ignore the structure event
+	 * if {@link #isReleasingLeafs()}.
+	 */
+	public void releaseLeafs(@NotNull final BugInstanceGroupNode group) {
+		EventDispatchThreadHelper.checkEDT();
+		group.releaseLeafs();
+		_releasingLeafs = true;
+		try {
+			nodeStructureChanged(group);
+		} finally {
+			_releasingLeafs = false;
+		}
+	}
+
+	public boolean isReleasingLeafs() {
+		return _releasingLeafs;
+	}
+
 	@Nullable
 	public BugInstanceNode findNodeByBugInstance(final Bug bug) {
-		final String[] fullGroupPath = BugInstanceUtil.getFullGroupPath(bug, _groupBy);
-		final String[] groupNameKey = BugInstanceUtil.getGroupPath(bug, fullGroupPath.length - 1, _groupBy);
-
-		final Map<Integer, List<BugInstanceGroupNode>> map = _groups.get(Arrays.toString(groupNameKey));
-		if (map != null) {
-			for (final Entry<Integer, List<BugInstanceGroupNode>> entry : map.entrySet()) {
-
-				final List<BugInstanceGroupNode> groupNodes = entry.getValue();
-				for (final BugInstanceGroupNode groupNode : groupNodes) {
-
-					final List<VisitableTreeNode> bugInstanceNodes = groupNode.getChildsList();
-					for (final VisitableTreeNode node : bugInstanceNodes) {
-						final Bug otherBug = ((BugInstanceNode) node).getBug();
-						if (otherBug.equals(bug)) {
-							return (BugInstanceNode) node;
-						}
-					}
-				}
+		return _grouping.find(bug);
+	}
+
+	/**
+	 * Returns the group of this model at the same place as the last group node of the given path,
+	 * which may belong to a replaced grouping; null if there is no such group or this model is grouped differently.
+	 */
+	@Nullable
+	public BugInstanceGroupNode findGroupNode(@NotNull final TreePath path) {
+		final List<GroupBy> groupBy = new ArrayList<GroupBy>();
+		final List<String> groupPath = new ArrayList<String>();
+		for (final Object component : path.getPath()) {
+			if (component instanceof BugInstanceGroupNode) {
+				groupBy.add(((BugInstanceGroupNode) component).getGroupBy());
+				groupPath.add(((BugInstanceGroupNode) component).getGroupName());
 			}
 		}
-		return null;
+		return _grouping.findGroup(groupBy.toArray(new GroupBy[0]), groupPath.toArray(new String[0]));
 	}
 
 	@NotNull
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reshiftsecurity.plugins.intellij.gui.tree.model;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.reshiftsecurity.plugins.intellij.common.util.BugInstanceUtil;
+import com.reshiftsecurity.plugins.intellij.common.util.New;
+import com.reshiftsecurity.plugins.intellij.core.Bug;
+import com.reshiftsecurity.plugins.intellij.gui.tree.GroupBy;
+import com.reshiftsecurity.plugins.intellij.gui.tree.SeverityGroupComparator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The group nodes of a bug tree, indexed by their group path.
+ * <p>
+ * The grouping of a {@link GroupTreeModel} keeps its root level groups in the child list of the root node.
+ * A grouping built by {@link #build(Collection, GroupBy[], RootNode, Project, ProgressIndicator)} is detached:
+ * it can be built on any thread and keeps its root level groups in an own list
+ * until it is applied with {@link GroupTreeModel#setGrouping(TreeGrouping)}.
+ */
+public final class TreeGrouping {
+
+	private static final int PROGRESS_INTERVAL = 100;
+
+	private final GroupBy[] _groupBy;
+	private final RootNode _root;
+	private List<VisitableTreeNode> _rootChilds;
+	/**
+	 * Key = {@link #getGroupKey(String[], int)} of the group path from the root ; value = the group node at the end of that path.
+	 */
+	private final Map<String, BugInstanceGroupNode> _groups;
+	private final Project _project;
+	private int _bugCount;
+
+
+	TreeGrouping(@NotNull final GroupBy[] groupBy, @NotNull final RootNode root, @NotNull final List<VisitableTreeNode> rootChilds, @NotNull final Project project) {
+		_groupBy = groupBy.clone();
+		_root = root;
+		_rootChilds = rootChilds;
+		_groups = New.map();
+		_project = project;
+	}
+
+	/**
+	 * Groups the given bugs below the given root without touching the root itself.
+	 *
+	 * @param indicator if not null, used to report the progress and checked for cancellation
+	 */
+	@NotNull
+	static TreeGrouping build(@NotNull final Collection<Bug> bugs, @NotNull final GroupBy[] groupBy, @NotNull final RootNode root, @NotNull final Project project, @Nullable final ProgressIndicator indicator) {
+		final TreeGrouping grouping = new TreeGrouping(groupBy, root, new ArrayList<VisitableTreeNode>(), project);
+		final Set<BugInstanceGroupNode> unsortedGroups = Collections.newSetFromMap(new IdentityHashMap<BugInstanceGroupNode, Boolean>());
+		int count = 0;
+		for (final Bug bug : bugs) {
+			if (indicator != null && count % PROGRESS_INTERVAL == 0) {
+				indicator.checkCanceled();
+				indicator.setFraction((double) count / bugs.size());
+			}
+			grouping.insert(bug, unsortedGroups);
+			count++;
+		}
+		grouping.sort(unsortedGroups);
+		return grouping;
+	}
+
+	@NotNull
+	GroupBy[] getGroupBy() {
+		return _groupBy.clone();
+	}
+
+	int getBugCount() {
+		return _bugCount;
+	}
+
+	@NotNull
+	List<VisitableTreeNode> getRootChilds() {
+		return _rootChilds;
+	}
+
+	/**
+	 * Called once the root level groups were moved to the given child list of the root node.
+	 */
+	void attach(@NotNull final List<VisitableTreeNode> rootChilds) {
+		_rootChilds = rootChilds;
+	}
+
+	/**
+	 * Adds the bug below the group nodes of its group path, creating missing groups on the way.
+	 *
+	 * @param unsortedGroups if not null, the caller sorts the root level and the collected groups of appended leafs
+	 *                       later with {@link #sort(Collection)}; otherwise nodes are inserted at their sorted position
+	 * @return the group the bug was added to
+	 */
+	@NotNull
+	BugInstanceGroupNode insert(@NotNull final Bug bug, @Nullable final Set<BugInstanceGroupNode> unsortedGroups) {
+		_bugCount++;
+		final String[] groupPath = BugInstanceUtil.getFullGroupPath(bug, _groupBy);
+		VisitableTreeNode parent = _root;
+		for (int depth = 0; depth < groupPath.length; depth++) {
+			final String groupKey = getGroupKey(groupPath, depth + 1);
+			BugInstanceGroupNode group = _groups.get(groupKey);
+			if (group == null) {
+				group = new BugInstanceGroupNode(_groupBy[depth], groupPath[depth], parent, bug, depth, _project);
+				_groups.put(groupKey, group);
+				if (parent == _root) {
+					_rootChilds.add(group);
+					if (unsortedGroups == null) {
+						_rootChilds.sort(new SeverityGroupComparator());
+					}
+				} else {
+					((BugInstanceGroupNode) parent).addChild(group);
+				}
+			}
+			parent = group;
+		}
+
+		final BugInstanceGroupNode parentGroup = (BugInstanceGroupNode) parent;
+		if (unsortedGroups != null) {
+			parentGroup.addBugUnsorted(bug);
+			unsortedGroups.add(parentGroup);
+		} else {
+			parentGroup.addBug(bug);
+		}
+		return parentGroup;
+	}
+
+	void sort(@NotNull final Collection<BugInstanceGroupNode> unsortedGroups) {
+		_rootChilds.sort(new SeverityGroupComparator());
+		for (final BugInstanceGroupNode group : unsortedGroups) {
+			group.sortChilds();
+		}
+	}
+
+	@NotNull
+	List<Bug> getBugs() {
+		final List<Bug> ret = New.arrayList();
+		for (final BugInstanceGroupNode group : _groups.values()) {
+			ret.addAll(group.getBugs());
+		}
+		return ret;
+	}
+
+	@Nullable
+	BugInstanceNode find(@NotNull final Bug bug) {
+		final String[] groupPath = BugInstanceUtil.getFullGroupPath(bug, _groupBy);
+		final BugInstanceGroupNode groupNode = _groups.get(getGroupKey(groupPath, groupPath.length));
+		return groupNode != null ? groupNode.findLeaf(bug) : null;
+	}
+
+	/**
+	 * @param groupBy   the grouping of each path element
+	 * @param groupPath the group names from the root
+	 * @return the group at the given path, or null if this grouping has no such group
+	 */
+	@Nullable
+	BugInstanceGroupNode findGroup(@NotNull final GroupBy[] groupBy, @NotNull final String[] groupPath) {
+		if (groupPath.length == 0 || groupPath.length > _groupBy.length
+				|| !Arrays.equals(groupBy, Arrays.copyOf(_groupBy, groupPath.length))) {
+			return null;
+		}
+		return _groups.get(getGroupKey(groupPath, groupPath.length));
+	}
+
+	void clear() {
+		_bugCount = 0;
+		_groups.clear();
+		_rootChilds.clear();
+	}
+
+	@NotNull
+	private static String getGroupKey(@NotNull final String[] groupPath, final int length) {
+		return Arrays.toString(Arrays.copyOf(groupPath, length));
+	}
+}
@@ -48,10 +48,14 @@ import com.reshiftsecurity.plugins.intellij.gui.toolwindow.view.ToolWindowPanel;
 import com.reshiftsecurity.plugins.intellij.gui.tree.ScrollToSourceHandler;
 import com.reshiftsecurity.plugins.intellij.gui.tree.TreeOccurenceNavigator;
 import com.reshiftsecurity.plugins.intellij.gui.tree.model.AbstractNodeDescriptor;
+import com.reshiftsecurity.plugins.intellij.gui.tree.model.BugInstanceGroupNode;
 import com.reshiftsecurity.plugins.intellij.gui.tree.model.BugInstanceNode;
+import com.reshiftsecurity.plugins.intellij.gui.tree.model.GroupTreeModel;
 import com.reshiftsecurity.plugins.intellij.gui.tree.model.VisitableTreeNode;
 
 import javax.swing.SwingUtilities;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeExpansionListener;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
 import javax.swing.tree.TreeModel;
@@ -86,6 +90,7 @@ public class BugTree extends Tree implements DataProvider, OccurenceNavigator {
 		_treeHelper = new BugTreeHelper(this);
 
 		addTreeSelectionListener(new SelectionListenerImpl());
+		addTreeExpansionListener(new ExpansionListenerImpl());
 		addMouseMotionListener(new MouseMotionListenerImpl());
 		addMouseListener(new MouseListenerImpl());
 
@@ -332,4 +337,21 @@ public class BugTree extends Tree implements DataProvider, OccurenceNavigator {
 			}
 		}
 	}
+
+	/**
+	 * Leaf nodes are only kept for expanded groups, see {@link BugInstanceGroupNode#releaseLeafs()}.
+	 */
+	private class ExpansionListenerImpl implements TreeExpansionListener {
+		@Override
+		public void treeExpanded(final TreeExpansionEvent event) {
+		}
+
+		@Override
+		public void treeCollapsed(final TreeExpansionEvent event) {
+			final Object node = event.getPath().getLastPathComponent();
+			if (node instanceof BugInstanceGroupNode && getModel() instanceof GroupTreeModel) {
+				((GroupTreeModel) getModel()).releaseLeafs((BugInstanceGroupNode) node);
+			}
+		}
+	}
 }
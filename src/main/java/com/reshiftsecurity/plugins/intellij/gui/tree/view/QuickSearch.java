@@ -24,11 +24,13 @@ import com.intellij.openapi.wm.IdeFocusManager;
 import com.intellij.ui.JBColor;
 import com.intellij.ui.components.JBList;
 import com.intellij.ui.scale.JBUIScale;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.reshiftsecurity.analytics.AnalyticsAction;
 import com.reshiftsecurity.plugins.intellij.service.AnalyticsService;
 import icons.PluginIcons;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import com.reshiftsecurity.plugins.intellij.common.EventDispatchThreadHelper;
 import com.reshiftsecurity.plugins.intellij.gui.common.ToolBarButton;
 import com.reshiftsecurity.plugins.intellij.common.util.GuiUtil;
 import com.reshiftsecurity.plugins.intellij.gui.common.AbstractBar;
@@ -76,11 +78,12 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
-import java.util.List;
+import java.util.Arrays;
 import java.util.ListIterator;
 import java.util.Stack;
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 
 /**
@@ -111,6 +114,19 @@ abstract class QuickSearch<E> {
 	private Color _foregroundColor = JBColor.BLACK;
 	private Color _backgroundColor = new JBColor(new Color(255, 255, 200), JBColor.LIGHT_GRAY);
 	private final Stack<String> _recentSearches;
+	@Nullable
+	private Future<?> _searchFuture;
+	/**
+	 * Incremented for each search so that the results of canceled searches are dropped.
+	 */
+	private int _searchId;
+	/**
+	 * The ascending indices of the elements matching {@link #_matchesText}.
+	 */
+	private int[] _matches = new int[0];
+	private String _matchesText = "";
+
+	private static final ExecutorService SEARCH_EXECUTOR = AppExecutorUtil.createBoundedApplicationPoolExecutor("Quick Search", 1);
 
 
 	QuickSearch() {
@@ -146,17 +162,12 @@ abstract class QuickSearch<E> {
 	abstract void uninstallListeners();
 
 
-	abstract int getElementCount();
-
-
-	abstract String convertElementToString(final E element);
-
-
-	abstract List<?> getElementsCache();
-
-
-	@Nullable
-	abstract E getElementAt(int index);
+	/**
+	 * Invoked by EDT. The returned supplier is invoked off the EDT and provides the index over the labels
+	 * of the elements; null if the thread was interrupted meanwhile.
+	 */
+	@NotNull
+	abstract Supplier<SearchIndex> prepareSearchIndex();
 
 
 	abstract void setSelectedElement(final int index);
@@ -292,6 +303,9 @@ abstract class QuickSearch<E> {
 	@SuppressWarnings({"AssignmentToNull"})
 	protected void hidePopup() {
 		_searchActivated = false;
+		cancelSearch();
+		_matches = new int[0];
+		_matchesText = "";
 		if (_layerPane != null && _popup != null) {
 			hideRecentSearchesPopup();
 			_layerPane.remove(_popup);
@@ -420,112 +434,83 @@ abstract class QuickSearch<E> {
 	}
 
 
-	private int find(final String text) {
-		final int count = getElementCount();
-		if (count == 0) {
-			return -1;
-		}
-
-		// find from cursor
-		int cursor = getCursor();
-		if (cursor == -1 && count > 0) {
-			cursor = 0;
-			setCursor(cursor);
-		}
-
-		for (int i = cursor; i < count; i++) {
-			final E element = getElementAt(i);
-			if (compare(element, text)) {
-				addToRecentSearches(text);
-				return i;
-			}
-		}
-
-		// if not found, search from begin to cursor
-		for (int i = 0; i < cursor; i++) {
-			final E element = getElementAt(i);
-			if (compare(element, text)) {
-				//setCursor(i);
-				addToRecentSearches(text);
-				return i;
+	/**
+	 * Matches the text against the search index in the background. A search still running for
+	 * a previous text is canceled. Invoked by EDT, as is the callback once the matches are known.
+	 */
+	private void search(@NotNull final String text, @NotNull final Runnable onFinished) {
+		cancelSearch();
+		final int searchId = _searchId;
+		final Supplier<SearchIndex> index = prepareSearchIndex();
+		final SearchIndex.Query query = new SearchIndex.Query(text);
+		_searchFuture = SEARCH_EXECUTOR.submit(() -> {
+			final SearchIndex searchIndex = index.get();
+			final int[] matches = searchIndex != null ? searchIndex.find(query) : null;
+			if (matches != null) {
+				EventDispatchThreadHelper.invokeLater(() -> {
+					if (searchId == _searchId) {
+						//noinspection AssignmentToNull
+						_searchFuture = null;
+						_matches = matches;
+						_matchesText = text;
+						onFinished.run();
+					}
+				});
 			}
-		}
-
-		return -1;
-
+		});
 	}
 
 
-	private int findNextOccurrence(final String text) {
-		final int count = getElementCount();
-		if (count == 0) {
-			return !text.isEmpty() ? -1 : 0;
-		}
-
-		for (int i = getCursor() + 1; i < count; i++) {
-			final E element = getElementAt(i);
-			if (compare(element, text)) {
-				return i;
-			}
+	private void cancelSearch() {
+		_searchId++;
+		if (_searchFuture != null) {
+			_searchFuture.cancel(true);
+			//noinspection AssignmentToNull
+			_searchFuture = null;
 		}
-
-		return -1;
 	}
 
 
-	private int findPreviousOccurrence(final String text) {
-		final int count = getElementCount();
-		if (count == 0) {
-			return !text.isEmpty() ? -1 : 0;
+	/**
+	 * @return the first match from the cursor on, wrapping around; -1 if there is none
+	 */
+	private int find(final String text) {
+		if (_matches.length == 0) {
+			return -1;
 		}
-
-		for (int i = getCursor() - 1; i >= 0; i--) {
-			final E element = getElementAt(i);
-			if (compare(element, text)) {
-				return i;
-			}
+		if (getCursor() == -1) {
+			setCursor(0);
 		}
-
-		return -1;
+		final int pos = getFirstMatchFrom(getCursor());
+		addToRecentSearches(text);
+		return _matches[pos < _matches.length ? pos : 0];
 	}
 
 
-	protected boolean compare(final E element, final String searchText) {
-		if (searchText == null || searchText.trim().isEmpty()) {
-			return true;
-		}
-
-		final String text = convertElementToString(element);
-		if (text == null) {
-			return false;
+	private int findNextOccurrence(final String text) {
+		if (!_matchesText.equals(text.trim())) {
+			return -1;
 		}
+		final int pos = getFirstMatchFrom(getCursor() + 1);
+		return pos < _matches.length ? _matches[pos] : -1;
+	}
 
-		try {
-			//_pattern = Pattern.compile(isFromStart() ? "^" + s : s, isCaseSensitive() ? 0 : Pattern.CASE_INSENSITIVE);
-			Pattern pattern = Pattern.compile('^' + searchText + '^', 0);
-			boolean found = pattern.matcher(text).find();
-			if (found) {
-				return found;
-			}
 
-			pattern = Pattern.compile('^' + searchText, 0);
-			found = pattern.matcher(text).find();
-			if (found) {
-				return found;
-			}
+	private int findPreviousOccurrence(final String text) {
+		if (!_matchesText.equals(text.trim())) {
+			return -1;
+		}
+		final int pos = getFirstMatchFrom(getCursor()) - 1;
+		return pos >= 0 ? _matches[pos] : -1;
+	}
 
-			pattern = Pattern.compile('^' + searchText, Pattern.CASE_INSENSITIVE);
-			found = pattern.matcher(text).find();
-			if (found) {
-				return found;
-			}
 
-			pattern = Pattern.compile(searchText, Pattern.CASE_INSENSITIVE);
-			found = pattern.matcher(text).find();
-			return found;
-		} catch (final PatternSyntaxException ignore) {
-			return false;
-		}
+	/**
+	 * @return the position in {@link #_matches} of the first match with an index not less than the given one
+	 */
+	private int getFirstMatchFrom(final int index) {
+		final int pos = Arrays.binarySearch(_matches, index);
+		return pos >= 0 ? pos : -pos - 1;
 	}
 
 
@@ -627,7 +612,15 @@ abstract class QuickSearch<E> {
 				void doFind() {
 					final String text = _searchField.getText().trim();
 					if (!text.isEmpty()) {
-						final int found = find(text);
+						search(text, () -> showFound(find(text)));
+					} else {
+						hidePopup();
+					}
+				}
+
+
+				void showFound(final int found) {
+					if (_popup != null) {
 						if (found == -1) {
 							_noMatchForeground = getNoMatchForeground();
 							_searchField.setForeground(_noMatchForeground);
@@ -642,8 +635,6 @@ abstract class QuickSearch<E> {
 							setSelectedElement(found);
 							updatePopupBounds();
 						}
-					} else {
-						hidePopup();
 					}
 				}
 
@@ -725,7 +716,7 @@ abstract class QuickSearch<E> {
 
 				if (isFindNextOccurrenceKey(e) && !isFindPreviousOccurrenceKey(e)) {
 					found = findNextOccurrence(text);
-					foundNext = found > 1;
+					foundNext = found > -1;
 				} else if (isFindPreviousOccurrenceKey(e)) {
 					found = findPreviousOccurrence(text);
 					foundPrev = found > -1;
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reshiftsecurity.plugins.intellij.gui.tree.view;
+
+import com.reshiftsecurity.plugins.intellij.common.util.New;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+
+/**
+ * Immutable trigram index over the labels of the quick search elements. It is built off the EDT
+ * and only used from the thread running the search.
+ */
+final class SearchIndex {
+
+	static final SearchIndex EMPTY = new SearchIndex(New.<String>arrayList());
+
+	private static final int GRAM_LENGTH = 3;
+	private static final int INTERRUPT_CHECK_INTERVAL = 1024;
+	private static final int[] NO_MATCHES = new int[0];
+
+	private final String[] _labels;
+	/**
+	 * Key = {@link #gram(String, int)} of the lower case labels ; value = ascending indices of the labels containing it.
+	 */
+	private final Map<Long, int[]> _postings;
+
+
+	SearchIndex(@NotNull final List<String> labels) {
+		_labels = labels.toArray(new String[0]);
+		_postings = New.map();
+
+		// first pass counts the labels per gram, second pass fills the postings; int[] {count, last label}
+		final String[] lowerCaseLabels = new String[_labels.length];
+		final Map<Long, int[]> counters = New.map();
+		for (int i = 0; i < _labels.length; i++) {
+			lowerCaseLabels[i] = _labels[i] != null ? toLowerCase(_labels[i]) : "";
+			for (int pos = 0; pos + GRAM_LENGTH <= lowerCaseLabels[i].length(); pos++) {
+				final int[] counter = counters.computeIfAbsent(gram(lowerCaseLabels[i], pos), key -> new int[]{0, -1});
+				if (counter[1] != i) {
+					counter[0]++;
+					counter[1] = i;
+				}
+			}
+		}
+		for (final Entry<Long, int[]> entry : counters.entrySet()) {
+			_postings.put(entry.getKey(), new int[entry.getValue()[0]]);
+			entry.getValue()[0] = 0;
+			entry.getValue()[1] = -1;
+		}
+		for (int i = 0; i < lowerCaseLabels.length; i++) {
+			for (int pos = 0; pos + GRAM_LENGTH <= lowerCaseLabels[i].length(); pos++) {
+				final Long gram = gram(lowerCaseLabels[i], pos);
+				final int[] counter = counters.get(gram);
+				if (counter[1] != i) {
+					_postings.get(gram)[counter[0]++] = i;
+					counter[1] = i;
+				}
+			}
+		}
+	}
+
+
+	int size() {
+		return _labels.length;
+	}
+
+
+	/**
+	 * @return ascending indices of all labels matching the query, or null if the current thread was interrupted
+	 */
+	@Nullable
+	int[] find(@NotNull final Query query) {
+		if (query._patterns.length == 0) {
+			return NO_MATCHES;
+		}
+		final int[] candidates = query._literal != null && query._literal.length() >= GRAM_LENGTH ? getCandidates(query._literal) : null;
+		final int count = candidates != null ? candidates.length : _labels.length;
+		final int[] matches = new int[count];
+		int found = 0;
+		for (int i = 0; i < count; i++) {
+			if (i % INTERRUPT_CHECK_INTERVAL == 0 && Thread.currentThread().isInterrupted()) {
+				return null;
+			}
+			final int index = candidates != null ? candidates[i] : i;
+			final String label = _labels[index];
+			if (label != null && query.matches(label)) {
+				matches[found++] = index;
+			}
+		}
+		return Arrays.copyOf(matches, found);
+	}
+
+
+	/**
+	 * @return the labels containing all grams of the given lower case literal; a superset of the matching labels
+	 */
+	@NotNull
+	private int[] getCandidates(@NotNull final String literal) {
+		final int[][] postings = new int[literal.length() - GRAM_LENGTH + 1][];
+		for (int pos = 0; pos < postings.length; pos++) {
+			postings[pos] = _postings.get(gram(literal, pos));
+			if (postings[pos] == null) {
+				return NO_MATCHES;
+			}
+		}
+		Arrays.sort(postings, Comparator.comparingInt(posting -> posting.length));
+		int[] ret = postings[0];
+		for (int i = 1; i < postings.length && ret.length > 0; i++) {
+			ret = intersect(ret, postings[i]);
+		}
+		return ret;
+	}
+
+
+	@NotNull
+	private static int[] intersect(@NotNull final int[] a, @NotNull final int[] b) {
+		final int[] ret = new int[Math.min(a.length, b.length)];
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				ret[count++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(ret, count);
+	}
+
+
+	private static long gram(@NotNull final String lowerCase, final int pos) {
+		return (long) lowerCase.charAt(pos) << 32 | (long) lowerCase.charAt(pos + 1) << 16 | lowerCase.charAt(pos + 2);
+	}
+
+
+	/**
+	 * Per char, so that the positions stay the same as in the label.
+	 */
+	@NotNull
+	private static String toLowerCase(@NotNull final String text) {
+		final char[] chars = text.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = Character.toLowerCase(chars[i]);
+		}
+		return new String(chars);
+	}
+
+
+	/**
+	 * A search text compiled once per query.
+	 */
+	static final class Query {
+
+		private static final String REGEX_META_CHARS = "\\^$.|?*+()[]{}";
+
+		/**
+		 * The valid ones of the patterns tried in order; nothing matches if there is none.
+		 */
+		@NotNull
+		private final Pattern[] _patterns;
+		/**
+		 * The lower case search text if it contains no pattern syntax, used to look up candidates in the index.
+		 */
+		@Nullable
+		private final String _literal;
+
+
+		/**
+		 * A label matches if the search text is found at its start, or anywhere ignoring case.
+		 */
+		Query(@NotNull final String searchText) {
+			_literal = isLiteral(searchText) ? toLowerCase(searchText) : null;
+			final List<Pattern> patterns = New.arrayList();
+			if (_literal == null) {
+				// an anchor may turn an invalid pattern into a valid one, f. e. '*'
+				addPattern(patterns, '^' + searchText + '^', 0);
+				addPattern(patterns, '^' + searchText, 0);
+				addPattern(patterns, '^' + searchText, Pattern.CASE_INSENSITIVE);
+			} // else implied by the last one
+			addPattern(patterns, searchText, Pattern.CASE_INSENSITIVE);
+			_patterns = patterns.toArray(new Pattern[0]);
+		}
+
+
+		private static void addPattern(@NotNull final List<Pattern> patterns, @NotNull final String regex, final int flags) {
+			try {
+				patterns.add(Pattern.compile(regex, flags));
+			} catch (final PatternSyntaxException ignore) {
+				// no match
+			}
+		}
+
+
+		boolean matches(@NotNull final String label) {
+			for (final Pattern pattern : _patterns) {
+				if (pattern.matcher(label).find()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+
+		private static boolean isLiteral(@NotNull final String searchText) {
+			for (int i = 0; i < searchText.length(); i++) {
+				if (REGEX_META_CHARS.indexOf(searchText.charAt(i)) >= 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
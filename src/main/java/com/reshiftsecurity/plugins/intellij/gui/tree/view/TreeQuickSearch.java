@@ -19,9 +19,14 @@
  */
 package com.reshiftsecurity.plugins.intellij.gui.tree.view;
 
+import edu.umd.cs.findbugs.BugInstance;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import com.reshiftsecurity.plugins.intellij.common.EventDispatchThreadHelper;
+import com.reshiftsecurity.plugins.intellij.core.Bug;
 import com.reshiftsecurity.plugins.intellij.gui.tree.model.AbstractTreeNode;
+import com.reshiftsecurity.plugins.intellij.gui.tree.model.BugInstanceGroupNode;
+import com.reshiftsecurity.plugins.intellij.gui.tree.model.GroupTreeModel;
 import com.reshiftsecurity.plugins.intellij.gui.tree.model.VisitableTreeNode;
 
 import javax.swing.JTree;
@@ -32,6 +37,9 @@ import javax.swing.tree.TreePath;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
 
 
 /**
@@ -44,7 +52,17 @@ import java.util.List;
 final class TreeQuickSearch extends QuickSearch<AbstractTreeNode<VisitableTreeNode>> implements TreeModelListener {
 
 	private JTree _tree;
-	private List<TreePath> _elementsCache;
+	/**
+	 * The searchable rows in tree order, built on demand and dropped on every model change like {@link #_index}.
+	 */
+	@Nullable
+	private List<Row> _rows;
+	@Nullable
+	private SearchIndex _index;
+	/**
+	 * Formatting the bug messages is the expensive part of indexing, so the leaf labels outlive the index.
+	 */
+	private final Map<BugInstance, String> _leafLabels = Collections.synchronizedMap(new WeakHashMap<BugInstance, String>());
 
 
 	private TreeQuickSearch() {
@@ -74,59 +92,68 @@ final class TreeQuickSearch extends QuickSearch<AbstractTreeNode<VisitableTreeNo
 	}
 
 
+	@NotNull
 	@Override
-	protected int getElementCount() {
-		return getElementsCache().size();
-	}
-
-
-	@Override
-	protected String convertElementToString(final AbstractTreeNode<VisitableTreeNode> element) {
-		return element.getSimpleName();
-	}
-
-
-	@Override
-	protected List<TreePath> getElementsCache() {
-		if (_elementsCache == null) {
-			buildElementsCache();
+	protected Supplier<SearchIndex> prepareSearchIndex() {
+		final SearchIndex index = _index;
+		if (index != null) {
+			return () -> index;
 		}
-		return Collections.unmodifiableList(_elementsCache);
+		final List<Row> rows = getRows();
+		return () -> {
+			final List<String> labels = new ArrayList<String>(rows.size());
+			for (final Row row : rows) {
+				if (Thread.currentThread().isInterrupted()) {
+					return null;
+				}
+				labels.add(row.getLabel(_leafLabels));
+			}
+			final SearchIndex ret = new SearchIndex(labels);
+			EventDispatchThreadHelper.invokeLater(() -> {
+				if (_rows == rows) {
+					_index = ret;
+				}
+			});
+			return ret;
+		};
 	}
 
 
-	@Override
-	protected AbstractTreeNode<VisitableTreeNode> getElementAt(final int index) {
-		if (index == -1) {
-			return null;
+	@NotNull
+	private List<Row> getRows() {
+		if (_rows == null) {
+			_rows = new ArrayList<Row>();
+			final Object root = _tree.getModel().getRoot();
+			buildRows(root, new TreePath(root), _tree.getModel());
 		}
-
-		//noinspection unchecked
-		return (AbstractTreeNode<VisitableTreeNode>) getElementsCache().get(index).getLastPathComponent();
+		return _rows;
 	}
 
 
-	void buildElementsCache() {
-		_elementsCache = new ArrayList<TreePath>();
-		final Object root = _tree.getModel().getRoot();
-		_buildElementsCache(root, new TreePath(root), _tree.getModel());
-	}
-
-
-	private void _buildElementsCache(final Object node, final TreePath path, final TreeModel model) {
+	/**
+	 * Leafs of a group are added from its bugs so that no leaf nodes are created for indexing.
+	 */
+	private void buildRows(final Object node, final TreePath path, final TreeModel model) {
 		if (_tree.isRootVisible() || path.getLastPathComponent() != _tree.getModel().getRoot()) {
-			_elementsCache.add(path);
+			_rows.add(new Row(path, -1, null));
+		}
+		if (node instanceof BugInstanceGroupNode && !((BugInstanceGroupNode) node).getBugs().isEmpty()) {
+			final List<Bug> bugs = ((BugInstanceGroupNode) node).getBugs();
+			for (int i = 0; i < bugs.size(); i++) {
+				_rows.add(new Row(path, i, bugs.get(i)));
+			}
+			return;
 		}
 		for (int i = 0; i < model.getChildCount(node); i++) {
 			final Object childNode = model.getChild(node, i);
-			_buildElementsCache(childNode, path.pathByAddingChild(childNode), model);
+			buildRows(childNode, path.pathByAddingChild(childNode), model);
 		}
 	}
 
 
 	@Override
 	protected void setSelectedElement(final int index) {
-		final TreePath path = getElementsCache().get(index);
+		final TreePath path = getRows().get(index).getTreePath();
 		_tree.setExpandsSelectedPaths(true);
 		//_tree.addSelectionPath(path);
 		_tree.setSelectionPath(path);
@@ -144,11 +171,10 @@ final class TreeQuickSearch extends QuickSearch<AbstractTreeNode<VisitableTreeNo
 
 
 	private void clearElementsCache() {
-		if (_elementsCache != null) {
-			_elementsCache.clear();
-			//noinspection AssignmentToNull
-			_elementsCache = null;
-		}
+		//noinspection AssignmentToNull
+		_rows = null;
+		//noinspection AssignmentToNull
+		_index = null;
 	}
 
 
@@ -175,7 +201,53 @@ final class TreeQuickSearch extends QuickSearch<AbstractTreeNode<VisitableTreeNo
 
 	@Override
 	public void treeStructureChanged(final TreeModelEvent e) {
+		if (e.getSource() instanceof GroupTreeModel && ((GroupTreeModel) e.getSource()).isReleasingLeafs()) {
+			return; // the rows are built from the bugs of the groups, collapsing a group does not change them
+		}
 		hidePopup();
 		clearElementsCache();
 	}
-}
\ No newline at end of file
+
+
+	/**
+	 * A tree node, or the leaf at the given index of a group.
+	 */
+	private static final class Row {
+
+		private final TreePath _path;
+		private final int _leafIndex;
+		@Nullable
+		private final Bug _bug;
+
+
+		private Row(@NotNull final TreePath path, final int leafIndex, @Nullable final Bug bug) {
+			_path = path;
+			_leafIndex = leafIndex;
+			_bug = bug;
+		}
+
+
+		/**
+		 * Same as {@link AbstractTreeNode#getSimpleName()} of the node, may be invoked outside EDT.
+		 */
+		String getLabel(@NotNull final Map<BugInstance, String> leafLabels) {
+			if (_bug != null) {
+				return leafLabels.computeIfAbsent(_bug.getInstance(), BugInstance::getMessageWithoutPrefix);
+			}
+			//noinspection unchecked
+			return ((AbstractTreeNode<VisitableTreeNode>) _path.getLastPathComponent()).getSimpleName();
+		}
+
+
+		/**
+		 * Invoked by EDT, creates the leaf nodes of the group if needed.
+		 */
+		@NotNull
+		TreePath getTreePath() {
+			if (_leafIndex < 0) {
+				return _path;
+			}
+			return _path.pathByAddingChild(((BugInstanceGroupNode) _path.getLastPathComponent()).getChildAt(_leafIndex));
+		}
+	}
+}
@@ -24,18 +24,15 @@ import com.intellij.icons.AllIcons;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.PsiFile;
 import com.intellij.ui.RowIcon;
 import com.intellij.util.IconUtil;
 import com.intellij.util.IncorrectOperationException;
 import org.jetbrains.annotations.NotNull;
 import com.reshiftsecurity.plugins.intellij.common.ExtendedProblemDescriptor;
-import com.reshiftsecurity.plugins.intellij.gui.toolwindow.view.ToolWindowPanel;
+import com.reshiftsecurity.plugins.intellij.core.ProblemCacheService;
 import com.reshiftsecurity.plugins.intellij.resources.ResourcesLoader;
 
 import javax.swing.Icon;
-import java.util.List;
-import java.util.Map;
 
 public class ClearAndSuppressBugIntentionAction extends SuppressReportBugIntentionAction {
 
@@ -45,9 +42,7 @@ public class ClearAndSuppressBugIntentionAction extends SuppressReportBugIntenti
 
 	@Override
 	public void invoke(@NotNull final Project project, final Editor editor, @NotNull final PsiElement element) throws IncorrectOperationException {
-		final ToolWindowPanel toolWindow = ToolWindowPanel.getInstance(project);
-		final Map<PsiFile, List<ExtendedProblemDescriptor>> problems = toolWindow.getProblems();
-		problems.get(element.getContainingFile()).remove(getProblemDescriptor());
+		project.getService(ProblemCacheService.class).removeProblem(element.getContainingFile(), getProblemDescriptor());
 		super.invoke(project, editor, element);
 		DaemonCodeAnalyzer.getInstance(project).restart();
 	}
@@ -27,18 +27,15 @@ import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiDeclarationStatement;
 import com.intellij.psi.PsiDocCommentOwner;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.PsiFile;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.util.IncorrectOperationException;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import com.reshiftsecurity.plugins.intellij.common.ExtendedProblemDescriptor;
-import com.reshiftsecurity.plugins.intellij.gui.toolwindow.view.ToolWindowPanel;
+import com.reshiftsecurity.plugins.intellij.core.ProblemCacheService;
 import com.reshiftsecurity.plugins.intellij.resources.ResourcesLoader;
 
 import javax.swing.Icon;
-import java.util.List;
-import java.util.Map;
 
 public class ClearBugIntentionAction extends SuppressReportBugIntentionAction {
 
@@ -48,9 +45,7 @@ public class ClearBugIntentionAction extends SuppressReportBugIntentionAction {
 
 	@Override
 	public void invoke(@NotNull final Project project, final Editor editor, @NotNull final PsiElement element) throws IncorrectOperationException {
-		final ToolWindowPanel toolWindow = ToolWindowPanel.getInstance(project);
-		final Map<PsiFile, List<ExtendedProblemDescriptor>> problems = toolWindow.getProblems();
-		problems.get(element.getContainingFile()).remove(getProblemDescriptor());
+		project.getService(ProblemCacheService.class).removeProblem(element.getContainingFile(), getProblemDescriptor());
 		DaemonCodeAnalyzer.getInstance(project).restart();
 	}
 
@@ -64,14 +64,12 @@ import com.reshiftsecurity.plugins.intellij.common.PluginConstants;
 import com.reshiftsecurity.plugins.intellij.common.util.FileModificationServiceUtil;
 import com.reshiftsecurity.plugins.intellij.common.util.IdeaUtilImpl;
 import com.reshiftsecurity.plugins.intellij.core.ModuleSettings;
+import com.reshiftsecurity.plugins.intellij.core.ProblemCacheService;
 import com.reshiftsecurity.plugins.intellij.core.ProjectSettings;
-import com.reshiftsecurity.plugins.intellij.gui.toolwindow.view.ToolWindowPanel;
 import com.reshiftsecurity.plugins.intellij.resources.ResourcesLoader;
 
 import javax.swing.Icon;
 import java.util.Collections;
-import java.util.List;
-import java.util.Map;
 
 @SuppressWarnings({"RedundantInterfaceDeclaration"})
 @edu.umd.cs.findbugs.annotations.SuppressFBWarnings({"RI_REDUNDANT_INTERFACES"})
@@ -184,9 +182,7 @@ public class SuppressReportBugIntentionAction extends SuppressIntentionAction im
 		} else {
 			Messages.showErrorDialog(editor.getComponent(), "Add suppress annotation is not supported for Java 1.3 and older", "Unsupported");
 		}
-		final ToolWindowPanel toolWindow = ToolWindowPanel.getInstance(project);
-		final Map<PsiFile, List<ExtendedProblemDescriptor>> problems = toolWindow.getProblems();
-		problems.get(element.getContainingFile()).remove(getProblemDescriptor());
+		project.getService(ProblemCacheService.class).removeProblem(element.getContainingFile(), getProblemDescriptor());
 		DaemonCodeAnalyzer.getInstance(project).restart();
 	}
 
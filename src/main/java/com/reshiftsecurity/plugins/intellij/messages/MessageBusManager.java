@@ -29,6 +29,7 @@ import com.reshiftsecurity.plugins.intellij.core.Bug;
 import com.reshiftsecurity.plugins.intellij.core.FindBugsResult;
 import com.reshiftsecurity.plugins.intellij.core.FindBugsState;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -77,9 +78,9 @@ public final class MessageBusManager {
 		publish(project, ClearListener.TOPIC).clear();
 	}
 
-	public static void publishNewBug(@NotNull final Project project, @NotNull final Bug bug, final int analyzedClassCount) {
+	public static void publishNewBugs(@NotNull final Project project, @NotNull final List<Bug> bugs, final int analyzedClassCount) {
 		EventDispatchThreadHelper.checkEDT();
-		publish(project, NewBugListener.TOPIC).newBug(bug, analyzedClassCount);
+		publish(project, NewBugsListener.TOPIC).newBugs(bugs, analyzedClassCount);
 	}
 
 	public static void publishAnalysisStarted(@NotNull final Project project) {
@@ -23,11 +23,22 @@ import com.intellij.util.messages.Topic;
 import org.jetbrains.annotations.NotNull;
 import com.reshiftsecurity.plugins.intellij.core.Bug;
 
-public interface NewBugListener {
-	Topic<NewBugListener> TOPIC = Topic.create("SpotBugs New Bug", NewBugListener.class);
+import java.util.List;
+
+public interface NewBugsListener {
+	Topic<NewBugsListener> TOPIC = Topic.create("SpotBugs New Bugs", NewBugsListener.class);
+
+	/**
+	 * The analyzed class count of bugs published before it is known (f. e. while a bug collection is imported),
+	 * the root node is updated when the analysis is finished.
+	 */
+	int UNKNOWN_CLASS_COUNT = -1;
 
 	/**
 	 * Invoked by EDT.
+	 *
+	 * @param bugs               the bugs reported since the last notification, in report order
+	 * @param analyzedClassCount .. or {@link #UNKNOWN_CLASS_COUNT}
 	 */
-	void newBug(@NotNull Bug bug, int analyzedClassCount);
+	void newBugs(@NotNull List<Bug> bugs, int analyzedClassCount);
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.reshiftsecurity.plugins.intellij.service;
+
+import com.intellij.openapi.diagnostic.Logger;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends analytics hits in the background, so recording an action never blocks the caller (EDT or analysis).
+ * <p>
+ * Hits are queued in a bounded lock-free queue; hits offered while the queue is full are dropped.
+ * The queue is flushed by a single dispatcher thread {@link #FLUSH_INTERVAL_MS} after the first queued hit,
+ * or at once when a full batch ({@link #BATCH_SIZE} hits, the limit of the batch endpoint) is queued.
+ * All requests use one shared HTTP client, so connections are reused. Failed batches are retried
+ * with exponential backoff on network errors and server errors, and dropped after {@link #MAX_RETRIES}.
+ */
+final class AnalyticsDispatcher {
+    private static final Logger LOGGER = Logger.getInstance(AnalyticsDispatcher.class);
+
+    static final int MAX_QUEUE_SIZE = 500;
+    static final int BATCH_SIZE = 20;
+    static final long FLUSH_INTERVAL_MS = 5000;
+    static final int MAX_RETRIES = 3;
+    static final long RETRY_BACKOFF_MS = 1000;
+
+    private static final MediaType FORM_MEDIA_TYPE = MediaType.parse("application/x-www-form-urlencoded");
+
+    private final String collectUrl;
+    private final String batchUrl;
+    private final String userAgent;
+    private final OkHttpClient client;
+    private final ScheduledExecutorService executor;
+
+    private final Queue<String> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicBoolean delayedFlushScheduled = new AtomicBoolean();
+    private final AtomicBoolean immediateFlushScheduled = new AtomicBoolean();
+
+    /**
+     * @param collectUrl endpoint for a single hit
+     * @param batchUrl   endpoint for several hits, one per line
+     * @param executor   runs the flushes; should have a single thread, requests are sent by it
+     */
+    AnalyticsDispatcher(@NotNull String collectUrl, @NotNull String batchUrl, @NotNull String userAgent,
+                        @NotNull OkHttpClient client, @NotNull ScheduledExecutorService executor) {
+        this.collectUrl = collectUrl;
+        this.batchUrl = batchUrl;
+        this.userAgent = userAgent;
+        this.client = client;
+        this.executor = executor;
+    }
+
+    /**
+     * Queues a hit, never blocks.
+     *
+     * @return false if the hit was dropped because the queue is full
+     */
+    boolean offer(@NotNull String hit) {
+        if (queueSize.incrementAndGet() > MAX_QUEUE_SIZE) {
+            queueSize.decrementAndGet();
+            return false;
+        }
+        queue.offer(hit);
+        if (queueSize.get() >= BATCH_SIZE) {
+            if (immediateFlushScheduled.compareAndSet(false, true)) {
+                schedule(() -> {
+                    immediateFlushScheduled.set(false);
+                    flush();
+                }, 0);
+            }
+        } else if (delayedFlushScheduled.compareAndSet(false, true)) {
+            schedule(() -> {
+                delayedFlushScheduled.set(false);
+                flush();
+            }, FLUSH_INTERVAL_MS);
+        }
+        return true;
+    }
+
+    /**
+     * Sends all queued hits in batches; runs on the dispatcher thread.
+     */
+    private void flush() {
+        while (true) {
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            String hit;
+            while (batch.size() < BATCH_SIZE && (hit = queue.poll()) != null) {
+                queueSize.decrementAndGet();
+                batch.add(hit);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            send(batch, 0);
+        }
+    }
+
+    private void send(@NotNull List<String> batch, int attempt) {
+        boolean retry;
+        try {
+            Request request = new Request.Builder()
+                    .url(batch.size() > 1 ? batchUrl : collectUrl)
+                    .post(RequestBody.create(FORM_MEDIA_TYPE, String.join("\n", batch)))
+                    .addHeader("Content-Type", "application/x-www-form-urlencoded")
+                    .addHeader("User-Agent", userAgent)
+                    .build();
+            try (Response response = client.newCall(request).execute()) {
+                // client errors are not retried, the same request would fail again
+                retry = response.code() >= 500 || response.code() == 429;
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not send analytics", e);
+            retry = true;
+        }
+        if (retry) {
+            if (attempt < MAX_RETRIES) {
+                schedule(() -> send(batch, attempt + 1), RETRY_BACKOFF_MS << attempt);
+            } else {
+                LOGGER.debug("Dropped " + batch.size() + " analytics hits after " + MAX_RETRIES + " retries");
+            }
+        }
+    }
+
+    private void schedule(@NotNull Runnable task, long delayMs) {
+        try {
+            executor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Analytics dispatcher is shut down", e);
+        }
+    }
+}
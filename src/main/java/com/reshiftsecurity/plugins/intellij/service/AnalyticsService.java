@@ -24,25 +24,26 @@ import com.intellij.ide.plugins.IdeaPluginDescriptor;
 import com.intellij.ide.plugins.PluginManagerCore;
 import com.intellij.openapi.application.ApplicationInfo;
 import com.intellij.openapi.components.ServiceManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.reshiftsecurity.analytics.AnalyticsEntry;
 import com.reshiftsecurity.analytics.AnalyticsAction;
 import com.reshiftsecurity.plugins.intellij.common.PluginConstants;
 import com.reshiftsecurity.plugins.intellij.common.VersionManager;
 import com.reshiftsecurity.plugins.intellij.common.util.HashUtil;
-import okhttp3.*;
+import okhttp3.OkHttpClient;
 import org.apache.commons.lang.StringUtils;
 
-import java.io.IOException;
 import java.net.*;
-import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class AnalyticsService {
-    List<AnalyticsEntry> entries;
     // NOTE: use https://www.google-analytics.com/debug/collect for debugging
     private final String ANALYTICS_BASE_URL = "https://www.google-analytics.com/collect";
+    private final String ANALYTICS_BATCH_URL = "https://www.google-analytics.com/batch";
+    private static final long HTTP_TIMEOUT_SECONDS = 10;
     private final String APP_ID = "com.reshiftsecurity.plugins.intellij";
     private final String APP_NAME = "Reshift Intellij Plugin";
     private final String PROTOCOL_VERSION = "1";
@@ -63,10 +64,10 @@ public class AnalyticsService {
     private String intellijPlatform;
     private String intellijVersion;
     private String operatingSystem;
+    private final AnalyticsDispatcher dispatcher;
 
     public AnalyticsService() {
         ApplicationInfo appInfo = ApplicationInfo.getInstance();
-        this.entries = new ArrayList<>();
         this.applicationVersion = VersionManager.getVersion();
         this.userID = generateUserIdentifier();
         this.measurementID = "UA-149586212-2";
@@ -74,6 +75,13 @@ public class AnalyticsService {
         this.intellijPlatform = String.format("%s %s", appInfo.getVersionName(), appInfo.getBuild().getProductCode());
         this.intellijVersion = appInfo.getFullVersion();
         this.userAgent = buildUserAgent();
+        OkHttpClient client = new OkHttpClient.Builder()
+                .connectTimeout(HTTP_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(HTTP_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .writeTimeout(HTTP_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .build();
+        this.dispatcher = new AnalyticsDispatcher(ANALYTICS_BASE_URL, ANALYTICS_BATCH_URL, this.userAgent, client,
+                AppExecutorUtil.createBoundedScheduledExecutorService("Reshift Analytics", 1));
         // Record initial "pageview" hit
         this.recordInitialIntellijOpen();
     }
@@ -88,12 +96,11 @@ public class AnalyticsService {
 
     public void recordDismissConsentAction() {
         AnalyticsAction action = AnalyticsAction.SETTINGS_GATHER_DATA_DISMISS;
-        this.entries.add(new AnalyticsEntry(action));
-        this.processActions(true);
+        this.processAction(new AnalyticsEntry(action), true);
     }
 
     public void recordInstall() {
-        this.entries.add(new AnalyticsEntry(AnalyticsAction.INSTALL));
+        this.processAction(new AnalyticsEntry(AnalyticsAction.INSTALL), true);
         List<IdeaPluginDescriptor> plugins = PluginManagerCore.getLoadedPlugins().stream()
                 .filter(p -> p.getVendor() == null ? true :
                         !p.getVendor().startsWith("JetBrains")
@@ -103,9 +110,8 @@ public class AnalyticsService {
             String pluginDimensionValue = String.format("%s %s", plugin.getName(), plugin.getVendor());
             AnalyticsEntry pluginEntry = new AnalyticsEntry(AnalyticsAction.OTHER_PLUGINS);
             pluginEntry.setDimensionValue(pluginDimensionValue);
-            this.entries.add(pluginEntry);
+            this.processAction(pluginEntry, true);
         }
-        processActions(true);
     }
 
     public void recordConsent(boolean consent) {
@@ -114,23 +120,19 @@ public class AnalyticsService {
     }
 
     public void recordConsentExemptAction(AnalyticsAction action) {
-        this.entries.add(new AnalyticsEntry(action));
-        this.processActions(true);
+        this.processAction(new AnalyticsEntry(action), true);
     }
 
     public void recordAction(AnalyticsAction action, String actionNameOverride) {
-        this.entries.add(new AnalyticsEntry(action, null, actionNameOverride));
-        this.processActions();
+        this.processAction(new AnalyticsEntry(action, null, actionNameOverride), false);
     }
 
     public void recordAction(AnalyticsAction action) {
-        this.entries.add(new AnalyticsEntry(action));
-        this.processActions();
+        this.processAction(new AnalyticsEntry(action), false);
     }
 
     public void recordMetric(AnalyticsAction action, Integer value) {
-        this.entries.add(new AnalyticsEntry(action, value));
-        this.processActions();
+        this.processAction(new AnalyticsEntry(action, value), false);
     }
 
     public String getUserIdentifier() {
@@ -221,45 +223,16 @@ public class AnalyticsService {
         return actionBuilder.toString();
     }
 
-    private String buildBatchPayload() {
-        StringBuilder payloadBuilder = new StringBuilder();
-        for(AnalyticsEntry action : this.entries) {
-            payloadBuilder.append(buildEntryParameters(action))
-                    .append(this.entries.size() > 1 ? "\n" : "");
-        }
-        return payloadBuilder.toString();
-    }
-
-    private void processActions() {
-        this.processActions(false);
-    }
-
-    private void processActions(boolean consentExempt) {
+    /**
+     * Queues the entry for the background dispatcher; never blocks.
+     * Entries which are not consent exempt are dropped if the user did not agree to send usage data.
+     */
+    private void processAction(AnalyticsEntry entry, boolean consentExempt) {
         if (!consentExempt) {
             if (!AnalyticsServiceSettings.getInstance().sendAnonymousUsage()) {
                 return;
             }
         }
-        if (this.entries.size() > 0) {
-            try {
-                String requestPayload = buildBatchPayload();
-                OkHttpClient client = new OkHttpClient();
-
-                MediaType mediaType = MediaType.parse("application/x-www-form-urlencoded");
-                RequestBody body = RequestBody.create(mediaType, requestPayload);
-                Request request = new Request.Builder()
-                        .url(ANALYTICS_BASE_URL)
-                        .post(body)
-                        .addHeader("Content-Type", "application/x-www-form-urlencoded")
-                        .addHeader("User-Agent", this.userAgent)
-                        .build();
-
-                client.newCall(request).execute().body().close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            } finally {
-                this.entries = new ArrayList<>();
-            }
-        }
+        this.dispatcher.offer(buildEntryParameters(entry));
     }
 }
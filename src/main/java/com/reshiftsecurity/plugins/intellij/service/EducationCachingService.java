@@ -20,48 +20,262 @@
 
 package com.reshiftsecurity.plugins.intellij.service;
 
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.components.Service;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.reshiftsecurity.education.DevContent;
 import com.reshiftsecurity.education.EducationService;
 import com.reshiftsecurity.education.VulnerabilityDetails;
 import com.reshiftsecurity.plugins.intellij.common.ExtendedProblemDescriptor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jsoup.Jsoup;
 import org.jsoup.safety.Whitelist;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Education content per vulnerability type.
+ * Content is fetched in the background, kept on disk across IDE sessions and revalidated with its ETag
+ * once per session, so the editor highlighting never waits for the network.
+ */
 @Service
 public class EducationCachingService {
-    private List<VulnerabilityDetails> contentCache;
-    private final String SECTION_OVERVIEW="Overview";
+    private static final Logger LOGGER = Logger.getInstance(EducationCachingService.class);
+    private static final String SECTION_OVERVIEW = "Overview";
+    /**
+     * Minimum time between background fetches of a type whose last fetch failed without a disk copy.
+     */
+    static final long RETRY_INTERVAL_MS = 60_000;
+
+    private final ConcurrentMap<String, CachedContent> contentCache;
+    /**
+     * Types that are queued for loading or were already revalidated in this session.
+     */
+    private final Set<String> requestedTypes;
+    /**
+     * Time of the last failed fetch per type that has no content yet; failures are not cached as content.
+     */
+    private final ConcurrentMap<String, Long> failedTypes;
+    /**
+     * Background loads queued or running; the highlighting is refreshed once when they are drained.
+     */
+    private final AtomicInteger pendingLoads;
+    private final AtomicBoolean contentChanged;
+    private final ExecutorService executor;
+    private final File cacheDir;
+    private final long retryIntervalMs;
+    private final Runnable onContentLoaded;
 
     public EducationCachingService() {
-        this.contentCache = new ArrayList<>();
+        this(AppExecutorUtil.createBoundedApplicationPoolExecutor("Reshift Education Content", 1),
+                new File(PathManager.getSystemPath(), "reshiftsecurity" + File.separator + "education"),
+                RETRY_INTERVAL_MS, EducationCachingService::refreshHighlighting);
     }
 
-    private Optional<VulnerabilityDetails> getContentFromCache(String issueType) {
-        for (VulnerabilityDetails vulnerabilityDetails : contentCache) {
-            if (vulnerabilityDetails.getVulnerabilityType().equalsIgnoreCase(issueType)) {
-                return Optional.of(vulnerabilityDetails);
-            }
+    /**
+     * @param executor        runs the background loads; should have a single thread
+     * @param onContentLoaded called once new content was loaded by a batch of background loads
+     */
+    EducationCachingService(@NotNull ExecutorService executor, @NotNull File cacheDir, long retryIntervalMs,
+                            @NotNull Runnable onContentLoaded) {
+        this.contentCache = new ConcurrentHashMap<>();
+        this.requestedTypes = ConcurrentHashMap.newKeySet();
+        this.failedTypes = new ConcurrentHashMap<>();
+        this.pendingLoads = new AtomicInteger();
+        this.contentChanged = new AtomicBoolean();
+        this.executor = executor;
+        this.cacheDir = cacheDir;
+        this.retryIntervalMs = retryIntervalMs;
+        this.onContentLoaded = onContentLoaded;
+    }
+
+    public static EducationCachingService getInstance() {
+        return ServiceManager.getService(EducationCachingService.class);
+    }
+
+    /**
+     * Loads the content of the given types in the background, e. g. all types found by a finished scan.
+     */
+    public void prefetch(@NotNull Collection<String> issueTypes) {
+        for (String issueType : issueTypes) {
+            requestLoad(issueType);
         }
-        return Optional.empty();
     }
 
+    /**
+     * Blocks until the content is loaded if it is not cached yet; must not be used by highlighting.
+     */
     public VulnerabilityDetails getEducationContent(String issueType) {
-        Optional<VulnerabilityDetails> cachedDetails = getContentFromCache(issueType);
-        if (cachedDetails.isPresent()) {
-            return cachedDetails.get();
+        String key = getKey(issueType);
+        CachedContent cached = contentCache.get(key);
+        if (cached == null) {
+            requestedTypes.add(key);
+            cached = load(issueType);
         }
-        VulnerabilityDetails details = EducationService.getVulnerabilityDetails(issueType);
-        this.contentCache.add(details);
-        return details;
+        return cached.details;
     }
 
     public String getContentSection(String issueType, String sectionName, boolean textOnly) {
-        VulnerabilityDetails details = getEducationContent(issueType);
+        if (SECTION_OVERVIEW.equalsIgnoreCase(sectionName)) {
+            CachedContent cached = contentCache.get(getKey(issueType));
+            if (cached != null) {
+                return textOnly ? cached.overviewText : cached.overviewHtml;
+            }
+        }
+        return renderContentSection(getEducationContent(issueType), sectionName, textOnly);
+    }
+
+    /**
+     * Never blocks; answers an empty text until the content of the type is loaded.
+     */
+    public String getBriefOverview(final ExtendedProblemDescriptor problemDescriptor, boolean textOnly) {
+        if (problemDescriptor == null) {
+            return "";
+        }
+        return getBriefOverview(problemDescriptor.getBug().getInstance().getType(), textOnly);
+    }
+
+    /**
+     * Never blocks; answers an empty text until the content of the type is loaded.
+     */
+    public String getBriefOverview(@NotNull String issueType, boolean textOnly) {
+        CachedContent cached = contentCache.get(getKey(issueType));
+        if (cached == null) {
+            requestLoad(issueType);
+            return "";
+        }
+        return textOnly ? cached.overviewText : cached.overviewHtml;
+    }
+
+    private void requestLoad(@NotNull String issueType) {
+        String key = getKey(issueType);
+        Long failedAt = failedTypes.get(key);
+        if (failedAt != null && System.currentTimeMillis() - failedAt < retryIntervalMs) {
+            return;
+        }
+        if (requestedTypes.add(key)) {
+            pendingLoads.incrementAndGet();
+            executor.execute(() -> {
+                try {
+                    CachedContent previous = contentCache.get(key);
+                    load(issueType);
+                    if (contentCache.get(key) != previous) {
+                        contentChanged.set(true);
+                    }
+                } catch (RuntimeException e) {
+                    requestedTypes.remove(key);
+                    LOGGER.warn("Could not load education content for " + issueType, e);
+                } finally {
+                    // one refresh per batch, e. g. the prefetch of all types of a scan
+                    if (pendingLoads.decrementAndGet() == 0 && contentChanged.getAndSet(false)) {
+                        onContentLoaded.run();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Takes the content from memory or disk and revalidates it against the server.
+     * If the content can neither be fetched nor read from disk, empty content is answered but not cached,
+     * so the type is fetched again by a later request.
+     */
+    @NotNull
+    private CachedContent load(@NotNull String issueType) {
+        String key = getKey(issueType);
+        CachedContent cached = contentCache.get(key);
+        if (cached == null) {
+            cached = readFromDisk(issueType);
+        }
+        try {
+            EducationService.DevContentResponse response = EducationService.fetchDevContent(issueType, cached == null ? null : cached.etag);
+            if (!response.isNotModified()) {
+                cached = CachedContent.create(issueType, response.getBody(), response.getEtag());
+                writeToDisk(key, response);
+            }
+        } catch (IOException | RuntimeException e) { // RuntimeException: e. g. content Gson maps to an unexpected shape
+            LOGGER.debug("Could not fetch education content for " + issueType, e);
+        }
+        if (cached == null) {
+            failedTypes.put(key, System.currentTimeMillis());
+            requestedTypes.remove(key);
+            return new CachedContent(new VulnerabilityDetails(issueType), null);
+        }
+        failedTypes.remove(key);
+        contentCache.put(key, cached);
+        return cached;
+    }
+
+    @Nullable
+    private CachedContent readFromDisk(@NotNull String issueType) {
+        File jsonFile = getCacheFile(getKey(issueType), ".json");
+        if (!jsonFile.isFile()) {
+            return null;
+        }
+        try {
+            File etagFile = getCacheFile(getKey(issueType), ".etag");
+            String etag = etagFile.isFile() ? FileUtil.loadFile(etagFile, StandardCharsets.UTF_8) : null;
+            return CachedContent.create(issueType, FileUtil.loadFile(jsonFile, StandardCharsets.UTF_8), etag);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Could not read cached education content for " + issueType, e);
+            return null;
+        }
+    }
+
+    private void writeToDisk(@NotNull String key, @NotNull EducationService.DevContentResponse response) {
+        File jsonFile = getCacheFile(key, ".json");
+        File etagFile = getCacheFile(key, ".etag");
+        try {
+            FileUtil.writeToFile(jsonFile, response.getBody());
+            if (response.getEtag() != null) {
+                FileUtil.writeToFile(etagFile, response.getEtag());
+            } else {
+                FileUtil.delete(etagFile);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not write education content cache for " + key, e);
+        }
+    }
+
+    @NotNull
+    private File getCacheFile(@NotNull String key, @NotNull String extension) {
+        return new File(cacheDir, key.replaceAll("[^A-Z0-9_]", "_") + extension);
+    }
+
+    private static String getKey(@NotNull String issueType) {
+        return issueType.toUpperCase(Locale.ENGLISH);
+    }
+
+    private static void refreshHighlighting() {
+        ApplicationManager.getApplication().invokeLater(() -> {
+            for (Project project : ProjectManager.getInstance().getOpenProjects()) {
+                if (!project.isDisposed()) {
+                    DaemonCodeAnalyzer.getInstance(project).restart();
+                }
+            }
+        });
+    }
+
+    private static String renderContentSection(VulnerabilityDetails details, String sectionName, boolean textOnly) {
         Optional<DevContent> devContent = details.getDevContentByTitle(sectionName);
         String contentSection = "";
         if (devContent.isPresent()) {
@@ -77,14 +291,27 @@ public class EducationCachingService {
         return contentSection;
     }
 
-    public String getBriefOverview(final ExtendedProblemDescriptor problemDescriptor, boolean textOnly) {
-        StringBuilder content = new StringBuilder();
-        if (problemDescriptor == null) {
-            return content.toString();
+    /**
+     * Content of one type with its overview rendered once.
+     */
+    private static final class CachedContent {
+        private final VulnerabilityDetails details;
+        private final String etag;
+        private final String overviewText;
+        private final String overviewHtml;
+
+        private CachedContent(@NotNull VulnerabilityDetails details, @Nullable String etag) {
+            this.details = details;
+            this.etag = etag;
+            this.overviewText = renderContentSection(details, SECTION_OVERVIEW, true);
+            this.overviewHtml = renderContentSection(details, SECTION_OVERVIEW, false);
         }
-        String bugType = problemDescriptor.getBug().getInstance().getType();
-        content.append(getContentSection(bugType, SECTION_OVERVIEW, textOnly));
 
-        return content.toString();
+        @NotNull
+        static CachedContent create(@NotNull String issueType, @NotNull String json, @Nullable String etag) throws IOException {
+            VulnerabilityDetails details = new VulnerabilityDetails(issueType);
+            details.getDevContent().addAll(EducationService.parseDevContent(json));
+            return new CachedContent(details, etag);
+        }
     }
 }
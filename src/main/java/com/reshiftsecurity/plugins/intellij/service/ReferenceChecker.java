@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.reshiftsecurity.plugins.intellij.service;
+
+import com.intellij.openapi.diagnostic.Logger;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Checks in the background whether a reference id belongs to a reshift user, so the caller (EDT) never waits
+ * for the network. A result is reused for the rest of the day; failed checks are not, they are tried again
+ * by the next call.
+ * <p>
+ * The state is only accessed by the callback executor (the EDT), which serializes the checks and their results.
+ */
+final class ReferenceChecker {
+    private static final Logger LOGGER = Logger.getInstance(ReferenceChecker.class);
+
+    static final long TIMEOUT_MS = 5000;
+
+    private final String baseUrl;
+    private final OkHttpClient client;
+    private final Executor executor;
+    private final Executor callbackExecutor;
+
+    /**
+     * Epoch day of the last successful check; its result is reused for the rest of the day.
+     */
+    private long checkDay = -1;
+
+    @Nullable
+    private Boolean checkResult;
+
+    private boolean running;
+
+    /**
+     * @param baseUrl          URL of the reshift app, the reference API is below it
+     * @param executor         runs the checks
+     * @param callbackExecutor runs the callbacks and owns the state; the EDT without modality in the IDE
+     */
+    ReferenceChecker(@NotNull String baseUrl, @NotNull OkHttpClient client, @NotNull Executor executor,
+                     @NotNull Executor callbackExecutor) {
+        this.baseUrl = baseUrl;
+        this.client = client;
+        this.executor = executor;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    @NotNull
+    static OkHttpClient createClient(long timeoutMs) {
+        return new OkHttpClient.Builder()
+                .connectTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Starts a check unless one is running or the reference was already checked today; never blocks.
+     * Must be called by the callback executor.
+     *
+     * @param epochDay the current day
+     * @param callback called by the callback executor with true if the reference is known and false if not;
+     *                 not called if the check failed or another check is running
+     */
+    void check(@NotNull String referenceId, long epochDay, @NotNull Consumer<Boolean> callback) {
+        if (checkDay == epochDay) {
+            callback.accept(checkResult);
+            return;
+        }
+        if (running) {
+            return;
+        }
+        running = true;
+        String url = String.format("%s/api/user/reference/%s", baseUrl, referenceId);
+        executor.execute(() -> {
+            Boolean isUser = null;
+            try {
+                isUser = request(url);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Reshift user check failed", e);
+            } finally {
+                Boolean result = isUser;
+                callbackExecutor.execute(() -> done(epochDay, result, callback));
+            }
+        });
+    }
+
+    private void done(long epochDay, @Nullable Boolean isUser, @NotNull Consumer<Boolean> callback) {
+        running = false;
+        if (isUser != null) {
+            checkDay = epochDay;
+            checkResult = isUser;
+            callback.accept(isUser);
+        }
+    }
+
+    /**
+     * @return true if the reference is known, false if not, null if the check failed
+     */
+    @Nullable
+    private Boolean request(@NotNull String url) {
+        Request request = new Request.Builder()
+                .url(url)
+                .addHeader("Content-Type", "application/json")
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            return response.code() == 200;
+        } catch (IOException e) {
+            LOGGER.debug("Reshift user check failed", e);
+            return null;
+        }
+    }
+}
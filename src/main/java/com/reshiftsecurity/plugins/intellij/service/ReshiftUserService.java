@@ -21,6 +21,8 @@
 package com.reshiftsecurity.plugins.intellij.service;
 
 import com.intellij.ide.BrowserUtil;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.components.PersistentStateComponent;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.components.State;
@@ -30,6 +32,7 @@ import com.intellij.openapi.ui.DialogBuilder;
 import com.intellij.openapi.ui.DialogWrapper;
 import com.intellij.ui.ScrollPaneFactory;
 import com.intellij.ui.components.JBCheckBox;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.ui.UIUtil;
 import com.intellij.util.xmlb.XmlSerializerUtil;
 import com.intellij.util.xmlb.annotations.Tag;
@@ -38,18 +41,15 @@ import com.reshiftsecurity.plugins.intellij.common.PluginConstants;
 import com.reshiftsecurity.plugins.intellij.common.util.GuiUtil;
 import com.reshiftsecurity.plugins.intellij.gui.toolwindow.view.ToolWindowPanel;
 import com.reshiftsecurity.plugins.intellij.resources.ResourcesLoader;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
-import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.LocalDate;
 import java.util.Calendar;
 
 @State(
@@ -57,6 +57,10 @@ import java.util.Calendar;
         storages = {@Storage(file = "reshift-user.xml")}
 )
 public class ReshiftUserService implements PersistentStateComponent<ReshiftUserService> {
+    private final ReferenceChecker referenceChecker = new ReferenceChecker(PluginConstants.RESHIFT_APP_URL,
+            ReferenceChecker.createClient(ReferenceChecker.TIMEOUT_MS), AppExecutorUtil.getAppExecutorService(),
+            task -> ApplicationManager.getApplication().invokeLater(task, ModalityState.NON_MODAL));
+
     @Tag
     private Boolean isReshiftUser = false;
 
@@ -144,27 +148,31 @@ public class ReshiftUserService implements PersistentStateComponent<ReshiftUserS
         }
     }
 
+    /**
+     * Checks in the background whether the user has a reshift account, once per day (see {@link ReferenceChecker}),
+     * and shows the signup dialog by EDT if not. Never blocks the calling EDT on the network.
+     */
     public void postScanProcess(Project project) {
+        ApplicationManager.getApplication().assertIsDispatchThread();
         Calendar todayDate = Calendar.getInstance();
         this.today = todayDate.get(Calendar.DAY_OF_WEEK);
         boolean isTimeToShowPopup = Calendar.TUESDAY == today && today != this.dayLastShown;
-        if (isTimeToShowPopup && !this.isReshiftUser && !this.dismissSignupDialogueForever) {
-            OkHttpClient client = new OkHttpClient();
-
-            Request request = new Request.Builder()
-                    .url(String.format("%s/api/user/reference/%s", PluginConstants.RESHIFT_APP_URL, getReferenceId()))
-                    .addHeader("Content-Type", "application/json")
-                    .build();
-
-            try {
-                Response referenceCheckResponse = client.newCall(request).execute();
-                if (referenceCheckResponse.code() != 200) {
-                    showSignupWindow(ToolWindowPanel.getInstance(project));
-                } else {
-                    isReshiftUser = true;
-                }
-            } catch (IOException ioException) {
-                ioException.printStackTrace();
+        if (!isTimeToShowPopup || this.isReshiftUser || this.dismissSignupDialogueForever) {
+            return;
+        }
+        // only the dialog is bound to the project, the checker always completes its check
+        referenceChecker.check(getReferenceId(), LocalDate.now().toEpochDay(),
+                isUser -> ApplicationManager.getApplication().invokeLater(() -> onReferenceChecked(project, isUser),
+                        ModalityState.NON_MODAL, project.getDisposed()));
+    }
+
+    private void onReferenceChecked(Project project, boolean isUser) {
+        if (isUser) {
+            this.isReshiftUser = true;
+        } else if (this.today != this.dayLastShown && !this.dismissSignupDialogueForever) {
+            ToolWindowPanel panel = ToolWindowPanel.getInstance(project);
+            if (panel != null) {
+                showSignupWindow(panel);
             }
         }
     }
@@ -0,0 +1,657 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.reshiftsecurity.results;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * History of completed scans, as time series of the issues in the {@link SecurityReportStore}.
+ * <p>
+ * Each scan is appended as delta against the previous scan (issues added, fixed, reopened, moved to another line,
+ * changed or removed, keyed by the report store id). Every {@link #CHECKPOINT_INTERVAL} scans the full state
+ * is written instead, so {@link #getState(int) the state at any scan} is restored from the nearest checkpoint
+ * and at most {@code CHECKPOINT_INTERVAL - 1} deltas. The open and total issue count of every scan is kept in
+ * memory, so {@link #getScans()} never reads the file. Only the last {@link #MAX_SCANS} scans are retained;
+ * older scans are dropped by rewriting the file starting with a checkpoint.
+ * <p>
+ * Layout: magic, version, then entries of
+ * {@code byte kind, int payload length, int scan number, long time, int open count, int total count, payload}.
+ * A checkpoint payload is {@code int count} followed by {@code int id, issue} pairs,
+ * a delta payload is {@code int count} followed by {@code byte op, int id [, operands]}.
+ */
+public final class ScanHistoryStore {
+    private static final int MAGIC = 0x52534853; // "RSHS"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int CHECKPOINT_INTERVAL = 50;
+    private static final int MAX_SCANS = 1000;
+
+    private static final byte CHECKPOINT = 1;
+    private static final byte DELTA = 2;
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_UPDATE = 2;
+    private static final byte OP_MOVE = 3;
+    private static final byte OP_FIX = 4;
+    private static final byte OP_REOPEN = 5;
+    private static final byte OP_REMOVE = 6;
+
+    /**
+     * Size of the fixed part of an entry header after the payload length.
+     */
+    private static final int ENTRY_HEADER_SIZE = 4 + 8 + 4 + 4;
+
+    @NotNull
+    private final File file;
+
+    /**
+     * Ascending, the scan numbers are consecutive.
+     */
+    @NotNull
+    private final List<Scan> scans = new ArrayList<>();
+
+    /**
+     * State after the last scan, restored on first {@link #record(long, Map, Collection)}.
+     */
+    @Nullable
+    private Map<Integer, HistoryIssue> latestState;
+
+    public ScanHistoryStore(@NotNull File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the scan index. A missing file is an empty history, an interrupted append is cut off.
+     *
+     * @throws IOException if the file can not be read or is no scan history; the history is empty then
+     */
+    public synchronized void load() throws IOException {
+        scans.clear();
+        latestState = null;
+        if (!file.isFile()) {
+            return;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "rw")) {
+            if (in.length() < 8 || in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("No scan history: " + file);
+            }
+            long offset = in.getFilePointer();
+            try {
+                while (offset < in.length()) {
+                    in.seek(offset);
+                    byte kind = in.readByte();
+                    int payloadLength = in.readInt();
+                    Scan scan = new Scan(kind == CHECKPOINT, offset, in.readInt(), in.readLong(), in.readInt(), in.readInt());
+                    long end = in.getFilePointer() + payloadLength;
+                    if (end > in.length() || (scans.isEmpty() ? !scan.checkpoint : scan.number != getLastScan().number + 1)) {
+                        break;
+                    }
+                    scans.add(scan);
+                    offset = end;
+                }
+            } catch (EOFException ignored) {
+                // interrupted append
+            }
+            if (offset < in.length()) {
+                in.setLength(offset);
+            }
+        } catch (IOException e) {
+            scans.clear();
+            throw e;
+        }
+    }
+
+    /**
+     * @return all retained scans, oldest first; e.g. the open issue count over time
+     */
+    @NotNull
+    public synchronized List<Scan> getScans() {
+        return Collections.unmodifiableList(new ArrayList<>(scans));
+    }
+
+    public synchronized boolean isEmpty() {
+        return scans.isEmpty();
+    }
+
+    /**
+     * @return all issues known after the given scan (open and fixed) by report store id
+     * @throws IllegalArgumentException if the scan is not retained
+     */
+    @NotNull
+    public synchronized Map<Integer, HistoryIssue> getState(int scanNumber) throws IOException {
+        return Collections.unmodifiableMap(readState(scanNumber));
+    }
+
+    /**
+     * @return the changes from scan {@code from} to scan {@code to}
+     * @throws IllegalArgumentException if one of the scans is not retained
+     */
+    @NotNull
+    public synchronized ScanDiff diff(int from, int to) throws IOException {
+        Map<Integer, HistoryIssue> fromState = readState(from);
+        Map<Integer, HistoryIssue> toState = readState(to);
+        List<HistoryIssue> added = new ArrayList<>();
+        List<HistoryIssue> fixed = new ArrayList<>();
+        List<HistoryIssue> moved = new ArrayList<>();
+        for (HistoryIssue issue : toState.values()) {
+            HistoryIssue previous = fromState.get(issue.id);
+            boolean wasOpen = previous != null && previous.open;
+            if (issue.open && !wasOpen) {
+                added.add(issue);
+            } else if (!issue.open && wasOpen) {
+                fixed.add(issue);
+            } else if (issue.open && previous.lineNumber != issue.lineNumber) {
+                moved.add(issue);
+            }
+        }
+        for (HistoryIssue previous : fromState.values()) {
+            if (previous.open && !toState.containsKey(previous.id)) {
+                fixed.add(previous); // superseded or dropped from the report
+            }
+        }
+        return new ScanDiff(from, to, added, fixed, moved);
+    }
+
+    /**
+     * Appends a scan.
+     *
+     * @param changed    the issues added or changed by the scan by report store id; for the first scan all issues
+     * @param removedIds report store ids of the issues removed by the scan
+     * @throws IOException if the scan could not be written; the partly written scan is truncated again,
+     *                     so the history is unchanged then
+     */
+    public synchronized void record(long time, @NotNull Map<Integer, SecurityIssue> changed, @NotNull Collection<Integer> removedIds) throws IOException {
+        Map<Integer, HistoryIssue> state = latestState;
+        if (state == null) {
+            state = scans.isEmpty() ? new LinkedHashMap<>() : readState(getLastScan().number);
+        }
+        state = new LinkedHashMap<>(state);
+
+        ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(delta);
+        int opCount = 0;
+        for (Map.Entry<Integer, SecurityIssue> entry : changed.entrySet()) {
+            HistoryIssue issue = new HistoryIssue(entry.getKey(), entry.getValue());
+            HistoryIssue previous = state.put(issue.id, issue);
+            opCount += writeOp(out, previous, issue);
+        }
+        for (Integer id : removedIds) {
+            if (state.remove(id) != null) {
+                out.writeByte(OP_REMOVE);
+                out.writeInt(id);
+                opCount++;
+            }
+        }
+
+        boolean checkpoint = scans.isEmpty() || getLastScan().number - getLastCheckpoint().number + 1 >= CHECKPOINT_INTERVAL;
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream payloadOut = new DataOutputStream(payload);
+        if (checkpoint) {
+            writeState(payloadOut, state);
+        } else {
+            payloadOut.writeInt(opCount);
+            delta.writeTo(payloadOut);
+        }
+        payloadOut.flush();
+
+        int number = scans.isEmpty() ? 1 : getLastScan().number + 1;
+        int openCount = 0;
+        for (HistoryIssue issue : state.values()) {
+            if (issue.open) {
+                openCount++;
+            }
+        }
+        Scan scan;
+        boolean created = !file.isFile();
+        if (created) {
+            File dir = file.getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Could not create " + dir);
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            try {
+                if (created || length == 0) {
+                    raf.writeInt(MAGIC);
+                    raf.writeInt(FORMAT_VERSION);
+                }
+                long offset = raf.length();
+                scan = new Scan(checkpoint, offset, number, time, openCount, state.size());
+                raf.seek(offset);
+                raf.write(toBytes(scan, payload.toByteArray()));
+            } catch (IOException e) {
+                truncate(raf, length, e); // a torn entry would hide all later scans on load
+                throw e;
+            }
+        }
+        scans.add(scan);
+        latestState = state;
+    }
+
+    private static void truncate(@NotNull RandomAccessFile raf, long length, @NotNull IOException cause) {
+        try {
+            raf.setLength(length);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Rewrites the file with the last {@link #MAX_SCANS} scans once {@link #CHECKPOINT_INTERVAL} more scans
+     * were recorded; the first retained scan becomes a checkpoint. To be called after {@link #record(long, Map, Collection)}:
+     * if the rewrite fails, the recorded scans are kept and the rewrite is tried again after the next scan.
+     *
+     * @throws IOException if the file could not be rewritten; the history is unchanged then
+     */
+    public synchronized void dropOldScans() throws IOException {
+        if (scans.size() <= MAX_SCANS + CHECKPOINT_INTERVAL) {
+            return;
+        }
+        Scan first = scans.get(scans.size() - MAX_SCANS);
+        Map<Integer, HistoryIssue> firstState = readState(first.number);
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            writeRetained(tmp, first, firstState);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp.toPath());
+            throw e;
+        }
+        Map<Integer, HistoryIssue> state = latestState;
+        load();
+        latestState = state;
+    }
+
+    private void writeRetained(@NotNull File tmp, @NotNull Scan first, @NotNull Map<Integer, HistoryIssue> firstState) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+             DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp.toPath()))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            DataOutputStream payloadOut = new DataOutputStream(payload);
+            writeState(payloadOut, firstState);
+            payloadOut.flush();
+            out.write(toBytes(new Scan(true, 0, first.number, first.time, first.openCount, first.totalCount), payload.toByteArray()));
+            long start = scans.get(scans.size() - MAX_SCANS + 1).offset;
+            byte[] rest = new byte[(int) (in.length() - start)];
+            in.seek(start);
+            in.readFully(rest);
+            out.write(rest);
+        }
+    }
+
+    @NotNull
+    private Map<Integer, HistoryIssue> readState(int scanNumber) throws IOException {
+        int index = scans.isEmpty() ? -1 : scanNumber - scans.get(0).number;
+        if (index < 0 || index >= scans.size()) {
+            throw new IllegalArgumentException("Scan " + scanNumber + " is not retained");
+        }
+        if (index == scans.size() - 1 && latestState != null) {
+            return new LinkedHashMap<>(latestState);
+        }
+        int checkpointIndex = index;
+        while (!scans.get(checkpointIndex).checkpoint) {
+            checkpointIndex--;
+        }
+        // read the checkpoint and the deltas at once, they are adjacent
+        long start = scans.get(checkpointIndex).offset;
+        long end = index + 1 < scans.size() ? scans.get(index + 1).offset : file.length();
+        byte[] bytes = new byte[(int) (end - start)];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(start);
+            raf.readFully(bytes);
+        }
+        Map<Integer, HistoryIssue> state = new LinkedHashMap<>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        for (int i = checkpointIndex; i <= index; i++) {
+            in.skipBytes(1 + 4 + ENTRY_HEADER_SIZE);
+            if (scans.get(i).checkpoint) {
+                readState(in, state);
+            } else {
+                applyDelta(in, state);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * @return the number of ops written
+     */
+    private static int writeOp(@NotNull DataOutput out, @Nullable HistoryIssue previous, @NotNull HistoryIssue issue) throws IOException {
+        if (previous == null || !previous.isSameIssueAs(issue)) {
+            out.writeByte(previous == null ? OP_ADD : OP_UPDATE);
+            out.writeInt(issue.id);
+            writeIssue(out, issue);
+            return 1;
+        }
+        int ret = 0;
+        if (previous.lineNumber != issue.lineNumber) {
+            out.writeByte(OP_MOVE);
+            out.writeInt(issue.id);
+            out.writeInt(issue.lineNumber);
+            ret++;
+        }
+        if (previous.open != issue.open) {
+            out.writeByte(issue.open ? OP_REOPEN : OP_FIX);
+            out.writeInt(issue.id);
+            ret++;
+        }
+        return ret;
+    }
+
+    private static void applyDelta(@NotNull DataInput in, @NotNull Map<Integer, HistoryIssue> state) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            byte op = in.readByte();
+            int id = in.readInt();
+            HistoryIssue issue = state.get(id);
+            switch (op) {
+                case OP_ADD:
+                case OP_UPDATE:
+                    state.put(id, readIssue(in, id));
+                    break;
+                case OP_MOVE:
+                    state.put(id, Objects.requireNonNull(issue).withLineNumber(in.readInt()));
+                    break;
+                case OP_FIX:
+                    state.put(id, Objects.requireNonNull(issue).withOpen(false));
+                    break;
+                case OP_REOPEN:
+                    state.put(id, Objects.requireNonNull(issue).withOpen(true));
+                    break;
+                case OP_REMOVE:
+                    state.remove(id);
+                    break;
+                default:
+                    throw new IOException("Corrupt scan history: " + op);
+            }
+        }
+    }
+
+    private static void writeState(@NotNull DataOutput out, @NotNull Map<Integer, HistoryIssue> state) throws IOException {
+        out.writeInt(state.size());
+        for (HistoryIssue issue : state.values()) {
+            out.writeInt(issue.id);
+            writeIssue(out, issue);
+        }
+    }
+
+    private static void readState(@NotNull DataInput in, @NotNull Map<Integer, HistoryIssue> state) throws IOException {
+        state.clear();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int id = in.readInt();
+            state.put(id, readIssue(in, id));
+        }
+    }
+
+    private static void writeIssue(@NotNull DataOutput out, @NotNull HistoryIssue issue) throws IOException {
+        SecurityReportStore.writeString(out, issue.issueHash);
+        out.writeInt(issue.cweId);
+        SecurityReportStore.writeString(out, issue.categoryName);
+        SecurityReportStore.writeString(out, issue.classFQN);
+        SecurityReportStore.writeString(out, issue.methodFullSignature);
+        out.writeInt(issue.lineNumber);
+        out.writeBoolean(issue.open);
+    }
+
+    @NotNull
+    private static HistoryIssue readIssue(@NotNull DataInput in, int id) throws IOException {
+        return new HistoryIssue(
+                id,
+                SecurityReportStore.readString(in),
+                in.readInt(),
+                SecurityReportStore.readString(in),
+                SecurityReportStore.readString(in),
+                SecurityReportStore.readString(in),
+                in.readInt(),
+                in.readBoolean());
+    }
+
+    @NotNull
+    private static byte[] toBytes(@NotNull Scan scan, @NotNull byte[] payload) throws IOException {
+        ByteArrayOutputStream ret = new ByteArrayOutputStream(1 + 4 + ENTRY_HEADER_SIZE + payload.length);
+        DataOutputStream out = new DataOutputStream(ret);
+        out.writeByte(scan.checkpoint ? CHECKPOINT : DELTA);
+        out.writeInt(payload.length);
+        out.writeInt(scan.number);
+        out.writeLong(scan.time);
+        out.writeInt(scan.openCount);
+        out.writeInt(scan.totalCount);
+        out.write(payload);
+        out.flush();
+        return ret.toByteArray();
+    }
+
+    @NotNull
+    private Scan getLastScan() {
+        return scans.get(scans.size() - 1);
+    }
+
+    @NotNull
+    private Scan getLastCheckpoint() {
+        for (int i = scans.size() - 1; ; i--) {
+            if (scans.get(i).checkpoint) {
+                return scans.get(i);
+            }
+        }
+    }
+
+    /**
+     * One retained scan, without its issues.
+     */
+    public static final class Scan {
+        private final boolean checkpoint;
+        private final long offset;
+        private final int number;
+        private final long time;
+        private final int openCount;
+        private final int totalCount;
+
+        private Scan(boolean checkpoint, long offset, int number, long time, int openCount, int totalCount) {
+            this.checkpoint = checkpoint;
+            this.offset = offset;
+            this.number = number;
+            this.time = time;
+            this.openCount = openCount;
+            this.totalCount = totalCount;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        /**
+         * @return the time the scan finished, in milliseconds since the epoch
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public int getOpenCount() {
+            return openCount;
+        }
+
+        /**
+         * @return the number of issues in the report after the scan, open and fixed
+         */
+        public int getTotalCount() {
+            return totalCount;
+        }
+    }
+
+    /**
+     * Immutable state of an issue at one scan.
+     */
+    public static final class HistoryIssue {
+        private final int id;
+        private final String issueHash;
+        private final int cweId;
+        private final String categoryName;
+        private final String classFQN;
+        private final String methodFullSignature;
+        private final int lineNumber;
+        private final boolean open;
+
+        private HistoryIssue(int id, @NotNull SecurityIssue issue) {
+            this(id, issue.issueHash, issue.cweId, issue.categoryName, issue.classFQN, issue.methodFullSignature,
+                    issue.lineNumber, !Boolean.TRUE.equals(issue.isFixed));
+        }
+
+        private HistoryIssue(int id, String issueHash, int cweId, String categoryName, String classFQN,
+                             String methodFullSignature, int lineNumber, boolean open) {
+            this.id = id;
+            this.issueHash = issueHash;
+            this.cweId = cweId;
+            this.categoryName = categoryName;
+            this.classFQN = classFQN;
+            this.methodFullSignature = methodFullSignature;
+            this.lineNumber = lineNumber;
+            this.open = open;
+        }
+
+        private boolean isSameIssueAs(@NotNull HistoryIssue issue) {
+            return cweId == issue.cweId
+                    && Objects.equals(issueHash, issue.issueHash)
+                    && Objects.equals(categoryName, issue.categoryName)
+                    && Objects.equals(classFQN, issue.classFQN)
+                    && Objects.equals(methodFullSignature, issue.methodFullSignature);
+        }
+
+        @NotNull
+        private HistoryIssue withLineNumber(int lineNumber) {
+            return new HistoryIssue(id, issueHash, cweId, categoryName, classFQN, methodFullSignature, lineNumber, open);
+        }
+
+        @NotNull
+        private HistoryIssue withOpen(boolean open) {
+            return new HistoryIssue(id, issueHash, cweId, categoryName, classFQN, methodFullSignature, lineNumber, open);
+        }
+
+        /**
+         * @return the id of the issue in the {@link SecurityReportStore}, stable across scans
+         */
+        public int getId() {
+            return id;
+        }
+
+        public String getIssueHash() {
+            return issueHash;
+        }
+
+        public int getCweId() {
+            return cweId;
+        }
+
+        public String getCategoryName() {
+            return categoryName;
+        }
+
+        public String getClassFQN() {
+            return classFQN;
+        }
+
+        public String getMethodFullSignature() {
+            return methodFullSignature;
+        }
+
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        public boolean isOpen() {
+            return open;
+        }
+    }
+
+    /**
+     * Changes between two scans; issues are in the state of the later scan, except fixed issues that were removed.
+     */
+    public static final class ScanDiff {
+        private final int from;
+        private final int to;
+        private final List<HistoryIssue> added;
+        private final List<HistoryIssue> fixed;
+        private final List<HistoryIssue> moved;
+
+        private ScanDiff(int from, int to, @NotNull List<HistoryIssue> added, @NotNull List<HistoryIssue> fixed, @NotNull List<HistoryIssue> moved) {
+            this.from = from;
+            this.to = to;
+            this.added = Collections.unmodifiableList(added);
+            this.fixed = Collections.unmodifiableList(fixed);
+            this.moved = Collections.unmodifiableList(moved);
+        }
+
+        public int getFrom() {
+            return from;
+        }
+
+        public int getTo() {
+            return to;
+        }
+
+        /**
+         * @return issues open in the later scan but not in the earlier one (new or reopened)
+         */
+        @NotNull
+        public List<HistoryIssue> getAdded() {
+            return added;
+        }
+
+        /**
+         * @return issues open in the earlier scan but fixed or removed in the later one
+         */
+        @NotNull
+        public List<HistoryIssue> getFixed() {
+            return fixed;
+        }
+
+        /**
+         * @return issues open in both scans, at another line in the later one
+         */
+        @NotNull
+        public List<HistoryIssue> getMoved() {
+            return moved;
+        }
+    }
+}
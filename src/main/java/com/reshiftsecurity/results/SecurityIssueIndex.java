@@ -0,0 +1,166 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.reshiftsecurity.results;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Answers {@link SecurityIssue#isSameAs(SecurityIssue)} against a whole set of issues in constant time.
+ * Every issue is indexed under the three keys that {@code isSameAs} matches on:
+ * CWE + class + code + line, CWE + method + code and CWE + hash + line.
+ * The keys use the same normalization as {@code isSameAs}; code is stripped of whitespace once per issue
+ * and all strings are case folded the way {@link String#equalsIgnoreCase(String)} compares them.
+ */
+public final class SecurityIssueIndex {
+    private static final char SEPARATOR = '\u0000';
+
+    private final Map<String, SecurityIssue> classCodeLineKeys = new HashMap<>();
+    private final Map<String, SecurityIssue> methodCodeKeys = new HashMap<>();
+    private final Map<String, SecurityIssue> hashLineKeys = new HashMap<>();
+
+    public SecurityIssueIndex() {
+    }
+
+    public SecurityIssueIndex(@Nullable Collection<SecurityIssue> issues) {
+        if (issues != null) {
+            for (SecurityIssue issue : issues) {
+                add(issue);
+            }
+        }
+    }
+
+    public void add(@NotNull SecurityIssue issue) {
+        String code = normalizeCode(issue.code);
+        String classCodeLine = classCodeLineKey(issue, code);
+        if (classCodeLine != null) {
+            classCodeLineKeys.putIfAbsent(classCodeLine, issue);
+        }
+        String methodCode = methodCodeKey(issue, code);
+        if (methodCode != null) {
+            methodCodeKeys.putIfAbsent(methodCode, issue);
+        }
+        String hashLine = hashLineKey(issue);
+        if (hashLine != null) {
+            hashLineKeys.putIfAbsent(hashLine, issue);
+        }
+    }
+
+    /**
+     * @return true if any indexed issue {@link SecurityIssue#isSameAs(SecurityIssue) is the same as} the given one
+     */
+    public boolean contains(@NotNull SecurityIssue issue) {
+        return find(issue) != null;
+    }
+
+    /**
+     * @return the first indexed issue that {@link SecurityIssue#isSameAs(SecurityIssue) is the same as} the given one,
+     * matched in the order of the keys
+     */
+    @Nullable
+    public SecurityIssue find(@NotNull SecurityIssue issue) {
+        String code = normalizeCode(issue.code);
+        String classCodeLine = classCodeLineKey(issue, code);
+        SecurityIssue ret = classCodeLine != null ? classCodeLineKeys.get(classCodeLine) : null;
+        if (ret != null) {
+            return ret;
+        }
+        String methodCode = methodCodeKey(issue, code);
+        ret = methodCode != null ? methodCodeKeys.get(methodCode) : null;
+        if (ret != null) {
+            return ret;
+        }
+        String hashLine = hashLineKey(issue);
+        return hashLine != null ? hashLineKeys.get(hashLine) : null;
+    }
+
+    @Nullable
+    private static String classCodeLineKey(@NotNull SecurityIssue issue, @Nullable String code) {
+        if (issue.classFQN == null || code == null) {
+            return null;
+        }
+        return key(issue.cweId, fold(issue.classFQN), code, Integer.toString(issue.lineNumber));
+    }
+
+    @Nullable
+    private static String methodCodeKey(@NotNull SecurityIssue issue, @Nullable String code) {
+        if (issue.methodFullSignature == null || code == null) {
+            return null;
+        }
+        return key(issue.cweId, fold(issue.methodFullSignature), code);
+    }
+
+    @Nullable
+    private static String hashLineKey(@NotNull SecurityIssue issue) {
+        if (issue.issueHash == null) {
+            return null;
+        }
+        return key(issue.cweId, fold(issue.issueHash), Integer.toString(issue.lineNumber));
+    }
+
+    @NotNull
+    private static String key(int cweId, @NotNull String... parts) {
+        StringBuilder sb = new StringBuilder().append(cweId);
+        for (String part : parts) {
+            sb.append(SEPARATOR).append(part);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Same as {@code fold(StringUtils.deleteWhitespace(code))} in one pass.
+     */
+    @Nullable
+    static String normalizeCode(@Nullable String code) {
+        if (code == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(code.length());
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                sb.append(fold(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Two strings are {@link String#equalsIgnoreCase(String) equal ignoring case}
+     * exactly if their folded forms are equal.
+     */
+    @NotNull
+    private static String fold(@NotNull String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            sb.append(fold(value.charAt(i)));
+        }
+        return sb.toString();
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
@@ -0,0 +1,430 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reshiftsecurity.results;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Append-only log of the {@link SecurityIssue security issues} of a project.
+ * <p>
+ * Every change of an issue is appended as a record (add, update or remove, keyed by a store internal id)
+ * and each {@link #apply(Changes) batch} ends with a commit record, so saving a scan costs time proportional
+ * to its changes. On {@link #load()} the records are replayed into memory; records after the last commit
+ * (an interrupted save) are dropped. The log is compacted (rewritten with the live issues only) when
+ * it holds much more records than issues.
+ * <p>
+ * Layout: magic, version, then records of {@code byte type, int id [, issue]}.
+ * Strings are stored as {@code int length} (-1 for null) followed by UTF-8 bytes.
+ * <p>
+ * The store never hands out its own issue instances: getters return copies and changes are identified by id,
+ * so issues are only changed by {@link #apply(Changes)} under the lock of the store.
+ */
+public final class SecurityReportStore {
+    private static final int MAGIC = 0x52535252; // "RSRR"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte COMMIT = 0;
+    private static final byte ADD = 1;
+    private static final byte UPDATE = 2;
+    private static final byte REMOVE = 3;
+
+    /**
+     * Compaction is done if there are more than {@code COMPACTION_FACTOR * issues} records,
+     * but not before the log holds {@code COMPACTION_MIN_RECORDS} records.
+     */
+    private static final int COMPACTION_FACTOR = 2;
+    private static final int COMPACTION_MIN_RECORDS = 1024;
+
+    @NotNull
+    private final File file;
+
+    /**
+     * Key = id ; in order of addition.
+     */
+    @NotNull
+    private final Map<Integer, SecurityIssue> issues = new LinkedHashMap<>();
+
+    private int nextId;
+
+    /**
+     * Number of add, update and remove records in the log.
+     */
+    private int recordCount;
+
+    /**
+     * True if the log does not match the issues in memory (load dropped records or a write failed),
+     * the next {@link #apply(Changes)} rewrites the whole log.
+     */
+    private boolean dirty;
+
+    public SecurityReportStore(@NotNull File file) {
+        this.file = file;
+    }
+
+    /**
+     * Replays the log into memory. A missing file is an empty report.
+     *
+     * @throws IOException if the file can not be read or is no report log; the store is empty then
+     *                     and the log is rewritten by the next {@link #apply(Changes)}
+     */
+    public synchronized void load() throws IOException {
+        issues.clear();
+        nextId = 0;
+        recordCount = 0;
+        dirty = false;
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("No security report log: " + file);
+            }
+            if (in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unsupported security report log version: " + file);
+            }
+            Map<Integer, SecurityIssue> pending = new LinkedHashMap<>();
+            int pendingRecords = 0;
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                if (type == COMMIT) {
+                    for (Map.Entry<Integer, SecurityIssue> entry : pending.entrySet()) {
+                        put(entry.getKey(), entry.getValue());
+                    }
+                    recordCount += pendingRecords;
+                    pending.clear();
+                    pendingRecords = 0;
+                    continue;
+                }
+                int id = in.readInt();
+                nextId = Math.max(nextId, id + 1);
+                if (type == ADD || type == UPDATE) {
+                    pending.put(id, readIssue(in));
+                } else if (type == REMOVE) {
+                    pending.put(id, null);
+                } else {
+                    throw new IOException("Corrupt security report log: " + file);
+                }
+                pendingRecords++;
+            }
+            dirty = !pending.isEmpty();
+        } catch (EOFException e) {
+            dirty = true; // interrupted while appending, keep all committed batches
+        } catch (IOException e) {
+            issues.clear();
+            dirty = true; // never append to an unreadable log
+            throw e;
+        }
+    }
+
+    private void put(int id, @Nullable SecurityIssue issue) {
+        if (issue != null) {
+            issues.put(id, issue);
+        } else {
+            issues.remove(id);
+        }
+    }
+
+    /**
+     * @return copies of all issues in order of addition
+     */
+    @NotNull
+    public synchronized List<SecurityIssue> getIssues() {
+        List<SecurityIssue> ret = new ArrayList<>(issues.size());
+        for (SecurityIssue issue : issues.values()) {
+            ret.add(copy(issue));
+        }
+        return ret;
+    }
+
+    /**
+     * @return copies of all issues by their store id, in order of addition
+     */
+    @NotNull
+    public synchronized Map<Integer, SecurityIssue> getIssuesById() {
+        Map<Integer, SecurityIssue> ret = new LinkedHashMap<>();
+        for (Map.Entry<Integer, SecurityIssue> entry : issues.entrySet()) {
+            ret.put(entry.getKey(), copy(entry.getValue()));
+        }
+        return ret;
+    }
+
+    public synchronized int size() {
+        return issues.size();
+    }
+
+    /**
+     * Applies the changes in memory and appends them to the log. The store keeps copies of the given issues
+     * and assigns the ids of the added issues, see {@link Changes#getAddedIds()}.
+     * All changes are validated first, so invalid changes leave the store unchanged.
+     * The memory is changed even if writing fails, the next call rewrites the log then.
+     *
+     * @throws IllegalArgumentException if an updated or removed id is not in the store, or changed twice
+     * @throws IOException              if the changes could not be written
+     */
+    public synchronized void apply(@NotNull Changes changes) throws IOException {
+        Set<Integer> validatedIds = new HashSet<>();
+        for (Integer id : changes.updated.keySet()) {
+            validate(id, validatedIds);
+        }
+        for (Integer id : changes.removed) {
+            validate(id, validatedIds);
+        }
+
+        List<Integer> changedIds = new ArrayList<>(changes.added.size() + changes.updated.size() + changes.removed.size());
+        changes.addedIds.clear();
+        for (SecurityIssue issue : changes.added) {
+            int id = nextId++;
+            put(id, copy(issue));
+            changedIds.add(id);
+            changes.addedIds.add(id);
+        }
+        for (Map.Entry<Integer, SecurityIssue> entry : changes.updated.entrySet()) {
+            put(entry.getKey(), copy(entry.getValue()));
+            changedIds.add(entry.getKey());
+        }
+        for (Integer id : changes.removed) {
+            put(id, null);
+            changedIds.add(id);
+        }
+        if (changedIds.isEmpty() && !dirty) {
+            return;
+        }
+
+        if (dirty || !file.isFile() || recordCount + changedIds.size() > Math.max(COMPACTION_MIN_RECORDS, COMPACTION_FACTOR * issues.size())) {
+            compact();
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            for (int i = 0; i < changes.added.size() + changes.updated.size(); i++) {
+                int id = changedIds.get(i);
+                out.writeByte(i < changes.added.size() ? ADD : UPDATE);
+                out.writeInt(id);
+                writeIssue(out, issues.get(id));
+            }
+            for (int i = changes.added.size() + changes.updated.size(); i < changedIds.size(); i++) {
+                out.writeByte(REMOVE);
+                out.writeInt(changedIds.get(i));
+            }
+            out.writeByte(COMMIT);
+        } catch (IOException e) {
+            dirty = true;
+            throw e;
+        }
+        recordCount += changedIds.size();
+    }
+
+    private void validate(@NotNull Integer id, @NotNull Set<Integer> validatedIds) {
+        if (!issues.containsKey(id)) {
+            throw new IllegalArgumentException("Unknown issue id " + id);
+        }
+        if (!validatedIds.add(id)) {
+            throw new IllegalArgumentException("Issue id " + id + " changed twice");
+        }
+    }
+
+    /**
+     * Rewrites the log with one add record per issue. The new log is written next to the old one and then moved
+     * into place, so an interrupted compaction keeps the old log.
+     */
+    private void compact() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            File dir = file.getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Could not create " + dir);
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                writeHeader(out);
+                for (Map.Entry<Integer, SecurityIssue> entry : issues.entrySet()) {
+                    out.writeByte(ADD);
+                    out.writeInt(entry.getKey());
+                    writeIssue(out, entry.getValue());
+                }
+                out.writeByte(COMMIT);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            dirty = true;
+            throw e;
+        }
+        recordCount = issues.size();
+        dirty = false;
+    }
+
+    private static void writeHeader(@NotNull DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+    }
+
+    private static void writeIssue(@NotNull DataOutputStream out, @NotNull SecurityIssue issue) throws IOException {
+        writeString(out, issue.issueHash);
+        out.writeInt(issue.cweId);
+        writeString(out, issue.categoryName);
+        writeString(out, issue.classFQN);
+        writeString(out, issue.trimmedCode);
+        out.writeInt(issue.lineNumber);
+        writeString(out, issue.code);
+        writeString(out, issue.methodFullSignature);
+        out.writeBoolean(Boolean.TRUE.equals(issue.isFixed));
+        out.writeBoolean(Boolean.TRUE.equals(issue.isNew));
+        writeString(out, issue.detectionDatetime);
+        writeString(out, issue.fixDatetime);
+    }
+
+    @NotNull
+    private static SecurityIssue readIssue(@NotNull DataInputStream in) throws IOException {
+        SecurityIssue ret = new SecurityIssue();
+        ret.issueHash = readString(in);
+        ret.cweId = in.readInt();
+        ret.categoryName = readString(in);
+        ret.classFQN = readString(in);
+        ret.trimmedCode = readString(in);
+        ret.lineNumber = in.readInt();
+        ret.code = readString(in);
+        ret.methodFullSignature = readString(in);
+        ret.isFixed = in.readBoolean();
+        ret.isNew = in.readBoolean();
+        ret.detectionDatetime = readString(in);
+        ret.fixDatetime = readString(in);
+        return ret;
+    }
+
+    static void writeString(@NotNull DataOutput out, @Nullable String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @NotNull
+    private static SecurityIssue copy(@NotNull SecurityIssue issue) {
+        SecurityIssue ret = new SecurityIssue();
+        ret.issueHash = issue.issueHash;
+        ret.cweId = issue.cweId;
+        ret.categoryName = issue.categoryName;
+        ret.classFQN = issue.classFQN;
+        ret.trimmedCode = issue.trimmedCode;
+        ret.lineNumber = issue.lineNumber;
+        ret.code = issue.code;
+        ret.methodFullSignature = issue.methodFullSignature;
+        ret.isFixed = issue.isFixed;
+        ret.isNew = issue.isNew;
+        ret.detectionDatetime = issue.detectionDatetime;
+        ret.fixDatetime = issue.fixDatetime;
+        return ret;
+    }
+
+    @Nullable
+    static String readString(@NotNull DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Changes of one scan. Updated and removed issues are identified by their id, see {@link #getIssuesById()}.
+     */
+    public static final class Changes {
+        private final List<SecurityIssue> added = new ArrayList<>();
+        private final List<Integer> addedIds = new ArrayList<>();
+        private final Map<Integer, SecurityIssue> updated = new LinkedHashMap<>();
+        private final List<Integer> removed = new ArrayList<>();
+
+        public void add(@NotNull SecurityIssue issue) {
+            added.add(issue);
+        }
+
+        /**
+         * Replaces the issue with the given id by the given state.
+         */
+        public void update(int id, @NotNull SecurityIssue issue) {
+            updated.put(id, issue);
+        }
+
+        public void remove(int id) {
+            removed.add(id);
+        }
+
+        public void addAll(@NotNull Collection<SecurityIssue> issues) {
+            added.addAll(issues);
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+        }
+
+        @NotNull
+        public List<SecurityIssue> getAdded() {
+            return Collections.unmodifiableList(added);
+        }
+
+        /**
+         * @return the ids assigned to {@link #getAdded() the added issues} (in the same order) by {@link #apply(Changes)}
+         */
+        @NotNull
+        public List<Integer> getAddedIds() {
+            return Collections.unmodifiableList(addedIds);
+        }
+
+        @NotNull
+        public Map<Integer, SecurityIssue> getUpdated() {
+            return Collections.unmodifiableMap(updated);
+        }
+
+        @NotNull
+        public List<Integer> getRemoved() {
+            return Collections.unmodifiableList(removed);
+        }
+    }
+}
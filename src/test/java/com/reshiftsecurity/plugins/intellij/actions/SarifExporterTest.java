@@ -0,0 +1,248 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reshiftsecurity.plugins.intellij.actions;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.Project;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import edu.umd.cs.findbugs.SourceLineAnnotation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Exports a large synthetic collection and reads the file back with a streaming parser,
+ * so neither side holds the whole document in memory. Runs in the {@code sarifExportTest} task
+ * with a heap smaller than the exported document, so buffering the document fails the test.
+ */
+public class SarifExporterTest {
+
+	private static final int MODULE_COUNT = 24;
+	private static final int COLLECTION_COUNT = 4;
+	private static final int BUGS_PER_MODULE = 5_000;
+	private static final String[] TYPES = {"SQL_NONCONSTANT_STRING_PASSED_TO_EXECUTE", "NP_NULL_ON_SOME_PATH", "DMI_CONSTANT_DB_PASSWORD"};
+
+	private Path file;
+
+	@Before
+	public void setUp() throws IOException {
+		DetectorFactoryCollection.instance(); // registers the core bug patterns
+		file = Files.createTempFile("reshift-sarif", ".json");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void exportsLargeCollectionAsValidSarif() throws IOException {
+		// modules share the collections, so the document outgrows the heap while the bugs held in memory do not
+		final List<SortedBugCollection> collections = new ArrayList<>();
+		for (int i = 0; i < COLLECTION_COUNT; i++) {
+			collections.add(createBugCollection(i));
+		}
+		final Map<Project, SortedBugCollection> results = new LinkedHashMap<>();
+		for (int module = 0; module < MODULE_COUNT; module++) {
+			final Project project = new Project();
+			project.setProjectName("module" + module);
+			results.put(project, collections.get(module % COLLECTION_COUNT));
+		}
+
+		try (final Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			new SarifExporter(results).write(writer);
+		}
+
+		try (final Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			final JsonReader json = new JsonReader(reader);
+			json.beginObject();
+			assertEquals("$schema", json.nextName());
+			assertTrue(json.nextString().contains("sarif-2.1.0"));
+			assertEquals("version", json.nextName());
+			assertEquals("2.1.0", json.nextString());
+			assertEquals("runs", json.nextName());
+			json.beginArray();
+			verifyRun(json);
+			json.endArray();
+			json.endObject();
+			assertEquals(JsonToken.END_DOCUMENT, json.peek());
+		}
+	}
+
+	private static void verifyRun(final JsonReader json) throws IOException {
+		final List<String> rules = new ArrayList<>();
+		final Set<String> uriBaseIds = new HashSet<>();
+		int resultCount = 0;
+		json.beginObject();
+		while (json.hasNext()) {
+			final String name = json.nextName();
+			switch (name) {
+				case "tool":
+					readRules(json, rules);
+					break;
+				case "originalUriBaseIds":
+					json.beginObject();
+					while (json.hasNext()) {
+						uriBaseIds.add(json.nextName());
+						json.skipValue();
+					}
+					json.endObject();
+					break;
+				case "results":
+					assertTrue("rules and base ids precede the results", !rules.isEmpty() && !uriBaseIds.isEmpty());
+					json.beginArray();
+					while (json.hasNext()) {
+						verifyResult(json, rules, uriBaseIds);
+						resultCount++;
+					}
+					json.endArray();
+					break;
+				default:
+					json.skipValue();
+			}
+		}
+		json.endObject();
+		assertEquals(TYPES.length, rules.size());
+		assertEquals(MODULE_COUNT * BUGS_PER_MODULE, resultCount);
+	}
+
+	private static void readRules(final JsonReader json, final List<String> rules) throws IOException {
+		json.beginObject();
+		assertEquals("driver", json.nextName());
+		json.beginObject();
+		while (json.hasNext()) {
+			if ("rules".equals(json.nextName())) {
+				json.beginArray();
+				while (json.hasNext()) {
+					json.beginObject();
+					while (json.hasNext()) {
+						if ("id".equals(json.nextName())) {
+							rules.add(json.nextString());
+						} else {
+							json.skipValue();
+						}
+					}
+					json.endObject();
+				}
+				json.endArray();
+			} else {
+				json.skipValue();
+			}
+		}
+		json.endObject();
+		json.endObject();
+	}
+
+	private static void verifyResult(final JsonReader json, final List<String> rules, final Set<String> uriBaseIds) throws IOException {
+		String ruleId = null;
+		int ruleIndex = -1;
+		String level = null;
+		String uriBaseId = null;
+		String uri = null;
+		json.beginObject();
+		while (json.hasNext()) {
+			final String name = json.nextName();
+			switch (name) {
+				case "ruleId":
+					ruleId = json.nextString();
+					break;
+				case "ruleIndex":
+					ruleIndex = json.nextInt();
+					break;
+				case "level":
+					level = json.nextString();
+					break;
+				case "locations":
+					json.beginArray();
+					json.beginObject();
+					while (json.hasNext()) {
+						if ("physicalLocation".equals(json.nextName())) {
+							json.beginObject();
+							while (json.hasNext()) {
+								if ("artifactLocation".equals(json.nextName())) {
+									json.beginObject();
+									while (json.hasNext()) {
+										final String field = json.nextName();
+										if ("uri".equals(field)) {
+											uri = json.nextString();
+										} else if ("uriBaseId".equals(field)) {
+											uriBaseId = json.nextString();
+										} else {
+											json.skipValue();
+										}
+									}
+									json.endObject();
+								} else {
+									json.skipValue();
+								}
+							}
+							json.endObject();
+						} else {
+							json.skipValue();
+						}
+					}
+					json.endObject();
+					json.endArray();
+					break;
+				default:
+					json.skipValue();
+			}
+		}
+		json.endObject();
+		assertNotNull(ruleId);
+		assertEquals(ruleId, rules.get(ruleIndex));
+		assertTrue(level, "error".equals(level) || "warning".equals(level) || "note".equals(level));
+		assertNotNull(uri);
+		assertTrue("unknown uriBaseId " + uriBaseId, uriBaseIds.contains(uriBaseId));
+	}
+
+	private static SortedBugCollection createBugCollection(final int module) {
+		final SortedBugCollection ret = new SortedBugCollection();
+		for (int i = 0; i < BUGS_PER_MODULE; i++) {
+			final String className = "com.acme.module" + module + ".Class" + (i % 1000);
+			final BugInstance bug = new BugInstance(TYPES[i % TYPES.length], i % 4 + 1);
+			bug.addClass(className);
+			bug.addMethod(className, "method" + i, "()V", false);
+			bug.addSourceLine(SourceLineAnnotation.createUnknown(className, "Class" + (i % 1000) + ".java"));
+			ret.add(bug, false);
+		}
+		return ret;
+	}
+}
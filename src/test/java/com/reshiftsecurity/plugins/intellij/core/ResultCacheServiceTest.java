@@ -0,0 +1,218 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reshiftsecurity.plugins.intellij.core;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.Priorities;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stores and looks up findings of generated class files in a {@link ResultCacheService} in a temporary directory.
+ */
+public class ResultCacheServiceTest {
+
+	private static final String FINGERPRINT = "fingerprint";
+	private static final String SQL_INJECTION = "SQL_INJECTION_JDBC";
+	private static final String XSS = "XSS_SERVLET";
+	private static final String PATH_TRAVERSAL = "PATH_TRAVERSAL_IN";
+
+	private File dir;
+	private File cacheDir;
+	private File foo;
+	private File bar;
+	private File baz;
+
+	@Before
+	public void setUp() throws IOException {
+		DetectorFactoryCollection.instance(); // registers the core bug patterns
+		dir = Files.createTempDirectory("reshift-result-cache").toFile();
+		cacheDir = new File(dir, "cache");
+		foo = writeClassFile("com/acme/Foo.class", "foo");
+		bar = writeClassFile("com/acme/Bar.class", "bar");
+		baz = writeClassFile("com/acme/Baz.class", "baz");
+	}
+
+	@After
+	public void tearDown() {
+		delete(dir);
+	}
+
+	@Test
+	public void storedFindingsAreHits() {
+		final ResultCacheService cache = new ResultCacheService(cacheDir, 100);
+		final ResultCacheService.Lookup first = cache.lookup(FINGERPRINT, paths(foo, bar));
+		assertTrue(first.getHits().isEmpty());
+		cache.store(first, Arrays.asList(bug("com.acme.Foo", SQL_INJECTION), bug("com.acme.Foo", XSS), bug("com.acme.Other", PATH_TRAVERSAL)));
+
+		final ResultCacheService.Lookup second = cache.lookup(FINGERPRINT, paths(foo, bar));
+		assertEquals(new HashSet<>(paths(foo, bar)), second.getHits());
+		assertEquals(Arrays.asList(SQL_INJECTION, XSS), types(second.getBugs()));
+	}
+
+	@Test
+	public void changedClassFileOrFingerprintIsMiss() throws IOException {
+		final ResultCacheService cache = new ResultCacheService(cacheDir, 100);
+		cache.store(cache.lookup(FINGERPRINT, paths(foo, bar)), Collections.singletonList(bug("com.acme.Foo", SQL_INJECTION)));
+
+		writeClassFile("com/acme/Bar.class", "bar changed");
+		assertEquals(Collections.singleton(foo.getPath()), cache.lookup(FINGERPRINT, paths(foo, bar)).getHits());
+		assertTrue(cache.lookup("other configuration", paths(foo, bar)).getHits().isEmpty());
+	}
+
+	@Test
+	public void entriesSurviveRestart() {
+		final ResultCacheService cache = new ResultCacheService(cacheDir, 100);
+		cache.store(cache.lookup(FINGERPRINT, paths(foo)), Collections.singletonList(bug("com.acme.Foo", SQL_INJECTION)));
+
+		final ResultCacheService.Lookup lookup = new ResultCacheService(cacheDir, 100).lookup(FINGERPRINT, paths(foo));
+		assertEquals(Collections.singleton(foo.getPath()), lookup.getHits());
+		assertEquals(Collections.singletonList(SQL_INJECTION), types(lookup.getBugs()));
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsedEntries() {
+		final ResultCacheService cache = new ResultCacheService(cacheDir, 2);
+		cache.store(cache.lookup(FINGERPRINT, paths(foo, bar)), Collections.singletonList(bug("com.acme.Bar", SQL_INJECTION)));
+		cache.lookup(FINGERPRINT, paths(foo)); // foo is used more recently than bar
+		cache.store(cache.lookup(FINGERPRINT, paths(baz)), Collections.<BugInstance>emptyList());
+
+		assertEquals(new HashSet<>(paths(foo, baz)), cache.lookup(FINGERPRINT, paths(foo, bar, baz)).getHits());
+		assertEquals(1, listCacheFiles().size()); // the index only, findings of bar are deleted
+	}
+
+	@Test
+	public void unreadableFindingsAreMiss() {
+		final ResultCacheService cache = new ResultCacheService(cacheDir, 100);
+		cache.store(cache.lookup(FINGERPRINT, paths(foo)), Collections.singletonList(bug("com.acme.Foo", SQL_INJECTION)));
+		for (final File file : listCacheFiles()) {
+			if (file.getName().endsWith(".xml")) {
+				assertTrue(file.delete());
+			}
+		}
+
+		assertTrue(cache.lookup(FINGERPRINT, paths(foo)).getHits().isEmpty());
+		assertTrue(new ResultCacheService(cacheDir, 100).lookup(FINGERPRINT, paths(foo)).getHits().isEmpty());
+	}
+
+	@Test
+	public void indexOfOtherVersionIsInvalidated() throws IOException {
+		final ResultCacheService cache = new ResultCacheService(cacheDir, 100);
+		cache.store(cache.lookup(FINGERPRINT, paths(foo)), Collections.singletonList(bug("com.acme.Foo", SQL_INJECTION)));
+		final File index = new File(cacheDir, "index");
+		rewriteIndexVersion(index, "0.0.1");
+
+		assertTrue(new ResultCacheService(cacheDir, 100).lookup(FINGERPRINT, paths(foo)).getHits().isEmpty());
+		assertTrue(listCacheFiles().isEmpty());
+	}
+
+	/**
+	 * Copies the entries of the index, but with another plugin version.
+	 */
+	private static void rewriteIndexVersion(final File index, final String version) throws IOException {
+		final int formatVersion;
+		final List<Object[]> entries = new ArrayList<>();
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+			formatVersion = in.readInt();
+			in.readUTF();
+			final int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				entries.add(new Object[]{in.readUTF(), in.readUTF(), in.readInt()});
+			}
+		}
+		assertEquals(1, entries.size());
+		try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(index)))) {
+			out.writeInt(formatVersion);
+			out.writeUTF(version);
+			out.writeInt(entries.size());
+			for (final Object[] entry : entries) {
+				out.writeUTF((String) entry[0]);
+				out.writeUTF((String) entry[1]);
+				out.writeInt((Integer) entry[2]);
+			}
+		}
+	}
+
+	private File writeClassFile(final String path, final String content) throws IOException {
+		final File ret = new File(dir, "classes/" + path);
+		assertTrue(ret.getParentFile().isDirectory() || ret.getParentFile().mkdirs());
+		Files.write(ret.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return ret;
+	}
+
+	private List<File> listCacheFiles() {
+		final File[] files = cacheDir.listFiles();
+		return files != null ? Arrays.asList(files) : Collections.<File>emptyList();
+	}
+
+	private static List<String> paths(final File... files) {
+		final List<String> ret = new ArrayList<>();
+		for (final File file : files) {
+			ret.add(file.getPath());
+		}
+		return ret;
+	}
+
+	private static BugInstance bug(final String className, final String type) {
+		final BugInstance ret = new BugInstance(type, Priorities.HIGH_PRIORITY);
+		ret.addClass(className);
+		return ret;
+	}
+
+	private static List<String> types(final List<BugInstance> bugs) {
+		final List<String> ret = new ArrayList<>();
+		for (final BugInstance bug : bugs) {
+			ret.add(bug.getType());
+		}
+		Collections.sort(ret);
+		return ret;
+	}
+
+	private static void delete(final File file) {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (final File child : children) {
+				delete(child);
+			}
+		}
+		assertTrue(file.delete());
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reshiftsecurity.plugins.intellij.core;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.IntAnnotation;
+import edu.umd.cs.findbugs.LocalVariableAnnotation;
+import edu.umd.cs.findbugs.Project;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import edu.umd.cs.findbugs.SourceLineAnnotation;
+import edu.umd.cs.findbugs.TypeAnnotation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trips generated bug collections through {@link ResultSnapshot} and compares the restored collections
+ * with the SpotBugs XML path.
+ */
+public class ResultSnapshotTest {
+
+	private static final String[] TYPES = {"SQL_INJECTION_JDBC", "PATH_TRAVERSAL_IN", "XSS_SERVLET", "NP_NULL_ON_SOME_PATH"};
+
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException {
+		DetectorFactoryCollection.instance(); // registers the core bug patterns
+		dir = Files.createTempDirectory("reshift-snapshot").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		final File[] files = dir.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				assertTrue(file.delete());
+			}
+		}
+		assertTrue(dir.delete());
+	}
+
+	@Test
+	public void restoredModulesMatchXml() throws Exception {
+		final SortedBugCollection first = generate(3000, 1);
+		final SortedBugCollection second = generate(1000, 2);
+		final ResultSnapshot snapshot = writeAndOpen(first, second);
+
+		assertEquals(Arrays.asList("first", "second"), snapshot.getModuleNames());
+		assertEquals(xml(first), xml(snapshot.readModule("first")));
+		assertEquals(xml(second), xml(snapshot.readModule("second")));
+		assertEquals(first.getProjectStats().getNumClasses(), snapshot.getClassCount("first"));
+		assertNull(snapshot.readModule("unknown"));
+
+		// the XML path restores the same collection
+		final File xmlFile = new File(dir, "first.xml");
+		first.writeXML(xmlFile.getPath());
+		final SortedBugCollection fromXml = new SortedBugCollection();
+		fromXml.readXML(xmlFile);
+		assertEquals(xml(fromXml), xml(snapshot.readModule("first")));
+	}
+
+	@Test
+	public void readFileReturnsTheBugsOfOneFile() throws Exception {
+		final SortedBugCollection bugs = generate(2000, 3);
+		final ResultSnapshot snapshot = writeAndOpen(bugs, new SortedBugCollection());
+
+		final Set<String> expectedSourcePaths = new HashSet<>();
+		for (final BugInstance bug : bugs) {
+			expectedSourcePaths.add(bug.getPrimarySourceLineAnnotation().getSourcePath());
+		}
+		final List<String> sourcePaths = snapshot.getSourcePaths("first");
+		assertEquals(expectedSourcePaths, new HashSet<>(sourcePaths));
+		int total = 0;
+		for (final String sourcePath : sourcePaths) {
+			final SortedBugCollection expected = new SortedBugCollection();
+			for (final BugInstance bug : bugs) {
+				if (sourcePath.equals(bug.getPrimarySourceLineAnnotation().getSourcePath())) {
+					expected.add(bug, false);
+				}
+			}
+			final SortedBugCollection actual = new SortedBugCollection();
+			for (final BugInstance bug : snapshot.readFile("first", sourcePath)) {
+				actual.add(bug, false);
+			}
+			assertEquals(sourcePath, xml(expected), xml(actual));
+			total += actual.getCollection().size();
+		}
+		assertEquals(bugs.getCollection().size(), total);
+		assertTrue(snapshot.readFile("first", "missing/File.java").isEmpty());
+		assertTrue(snapshot.readFile("unknown", sourcePaths.get(0)).isEmpty());
+	}
+
+	@Test
+	public void rejectsOtherFiles() throws IOException {
+		final File file = new File(dir, "other.bin");
+		Files.write(file.toPath(), "<BugCollection/>".getBytes(StandardCharsets.UTF_8));
+		try {
+			ResultSnapshot.open(file);
+			fail("expected IOException");
+		} catch (final IOException expected) {
+			// expected
+		}
+	}
+
+	private ResultSnapshot writeAndOpen(final SortedBugCollection first, final SortedBugCollection second) throws IOException {
+		final FindBugsResult result = new FindBugsResult();
+		result.put(createProject("first"), first);
+		result.put(createProject("second"), second);
+		final File file = new File(dir, "result.snapshot");
+		ResultSnapshot.write(result, file);
+		return ResultSnapshot.open(file);
+	}
+
+	private static Project createProject(final String name) {
+		final Project ret = new Project();
+		ret.setProjectName(name);
+		return ret;
+	}
+
+	/**
+	 * @return the XML of the collection without run timings and project, which are not part of a snapshot
+	 */
+	private static String xml(final SortedBugCollection bugCollection) throws IOException {
+		bugCollection.setTimestamp(1);
+		bugCollection.setAnalysisTimestamp(1);
+		bugCollection.getProjectStats().setTimestamp(1);
+		bugCollection.setWithMessages(false);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		bugCollection.writeXML(out);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8)
+				.replaceAll("(?s)<Project>.*?</Project>", "")
+				.replaceAll("(?s)<FindBugsProfile>.*?</FindBugsProfile>", "")
+				.replaceAll("<FindBugsSummary[^>]*>", "")
+				.replaceAll("analysisTimestamp=\"[0-9]+\"", "")
+				.replaceAll("timestamp=\"[0-9]+\"", "");
+	}
+
+	/**
+	 * Bugs with every annotation kind the snapshot stores, spread over many source files.
+	 */
+	private static SortedBugCollection generate(final int count, final int seed) {
+		final SortedBugCollection ret = new SortedBugCollection();
+		ret.getProjectStats().setTotalClasses(count / 3 + 1);
+		final Random random = new Random(seed);
+		for (int i = 0; i < count; i++) {
+			final String className = "p" + (i % 7) + ".C" + (i % 50);
+			final String fileName = "C" + (i % 50) + ".java";
+			final BugInstance bug = new BugInstance(TYPES[random.nextInt(TYPES.length)], 1 + random.nextInt(4));
+			bug.addClass(className);
+			bug.addMethod(className, "m" + random.nextInt(20), "(Ljava/lang/String;)V", random.nextBoolean());
+			bug.getPrimaryMethod().setSourceLines(new SourceLineAnnotation(className, fileName, 10, 40, 0, 100));
+			if (random.nextBoolean()) {
+				bug.addField(className, "f", "I", random.nextBoolean());
+			}
+			bug.addSourceLine(new SourceLineAnnotation(className, fileName, 1 + random.nextInt(300), 1 + random.nextInt(300), 3, 9));
+			if (random.nextBoolean()) {
+				bug.addInt(random.nextInt(1000) - 500).describe(IntAnnotation.INT_VALUE);
+			}
+			if (random.nextBoolean()) {
+				bug.addString("sink é中");
+			}
+			if (random.nextBoolean()) {
+				bug.add(new LocalVariableAnnotation("x", 3, 17));
+			}
+			if (random.nextBoolean()) {
+				bug.addType("Ljava/lang/String;").describe(TypeAnnotation.FOUND_ROLE);
+			}
+			if (random.nextBoolean()) {
+				bug.setProperty("k", "v" + i);
+			}
+			ret.add(bug, false);
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reshiftsecurity.plugins.intellij.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link AnalyticsDispatcher} against a local HTTP server. The flush and retry delays are skipped,
+ * so the tests do not wait for the backoff.
+ */
+public class AnalyticsDispatcherTest {
+    private static final long TIMEOUT_MS = 10_000;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final CountDownLatch firstRequest = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile int status = 200;
+    private volatile boolean hang;
+
+    private ExecutorService serverExecutor;
+    private HttpServer server;
+    private ScheduledThreadPoolExecutor executor;
+    private AnalyticsDispatcher dispatcher;
+
+    @Before
+    public void setUp() throws IOException {
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(serverExecutor);
+        server.start();
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        OkHttpClient client = new OkHttpClient.Builder()
+                .readTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .build();
+        executor = new ScheduledThreadPoolExecutor(1) {
+            @Override
+            public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+                return super.schedule(command, 0, unit);
+            }
+        };
+        dispatcher = new AnalyticsDispatcher(baseUrl + "/collect", baseUrl + "/batch", "test", client, executor);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[4096];
+            while (in.read(buffer) != -1) {
+                // drain the hits
+            }
+        }
+        requests.incrementAndGet();
+        firstRequest.countDown();
+        if (hang) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+
+    @Test
+    public void offerDoesNotBlockOnHangingServer() throws InterruptedException {
+        hang = true;
+        for (int i = 0; i < AnalyticsDispatcher.BATCH_SIZE; i++) {
+            assertTrue(dispatcher.offer("hit" + i));
+        }
+        // the dispatcher thread now waits for the response of the first batch
+        assertTrue(firstRequest.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        int extra = 100;
+        int accepted = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < AnalyticsDispatcher.MAX_QUEUE_SIZE + extra; i++) {
+            if (dispatcher.offer("hit" + i)) {
+                accepted++;
+            }
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("offer took " + elapsedMs + " ms", elapsedMs < 1000);
+        assertEquals(AnalyticsDispatcher.MAX_QUEUE_SIZE, accepted);
+        assertFalse(dispatcher.offer("dropped"));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void retriesServerErrors() throws InterruptedException {
+        status = 503;
+        assertTrue(dispatcher.offer("hit"));
+        awaitRequests(AnalyticsDispatcher.MAX_RETRIES + 1);
+        Thread.sleep(500);
+        assertEquals(AnalyticsDispatcher.MAX_RETRIES + 1, requests.get());
+    }
+
+    @Test
+    public void doesNotRetryClientErrors() throws InterruptedException {
+        status = 400;
+        assertTrue(dispatcher.offer("hit"));
+        awaitRequests(1);
+        Thread.sleep(500);
+        assertEquals(1, requests.get());
+    }
+
+    private void awaitRequests(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (requests.get() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, requests.get());
+    }
+}
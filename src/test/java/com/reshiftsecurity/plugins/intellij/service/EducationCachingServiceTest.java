@@ -0,0 +1,232 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reshiftsecurity.plugins.intellij.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link EducationCachingService} against a local HTTP server which stands in for the content server
+ * (see {@code reshift.education.url}).
+ */
+public class EducationCachingServiceTest {
+    private static final String TYPE = "SQL_INJECTION_JDBC";
+    private static final String OVERVIEW = "Use prepared statements";
+    private static final String CONTENT = "[{\"title\": \"Overview\", \"content\": \"<p>" + OVERVIEW + "</p>\"}]";
+    private static final String ETAG = "\"v1\"";
+    private static final long RETRY_INTERVAL_MS = 200;
+    private static final long TIMEOUT_MS = 10_000;
+
+    private static HttpServer server;
+    private static ExecutorService serverExecutor;
+
+    private static final AtomicInteger requests = new AtomicInteger();
+    private static volatile int status;
+    private static volatile String body;
+    private static volatile String receivedEtag;
+    private static volatile CountDownLatch release;
+
+    private final AtomicInteger refreshes = new AtomicInteger();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private File cacheDir;
+
+    @BeforeClass
+    public static void startServer() throws IOException {
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", EducationCachingServiceTest::handle);
+        server.setExecutor(serverExecutor);
+        server.start();
+        // read once by EducationService, so it must be set before its first use
+        System.setProperty("reshift.education.url", "http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        requests.set(0);
+        status = 200;
+        body = CONTENT;
+        receivedEtag = null;
+        release = new CountDownLatch(0);
+        cacheDir = Files.createTempDirectory("education").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+        assertTrue(cacheDir.delete());
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            while (in.read() != -1) {
+                // drain the request
+            }
+        }
+        requests.incrementAndGet();
+        receivedEtag = exchange.getRequestHeaders().getFirst("If-None-Match");
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (status != 200) {
+            exchange.sendResponseHeaders(status, -1);
+        } else if (ETAG.equals(receivedEtag)) {
+            exchange.sendResponseHeaders(304, -1);
+        } else {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("ETag", ETAG);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+        exchange.close();
+    }
+
+    private EducationCachingService newService() {
+        return new EducationCachingService(executor, cacheDir, RETRY_INTERVAL_MS, refreshes::incrementAndGet);
+    }
+
+    /**
+     * Waits for the queued loads; the executor has a single thread.
+     */
+    private void drain() throws Exception {
+        executor.submit(() -> {
+        }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static void assertOverview(String text) {
+        assertTrue(text, text.contains(OVERVIEW));
+    }
+
+    @Test
+    public void coldMissDoesNotBlock() throws Exception {
+        release = new CountDownLatch(1);
+        EducationCachingService service = newService();
+
+        long start = System.nanoTime();
+        assertEquals("", service.getBriefOverview(TYPE, true));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("getBriefOverview took " + elapsedMs + " ms", elapsedMs < 1000);
+
+        release.countDown();
+        drain();
+        assertOverview(service.getBriefOverview(TYPE, true));
+        assertEquals(1, requests.get());
+        assertEquals(1, refreshes.get());
+    }
+
+    @Test
+    public void prefetchRefreshesHighlightingOnce() throws Exception {
+        EducationCachingService service = newService();
+        service.prefetch(Arrays.asList(TYPE, "XSS_SERVLET", "PATH_TRAVERSAL_IN"));
+        drain();
+        assertEquals(3, requests.get());
+        assertEquals(1, refreshes.get());
+    }
+
+    @Test
+    public void revalidatesWithEtag() throws Exception {
+        newService().getBriefOverview(TYPE, true);
+        drain();
+
+        body = "[{\"title\": \"Overview\", \"content\": \"changed\"}]"; // only sent if the ETag does not match
+        EducationCachingService service = newService();
+        service.getBriefOverview(TYPE, true);
+        drain();
+
+        assertEquals(2, requests.get());
+        assertEquals(ETAG, receivedEtag);
+        assertOverview(service.getBriefOverview(TYPE, true));
+    }
+
+    @Test
+    public void failedLoadIsNotCachedAndRetriedAfterInterval() throws Exception {
+        status = 500;
+        EducationCachingService service = newService();
+        assertEquals("", service.getBriefOverview(TYPE, true));
+        drain();
+        assertEquals(1, requests.get());
+
+        assertEquals("", service.getBriefOverview(TYPE, true)); // within the retry interval
+        drain();
+        assertEquals(1, requests.get());
+        assertEquals(0, refreshes.get());
+
+        Thread.sleep(RETRY_INTERVAL_MS + 50);
+        status = 200;
+        assertEquals("", service.getBriefOverview(TYPE, true));
+        drain();
+        assertEquals(2, requests.get());
+        assertOverview(service.getBriefOverview(TYPE, true));
+    }
+
+    @Test
+    public void diskCopySurvivesRestart() throws Exception {
+        newService().getBriefOverview(TYPE, true);
+        drain();
+
+        status = 503; // server down after the restart
+        EducationCachingService service = newService();
+        service.getBriefOverview(TYPE, true);
+        drain();
+
+        assertEquals(2, requests.get());
+        assertOverview(service.getBriefOverview(TYPE, true));
+        assertOverview(service.getContentSection(TYPE, "Overview", true));
+    }
+}
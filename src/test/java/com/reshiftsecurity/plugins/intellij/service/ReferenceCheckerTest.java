@@ -0,0 +1,190 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reshiftsecurity.plugins.intellij.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link ReferenceChecker} against a local HTTP server which delays its responses.
+ * A single thread executor stands in for the EDT.
+ */
+public class ReferenceCheckerTest {
+    private static final long TIMEOUT_MS = 10_000;
+    private static final long DAY = 18_000;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final BlockingQueue<Boolean> results = new LinkedBlockingQueue<>();
+    private volatile long delayMs;
+    private volatile int status = 200;
+
+    private ExecutorService serverExecutor;
+    private HttpServer server;
+    private String baseUrl;
+    private ExecutorService executor;
+    private ExecutorService edt;
+
+    @Before
+    public void setUp() throws IOException {
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(serverExecutor);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        executor = Executors.newSingleThreadExecutor();
+        edt = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        edt.shutdownNow();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            Thread.sleep(delayMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+
+    private ReferenceChecker newChecker(OkHttpClient client) {
+        return new ReferenceChecker(baseUrl, client, executor, edt);
+    }
+
+    private void check(ReferenceChecker checker, long day) throws Exception {
+        edt.submit(() -> checker.check("ref", day, results::add)).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits for the running check and its result to be processed.
+     */
+    private void drain() throws Exception {
+        executor.submit(() -> {
+        }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        edt.submit(() -> {
+        }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void checkDoesNotBlock() throws Exception {
+        delayMs = 1000;
+        ReferenceChecker checker = newChecker(ReferenceChecker.createClient(ReferenceChecker.TIMEOUT_MS));
+
+        long start = System.nanoTime();
+        check(checker, DAY);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("check took " + elapsedMs + " ms", elapsedMs < 500);
+
+        assertEquals(Boolean.TRUE, results.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void secondCheckIsIgnoredWhileRunning() throws Exception {
+        delayMs = 500;
+        ReferenceChecker checker = newChecker(ReferenceChecker.createClient(ReferenceChecker.TIMEOUT_MS));
+        check(checker, DAY);
+        check(checker, DAY);
+        drain();
+        assertEquals(1, requests.get());
+        assertEquals(1, results.size());
+    }
+
+    @Test
+    public void timeoutLeavesCheckUnset() throws Exception {
+        delayMs = 1000;
+        ReferenceChecker checker = newChecker(ReferenceChecker.createClient(200));
+        check(checker, DAY);
+        drain();
+        assertNull(results.poll());
+
+        delayMs = 0;
+        check(checker, DAY); // checked again, the failure is not cached for the day
+        drain();
+        assertEquals(2, requests.get());
+        assertEquals(Boolean.TRUE, results.poll());
+    }
+
+    @Test
+    public void resultIsCachedForTheDay() throws Exception {
+        status = 404;
+        ReferenceChecker checker = newChecker(ReferenceChecker.createClient(ReferenceChecker.TIMEOUT_MS));
+        check(checker, DAY);
+        drain();
+        assertEquals(Boolean.FALSE, results.poll());
+
+        check(checker, DAY);
+        assertEquals(Boolean.FALSE, results.poll());
+        assertEquals(1, requests.get());
+
+        status = 200;
+        check(checker, DAY + 1);
+        drain();
+        assertEquals(Boolean.TRUE, results.poll());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void runningFlagIsResetAfterRuntimeException() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        OkHttpClient client = ReferenceChecker.createClient(ReferenceChecker.TIMEOUT_MS).newBuilder()
+                .addInterceptor(chain -> {
+                    if (calls.incrementAndGet() == 1) {
+                        throw new IllegalStateException("broken client");
+                    }
+                    return chain.proceed(chain.request());
+                })
+                .build();
+        ReferenceChecker checker = newChecker(client);
+        check(checker, DAY);
+        drain();
+        assertNull(results.poll());
+        assertEquals(0, requests.get());
+
+        check(checker, DAY);
+        drain();
+        assertEquals(1, requests.get());
+        assertEquals(Boolean.TRUE, results.poll());
+    }
+}
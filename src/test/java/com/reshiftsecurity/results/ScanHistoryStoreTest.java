@@ -0,0 +1,315 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reshiftsecurity.results;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Records generated scans in a {@link ScanHistoryStore} and compares the restored states with the recorded ones.
+ */
+public class ScanHistoryStoreTest {
+    private File dir;
+    private File file;
+
+    /**
+     * The simulated report: issues by report store id.
+     */
+    private final Map<Integer, SecurityIssue> report = new LinkedHashMap<>();
+    /**
+     * Expected state after each scan, index = scan number - 1.
+     */
+    private final List<Map<Integer, String>> expectedStates = new ArrayList<>();
+    private final Random random = new Random(7);
+    private int nextId;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("history").toFile();
+        file = new File(dir, "history.bin");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                assertTrue(f.delete());
+            }
+        }
+        assertTrue(dir.delete());
+    }
+
+    @Test
+    public void restoresStatesAcrossCheckpoints() throws IOException {
+        ScanHistoryStore history = newHistory();
+        for (int i = 0; i < 120; i++) {
+            recordRandomScan(history);
+        }
+        assertStates(history, 1, 120);
+        ScanHistoryStore loaded = newHistory();
+        assertStates(loaded, 1, 120);
+        // the boundaries of the checkpoints written every 50 scans
+        for (int number : new int[]{49, 50, 51, 52, 100, 101}) {
+            assertEquals("scan " + number, expectedStates.get(number - 1), describe(loaded.getState(number)));
+        }
+
+        List<ScanHistoryStore.Scan> scans = loaded.getScans();
+        assertEquals(120, scans.size());
+        for (ScanHistoryStore.Scan scan : scans) {
+            Map<Integer, String> expected = expectedStates.get(scan.getNumber() - 1);
+            assertEquals(expected.size(), scan.getTotalCount());
+            int open = 0;
+            for (String issue : expected.values()) {
+                if (issue.endsWith("open")) {
+                    open++;
+                }
+            }
+            assertEquals(open, scan.getOpenCount());
+        }
+    }
+
+    @Test
+    public void diffReportsAddedFixedAndMovedIssues() throws IOException {
+        ScanHistoryStore history = newHistory();
+        SecurityIssue first = add();
+        SecurityIssue second = add();
+        add();
+        record(history, new ArrayList<>(report.keySet()), Collections.<Integer>emptyList());
+
+        first.isFixed = true;
+        second.lineNumber += 5;
+        add();
+        report.remove(2);
+        record(history, Arrays.asList(0, 1, 3), Collections.singletonList(2));
+
+        first.isFixed = false;
+        record(history, Collections.singletonList(0), Collections.<Integer>emptyList());
+
+        ScanHistoryStore.ScanDiff diff = history.diff(1, 2);
+        assertEquals(Collections.singletonList(3), ids(diff.getAdded()));
+        assertEquals(Arrays.asList(0, 2), ids(diff.getFixed()));
+        assertEquals(Collections.singletonList(1), ids(diff.getMoved()));
+        assertEquals(second.lineNumber, diff.getMoved().get(0).getLineNumber());
+
+        diff = newHistory().diff(2, 3);
+        assertEquals(Collections.singletonList(0), ids(diff.getAdded())); // reopened
+        assertTrue(diff.getFixed().isEmpty());
+        assertTrue(diff.getMoved().isEmpty());
+    }
+
+    @Test
+    public void dropsOldScans() throws IOException {
+        ScanHistoryStore history = newHistory();
+        int count = 1100;
+        for (int i = 0; i < count; i++) {
+            recordRandomScan(history);
+            history.dropOldScans();
+        }
+        List<ScanHistoryStore.Scan> scans = history.getScans();
+        int first = scans.get(0).getNumber();
+        assertTrue("first retained scan " + first, first > 1 && first <= count - 1000 + 1);
+        assertEquals(count, scans.get(scans.size() - 1).getNumber());
+
+        ScanHistoryStore loaded = newHistory();
+        assertEquals(scans.size(), loaded.getScans().size());
+        assertStates(loaded, first, count);
+        try {
+            loaded.getState(first - 1);
+            fail("scan " + (first - 1) + " is dropped");
+        } catch (IllegalArgumentException expected) {
+            // dropped
+        }
+
+        recordRandomScan(loaded); // appending after the rewrite
+        assertStates(newHistory(), first, count + 1);
+    }
+
+    @Test
+    public void loadCutsOffTornEntry() throws IOException {
+        ScanHistoryStore history = newHistory();
+        for (int i = 0; i < 5; i++) {
+            recordRandomScan(history);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3); // interrupted while appending scan 5
+        }
+        expectedStates.remove(4);
+
+        ScanHistoryStore loaded = newHistory();
+        assertEquals(4, loaded.getScans().size());
+        assertStates(loaded, 1, 4);
+
+        // the report already holds the changes of the torn scan, so the next scan records them all again
+        List<Integer> removed = new ArrayList<>(expectedStates.get(3).keySet());
+        removed.removeAll(report.keySet());
+        record(loaded, new ArrayList<>(report.keySet()), removed);
+        ScanHistoryStore reloaded = newHistory();
+        assertEquals(5, reloaded.getScans().size());
+        assertStates(reloaded, 1, 5);
+    }
+
+    @Test
+    public void loadCutsOffTrailingGarbage() throws IOException {
+        ScanHistoryStore history = newHistory();
+        for (int i = 0; i < 3; i++) {
+            recordRandomScan(history);
+        }
+        long length = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(length);
+            raf.write(new byte[]{2, 0, 0});
+        }
+
+        ScanHistoryStore loaded = newHistory();
+        assertEquals(3, loaded.getScans().size());
+        assertEquals(length, file.length());
+        assertStates(loaded, 1, 3);
+    }
+
+    private ScanHistoryStore newHistory() throws IOException {
+        ScanHistoryStore ret = new ScanHistoryStore(file);
+        ret.load();
+        return ret;
+    }
+
+    private SecurityIssue add() {
+        SecurityIssue issue = new SecurityIssue();
+        int id = nextId++;
+        issue.issueHash = "hash" + id;
+        issue.cweId = 79 + id % 3;
+        issue.categoryName = "CATEGORY_" + id % 4;
+        issue.classFQN = "com.acme.Class" + id % 7;
+        issue.methodFullSignature = "com.acme.Class" + id % 7 + ".method" + id + "()V";
+        issue.lineNumber = 1 + random.nextInt(500);
+        issue.isFixed = false;
+        report.put(id, issue);
+        return issue;
+    }
+
+    /**
+     * Adds, fixes, reopens, moves, changes and removes some issues of the report and records the scan.
+     */
+    private void recordRandomScan(ScanHistoryStore history) throws IOException {
+        List<Integer> changed = new ArrayList<>();
+        List<Integer> removed = new ArrayList<>();
+        if (expectedStates.isEmpty()) {
+            for (int i = 0; i < 20; i++) {
+                add();
+            }
+            changed.addAll(report.keySet());
+        } else {
+            for (Map.Entry<Integer, SecurityIssue> entry : new ArrayList<>(report.entrySet())) {
+                SecurityIssue issue = entry.getValue();
+                switch (random.nextInt(12)) {
+                    case 0:
+                        issue.isFixed = !issue.isFixed;
+                        break;
+                    case 1:
+                        issue.lineNumber += 1 + random.nextInt(10);
+                        break;
+                    case 2:
+                        issue.categoryName = issue.categoryName + "'";
+                        break;
+                    case 3:
+                        if (report.size() > 10) {
+                            report.remove(entry.getKey());
+                            removed.add(entry.getKey());
+                        }
+                        continue;
+                    default:
+                        continue;
+                }
+                changed.add(entry.getKey());
+            }
+            for (int i = random.nextInt(3); i > 0; i--) {
+                add();
+                changed.add(nextId - 1);
+            }
+        }
+        record(history, changed, removed);
+    }
+
+    private void record(ScanHistoryStore history, Collection<Integer> changedIds, List<Integer> removedIds) throws IOException {
+        Map<Integer, SecurityIssue> changed = new LinkedHashMap<>();
+        for (Integer id : changedIds) {
+            changed.put(id, report.get(id));
+        }
+        history.record(expectedStates.size() * 1000L, changed, removedIds);
+        Map<Integer, String> expected = new TreeMap<>();
+        for (Map.Entry<Integer, SecurityIssue> entry : report.entrySet()) {
+            SecurityIssue issue = entry.getValue();
+            expected.put(entry.getKey(), describe(entry.getKey(), issue.issueHash, issue.cweId, issue.categoryName,
+                    issue.classFQN, issue.methodFullSignature, issue.lineNumber, !issue.isFixed));
+        }
+        expectedStates.add(expected);
+    }
+
+    private void assertStates(ScanHistoryStore history, int from, int to) throws IOException {
+        for (int number = from; number <= to; number++) {
+            assertEquals("scan " + number, expectedStates.get(number - 1), describe(history.getState(number)));
+        }
+    }
+
+    private static Map<Integer, String> describe(Map<Integer, ScanHistoryStore.HistoryIssue> state) {
+        Map<Integer, String> ret = new TreeMap<>();
+        for (Map.Entry<Integer, ScanHistoryStore.HistoryIssue> entry : state.entrySet()) {
+            ScanHistoryStore.HistoryIssue issue = entry.getValue();
+            assertEquals(entry.getKey().intValue(), issue.getId());
+            ret.put(entry.getKey(), describe(issue.getId(), issue.getIssueHash(), issue.getCweId(), issue.getCategoryName(),
+                    issue.getClassFQN(), issue.getMethodFullSignature(), issue.getLineNumber(), issue.isOpen()));
+        }
+        return ret;
+    }
+
+    private static String describe(int id, String issueHash, int cweId, String categoryName, String classFQN,
+                                   String methodFullSignature, int lineNumber, boolean open) {
+        return id + "|" + issueHash + "|" + cweId + "|" + categoryName + "|" + classFQN + "|" + methodFullSignature
+                + "|" + lineNumber + "|" + (open ? "open" : "fixed");
+    }
+
+    private static List<Integer> ids(List<ScanHistoryStore.HistoryIssue> issues) {
+        List<Integer> ret = new ArrayList<>();
+        for (ScanHistoryStore.HistoryIssue issue : issues) {
+            ret.add(issue.getId());
+        }
+        Collections.sort(ret);
+        return ret;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.reshiftsecurity.results;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares {@link SecurityIssueIndex} with the linear {@link SecurityIssue#isSameAs(SecurityIssue)} scan
+ * it replaces, on generated issues with few distinct values so that every matching rule is exercised.
+ */
+public class SecurityIssueIndexTest {
+    private static final String[] CLASSES = {"com.acme.Foo", "COM.ACME.FOO", "com.acme.Bar"};
+    private static final String[] METHODS = {"com.acme.Foo.run()V", "com.acme.foo.RUN()V", "com.acme.Bar.call()V"};
+    private static final String[] CODES = {"query(sql);", " query( sql ) ;", "QUERY(SQL);", "exec(cmd);", "\texec(cmd);\n", ""};
+    private static final String[] HASHES = {"a1b2", "A1B2", "c3d4"};
+
+    @Test
+    public void classificationMatchesIsSameAs() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<SecurityIssue> previous = generate(random, random.nextInt(30));
+            List<SecurityIssue> latest = generate(random, random.nextInt(30));
+            SecurityIssueIndex index = new SecurityIssueIndex(previous);
+            for (SecurityIssue issue : latest) {
+                boolean expected = false;
+                for (SecurityIssue candidate : previous) {
+                    if (candidate.isSameAs(issue)) {
+                        expected = true;
+                        break;
+                    }
+                }
+                assertEquals("round " + round, expected, index.contains(issue));
+                SecurityIssue found = index.find(issue);
+                if (expected) {
+                    assertTrue("round " + round, found.isSameAs(issue));
+                } else {
+                    assertNull("round " + round, found);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void addedIssuesAreFound() {
+        Random random = new Random(7);
+        List<SecurityIssue> issues = generate(random, 50);
+        SecurityIssueIndex index = new SecurityIssueIndex();
+        for (SecurityIssue issue : issues) {
+            index.add(issue);
+            assertTrue(index.contains(issue));
+        }
+    }
+
+    @Test
+    public void emptyIndexContainsNothing() {
+        SecurityIssueIndex index = new SecurityIssueIndex(null);
+        for (SecurityIssue issue : generate(new Random(1), 10)) {
+            assertNull(index.find(issue));
+        }
+    }
+
+    private static List<SecurityIssue> generate(Random random, int count) {
+        List<SecurityIssue> ret = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            SecurityIssue issue = new SecurityIssue();
+            issue.cweId = 89 + random.nextInt(2);
+            issue.classFQN = CLASSES[random.nextInt(CLASSES.length)];
+            issue.methodFullSignature = METHODS[random.nextInt(METHODS.length)];
+            issue.code = CODES[random.nextInt(CODES.length)];
+            issue.issueHash = HASHES[random.nextInt(HASHES.length)];
+            issue.lineNumber = 10 + random.nextInt(3);
+            ret.add(issue);
+        }
+        return ret;
+    }
+}
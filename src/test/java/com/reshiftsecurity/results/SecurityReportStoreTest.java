@@ -0,0 +1,260 @@
+/*
+ * Copyright 2020 Reshift Security Intellij plugin contributors
+ *
+ * This file is part of Reshift Security Intellij plugin.
+ *
+ * Reshift Security Intellij plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * Reshift Security Intellij plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Reshift Security Intellij plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.reshiftsecurity.results;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Writes {@link SecurityReportStore} logs and checks what a fresh store replays from them.
+ */
+public class SecurityReportStoreTest {
+    private File dir;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("report").toFile();
+        file = new File(dir, "report.bin");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                assertTrue(f.delete());
+            }
+        }
+        assertTrue(dir.delete());
+    }
+
+    @Test
+    public void loadReplaysAllBatches() throws IOException {
+        SecurityReportStore store = new SecurityReportStore(file);
+        store.load();
+        SecurityReportStore.Changes changes = new SecurityReportStore.Changes();
+        for (int i = 0; i < 5; i++) {
+            changes.add(issue(i));
+        }
+        store.apply(changes);
+        List<Integer> ids = changes.getAddedIds();
+
+        changes = new SecurityReportStore.Changes();
+        SecurityIssue fixed = store.getIssuesById().get(ids.get(1));
+        fixed.isFixed = true;
+        fixed.fixDatetime = "2020-10-01T12:00";
+        changes.update(ids.get(1), fixed);
+        changes.remove(ids.get(3));
+        changes.add(issue(5));
+        store.apply(changes);
+
+        assertEquals(5, store.size());
+        assertSameIssues(store, reload());
+        assertEquals(Boolean.TRUE, reload().getIssuesById().get(ids.get(1)).isFixed);
+    }
+
+    @Test
+    public void keepsCommittedBatchesOfTornLog() throws IOException {
+        SecurityReportStore store = new SecurityReportStore(file);
+        store.load();
+        SecurityReportStore.Changes changes = new SecurityReportStore.Changes();
+        changes.add(issue(0));
+        changes.add(issue(1));
+        store.apply(changes);
+        Map<Integer, SecurityIssue> committed = store.getIssuesById();
+
+        changes = new SecurityReportStore.Changes();
+        changes.add(issue(2));
+        changes.remove(committed.keySet().iterator().next());
+        store.apply(changes);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3); // interrupted in the middle of the last batch
+        }
+
+        SecurityReportStore loaded = reload();
+        assertSameIssues(committed, loaded.getIssuesById());
+
+        // the torn tail is not appended to, the next batch rewrites the log
+        changes = new SecurityReportStore.Changes();
+        changes.add(issue(3));
+        loaded.apply(changes);
+        assertSameIssues(loaded, reload());
+        assertEquals(3, reload().size());
+    }
+
+    @Test
+    public void dropsUncommittedRecords() throws IOException {
+        SecurityReportStore store = new SecurityReportStore(file);
+        store.load();
+        SecurityReportStore.Changes changes = new SecurityReportStore.Changes();
+        changes.add(issue(0));
+        store.apply(changes);
+        long committedLength = file.length();
+
+        changes = new SecurityReportStore.Changes();
+        changes.add(issue(1));
+        store.apply(changes);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 1); // only the commit record is missing
+        }
+        assertTrue(file.length() > committedLength);
+
+        SecurityReportStore loaded = reload();
+        assertEquals(1, loaded.size());
+        assertEquals("hash0", loaded.getIssues().get(0).issueHash);
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        Files.write(file.toPath(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        SecurityReportStore store = new SecurityReportStore(file);
+        try {
+            store.load();
+            fail("no report log");
+        } catch (IOException expected) {
+            assertEquals(0, store.size());
+        }
+
+        // the unreadable log is replaced, not appended to
+        SecurityReportStore.Changes changes = new SecurityReportStore.Changes();
+        changes.add(issue(0));
+        store.apply(changes);
+        assertSameIssues(store, reload());
+    }
+
+    @Test
+    public void compactsLogWithManyUpdates() throws IOException {
+        SecurityReportStore store = new SecurityReportStore(file);
+        store.load();
+        SecurityReportStore.Changes changes = new SecurityReportStore.Changes();
+        for (int i = 0; i < 10; i++) {
+            changes.add(issue(i));
+        }
+        store.apply(changes);
+        long compactLength = file.length();
+
+        long maxLength = compactLength;
+        boolean compacted = false;
+        for (int round = 0; round < 150; round++) {
+            changes = new SecurityReportStore.Changes();
+            for (Map.Entry<Integer, SecurityIssue> entry : store.getIssuesById().entrySet()) {
+                SecurityIssue issue = entry.getValue();
+                issue.lineNumber++;
+                changes.update(entry.getKey(), issue);
+            }
+            long before = file.length();
+            store.apply(changes);
+            maxLength = Math.max(maxLength, file.length());
+            compacted |= file.length() < before;
+        }
+
+        assertTrue("the log was never compacted", compacted);
+        assertTrue(maxLength > 10 * compactLength);
+        assertTrue(file.length() < maxLength);
+        assertSameIssues(store, reload());
+        assertEquals(150 + 10, reload().getIssues().get(0).lineNumber);
+    }
+
+    @Test
+    public void invalidChangesLeaveStoreUnchanged() throws IOException {
+        SecurityReportStore store = new SecurityReportStore(file);
+        store.load();
+        SecurityReportStore.Changes changes = new SecurityReportStore.Changes();
+        changes.add(issue(0));
+        store.apply(changes);
+        long length = file.length();
+
+        changes = new SecurityReportStore.Changes();
+        changes.add(issue(1));
+        changes.remove(42);
+        try {
+            store.apply(changes);
+            fail("unknown id");
+        } catch (IllegalArgumentException expected) {
+            assertEquals(1, store.size());
+            assertEquals(length, file.length());
+        }
+    }
+
+    private SecurityReportStore reload() throws IOException {
+        SecurityReportStore ret = new SecurityReportStore(file);
+        ret.load();
+        return ret;
+    }
+
+    private static SecurityIssue issue(int i) {
+        SecurityIssue ret = new SecurityIssue();
+        ret.issueHash = "hash" + i;
+        ret.cweId = 89;
+        ret.categoryName = "SQL_INJECTION_JDBC";
+        ret.classFQN = "com.acme.Dao" + i;
+        ret.lineNumber = 10;
+        ret.code = "query(sql" + i + ");";
+        ret.methodFullSignature = "com.acme.Dao" + i + ".find()V";
+        ret.isNew = i % 2 == 0;
+        ret.detectionDatetime = "2020-09-0" + (i % 9 + 1) + "T10:00";
+        return ret;
+    }
+
+    private static void assertSameIssues(SecurityReportStore expected, SecurityReportStore actual) {
+        assertSameIssues(expected.getIssuesById(), actual.getIssuesById());
+    }
+
+    private static void assertSameIssues(Map<Integer, SecurityIssue> expected, Map<Integer, SecurityIssue> actual) {
+        assertEquals(toStrings(expected), toStrings(actual));
+    }
+
+    private static Map<Integer, List<Object>> toStrings(Map<Integer, SecurityIssue> issues) {
+        Map<Integer, List<Object>> ret = new LinkedHashMap<>();
+        for (Map.Entry<Integer, SecurityIssue> entry : issues.entrySet()) {
+            SecurityIssue issue = entry.getValue();
+            List<Object> fields = new ArrayList<>();
+            fields.add(issue.issueHash);
+            fields.add(issue.cweId);
+            fields.add(issue.categoryName);
+            fields.add(issue.classFQN);
+            fields.add(issue.trimmedCode);
+            fields.add(issue.lineNumber);
+            fields.add(issue.code);
+            fields.add(issue.methodFullSignature);
+            fields.add(issue.isFixed);
+            fields.add(issue.isNew);
+            fields.add(issue.detectionDatetime);
+            fields.add(issue.fixDatetime);
+            ret.put(entry.getKey(), fields);
+        }
+        return ret;
+    }
+}